@@ -14,7 +14,7 @@
 import fs from 'node:fs';
 import os from 'node:os';
 import path from 'node:path';
-import { execFileSync } from 'node:child_process';
+import { execFileSync, spawn } from 'node:child_process';
 import { fileURLToPath } from 'node:url';
 import { createRequire } from 'node:module';
 
@@ -150,10 +150,12 @@ function jsVerdict(src) {
 }
 
 // ------------------------------------------------------ ANTLR verdict --
-// ParseCheck is the CLI seam. Invoking it through gradle costs ~1s of JVM
-// and build-system startup per call, which the minimizer cannot afford, so
-// the classpath is resolved once and ParseCheck runs under plain `java`.
-// Falls back to `./gradlew parseCheck` if the classpath cannot be found.
+// ParseCheck is the CLI seam. One ParseCheck runs for the whole fuzz run in
+// --server mode: programs go down its stdin as "<byte-length>\n<bytes>"
+// frames and come back as one verdict line each, so JVM startup and ATN
+// deserialization are paid once and the parser's DFA stays warm. The
+// classpath is resolved once and ParseCheck runs under plain `java`; falls
+// back to `./gradlew parseCheck` if the classpath cannot be found.
 function resolveParseCheck() {
   execFileSync('./gradlew', ['-q', 'classes'], { cwd: REPO, stdio: 'ignore' });
   const classes = path.join(REPO, 'build', 'classes', 'java', 'main');
@@ -171,48 +173,55 @@ function resolveParseCheck() {
       }
     }
   }
-  if (jar) return files => ['java', ['-cp', `${classes}:${jar}`, 'com.mpl.tools.ParseCheck', ...files]];
-  return files => ['./gradlew', ['-q', 'parseCheck', `--args=${files.join(' ')}`]];
+  if (jar) return ['java', ['-cp', `${classes}:${jar}`, 'com.mpl.tools.ParseCheck', '--server']];
+  return ['./gradlew', ['-q', 'parseCheck', '--args=--server']];
 }
-const parseCheckCmd = resolveParseCheck();
-const antlrCache = new Map();
 
-function antlrVerdicts(programs) {
-  const result = new Array(programs.length);
-  const misses = [];
-  programs.forEach((p, i) => {
-    if (antlrCache.has(p)) result[i] = antlrCache.get(p);
-    else misses.push(i);
-  });
-  if (misses.length) {
-    const dir = fs.mkdtempSync(path.join(os.tmpdir(), 'mplfuzz-'));
-    const files = misses.map((mi, k) => {
-      const f = path.join(dir, `p${String(k).padStart(4, '0')}.mpl`);
-      fs.writeFileSync(f, programs[mi]);
-      return f;
-    });
-    let stdout = '';
-    const [cmd, args] = parseCheckCmd(files);
-    try {
-      stdout = execFileSync(cmd, args, { cwd: REPO, encoding: 'utf8', stdio: ['ignore', 'pipe', 'pipe'] });
-    } catch (e) {
-      stdout = e.stdout || '';
+// Verdict lines arrive in request order, so pending requests are a FIFO.
+function startParseCheck() {
+  const [cmd, args] = resolveParseCheck();
+  const child = spawn(cmd, args, { cwd: REPO, stdio: ['pipe', 'pipe', 'inherit'] });
+  const pending = [];
+  let buf = '';
+  child.stdout.setEncoding('utf8');
+  child.stdout.on('data', chunk => {
+    buf += chunk;
+    let nl;
+    while ((nl = buf.indexOf('\n')) !== -1) {
+      const line = buf.slice(0, nl);
+      buf = buf.slice(nl + 1);
+      const next = pending.shift();
+      if (next) next.resolve(line);
     }
-    const rejected = new Map();
-    for (const line of stdout.split('\n')) {
-      const m = line.match(/p(\d{4})\.mpl:(.*)$/);
-      if (m) rejected.set(Number(m[1]), m[2].trim());
+  });
+  child.on('exit', code => {
+    for (const p of pending.splice(0)) p.reject(new Error(`ParseCheck server exited (${code})`));
+  });
+  return {
+    check(src) {
+      const bytes = Buffer.from(src, 'utf8');
+      return new Promise((resolve, reject) => {
+        pending.push({ resolve, reject });
+        child.stdin.write(`${bytes.length}\n`);
+        child.stdin.write(bytes);
+      });
+    },
+    close() { child.stdin.end(); },
+  };
+}
+const parseCheck = startParseCheck();
+const antlrCache = new Map();
+
+async function antlrVerdicts(programs) {
+  return Promise.all(programs.map(async p => {
+    if (!antlrCache.has(p)) {
+      const line = await parseCheck.check(p);
+      antlrCache.set(p, line === 'ok'
+        ? { accepts: true, detail: 'parses' }
+        : { accepts: false, detail: line.trim() });
     }
-    misses.forEach((mi, k) => {
-      const v = rejected.has(k)
-        ? { accepts: false, detail: rejected.get(k) }
-        : { accepts: true, detail: 'parses' };
-      antlrCache.set(programs[mi], v);
-      result[mi] = v;
-    });
-    fs.rmSync(dir, { recursive: true, force: true });
-  }
-  return result;
+    return antlrCache.get(p);
+  }));
 }
 
 // -------------------------------------------------------- minimization --
@@ -225,8 +234,8 @@ const UNIT = /"(?:[^"\\]|\\.)*"|\\[a-zA-Z]+|[a-zA-Z][a-zA-Z0-9_]*|[0-9]+(?:\.[0-
 // consecutive parts at every offset (largest w first), batch-checking the
 // survivors; returns the first reduced array that preserves the
 // disagreement, or null when no deletion does.
-function reduceOnce(parts, joiner, wanted) {
-  // All window sizes go into ONE batched ParseCheck call; the largest
+async function reduceOnce(parts, joiner, wanted) {
+  // All window sizes go into ONE batch of ParseCheck requests; the largest
   // window that preserves the disagreement wins.
   const candidates = [];
   for (let w = Math.min(8, parts.length - 1); w >= 1; w = Math.floor(w / 2)) {
@@ -236,22 +245,22 @@ function reduceOnce(parts, joiner, wanted) {
     }
   }
   if (!candidates.length) return null;
-  const antlr = antlrVerdicts(candidates.map(c => c.cand.join(joiner)));
+  const antlr = await antlrVerdicts(candidates.map(c => c.cand.join(joiner)));
   const hit = candidates.findIndex((c, i) => antlr[i].accepts === wanted.antlr);
   return hit === -1 ? null : candidates[hit].cand;
 }
 
-function minimize(src, wanted) {
+async function minimize(src, wanted) {
   // Phase 1: whole lines. Phase 2: lexical units.
   let lines = src.split('\n').filter(l => l.trim() !== '');
   for (let r = 0; r < 30 && lines.length > 1; r++) {
-    const red = reduceOnce(lines, '\n', wanted);
+    const red = await reduceOnce(lines, '\n', wanted);
     if (!red) break;
     lines = red;
   }
   let units = lines.join('\n').match(UNIT) || [];
   for (let r = 0; r < 60 && units.length > 1; r++) {
-    const red = reduceOnce(units, '', wanted);
+    const red = await reduceOnce(units, '', wanted);
     if (!red) break;
     units = red;
   }
@@ -265,7 +274,7 @@ console.log(`fuzz: seed=${SEED} n=${N}`);
 
 const programs = Array.from({ length: N }, (_, i) => gen(i));
 const js = programs.map(jsVerdict);
-const antlr = antlrVerdicts(programs);
+const antlr = await antlrVerdicts(programs);
 
 let agreeAccept = 0, agreeReject = 0;
 const divergences = [];
@@ -291,14 +300,15 @@ const seen = new Set();
 const findings = [];
 for (const i of divergences) {
   const wanted = { js: js[i].accepts, antlr: antlr[i].accepts };
-  const repro = minimize(programs[i], wanted);
+  const repro = await minimize(programs[i], wanted);
   const key = `${canon(repro)}|js=${wanted.js}`;
   if (seen.has(key)) continue;
   seen.add(key);
   const [jsV] = [jsVerdict(repro)];
-  const [antlrV] = antlrVerdicts([repro]);
+  const [antlrV] = await antlrVerdicts([repro]);
   findings.push({ repro, index: i, jsV, antlrV });
 }
+parseCheck.close();
 findings.sort((a, b) => a.repro < b.repro ? -1 : a.repro > b.repro ? 1 : 0);
 
 for (const f of findings) {
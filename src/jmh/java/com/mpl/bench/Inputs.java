@@ -0,0 +1,165 @@
+package com.mpl.bench;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Benchmark inputs, resolved from the repository root (the working
+ * directory of the jmh task and of its forks).
+ *
+ * Input sets: "examples" (examples/*.mpl), "corpus" (every
+ * conformance/corpus/* /program.mpl, must-reject entries included) and the
+ * synthetic "10KB", "1MB" and "50MB" programs. Spellings: "glyph" is the
+ * source as written; "escape" rewrites every glyph outside string literals
+ * to its ASCII escape from glyph-escapes.md, which drives the lexer down
+ * its backslash-word paths instead of its single-code-point ones.
+ */
+final class Inputs {
+
+    private static final Pattern ESCAPE_ROW =
+        Pattern.compile("^\\| `(\\\\[A-Za-z]+)` \\| U\\+[0-9A-F]+ \\| (\\S+) \\|", Pattern.MULTILINE);
+
+    /**
+     * One synthetic unit: every M0 construct plus the brace forms the
+     * parser has to disambiguate. '#' is replaced by the unit number so
+     * identifiers stay distinct.
+     */
+    private static final String UNIT = String.join("\n",
+        "fact# ≜ λn∈ℕ: (n ≤ 1 ⟹ 1) | (n × fact#(n - 1));",
+        "xs# ≜ [1, 2.5, \"s#\", ⊥, [true, false], π];",
+        "∀ x ∈ xs#: ✎(\"item \" + x);",
+        "acc# ≜ 0; ∀ k ∈ [1, 2, 3]: acc# ← acc# + k ÷ 3;",
+        "blk# ≜ { a ← 1; b ← a ∗ 2; (a < b ∧ b ≠ 0) ∨ false };",
+        "rec# ≜ {name: \"r\", size: #}; set# ≜ {1, 2, #};",
+        "comp# ≜ (f ∘ g)(#) ‖ h(#); ✎ fact#(10) ≥ -#;",
+        "");
+
+    private Inputs() {}
+
+    static List<String> load(String set, String spelling) {
+        List<String> sources = switch (set) {
+            case "examples" -> readAll(Paths.get("examples"), "*.mpl");
+            case "corpus" -> readAll(Paths.get("conformance", "corpus"), "*/program.mpl");
+            case "10KB" -> List.of(synthetic(10 * 1024));
+            case "1MB" -> List.of(synthetic(1024 * 1024));
+            case "50MB" -> List.of(synthetic(50 * 1024 * 1024));
+            default -> throw new IllegalArgumentException("unknown input set: " + set);
+        };
+        return switch (spelling) {
+            case "glyph" -> sources;
+            case "escape" -> {
+                Map<Integer, String> escapes = escapes();
+                List<String> out = new ArrayList<>(sources.size());
+                for (String s : sources) {
+                    out.add(toEscapes(s, escapes));
+                }
+                yield out;
+            }
+            default -> throw new IllegalArgumentException("unknown spelling: " + spelling);
+        };
+    }
+
+    /** Total UTF-16 length, for reading per-op times as throughput. */
+    static long chars(List<String> sources) {
+        long n = 0;
+        for (String s : sources) {
+            n += s.length();
+        }
+        return n;
+    }
+
+    private static List<String> readAll(Path root, String glob) {
+        PathMatcher matcher = root.getFileSystem().getPathMatcher("glob:" + glob);
+        try (Stream<Path> paths = Files.walk(root)) {
+            List<Path> files = paths.filter(p -> matcher.matches(root.relativize(p))).sorted().toList();
+            if (files.isEmpty()) {
+                throw new IllegalStateException("no inputs under " + root.toAbsolutePath()
+                    + " — run from the repository root");
+            }
+            List<String> sources = new ArrayList<>(files.size());
+            for (Path f : files) {
+                sources.add(Files.readString(f));
+            }
+            return sources;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Repeats the unit until the program is at least {@code bytes} UTF-16 units long. */
+    static String synthetic(int bytes) {
+        StringBuilder sb = new StringBuilder(bytes + UNIT.length() * 2);
+        for (int i = 0; sb.length() < bytes; i++) {
+            sb.append(UNIT.replace("#", Integer.toString(i)));
+        }
+        return sb.toString();
+    }
+
+    private static Map<Integer, String> escapes() {
+        String table;
+        try {
+            table = Files.readString(Paths.get("glyph-escapes.md"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Map<Integer, String> escapes = new HashMap<>();
+        Matcher m = ESCAPE_ROW.matcher(table);
+        while (m.find()) {
+            String glyph = m.group(2);
+            if (glyph.codePointCount(0, glyph.length()) == 1) {
+                escapes.put(glyph.codePointAt(0), m.group(1));
+            }
+        }
+        if (escapes.isEmpty()) {
+            throw new IllegalStateException("no escapes parsed from glyph-escapes.md");
+        }
+        return escapes;
+    }
+
+    /**
+     * Rewrites glyphs to escapes outside "…" and """…""" literals. An
+     * escape followed by a letter or digit gets a space, so "∈t" becomes
+     * "\in t" and not the INT escape "\int".
+     */
+    static String toEscapes(String source, Map<Integer, String> escapes) {
+        StringBuilder out = new StringBuilder(source.length() * 2);
+        int i = 0;
+        int n = source.length();
+        while (i < n) {
+            if (source.startsWith("\"\"\"", i)) {
+                int end = source.indexOf("\"\"\"", i + 3);
+                end = end < 0 ? n : end + 3;
+                out.append(source, i, end);
+                i = end;
+                continue;
+            }
+            if (source.charAt(i) == '"') {
+                int j = i + 1;
+                while (j < n && source.charAt(j) != '"') {
+                    j += source.charAt(j) == '\\' ? 2 : 1;
+                }
+                j = Math.min(n, j + 1);
+                out.append(source, i, j);
+                i = j;
+                continue;
+            }
+            int cp = source.codePointAt(i);
+            i += Character.charCount(cp);
+            String escape = escapes.get(cp);
+            if (escape == null) {
+                out.appendCodePoint(cp);
+                continue;
+            }
+            out.append(escape);
+            if (i < n && Character.isLetterOrDigit(source.charAt(i))) {
+                out.append(' ');
+            }
+        }
+        return out.toString();
+    }
+}
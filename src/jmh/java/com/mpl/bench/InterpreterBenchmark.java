@@ -0,0 +1,47 @@
+package com.mpl.bench;
+
+import com.mpl.ast.Ast;
+import com.mpl.runtime.Frontend;
+import com.mpl.runtime.Interpreter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Java M0 evaluator on recursion-heavy programs, loaded once so only
+ * evaluation is measured, interpreted and with λ bodies compiled. Run with
+ * {@code -PjmhArgs='-prof gc'} to see the allocation per run
+ * (gc.alloc.rate.norm).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InterpreterBenchmark {
+
+    /** Corpus entry 015_recursion_fib at a few sizes. */
+    @Param({"10", "20"})
+    public int n;
+
+    /** Compile threshold: -1 interprets only, 0 compiles every λ on first use. */
+    @Param({"-1", "0"})
+    public int jit;
+
+    private Ast program;
+    private Interpreter interpreter;
+
+    @Setup
+    public void setup(Blackhole bh) {
+        program = new Frontend().load(
+                "fib ≜ λn: (n ≤ 1 ⟹ n) | (fib(n - 1) + fib(n - 2));\n✎ fib(" + n + ");");
+        interpreter = new Interpreter(bh::consume);
+        interpreter.setJitThreshold(jit);
+    }
+
+    @Benchmark
+    public Object fib() {
+        return interpreter.run(program);
+    }
+}
@@ -0,0 +1,96 @@
+package com.mpl.bench;
+
+import com.mpl.parser.MPLLexer;
+import com.mpl.parser.TableLexer;
+import org.antlr.v4.runtime.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MPLLexer throughput: raw nextToken() loops and a filled
+ * CommonTokenStream, over every input set in both spellings; the table*
+ * variants run the same loops on TableLexer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class LexerBenchmark {
+
+    @Param({"examples", "corpus", "10KB", "1MB", "50MB"})
+    public String input;
+
+    @Param({"glyph", "escape"})
+    public String spelling;
+
+    private CharStream[] streams;
+    private MPLLexer lexer;
+    private TableLexer table;
+
+    @Setup
+    public void setup() {
+        List<String> sources = Inputs.load(input, spelling);
+        streams = new CharStream[sources.size()];
+        for (int i = 0; i < streams.length; i++) {
+            streams[i] = CharStreams.fromString(sources.get(i));
+        }
+        lexer = new MPLLexer(streams[0]);
+        lexer.removeErrorListeners();
+        table = new TableLexer(streams[0]);
+    }
+
+    private void point(CharStream stream) {
+        stream.seek(0);
+        lexer.setInputStream(stream);
+    }
+
+    @Benchmark
+    public int nextToken() {
+        int count = 0;
+        for (CharStream stream : streams) {
+            point(stream);
+            while (lexer.nextToken().getType() != Token.EOF) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public void tokenStream(Blackhole bh) {
+        for (CharStream stream : streams) {
+            point(stream);
+            CommonTokenStream tokens = new CommonTokenStream(lexer);
+            tokens.fill();
+            bh.consume(tokens);
+        }
+    }
+
+    @Benchmark
+    public int tableNextToken() {
+        int count = 0;
+        for (CharStream stream : streams) {
+            stream.seek(0);
+            table.setInputStream(stream);
+            while (table.nextToken().getType() != Token.EOF) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public void tableTokenStream(Blackhole bh) {
+        for (CharStream stream : streams) {
+            stream.seek(0);
+            table.setInputStream(stream);
+            CommonTokenStream tokens = new CommonTokenStream(table);
+            tokens.fill();
+            bh.consume(tokens);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.mpl.bench;
+
+import com.mpl.parser.*;
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MPLParser.program() with parse trees, the way callers use it: lex+parse
+ * in the default full-LL mode, through TwoStageParser (SLL, LL fallback),
+ * and parser-only over pre-lexed tokens in each prediction mode.
+ *
+ * 50MB is left to RecognizerBenchmark: a parse tree for it does not fit a
+ * benchmark heap. Opt in with -p input=50MB and a larger -Xmx if wanted.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class ParserBenchmark {
+
+    @Param({"examples", "corpus", "10KB", "1MB"})
+    public String input;
+
+    @Param({"glyph", "escape"})
+    public String spelling;
+
+    private CharStream[] streams;
+    private CommonTokenStream[] lexed;
+    private MPLParser parser;
+    private TwoStageParser twoStage;
+
+    @Setup
+    public void setup() {
+        List<String> sources = Inputs.load(input, spelling);
+        streams = new CharStream[sources.size()];
+        lexed = new CommonTokenStream[sources.size()];
+        for (int i = 0; i < streams.length; i++) {
+            streams[i] = CharStreams.fromString(sources.get(i));
+            MPLLexer lexer = new MPLLexer(CharStreams.fromString(sources.get(i)));
+            lexer.removeErrorListeners();
+            lexed[i] = new CommonTokenStream(lexer);
+            lexed[i].fill();
+        }
+        parser = new MPLParser(lexed[0]);
+        parser.removeErrorListeners();
+        twoStage = new TwoStageParser();
+    }
+
+    @Benchmark
+    public void lexAndParseLL(Blackhole bh) {
+        for (CharStream stream : streams) {
+            stream.seek(0);
+            MPLLexer lexer = new MPLLexer(stream);
+            lexer.removeErrorListeners();
+            MPLParser p = new MPLParser(new CommonTokenStream(lexer));
+            p.removeErrorListeners();
+            bh.consume(p.program());
+        }
+    }
+
+    @Benchmark
+    public void lexAndParseTwoStage(Blackhole bh) {
+        for (CharStream stream : streams) {
+            bh.consume(twoStage.parse(stream, new BaseErrorListener()));
+        }
+    }
+
+    @Benchmark
+    public void parsePreLexedLL(Blackhole bh) {
+        parsePreLexed(bh, PredictionMode.LL);
+    }
+
+    @Benchmark
+    public void parsePreLexedSLL(Blackhole bh) {
+        parsePreLexed(bh, PredictionMode.SLL);
+    }
+
+    private void parsePreLexed(Blackhole bh, PredictionMode mode) {
+        for (CommonTokenStream tokens : lexed) {
+            tokens.seek(0);
+            parser.setTokenStream(tokens);
+            parser.getInterpreter().setPredictionMode(mode);
+            bh.consume(parser.program());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.mpl.bench;
+
+import com.mpl.parser.*;
+import org.antlr.v4.runtime.*;
+import org.openjdk.jmh.annotations.*;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MPLParser.program() without building a parse tree (accept/reject only,
+ * what ParseCheck needs), so the synthetic inputs scale to 50MB: over a
+ * CommonTokenStream of MPLLexer tokens, and over a PackedTokenStream.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class RecognizerBenchmark {
+
+    @Param({"10KB", "1MB", "50MB"})
+    public String input;
+
+    @Param({"glyph", "escape"})
+    public String spelling;
+
+    private CharStream stream;
+
+    @Setup
+    public void setup() {
+        List<String> sources = Inputs.load(input, spelling);
+        stream = CharStreams.fromString(sources.get(0));
+    }
+
+    @Benchmark
+    public int recognize() {
+        stream.seek(0);
+        MPLLexer lexer = new MPLLexer(stream);
+        lexer.removeErrorListeners();
+        MPLParser parser = new MPLParser(new CommonTokenStream(lexer));
+        parser.removeErrorListeners();
+        parser.setBuildParseTree(false);
+        parser.program();
+        return parser.getNumberOfSyntaxErrors();
+    }
+
+    @Benchmark
+    public int recognizePacked() {
+        stream.seek(0);
+        MPLParser parser = new MPLParser(new PackedTokenStream(stream));
+        parser.removeErrorListeners();
+        parser.setBuildParseTree(false);
+        parser.program();
+        return parser.getNumberOfSyntaxErrors();
+    }
+}
@@ -0,0 +1,61 @@
+package com.mpl.bench;
+
+import com.mpl.runtime.Bytecode;
+import com.mpl.runtime.Frontend;
+import com.mpl.runtime.VirtualMachine;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The bytecode VM on the program {@link InterpreterBenchmark} runs, and
+ * what a precompiled program saves at startup: loading it from source
+ * (lex, parse, check, compile) against reading its bytecode.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VirtualMachineBenchmark {
+
+    /** Corpus entry 015_recursion_fib at a few sizes. */
+    @Param({"10", "20"})
+    public int n;
+
+    private String source;
+    private Frontend frontend;
+    private Bytecode program;
+    private byte[] precompiled;
+    private VirtualMachine vm;
+
+    @Setup
+    public void setup(Blackhole bh) throws IOException {
+        source = "fib ≜ λn: (n ≤ 1 ⟹ n) | (fib(n - 1) + fib(n - 2));\n✎ fib(" + n + ");";
+        frontend = new Frontend();
+        program = Bytecode.compile(frontend.load(source));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        program.write(bytes);
+        precompiled = bytes.toByteArray();
+        vm = new VirtualMachine(bh::consume);
+    }
+
+    @Benchmark
+    public Object fib() {
+        return vm.run(program);
+    }
+
+    @Benchmark
+    public Bytecode loadSource() {
+        return Bytecode.compile(frontend.load(source));
+    }
+
+    @Benchmark
+    public Bytecode loadPrecompiled() throws IOException {
+        return Bytecode.read(new ByteArrayInputStream(precompiled));
+    }
+}
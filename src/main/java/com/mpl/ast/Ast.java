@@ -0,0 +1,377 @@
+package com.mpl.ast;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A compact, immutable MPL syntax tree: one row per node in parallel
+ * primitive arrays instead of one object per node.
+ *
+ * A node is an int index. Its kind ({@link NodeKind}), its data word, its
+ * source line and column (1-based line, 0-based column in code points, as
+ * ANTLR reports them) and its children live at that index; the children of
+ * a node are the index range {@code kidStart .. kidStart + kidCount} of one
+ * shared {@code kids} array. Names, number texts and decoded strings go to
+ * a deduplicated literal pool. Children always precede their parent, and
+ * the root (always a {@link NodeKind#SEQ}) is the last node.
+ *
+ * Build one with {@link AstBuilder#build}. Walk it by index
+ * ({@link #kind}, {@link #child}, …) or with a {@link Cursor}, which moves
+ * over the tree without allocating per node. {@link ParseCache} stores
+ * trees in their array form, so loading one is a handful of bulk copies.
+ */
+public final class Ast {
+
+    private final byte[] kind;
+    private final int[] data;
+    private final int[] line;
+    private final int[] col;
+    private final int[] kidStart;
+    private final int[] kidCount;
+    private final int[] kids;
+    private final String[] pool;
+    private final int size;
+
+    Ast(byte[] kind, int[] data, int[] line, int[] col, int[] kidStart, int[] kidCount,
+        int[] kids, String[] pool, int size) {
+        this.kind = kind;
+        this.data = data;
+        this.line = line;
+        this.col = col;
+        this.kidStart = kidStart;
+        this.kidCount = kidCount;
+        this.kids = kids;
+        this.pool = pool;
+        this.size = size;
+    }
+
+    /** Number of nodes. Node indices are 0 .. size() - 1. */
+    public int size() {
+        return size;
+    }
+
+    /** The program node: a SEQ of the top-level expressions. */
+    public int root() {
+        return size - 1;
+    }
+
+    public int kind(int node) {
+        return kind[node];
+    }
+
+    /** The kind-specific data word (see {@link NodeKind}). */
+    public int data(int node) {
+        return data[node];
+    }
+
+    public int line(int node) {
+        return line[node];
+    }
+
+    public int col(int node) {
+        return col[node];
+    }
+
+    public int childCount(int node) {
+        return kidCount[node];
+    }
+
+    public int child(int node, int i) {
+        if (i < 0 || i >= kidCount[node]) {
+            throw new IndexOutOfBoundsException("child " + i + " of node " + node
+                    + " (" + kidCount[node] + " children)");
+        }
+        return kids[kidStart[node] + i];
+    }
+
+    /** The pooled text of a node whose data is a pool index, else null. */
+    public String text(int node) {
+        if (!NodeKind.hasText(kind[node]) || data[node] < 0) {
+            return null;
+        }
+        return pool[data[node]];
+    }
+
+    /** Distinct literals in the pool. */
+    public int poolSize() {
+        return pool.length;
+    }
+
+    public String literal(int index) {
+        return pool[index];
+    }
+
+    /**
+     * Approximate heap retained by this tree, in bytes: the arrays, plus
+     * the pooled strings at 40 bytes of overhead each.
+     */
+    public long footprintBytes() {
+        long bytes = 16L * 8 + arrayBytes(kind.length, 1)
+                + 5 * arrayBytes(data.length, 4) + arrayBytes(kids.length, 4)
+                + arrayBytes(pool.length, 4);
+        for (String s : pool) {
+            bytes += 40 + 2L * s.length();
+        }
+        return bytes;
+    }
+
+    private static long arrayBytes(int length, int width) {
+        return 16 + (long) length * width;
+    }
+
+    /** The arrays as they are, for {@link #read}. */
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        out.write(kind, 0, size);
+        for (int[] column : new int[][] {data, line, col, kidStart, kidCount}) {
+            for (int i = 0; i < size; i++) {
+                out.writeInt(column[i]);
+            }
+        }
+        out.writeInt(kids.length);
+        for (int k : kids) {
+            out.writeInt(k);
+        }
+        out.writeInt(pool.length);
+        for (String s : pool) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Reads what {@link #write} wrote, from the buffer's position on.
+     * IllegalArgumentException if it is not a well-formed tree: every
+     * child, kid range and pool index is checked, children before parents.
+     */
+    static Ast read(ByteBuffer in) {
+        try {
+            int size = in.getInt();
+            if (size < 1 || size > in.remaining()) {
+                throw new IllegalArgumentException("bad node count " + size);
+            }
+            byte[] kind = new byte[size];
+            in.get(kind);
+            int[][] columns = new int[5][size];
+            for (int[] column : columns) {
+                in.asIntBuffer().get(column);
+                in.position(in.position() + 4 * size);
+            }
+            int[] kids = new int[count(in, 4)];
+            in.asIntBuffer().get(kids);
+            in.position(in.position() + 4 * kids.length);
+            String[] pool = new String[count(in, 4)];
+            for (int i = 0; i < pool.length; i++) {
+                byte[] bytes = new byte[count(in, 1)];
+                in.get(bytes);
+                pool[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            Ast ast = new Ast(kind, columns[0], columns[1], columns[2], columns[3], columns[4], kids, pool, size);
+            ast.verify();
+            return ast;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("truncated tree", e);
+        }
+    }
+
+    /** A length prefix, checked against what is left at {@code width} bytes per item. */
+    private static int count(ByteBuffer in, int width) {
+        int n = in.getInt();
+        if (n < 0 || (long) n * width > in.remaining()) {
+            throw new IllegalArgumentException("bad length " + n);
+        }
+        return n;
+    }
+
+    private void verify() {
+        if (kind[root()] != NodeKind.SEQ) {
+            throw new IllegalArgumentException("root is not a seq");
+        }
+        for (int n = 0; n < size; n++) {
+            if (kind[n] < 0 || kind[n] >= NodeKind.COUNT) {
+                throw new IllegalArgumentException("node " + n + ": bad kind " + kind[n]);
+            }
+            if (kidStart[n] < 0 || kidCount[n] < 0 || kidStart[n] > kids.length - kidCount[n]) {
+                throw new IllegalArgumentException("node " + n + ": children out of range");
+            }
+            for (int i = 0; i < kidCount[n]; i++) {
+                int kid = kids[kidStart[n] + i];
+                if (kid < 0 || kid >= n) {
+                    throw new IllegalArgumentException("node " + n + ": child " + kid + " does not precede it");
+                }
+            }
+            if (NodeKind.hasText(kind[n]) && data[n] >= pool.length) {
+                throw new IllegalArgumentException("node " + n + ": pool index out of range");
+            }
+        }
+    }
+
+    /**
+     * An S-expression rendering of the tree, e.g. {@code (seq (def (id x)
+     * (num 1)))}. For tests and debugging; allocates freely.
+     */
+    public String dump() {
+        return dump(root());
+    }
+
+    public String dump(int node) {
+        StringBuilder sb = new StringBuilder();
+        dump(node, sb);
+        return sb.toString();
+    }
+
+    private void dump(int node, StringBuilder sb) {
+        int k = kind[node];
+        sb.append('(').append(NodeKind.name(k));
+        if (NodeKind.hasText(k) && data[node] >= 0) {
+            sb.append(' ');
+            if (k == NodeKind.STR || k == NodeKind.RAWSTR || k == NodeKind.HANDLER_MATCH) {
+                sb.append('"').append(pool[data[node]]).append('"');
+            } else {
+                sb.append(pool[data[node]]);
+            }
+        } else if (k == NodeKind.LAMBDA || k == NodeKind.FORALL) {
+            sb.append(' ').append(data[node]);
+        }
+        for (int i = 0; i < kidCount[node]; i++) {
+            sb.append(' ');
+            dump(kids[kidStart[node] + i], sb);
+        }
+        sb.append(')');
+    }
+
+    /** A cursor at the root. */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * A movable position in the tree. Moves return false (and leave the
+     * cursor where it was) when there is nowhere to go. The path back to
+     * the root is kept in an int stack that grows only with tree depth, so
+     * a walk allocates nothing per node. Not thread-safe.
+     */
+    public final class Cursor {
+
+        private int node;
+        // Pairs (parent, index of the next node down within that parent),
+        // from the root down to the current node's parent.
+        private int[] path = new int[64];
+        private int depth;
+
+        private Cursor() {
+            node = root();
+        }
+
+        public Ast ast() {
+            return Ast.this;
+        }
+
+        public int node() {
+            return node;
+        }
+
+        public int kind() {
+            return kind[node];
+        }
+
+        public int data() {
+            return data[node];
+        }
+
+        public int line() {
+            return line[node];
+        }
+
+        public int col() {
+            return col[node];
+        }
+
+        public String text() {
+            return Ast.this.text(node);
+        }
+
+        public int childCount() {
+            return kidCount[node];
+        }
+
+        /** Distance from the root (the root is at depth 0). */
+        public int depth() {
+            return depth;
+        }
+
+        /** Position among its siblings; 0 at the root. */
+        public int index() {
+            return depth == 0 ? 0 : path[2 * depth - 1];
+        }
+
+        /** Back to the root. */
+        public void reset() {
+            node = root();
+            depth = 0;
+        }
+
+        public boolean firstChild() {
+            return child(0);
+        }
+
+        public boolean child(int i) {
+            if (i < 0 || i >= kidCount[node]) {
+                return false;
+            }
+            if (2 * depth + 2 > path.length) {
+                path = Arrays.copyOf(path, path.length * 2);
+            }
+            path[2 * depth] = node;
+            path[2 * depth + 1] = i;
+            depth++;
+            node = kids[kidStart[node] + i];
+            return true;
+        }
+
+        public boolean nextSibling() {
+            if (depth == 0) {
+                return false;
+            }
+            int parent = path[2 * depth - 2];
+            int i = path[2 * depth - 1] + 1;
+            if (i >= kidCount[parent]) {
+                return false;
+            }
+            path[2 * depth - 1] = i;
+            node = kids[kidStart[parent] + i];
+            return true;
+        }
+
+        public boolean parent() {
+            if (depth == 0) {
+                return false;
+            }
+            depth--;
+            node = path[2 * depth];
+            return true;
+        }
+
+        /**
+         * Advances in pre-order (node, then its children left to right).
+         * Returns false once the whole tree has been visited, leaving the
+         * cursor back at the root.
+         */
+        public boolean next() {
+            if (firstChild()) {
+                return true;
+            }
+            while (!nextSibling()) {
+                if (!parent()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,599 @@
+package com.mpl.ast;
+
+import com.mpl.parser.MPLBaseVisitor;
+import com.mpl.parser.MPLLexer;
+import com.mpl.parser.MPLParser;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds an {@link Ast} from an MPLParser parse tree. Each visit returns
+ * the index of the node it appended; precedence levels that only pass an
+ * expression through return their child's index and append nothing.
+ *
+ * The tree must come from a parse that reported no syntax errors (the
+ * error-recovered shape of a failed parse is not an MPL program).
+ */
+public final class AstBuilder extends MPLBaseVisitor<Integer> {
+
+    private byte[] kind = new byte[256];
+    private int[] data = new int[256];
+    private int[] line = new int[256];
+    private int[] col = new int[256];
+    private int[] kidStart = new int[256];
+    private int[] kidCount = new int[256];
+    private int size;
+
+    private int[] kids = new int[256];
+    private int kidsSize;
+
+    // Children of the nodes under construction, innermost on top.
+    private int[] pending = new int[64];
+    private int pendingSize;
+
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private String[] pool = new String[64];
+    private int poolSize;
+
+    private AstBuilder() {}
+
+    public static Ast build(MPLParser.ProgramContext tree) {
+        AstBuilder b = new AstBuilder();
+        b.visitProgram(tree);
+        return b.finish();
+    }
+
+    private Ast finish() {
+        return new Ast(Arrays.copyOf(kind, size), Arrays.copyOf(data, size),
+                Arrays.copyOf(line, size), Arrays.copyOf(col, size),
+                Arrays.copyOf(kidStart, size), Arrays.copyOf(kidCount, size),
+                Arrays.copyOf(kids, kidsSize), Arrays.copyOf(pool, poolSize), size);
+    }
+
+    // ---- node construction ------------------------------------------------
+
+    private int mark() {
+        return pendingSize;
+    }
+
+    private void push(int node) {
+        if (pendingSize == pending.length) {
+            pending = Arrays.copyOf(pending, pendingSize * 2);
+        }
+        pending[pendingSize++] = node;
+    }
+
+    /** Appends a node whose children are everything pushed since {@code mark}. */
+    private int node(int k, int d, Token at, int mark) {
+        if (size == kind.length) {
+            int n = size * 2;
+            kind = Arrays.copyOf(kind, n);
+            data = Arrays.copyOf(data, n);
+            line = Arrays.copyOf(line, n);
+            col = Arrays.copyOf(col, n);
+            kidStart = Arrays.copyOf(kidStart, n);
+            kidCount = Arrays.copyOf(kidCount, n);
+        }
+        int count = pendingSize - mark;
+        if (kidsSize + count > kids.length) {
+            kids = Arrays.copyOf(kids, Math.max(kids.length * 2, kidsSize + count));
+        }
+        System.arraycopy(pending, mark, kids, kidsSize, count);
+        pendingSize = mark;
+        kind[size] = (byte) k;
+        data[size] = d;
+        line[size] = at.getLine();
+        col[size] = at.getCharPositionInLine();
+        kidStart[size] = kidsSize;
+        kidCount[size] = count;
+        kidsSize += count;
+        return size++;
+    }
+
+    private int leaf(int k, int d, Token at) {
+        return node(k, d, at, pendingSize);
+    }
+
+    private int unary(int k, int d, Token at, int operand) {
+        int m = mark();
+        push(operand);
+        return node(k, d, at, m);
+    }
+
+    private int binary(int k, Token at, int left, int right) {
+        int m = mark();
+        push(left);
+        push(right);
+        return node(k, 0, at, m);
+    }
+
+    private int intern(String s) {
+        Integer i = poolIndex.get(s);
+        if (i != null) {
+            return i;
+        }
+        if (poolSize == pool.length) {
+            pool = Arrays.copyOf(pool, poolSize * 2);
+        }
+        pool[poolSize] = s;
+        poolIndex.put(s, poolSize);
+        return poolSize++;
+    }
+
+    private int child(ParseTree tree) {
+        return tree.accept(this);
+    }
+
+    // ---- sequencing and binding ---------------------------------------------
+
+    @Override
+    public Integer visitProgram(MPLParser.ProgramContext ctx) {
+        int m = mark();
+        if (ctx.seqExpr() != null) {
+            for (MPLParser.ExprContext e : ctx.seqExpr().expr()) {
+                push(child(e));
+            }
+        }
+        return node(NodeKind.SEQ, 0, ctx.getStart(), m);
+    }
+
+    @Override
+    public Integer visitSeqExpr(MPLParser.SeqExprContext ctx) {
+        List<MPLParser.ExprContext> exprs = ctx.expr();
+        if (exprs.size() == 1) {
+            return child(exprs.get(0));
+        }
+        int m = mark();
+        for (MPLParser.ExprContext e : exprs) {
+            push(child(e));
+        }
+        return node(NodeKind.SEQ, 0, ctx.getStart(), m);
+    }
+
+    @Override
+    public Integer visitExpr(MPLParser.ExprContext ctx) {
+        return child(ctx.parallelExpr());
+    }
+
+    @Override
+    public Integer visitParallelExpr(MPLParser.ParallelExprContext ctx) {
+        List<MPLParser.DefExprContext> branches = ctx.defExpr();
+        if (branches.size() == 1) {
+            return child(branches.get(0));
+        }
+        int m = mark();
+        for (MPLParser.DefExprContext b : branches) {
+            push(child(b));
+        }
+        return node(NodeKind.PARALLEL, 0, ctx.PARALLEL(0).getSymbol(), m);
+    }
+
+    @Override
+    public Integer visitDefExpr(MPLParser.DefExprContext ctx) {
+        int target = child(ctx.assignExpr());
+        if (ctx.DEFINITION() == null) {
+            return target;
+        }
+        return binary(NodeKind.DEF, ctx.DEFINITION().getSymbol(), target, child(ctx.defExpr()));
+    }
+
+    @Override
+    public Integer visitAssignExpr(MPLParser.AssignExprContext ctx) {
+        int target = child(ctx.condExpr());
+        if (ctx.LEFTARROW() == null) {
+            return target;
+        }
+        return binary(NodeKind.ASSIGN, ctx.LEFTARROW().getSymbol(), target, child(ctx.assignExpr()));
+    }
+
+    // ---- guards, logic, comparison, arithmetic -----------------------------
+
+    @Override
+    public Integer visitCondExpr(MPLParser.CondExprContext ctx) {
+        List<MPLParser.ImpliesExprContext> alts = ctx.impliesExpr();
+        if (alts.size() == 1) {
+            return child(alts.get(0));
+        }
+        int m = mark();
+        for (MPLParser.ImpliesExprContext a : alts) {
+            push(child(a));
+        }
+        return node(NodeKind.ALT, 0, ctx.BAR(0).getSymbol(), m);
+    }
+
+    @Override
+    public Integer visitImpliesExpr(MPLParser.ImpliesExprContext ctx) {
+        int guard = child(ctx.orExpr());
+        if (ctx.IMPLIES() == null) {
+            return guard;
+        }
+        return binary(NodeKind.IMPLIES, ctx.IMPLIES().getSymbol(), guard, child(ctx.impliesExpr()));
+    }
+
+    @Override
+    public Integer visitOrExpr(MPLParser.OrExprContext ctx) {
+        return leftChain(ctx);
+    }
+
+    @Override
+    public Integer visitAndExpr(MPLParser.AndExprContext ctx) {
+        return leftChain(ctx);
+    }
+
+    @Override
+    public Integer visitAddExpr(MPLParser.AddExprContext ctx) {
+        return leftChain(ctx);
+    }
+
+    @Override
+    public Integer visitMulExpr(MPLParser.MulExprContext ctx) {
+        return leftChain(ctx);
+    }
+
+    @Override
+    public Integer visitComposeExpr(MPLParser.ComposeExprContext ctx) {
+        return leftChain(ctx);
+    }
+
+    /**
+     * operand (op operand)* as left-nested binary nodes, each at its
+     * operator: a + b - c is (sub (add a b) c).
+     */
+    private int leftChain(ParserRuleContext ctx) {
+        int left = child(ctx.getChild(0));
+        for (int i = 1; i + 1 < ctx.getChildCount(); i += 2) {
+            Token op = ((TerminalNode) ctx.getChild(i)).getSymbol();
+            left = binary(binaryKind(op.getType()), op, left, child(ctx.getChild(i + 1)));
+        }
+        return left;
+    }
+
+    private static int binaryKind(int tokenType) {
+        switch (tokenType) {
+            case MPLLexer.OR: return NodeKind.OR;
+            case MPLLexer.AND: return NodeKind.AND;
+            case MPLLexer.EQ: return NodeKind.EQ;
+            case MPLLexer.NEQ: return NodeKind.NEQ;
+            case MPLLexer.LT: return NodeKind.LT;
+            case MPLLexer.GT: return NodeKind.GT;
+            case MPLLexer.LEQ: return NodeKind.LEQ;
+            case MPLLexer.GEQ: return NodeKind.GEQ;
+            case MPLLexer.APPROX: return NodeKind.APPROX;
+            case MPLLexer.SIM: return NodeKind.SIM;
+            case MPLLexer.PLUS: return NodeKind.ADD;
+            case MPLLexer.MINUS: return NodeKind.SUB;
+            case MPLLexer.TIMES:
+            case MPLLexer.AST: return NodeKind.MUL;
+            case MPLLexer.DIV: return NodeKind.DIV;
+            case MPLLexer.COMPOSE: return NodeKind.COMPOSE;
+            default:
+                throw new IllegalStateException("not a binary operator: "
+                        + MPLLexer.VOCABULARY.getSymbolicName(tokenType));
+        }
+    }
+
+    @Override
+    public Integer visitCmpExpr(MPLParser.CmpExprContext ctx) {
+        int left = child(ctx.addExpr(0));
+        if (ctx.compareOp() == null) {
+            return left;
+        }
+        Token op = ctx.compareOp().getStart();
+        return binary(binaryKind(op.getType()), op, left, child(ctx.addExpr(1)));
+    }
+
+    // ---- prefix and postfix operators ---------------------------------------
+
+    @Override
+    public Integer visitUnaryExpr(MPLParser.UnaryExprContext ctx) {
+        int operand = child(ctx.postfixExpr());
+        // Prefix operators apply innermost (rightmost) first: -✎x is (neg (trace x)).
+        for (int i = ctx.getChildCount() - 2; i >= 0; i--) {
+            ParseTree op = ctx.getChild(i);
+            if (op instanceof MPLParser.ChannelOpContext) {
+                MPLParser.ChannelOpContext ch = (MPLParser.ChannelOpContext) op;
+                int k = ch.SEND() != null ? NodeKind.SEND : NodeKind.RECEIVE;
+                operand = unary(k, intern(ch.IDENTIFIER().getText()), ch.getStart(), operand);
+            } else {
+                Token t = ((MPLParser.PrefixOpContext) op).getStart();
+                operand = unary(prefixKind(t.getType()), 0, t, operand);
+            }
+        }
+        return operand;
+    }
+
+    private static int prefixKind(int tokenType) {
+        switch (tokenType) {
+            case MPLLexer.MINUS: return NodeKind.NEG;
+            case MPLLexer.TRACE: return NodeKind.TRACE;
+            case MPLLexer.RAISE: return NodeKind.RAISE;
+            case MPLLexer.BREAK: return NodeKind.BREAK;
+            case MPLLexer.DELAY: return NodeKind.DELAY;
+            default:
+                throw new IllegalStateException("not a prefix operator: "
+                        + MPLLexer.VOCABULARY.getSymbolicName(tokenType));
+        }
+    }
+
+    @Override
+    public Integer visitPostfixExpr(MPLParser.PostfixExprContext ctx) {
+        int e = child(ctx.atomExpr());
+        for (MPLParser.PostfixOpContext op : ctx.postfixOp()) {
+            Token at = op.getStart();
+            if (op.callArgs() != null) {
+                int m = mark();
+                push(e);
+                for (MPLParser.ExprContext arg : op.callArgs().expr()) {
+                    push(child(arg));
+                }
+                e = node(NodeKind.CALL, 0, at, m);
+            } else if (op.MIDDOT() != null) {
+                e = unary(NodeKind.MEMBER, intern(op.IDENTIFIER().getText()), at, e);
+            } else if (op.ALLOC() != null) {
+                e = unary(NodeKind.ALLOC, 0, at, e);
+            } else if (op.RELEASE() != null) {
+                e = unary(NodeKind.RELEASE, 0, at, e);
+            } else {
+                int m = mark();
+                push(e);
+                for (MPLParser.HandlerClauseContext clause : op.handlerBlock().handlerClause()) {
+                    push(child(clause));
+                }
+                e = node(NodeKind.HANDLE, 0, at, m);
+            }
+        }
+        return e;
+    }
+
+    @Override
+    public Integer visitHandlerClause(MPLParser.HandlerClauseContext ctx) {
+        int body = child(ctx.expr());
+        if (ctx.IDENTIFIER() != null) {
+            return unary(NodeKind.HANDLER_BIND, intern(ctx.IDENTIFIER().getText()), ctx.getStart(), body);
+        }
+        return unary(NodeKind.HANDLER_MATCH, intern(decodeString(ctx.STRING().getText())),
+                ctx.getStart(), body);
+    }
+
+    // ---- atoms ----------------------------------------------------------------
+
+    @Override
+    public Integer visitAtomExpr(MPLParser.AtomExprContext ctx) {
+        if (ctx.LPAREN() != null) {
+            return child(ctx.seqExpr());
+        }
+        return child(ctx.getChild(0));
+    }
+
+    @Override
+    public Integer visitBlock(MPLParser.BlockContext ctx) {
+        if (ctx.seqExpr() == null) {
+            return leaf(NodeKind.SEQ, 0, ctx.getStart());
+        }
+        return child(ctx.seqExpr());
+    }
+
+    @Override
+    public Integer visitLambda(MPLParser.LambdaContext ctx) {
+        int m = mark();
+        int params = ctx.pattern() == null ? 0 : pushPattern(ctx.pattern());
+        if (ctx.condExpr() != null) {
+            push(child(ctx.condExpr()));
+        }
+        push(child(ctx.expr()));
+        return node(NodeKind.LAMBDA, params, ctx.getStart(), m);
+    }
+
+    @Override
+    public Integer visitForall(MPLParser.ForallContext ctx) {
+        int m = mark();
+        int atoms = pushPattern(ctx.pattern());
+        push(child(ctx.condExpr()));
+        push(child(ctx.expr()));
+        return node(NodeKind.FORALL, atoms, ctx.getStart(), m);
+    }
+
+    private int pushPattern(MPLParser.PatternContext pattern) {
+        List<MPLParser.PatternAtomContext> atoms = pattern.patternAtom();
+        for (MPLParser.PatternAtomContext a : atoms) {
+            Token t = a.getStart();
+            push(t.getType() == MPLLexer.UNDERSCORE
+                    ? leaf(NodeKind.WILDCARD, 0, t)
+                    : leaf(NodeKind.ID, intern(glyph(t)), t));
+        }
+        return atoms.size();
+    }
+
+    @Override
+    public Integer visitChoiceType(MPLParser.ChoiceTypeContext ctx) {
+        return unary(NodeKind.CHOICE, 0, ctx.getStart(), child(ctx.expr()));
+    }
+
+    @Override
+    public Integer visitAtomicSection(MPLParser.AtomicSectionContext ctx) {
+        int lock = ctx.IDENTIFIER() == null ? -1 : intern(ctx.IDENTIFIER().getText());
+        return unary(NodeKind.ATOMIC, lock, ctx.getStart(), child(ctx.seqExpr()));
+    }
+
+    @Override
+    public Integer visitRaiiScope(MPLParser.RaiiScopeContext ctx) {
+        int m = mark();
+        if (ctx.seqExpr() != null) {
+            push(child(ctx.seqExpr()));
+        }
+        return node(NodeKind.RAII, 0, ctx.getStart(), m);
+    }
+
+    @Override
+    public Integer visitCodeQuote(MPLParser.CodeQuoteContext ctx) {
+        return unary(NodeKind.QUOTE, 0, ctx.getStart(), child(ctx.seqExpr()));
+    }
+
+    @Override
+    public Integer visitCodeEval(MPLParser.CodeEvalContext ctx) {
+        return unary(NodeKind.EVAL, 0, ctx.getStart(), child(ctx.seqExpr()));
+    }
+
+    @Override
+    public Integer visitPeriodicTask(MPLParser.PeriodicTaskContext ctx) {
+        int m = mark();
+        push(child(ctx.seqExpr()));
+        Token period = ctx.NUMBER().getSymbol();
+        push(leaf(NodeKind.NUM, intern(period.getText()), period));
+        if (ctx.IDENTIFIER() != null) {
+            Token unit = ctx.IDENTIFIER().getSymbol();
+            push(leaf(NodeKind.ID, intern(unit.getText()), unit));
+        }
+        return node(NodeKind.PERIODIC, 0, ctx.getStart(), m);
+    }
+
+    @Override
+    public Integer visitModuleDecl(MPLParser.ModuleDeclContext ctx) {
+        return unary(NodeKind.MODULE, intern(ctx.IDENTIFIER().getText()), ctx.getStart(),
+                child(ctx.block()));
+    }
+
+    @Override
+    public Integer visitPathLiteral(MPLParser.PathLiteralContext ctx) {
+        Token t = ctx.getStop();
+        int target = t.getType() == MPLLexer.STRING
+                ? leaf(NodeKind.STR, intern(decodeString(t.getText())), t)
+                : leaf(NodeKind.ID, intern(t.getText()), t);
+        return unary(NodeKind.PATH, 0, ctx.getStart(), target);
+    }
+
+    @Override
+    public Integer visitList(MPLParser.ListContext ctx) {
+        int m = mark();
+        for (MPLParser.ExprContext e : ctx.expr()) {
+            push(child(e));
+        }
+        return node(NodeKind.LIST, 0, ctx.getStart(), m);
+    }
+
+    @Override
+    public Integer visitSet(MPLParser.SetContext ctx) {
+        int m = mark();
+        for (MPLParser.ExprContext e : ctx.expr()) {
+            push(child(e));
+        }
+        return node(NodeKind.SET, 0, ctx.getStart(), m);
+    }
+
+    @Override
+    public Integer visitRecord(MPLParser.RecordContext ctx) {
+        int m = mark();
+        for (MPLParser.FieldAssignmentContext f : ctx.fieldAssignment()) {
+            push(unary(NodeKind.FIELD, intern(f.IDENTIFIER().getText()), f.getStart(), child(f.expr())));
+        }
+        return node(NodeKind.RECORD, 0, ctx.getStart(), m);
+    }
+
+    @Override
+    public Integer visitPrimary(MPLParser.PrimaryContext ctx) {
+        if (ctx.list() != null) {
+            return child(ctx.list());
+        }
+        Token t = ctx.getStart();
+        switch (t.getType()) {
+            case MPLLexer.IDENTIFIER:
+                return leaf(NodeKind.ID, intern(t.getText()), t);
+            case MPLLexer.NUMBER:
+                return leaf(NodeKind.NUM, intern(t.getText()), t);
+            case MPLLexer.STRING:
+                return leaf(NodeKind.STR, intern(decodeString(t.getText())), t);
+            case MPLLexer.RAWSTRING: {
+                String text = t.getText();
+                return leaf(NodeKind.RAWSTR, intern(text.substring(3, text.length() - 3)), t);
+            }
+            case MPLLexer.TRUE:
+                return leaf(NodeKind.TRUE, 0, t);
+            case MPLLexer.FALSE:
+                return leaf(NodeKind.FALSE, 0, t);
+            case MPLLexer.BOTTOM:
+                return leaf(NodeKind.BOTTOM, 0, t);
+            case MPLLexer.EMPTYSET:
+                return leaf(NodeKind.EMPTYSET, 0, t);
+            default:
+                // greekVar, typeSymbol
+                return leaf(NodeKind.ID, intern(glyph(t)), t);
+        }
+    }
+
+    @Override
+    public Integer visitErrorNode(ErrorNode node) {
+        throw new IllegalArgumentException("parse tree has syntax errors at "
+                + node.getSymbol().getLine() + ":" + node.getSymbol().getCharPositionInLine());
+    }
+
+    // ---- literal decoding -----------------------------------------------------
+
+    /** A STRING token's value: quotes dropped, \n \t \" \\ applied (ruling 12). */
+    static String decodeString(String token) {
+        int end = token.length() - 1;
+        if (token.indexOf('\\') < 0) {
+            return token.substring(1, end);
+        }
+        StringBuilder sb = new StringBuilder(end);
+        for (int i = 1; i < end; i++) {
+            char c = token.charAt(i);
+            if (c == '\\') {
+                char e = token.charAt(++i);
+                sb.append(e == 'n' ? '\n' : e == 't' ? '\t' : e);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The name of a Greek-letter or type-symbol token, as its glyph even
+     * when spelled with its ASCII escape: \pi and π are one identifier.
+     */
+    static String glyph(Token t) {
+        String text = t.getText();
+        if (text.isEmpty() || text.charAt(0) != '\\') {
+            return text;
+        }
+        switch (t.getType()) {
+            case MPLLexer.ALPHA: return "α";
+            case MPLLexer.BETA: return "β";
+            case MPLLexer.GAMMA: return "γ";
+            case MPLLexer.DELTA: return "δ";
+            case MPLLexer.EPSILON: return "ε";
+            case MPLLexer.ZETA: return "ζ";
+            case MPLLexer.ETA: return "η";
+            case MPLLexer.THETA: return "θ";
+            case MPLLexer.IOTA: return "ι";
+            case MPLLexer.KAPPA: return "κ";
+            case MPLLexer.MU: return "μ";
+            case MPLLexer.NU: return "ν";
+            case MPLLexer.XI: return "ξ";
+            case MPLLexer.OMICRON: return "ο";
+            case MPLLexer.PI: return "π";
+            case MPLLexer.RHO: return "ρ";
+            case MPLLexer.SIGMA: return "σ";
+            case MPLLexer.TAU: return "τ";
+            case MPLLexer.UPSILON: return "υ";
+            case MPLLexer.PHI: return "φ";
+            case MPLLexer.CHI: return "χ";
+            case MPLLexer.PSI: return "ψ";
+            case MPLLexer.OMEGA: return "ω";
+            case MPLLexer.NAT: return "ℕ";
+            case MPLLexer.INT: return "ℤ";
+            case MPLLexer.RAT: return "ℚ";
+            case MPLLexer.REAL: return "ℝ";
+            case MPLLexer.COMPLEX: return "ℂ";
+            case MPLLexer.BOOL: return "𝔹";
+            default: return text;
+        }
+    }
+}
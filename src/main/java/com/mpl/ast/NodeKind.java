@@ -0,0 +1,134 @@
+package com.mpl.ast;
+
+/**
+ * Node kinds of the compact AST. One constant per construct, not per
+ * precedence level: the expr → parallelExpr → … → primary chain of the
+ * parse tree collapses to the single node that does something.
+ *
+ * The comment after each kind lists its children and what {@link Ast#data}
+ * holds ("pool" = index into the literal pool, read with {@link Ast#text}).
+ * Unless noted, a node's line/col are those of its first token; operator
+ * nodes carry the operator token's position, as the M0 reference engine
+ * reports runtime errors there.
+ */
+public final class NodeKind {
+
+    private NodeKind() {}
+
+    // Sequencing
+    public static final int SEQ = 0;          // kids: exprs (0 = {} or empty program). A one-expr
+                                              // seq, (e) and {e} collapse to e (ruling 15: braces
+                                              // do not scope, so nothing is lost)
+    public static final int PARALLEL = 1;     // kids: ≥2 branches of ‖
+
+    // Binding
+    public static final int DEF = 2;          // kids: target, value. Target is an ID unless the
+                                              // program is wrong (err_def_target)
+    public static final int ASSIGN = 3;       // kids: target, value (err_assign_target likewise)
+
+    // Guards and logic
+    public static final int ALT = 4;          // kids: ≥2 alternatives of |, tried left to right
+    public static final int IMPLIES = 5;      // kids: guard, result
+    public static final int OR = 6;           // kids: left, right
+    public static final int AND = 7;          // kids: left, right
+
+    // Comparison
+    public static final int EQ = 8;           // kids: left, right — likewise for NEQ … SIM
+    public static final int NEQ = 9;
+    public static final int LT = 10;
+    public static final int GT = 11;
+    public static final int LEQ = 12;
+    public static final int GEQ = 13;
+    public static final int APPROX = 14;
+    public static final int SIM = 15;
+
+    // Arithmetic and composition
+    public static final int ADD = 16;         // kids: left, right
+    public static final int SUB = 17;
+    public static final int MUL = 18;         // × and ∗ (ruling 19)
+    public static final int DIV = 19;         // ÷ and /
+    public static final int COMPOSE = 20;     // kids: f, g of f ∘ g
+
+    // Prefix operators
+    public static final int NEG = 21;         // kids: operand
+    public static final int TRACE = 22;       // kids: operand
+    public static final int RAISE = 23;       // kids: operand
+    public static final int BREAK = 24;       // kids: operand
+    public static final int DELAY = 25;       // kids: operand
+    public static final int SEND = 26;        // kids: operand; data: pool (channel name)
+    public static final int RECEIVE = 27;     // kids: operand; data: pool (channel name)
+
+    // Postfix operators
+    public static final int CALL = 28;        // kids: callee, args…
+    public static final int MEMBER = 29;      // kids: target; data: pool (member name)
+    public static final int ALLOC = 30;       // kids: resource
+    public static final int RELEASE = 31;     // kids: resource
+    public static final int HANDLE = 32;      // kids: expr, HANDLER_BIND / HANDLER_MATCH clauses…
+    public static final int HANDLER_BIND = 33;   // kids: body; data: pool (bound name)
+    public static final int HANDLER_MATCH = 34;  // kids: body; data: pool (decoded message)
+
+    // Binders
+    public static final int LAMBDA = 35;      // kids: params…, [constraint], body; data: param
+                                              // count. The constraint (ruling 17: parsed and
+                                              // discarded) is present iff kidCount == data + 2
+    public static final int FORALL = 36;      // kids: pattern atoms…, iterable, body; data: atom count
+    public static final int WILDCARD = 37;    // _ in a pattern; no kids
+
+    // Effect and structure forms (M1 and later)
+    public static final int CHOICE = 38;      // kids: expr of ⟨…⟩
+    public static final int ATOMIC = 39;      // kids: body; data: pool (lock name) or -1
+    public static final int RAII = 40;        // kids: body, if any
+    public static final int QUOTE = 41;       // kids: body
+    public static final int EVAL = 42;        // kids: body
+    public static final int PERIODIC = 43;    // kids: body, NUM period, [ID unit]
+    public static final int MODULE = 44;      // kids: block; data: pool (module name)
+    public static final int PATH = 45;        // kids: STR or ID
+
+    // Collections
+    public static final int LIST = 46;        // kids: elements
+    public static final int SET = 47;         // kids: ≥2 elements
+    public static final int RECORD = 48;      // kids: FIELD…
+    public static final int FIELD = 49;       // kids: value; data: pool (field name)
+
+    // Leaves
+    public static final int ID = 50;          // data: pool (name; Greek and type glyphs are
+                                              // stored as the glyph whatever the spelling)
+    public static final int NUM = 51;         // data: pool (the literal as written)
+    public static final int STR = 52;         // data: pool (decoded: \n \t \" \\ applied)
+    public static final int RAWSTR = 53;      // data: pool (text between the """ delimiters)
+    public static final int TRUE = 54;
+    public static final int FALSE = 55;
+    public static final int BOTTOM = 56;
+    public static final int EMPTYSET = 57;
+
+    public static final int COUNT = 58;
+
+    private static final String[] NAMES = {
+        "seq", "parallel", "def", "assign", "alt", "implies", "or", "and",
+        "eq", "neq", "lt", "gt", "leq", "geq", "approx", "sim",
+        "add", "sub", "mul", "div", "compose",
+        "neg", "trace", "raise", "break", "delay", "send", "receive",
+        "call", "member", "alloc", "release", "handle", "handler-bind", "handler-match",
+        "lambda", "forall", "wildcard",
+        "choice", "atomic", "raii", "quote", "eval", "periodic", "module", "path",
+        "list", "set", "record", "field",
+        "id", "num", "str", "rawstr", "true", "false", "bottom", "emptyset",
+    };
+
+    /** Lower-case name of a kind, as used by {@link Ast#dump}. */
+    public static String name(int kind) {
+        return NAMES[kind];
+    }
+
+    /** True for the kinds whose data is a literal-pool index. */
+    public static boolean hasText(int kind) {
+        switch (kind) {
+            case SEND: case RECEIVE: case MEMBER: case HANDLER_BIND: case HANDLER_MATCH:
+            case ATOMIC: case MODULE: case FIELD:
+            case ID: case NUM: case STR: case RAWSTR:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package com.mpl.ast;
+
+import com.mpl.parser.MPLParser;
+import com.mpl.parser.TwoStageParser;
+import org.antlr.v4.runtime.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * An on-disk cache of parse results, content-addressed: an entry is named
+ * by the SHA-256 of the source text and holds the parse verdict, the first
+ * error as {@link TwoStageParser#firstError} words it, and, for a program
+ * that parses, its {@link Ast} in array form.
+ *
+ * Entries live under a directory named for the grammar version — the
+ * SHA-256 of MPL.g4, which the build puts next to the generated parser —
+ * hashed with the class files of the code that makes them (TwoStageParser,
+ * AstBuilder, Ast, and the classes nested in them) and the entry format
+ * {@link #VERSION}. Changing the grammar or that code starts an empty
+ * cache. A process using a version holds a shared lock on its
+ * {@value #LOCK} file, and {@link #open} deletes the directories of other
+ * versions that no process holds.
+ *
+ * Entries are loaded through memory-mapped files: a hit costs a map, a
+ * header check and a few bulk copies out of the mapping, and neither lexes
+ * nor parses. They are written to a temporary file and moved into place,
+ * so processes and threads may share a directory; an entry that cannot be
+ * read is a miss. Thread-safe.
+ *
+ * Setting the system property {@value #PROPERTY} to a directory makes
+ * {@link #configured} return a cache there; Frontend and the Gradle test
+ * and parseExamples tasks go through it.
+ */
+public final class ParseCache {
+
+    /** System property naming the directory {@link #configured} uses. */
+    public static final String PROPERTY = "mpl.parseCache";
+
+    /** "MPLC". */
+    private static final int MAGIC = 0x4D504C43;
+    static final int VERSION = 1;
+    private static final String GRAMMAR = "/com/mpl/parser/MPL.g4";
+    /** In each version's directory: locked shared while a process uses it. */
+    static final String LOCK = "lock";
+    /** The code whose output an entry is. */
+    private static final Class<?>[] PRODUCERS = {TwoStageParser.class, AstBuilder.class, Ast.class};
+
+    private static final Map<Path, ParseCache> OPEN = new ConcurrentHashMap<>();
+    /** This JVM's lock on each version directory it has opened, held until it exits. */
+    private static final Map<Path, FileLock> HELD = new ConcurrentHashMap<>();
+    private static volatile String grammarVersion;
+
+    private final Path dir;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private ParseCache(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * The cache in {@code root}, created if need be, for this grammar and
+     * entry format. Caches of other versions left there are deleted unless
+     * a process is using them; nothing else in {@code root} is touched.
+     */
+    public static ParseCache open(Path root) throws IOException {
+        Path versioned = root.resolve(HexFormat.of().formatHex(sha256(implementation()), 0, 8) + "-v" + VERSION)
+                .toAbsolutePath().normalize();
+        if (!HELD.containsKey(versioned)) {
+            synchronized (HELD) {
+                if (!HELD.containsKey(versioned)) {
+                    HELD.put(versioned, hold(versioned));
+                }
+            }
+        }
+        try (Stream<Path> dirs = Files.list(root)) {
+            for (Path stale : dirs.map(d -> d.toAbsolutePath().normalize())
+                    .filter(d -> !HELD.containsKey(d) && Files.isDirectory(d)
+                            && d.getFileName().toString().matches("[0-9a-f]{16}-v[0-9]+")).toList()) {
+                sweep(stale);
+            }
+        }
+        return new ParseCache(versioned);
+    }
+
+    /**
+     * Creates {@code dir} if need be and takes a shared lock on its lock
+     * file, starting over if another process swept the directory meanwhile.
+     */
+    private static FileLock hold(Path dir) throws IOException {
+        Path lock = dir.resolve(LOCK);
+        while (true) {
+            Files.createDirectories(dir);
+            FileChannel channel;
+            try {
+                channel = FileChannel.open(lock, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+            } catch (NoSuchFileException e) {
+                continue;
+            }
+            FileLock held = channel.lock(0, Long.MAX_VALUE, true);
+            if (Files.exists(lock)) {
+                return held;
+            }
+            // Locked after a sweep unlinked it: this file is no longer the directory's.
+            channel.close();
+        }
+    }
+
+    /** Deletes another version's directory if no process holds its lock; best effort. */
+    private static void sweep(Path stale) {
+        try (FileChannel channel = FileChannel.open(stale.resolve(LOCK), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.tryLock();
+            if (lock != null) {
+                deleteTree(stale);
+            }
+        } catch (IOException | OverlappingFileLockException e) {
+            // In use, or already gone.
+        }
+    }
+
+    /** The cache {@value #PROPERTY} names, one per directory per JVM; null if unset. */
+    public static ParseCache configured() {
+        String root = System.getProperty(PROPERTY);
+        if (root == null || root.isEmpty()) {
+            return null;
+        }
+        return OPEN.computeIfAbsent(Paths.get(root).toAbsolutePath().normalize(), path -> {
+            try {
+                return open(path);
+            } catch (IOException e) {
+                throw new UncheckedIOException("cannot open parse cache " + path, e);
+            }
+        });
+    }
+
+    /** Hex SHA-256 of the MPL.g4 the parser was generated from. */
+    public static String grammarVersion() {
+        String version = grammarVersion;
+        if (version == null) {
+            try (InputStream in = ParseCache.class.getResourceAsStream(GRAMMAR)) {
+                if (in == null) {
+                    throw new IllegalStateException(GRAMMAR + " is not on the classpath");
+                }
+                version = HexFormat.of().formatHex(sha256(in.readAllBytes()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            grammarVersion = version;
+        }
+        return version;
+    }
+
+    /** The grammar version followed by the producers' class files, nested classes included. */
+    private static byte[] implementation() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.writeBytes(grammarVersion().getBytes(StandardCharsets.US_ASCII));
+        for (Class<?> c : PRODUCERS) {
+            classFiles(c, bytes);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** {@code c}'s class file, then those of its member and anonymous classes, depth first. */
+    private static void classFiles(Class<?> c, ByteArrayOutputStream bytes) throws IOException {
+        String name = c.getName().substring(c.getName().lastIndexOf('.') + 1);
+        try (InputStream in = c.getResourceAsStream(name + ".class")) {
+            if (in != null) {
+                bytes.writeBytes(in.readAllBytes());
+            }
+        }
+        Class<?>[] members = c.getDeclaredClasses();
+        Arrays.sort(members, (a, b) -> a.getName().compareTo(b.getName()));
+        for (Class<?> member : members) {
+            classFiles(member, bytes);
+        }
+        // Anonymous classes are numbered from 1 with no gaps.
+        for (int i = 1;; i++) {
+            try (InputStream in = c.getResourceAsStream(name + "$" + i + ".class")) {
+                if (in == null) {
+                    break;
+                }
+                bytes.writeBytes(in.readAllBytes());
+            }
+        }
+    }
+
+    /** The entry for {@code source}, or null if there is none or it cannot be read. */
+    public Entry lookup(String source) {
+        byte[] key = sha256(source.getBytes(StandardCharsets.UTF_8));
+        Path file = file(key);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Entry entry = Entry.read(map, key);
+            if (entry != null) {
+                hits.incrementAndGet();
+                return entry;
+            }
+        } catch (IOException | RuntimeException e) {
+            // Missing, being replaced, or not an entry: a miss either way.
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Records the result of parsing {@code source}: its first error, or null
+     * and its tree. Best effort — a cache that cannot be written is only
+     * slower — so it returns false instead of throwing.
+     */
+    public boolean store(String source, String firstError, Ast ast) {
+        if ((firstError == null) == (ast == null)) {
+            throw new IllegalArgumentException("need a first error or a tree, not both");
+        }
+        byte[] key = sha256(source.getBytes(StandardCharsets.UTF_8));
+        Path file = file(key);
+        Path temp = null;
+        try {
+            Files.createDirectories(file.getParent());
+            temp = Files.createTempFile(file.getParent(), "entry", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.write(key);
+                if (firstError == null) {
+                    out.writeInt(-1);
+                    ast.write(out);
+                } else {
+                    byte[] bytes = firstError.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (IOException e) {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                    // Harmless: lookups only open .ast files.
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * The cached entry for {@code source}, or else parses it with
+     * {@code parser}, builds the tree if it parses, and stores the result.
+     */
+    public Entry parse(String source, TwoStageParser parser) {
+        Entry entry = lookup(source);
+        if (entry != null) {
+            return entry;
+        }
+        String[] first = new String[1];
+        MPLParser.ProgramContext tree = parser.parse(CharStreams.fromString(source), new BaseErrorListener() {
+            @Override
+            public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+                                    int line, int charPositionInLine, String msg,
+                                    RecognitionException e) {
+                if (first[0] == null) {
+                    first[0] = line + ":" + charPositionInLine + ": " + msg;
+                }
+            }
+        });
+        Ast ast = first[0] == null ? AstBuilder.build(tree) : null;
+        store(source, first[0], ast);
+        return new Entry(first[0], ast);
+    }
+
+    /** Lookups answered from disk. */
+    public long hits() {
+        return hits.get();
+    }
+
+    /** Lookups that found no readable entry. */
+    public long misses() {
+        return misses.get();
+    }
+
+    /** The version directory entries go in. */
+    public Path directory() {
+        return dir;
+    }
+
+    /** Two-level fan-out, so no directory holds more than a few thousand entries. */
+    private Path file(byte[] key) {
+        String hex = HexFormat.of().formatHex(key);
+        return dir.resolve(hex.substring(0, 2)).resolve(hex.substring(2) + ".ast");
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is a required algorithm", e);
+        }
+    }
+
+    private static void deleteTree(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path p : paths.sorted((a, b) -> b.getNameCount() - a.getNameCount()).toList()) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    /** A cached parse: the verdict, and the tree when there is one. */
+    public static final class Entry {
+        private final String firstError;
+        private final Ast ast;
+
+        private Entry(String firstError, Ast ast) {
+            this.firstError = firstError;
+            this.ast = ast;
+        }
+
+        /**
+         * Decodes an entry; null unless it is one of this format for
+         * {@code key}. IllegalArgumentException if its tree is corrupt.
+         */
+        static Entry read(ByteBuffer in, byte[] key) {
+            if (in.remaining() < 44 || in.getInt() != MAGIC || in.getInt() != VERSION) {
+                return null;
+            }
+            byte[] stored = new byte[key.length];
+            in.get(stored);
+            if (!Arrays.equals(stored, key)) {
+                return null;
+            }
+            int length = in.getInt();
+            if (length < 0) {
+                return new Entry(null, Ast.read(in));
+            }
+            if (length > in.remaining()) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            return new Entry(new String(bytes, StandardCharsets.UTF_8), null);
+        }
+
+        public boolean ok() {
+            return firstError == null;
+        }
+
+        /** "line:col: message", with an ANTLR (0-based) column; null if it parses. */
+        public String firstError() {
+            return firstError;
+        }
+
+        /** The tree of a program that parses; null if it does not. */
+        public Ast ast() {
+            return ast;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.mpl.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The process-wide metrics registry: named counters and histograms that
+ * the parser ({@code parse.*}) and the interpreter ({@code run.*}) update
+ * once per program, never per step, and only while {@link #enabled()}.
+ * It starts off unless the system property {@code mpl.metrics} is
+ * {@code true}; off, recording costs a volatile read per program.
+ *
+ * {@link #registerMBean()} exports the registry over JMX as
+ * {@code com.mpl:type=Metrics} ({@link MetricsMXBean}), which the
+ * property {@code mpl.metrics} does as the class loads. The same figures,
+ * one program at a time, are JDK Flight Recorder events ({@code com.mpl.Parse},
+ * {@code com.mpl.Run}), recorded whenever a recording enables them,
+ * whether or not the registry is on.
+ */
+public final class Metrics {
+
+    public static final String OBJECT_NAME = "com.mpl:type=Metrics";
+
+    private static final Metrics REGISTRY = new Metrics();
+    private static volatile boolean enabled = Boolean.getBoolean("mpl.metrics");
+
+    static {
+        // Asking for metrics on the command line is asking to read them.
+        if (enabled) {
+            registerMBean();
+        }
+    }
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    private Metrics() {}
+
+    public static Metrics registry() {
+        return REGISTRY;
+    }
+
+    public static boolean enabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /** The counter called {@code name}, created at zero on first use. */
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, n -> new Counter());
+    }
+
+    /** The histogram called {@code name}, created empty on first use. */
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, n -> new Histogram());
+    }
+
+    /** Every counter's value, by name. */
+    public Map<String, Long> counters() {
+        Map<String, Long> out = new TreeMap<>();
+        counters.forEach((name, c) -> out.put(name, c.get()));
+        return out;
+    }
+
+    /**
+     * Every histogram as name.count, name.sum, name.max, name.p50 and
+     * name.p99 (the percentiles are bucket upper bounds).
+     */
+    public Map<String, Long> histograms() {
+        Map<String, Long> out = new TreeMap<>();
+        histograms.forEach((name, h) -> {
+            out.put(name + ".count", h.count());
+            out.put(name + ".sum", h.sum());
+            out.put(name + ".max", h.max());
+            out.put(name + ".p50", h.percentile(0.50));
+            out.put(name + ".p99", h.percentile(0.99));
+        });
+        return out;
+    }
+
+    /** Zeroes every counter and empties every histogram; names are kept. */
+    public void reset() {
+        counters.values().forEach(Counter::reset);
+        histograms.values().forEach(Histogram::reset);
+    }
+
+    /** Registers the registry with the platform MBean server, once. */
+    public static synchronized void registerMBean() {
+        try {
+            var server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new Bean(), name);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("cannot register " + OBJECT_NAME, e);
+        }
+    }
+
+    private static final class Bean implements MetricsMXBean {
+        @Override
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        @Override
+        public void setEnabled(boolean on) {
+            Metrics.setEnabled(on);
+        }
+
+        @Override
+        public Map<String, Long> getCounters() {
+            return REGISTRY.counters();
+        }
+
+        @Override
+        public Map<String, Long> getHistograms() {
+            return REGISTRY.histograms();
+        }
+
+        @Override
+        public void reset() {
+            REGISTRY.reset();
+        }
+    }
+
+    /** A monotonic count, cheap to add to from many threads. */
+    public static final class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void add(long n) {
+            value.add(n);
+        }
+
+        public void increment() {
+            value.increment();
+        }
+
+        public long get() {
+            return value.sum();
+        }
+
+        void reset() {
+            value.reset();
+        }
+    }
+
+    /**
+     * A distribution of non-negative values in power-of-two buckets:
+     * bucket b holds values below 2^b and at least 2^(b-1). Recording
+     * allocates nothing.
+     */
+    public static final class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        public void record(long value) {
+            long v = Math.max(value, 0);
+            buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(v));
+            sum.add(v);
+            max.accumulateAndGet(v, Math::max);
+        }
+
+        public long count() {
+            long n = 0;
+            for (int b = 0; b < buckets.length(); b++) {
+                n += buckets.get(b);
+            }
+            return n;
+        }
+
+        public long sum() {
+            return sum.sum();
+        }
+
+        public long max() {
+            return max.get();
+        }
+
+        /** The bucket bound below which a {@code q} fraction of the values fall; 0 when empty. */
+        public long percentile(double q) {
+            long n = count();
+            if (n == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(q * n);
+            long seen = 0;
+            for (int b = 0; b < buckets.length(); b++) {
+                seen += buckets.get(b);
+                if (seen >= rank) {
+                    return b == 0 ? 0 : Math.min(max(), (1L << b) - 1);
+                }
+            }
+            return max();
+        }
+
+        void reset() {
+            for (int b = 0; b < buckets.length(); b++) {
+                buckets.set(b, 0);
+            }
+            sum.reset();
+            max.set(0);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.mpl.metrics;
+
+import java.util.Map;
+
+/** The JMX view of {@link Metrics}, registered as {@value Metrics#OBJECT_NAME}. */
+public interface MetricsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean on);
+
+    Map<String, Long> getCounters();
+
+    /** Each histogram's count, sum, max, p50 and p99 (see {@link Metrics#histograms()}). */
+    Map<String, Long> getHistograms();
+
+    void reset();
+}
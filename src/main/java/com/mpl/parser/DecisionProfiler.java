@@ -0,0 +1,204 @@
+package com.mpl.parser;
+
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.atn.*;
+import org.antlr.v4.runtime.dfa.DFA;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Per-decision cost of parsing MPL, from ANTLR's profiling ATN simulator:
+ * how often each prediction decision in MPL.g4 runs, how far SLL and full
+ * LL look ahead, how often SLL conflicts force a full-context retry, and
+ * the ambiguities, context sensitivities, prediction errors and time each
+ * one accounts for.
+ *
+ * It parses in full LL — the mode whose fallbacks show where
+ * {@link TwoStageParser}'s SLL stage is fragile — over a DFA of its own, so
+ * neither the shared DFA nor the counters of other parsers are touched and
+ * a profile does not depend on what ran before it. Figures add up over
+ * every {@link #profile} call on an instance, so one profiler run over a
+ * directory gives that directory's totals.
+ *
+ * A decision is named by its rule, its kind (a block, or the loop of a
+ * {@code *} or {@code +}) and its alternatives, each by what it starts
+ * with: a rule, a token, a nested block "(…)", or "ε" for the alternative
+ * that matches nothing (skipping an optional part, leaving a loop).
+ * Not thread-safe; use one per thread.
+ */
+public final class DecisionProfiler {
+
+    private final MPLLexer lexer = new MPLLexer(CharStreams.fromString(""));
+    private final CommonTokenStream tokens = new CommonTokenStream(lexer);
+    private final MPLParser parser = new MPLParser(tokens);
+    private final ProfilingATNSimulator simulator;
+
+    public DecisionProfiler() {
+        ATN atn = parser.getATN();
+        DFA[] dfa = new DFA[atn.getNumberOfDecisions()];
+        for (int i = 0; i < dfa.length; i++) {
+            dfa[i] = new DFA(atn.getDecisionState(i), i);
+        }
+        parser.setInterpreter(new ParserATNSimulator(parser, atn, dfa, new PredictionContextCache()));
+        parser.setProfile(true);
+        simulator = (ProfilingATNSimulator) parser.getInterpreter();
+        simulator.setPredictionMode(PredictionMode.LL);
+        parser.setBuildParseTree(false);
+        lexer.removeErrorListeners();
+        parser.removeErrorListeners();
+    }
+
+    /**
+     * Parses a program, adding its predictions to the profile. Returns
+     * "line:col: message" for its first syntax error, as
+     * {@link TwoStageParser#firstError} does, or null.
+     */
+    public String profile(CharStream input) {
+        var first = new BaseErrorListener() {
+            String error;
+
+            @Override
+            public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+                                    int line, int charPositionInLine, String msg,
+                                    RecognitionException e) {
+                if (error == null) {
+                    error = line + ":" + charPositionInLine + ": " + msg;
+                }
+            }
+        };
+        lexer.setInputStream(input);
+        tokens.setTokenSource(lexer);
+        parser.setTokenStream(tokens);
+        lexer.addErrorListener(first);
+        parser.addErrorListener(first);
+        try {
+            parser.program();
+        } finally {
+            lexer.removeErrorListeners();
+            parser.removeErrorListeners();
+        }
+        return first.error;
+    }
+
+    /** The decisions predicted so far, in decision-number order. */
+    public List<Decision> decisions() {
+        ATN atn = parser.getATN();
+        String[] rules = parser.getRuleNames();
+        Vocabulary vocabulary = parser.getVocabulary();
+        List<Decision> out = new ArrayList<>();
+        for (DecisionInfo info : simulator.getDecisionInfo()) {
+            if (info.invocations == 0) {
+                continue;
+            }
+            DecisionState state = atn.getDecisionState(info.decision);
+            String[] alternatives = new String[state.getNumberOfTransitions()];
+            for (int alt = 0; alt < alternatives.length; alt++) {
+                alternatives[alt] = startOf(state.transition(alt).target, rules, vocabulary);
+            }
+            out.add(new Decision(info.decision, rules[state.ruleIndex], kind(state), alternatives,
+                    info.invocations, info.SLL_TotalLook, info.SLL_MaxLook, info.LL_Fallback,
+                    info.LL_TotalLook, info.LL_MaxLook, info.ambiguities.size(),
+                    info.contextSensitivities.size(), info.errors.size(), info.timeInPrediction));
+        }
+        return out;
+    }
+
+    private static String kind(DecisionState state) {
+        if (state instanceof StarLoopEntryState) {
+            return "*loop";
+        }
+        if (state instanceof PlusLoopbackState) {
+            return "+loop";
+        }
+        if (state instanceof StarBlockStartState) {
+            return "*block";
+        }
+        if (state instanceof PlusBlockStartState) {
+            return "+block";
+        }
+        return "block";
+    }
+
+    /** What an alternative begins with, following single ε-edges. */
+    private static String startOf(ATNState state, String[] rules, Vocabulary vocabulary) {
+        for (int hops = 0; hops < 64; hops++) {
+            if (state instanceof RuleStopState || state instanceof BlockEndState || state instanceof LoopEndState) {
+                return "ε";
+            }
+            if (state.getNumberOfTransitions() != 1) {
+                return "(…)";
+            }
+            Transition t = state.transition(0);
+            if (t instanceof RuleTransition) {
+                return rules[((RuleTransition) t).target.ruleIndex];
+            }
+            if (t instanceof AtomTransition) {
+                return vocabulary.getDisplayName(((AtomTransition) t).label);
+            }
+            if (t instanceof SetTransition) {
+                List<String> names = new ArrayList<>();
+                for (int type : ((SetTransition) t).set.toList()) {
+                    names.add(vocabulary.getDisplayName(type));
+                }
+                return (t instanceof NotSetTransition ? "~" : "") + "{" + String.join(" ", names) + "}";
+            }
+            if (!t.isEpsilon()) {
+                return t.getClass().getSimpleName();
+            }
+            state = t.target;
+        }
+        return "(…)";
+    }
+
+    /** One decision's figures; times are nanoseconds. */
+    public static final class Decision {
+        public final int decision;
+        public final String rule;
+        /** "block", "*block", "+block", "*loop" or "+loop". */
+        public final String kind;
+        /** What each alternative, numbered from 1, begins with. */
+        public final String[] alternatives;
+        public final long invocations;
+        public final long sllTotalLook;
+        public final long sllMaxLook;
+        /** Predictions SLL could not settle, retried with full context. */
+        public final long llFallbacks;
+        public final long llTotalLook;
+        public final long llMaxLook;
+        public final int ambiguities;
+        public final int contextSensitivities;
+        public final int errors;
+        public final long timeNanos;
+
+        Decision(int decision, String rule, String kind, String[] alternatives, long invocations,
+                 long sllTotalLook, long sllMaxLook, long llFallbacks, long llTotalLook, long llMaxLook,
+                 int ambiguities, int contextSensitivities, int errors, long timeNanos) {
+            this.decision = decision;
+            this.rule = rule;
+            this.kind = kind;
+            this.alternatives = alternatives;
+            this.invocations = invocations;
+            this.sllTotalLook = sllTotalLook;
+            this.sllMaxLook = sllMaxLook;
+            this.llFallbacks = llFallbacks;
+            this.llTotalLook = llTotalLook;
+            this.llMaxLook = llMaxLook;
+            this.ambiguities = ambiguities;
+            this.contextSensitivities = contextSensitivities;
+            this.errors = errors;
+            this.timeNanos = timeNanos;
+        }
+
+        /** "1:record 2:set …", the alternatives with their numbers. */
+        public String alternativeNames() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < alternatives.length; i++) {
+                if (i > 0) {
+                    sb.append(' ');
+                }
+                sb.append(i + 1).append(':').append(alternatives[i]);
+            }
+            return sb.toString();
+        }
+    }
+}
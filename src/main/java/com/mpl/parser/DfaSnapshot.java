@@ -0,0 +1,240 @@
+package com.mpl.parser;
+
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.ATNSimulator;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.runtime.dfa.DFAState;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A frozen copy of the shared prediction DFA (see {@link TwoStageParser}),
+ * saved after a training run and loaded at startup, so the first parse of
+ * a fresh JVM predicts as a warm one does.
+ *
+ * Only what a DFA walk reads is kept: each state's edges, by token type,
+ * and whether it is an accept state and for which alternative. The ATN
+ * configurations behind a state are not, so a snapshot cannot be extended
+ * — {@link #predict} answers when the walk ends in an accept state and
+ * otherwise returns {@link ATN#INVALID_ALT_NUMBER}, and ANTLR predicts as
+ * usual on the live DFA. The DFA is a cache of a function of the
+ * lookahead alone, so an answer from the snapshot is the one ANTLR would
+ * have computed. A state that needs full context answers in SLL only;
+ * error edges and predicated states are left to ANTLR, which reports them.
+ *
+ * The file starts with "MPLD", {@link #VERSION} and a fingerprint of the
+ * parser's serialized ATN; {@link #read} rejects a snapshot of another
+ * grammar. Immutable once made.
+ */
+final class DfaSnapshot {
+
+    /** "MPLD". */
+    private static final int MAGIC = 0x4D504C44;
+    static final int VERSION = 1;
+
+    /** Outcome of a state that is not an accept state. */
+    private static final int OPEN = 0;
+    /** Outcome of an accept state the snapshot cannot answer for. */
+    private static final int UNUSABLE = Integer.MIN_VALUE;
+
+    /** Per decision, per state, per token type + 1: the next state, or -1. State 0 is the start state. */
+    private final int[][][] edges;
+    /** Per decision, per state: OPEN, the predicted alternative, its negation (SLL only) or UNUSABLE. */
+    private final int[][] outcomes;
+
+    private DfaSnapshot(int[][][] edges, int[][] outcomes) {
+        this.edges = edges;
+        this.outcomes = outcomes;
+    }
+
+    /** The states reachable from each decision's start state, as they stand. */
+    static DfaSnapshot of(DFA[] dfas) {
+        int[][][] edges = new int[dfas.length][][];
+        int[][] outcomes = new int[dfas.length][];
+        for (int d = 0; d < dfas.length; d++) {
+            DFA dfa = dfas[d];
+            List<DFAState> states = new ArrayList<>();
+            Map<DFAState, Integer> numbers = new IdentityHashMap<>();
+            if (!dfa.isPrecedenceDfa() && dfa.s0 != null) {
+                numbers.put(dfa.s0, 0);
+                states.add(dfa.s0);
+            }
+            List<int[]> out = new ArrayList<>();
+            // Breadth first; the list grows as targets are numbered.
+            for (int s = 0; s < states.size(); s++) {
+                DFAState[] from = states.get(s).edges;
+                int length = 0;
+                int[] to = new int[from == null ? 0 : from.length];
+                for (int t = 0; t < to.length; t++) {
+                    DFAState target = from[t];
+                    if (target == null || target == ATNSimulator.ERROR) {
+                        to[t] = -1;
+                        continue;
+                    }
+                    Integer n = numbers.get(target);
+                    if (n == null) {
+                        n = states.size();
+                        numbers.put(target, n);
+                        states.add(target);
+                    }
+                    to[t] = n;
+                    length = t + 1;
+                }
+                out.add(Arrays.copyOf(to, length));
+            }
+            edges[d] = out.toArray(new int[0][]);
+            outcomes[d] = new int[states.size()];
+            for (int s = 0; s < states.size(); s++) {
+                outcomes[d][s] = outcome(states.get(s));
+            }
+        }
+        return new DfaSnapshot(edges, outcomes);
+    }
+
+    private static int outcome(DFAState state) {
+        if (!state.isAcceptState) {
+            return OPEN;
+        }
+        if (state.predicates != null || state.prediction <= 0) {
+            return UNUSABLE;
+        }
+        return state.requiresFullContext ? -state.prediction : state.prediction;
+    }
+
+    /**
+     * The alternative the DFA predicts for decision {@code decision} at the
+     * stream's current position, or {@link ATN#INVALID_ALT_NUMBER} if the
+     * snapshot does not know. Reads ahead with LA; consumes nothing.
+     */
+    int predict(int decision, TokenStream input, boolean sll) {
+        int[][] to = edges[decision];
+        if (to.length == 0) {
+            return ATN.INVALID_ALT_NUMBER;
+        }
+        int[] outcome = outcomes[decision];
+        int state = 0;
+        int ahead = 1;
+        int t = input.LA(1);
+        while (true) {
+            int[] from = to[state];
+            // EOF (-1) is edge 0.
+            int next = t + 1 < from.length ? from[t + 1] : -1;
+            if (next < 0) {
+                return ATN.INVALID_ALT_NUMBER;
+            }
+            int o = outcome[next];
+            if (o > 0) {
+                return o;
+            }
+            if (o != OPEN) {
+                return sll && o != UNUSABLE ? -o : ATN.INVALID_ALT_NUMBER;
+            }
+            state = next;
+            if (t != Token.EOF) {
+                t = input.LA(++ahead);
+            }
+        }
+    }
+
+    /** States over all decisions. */
+    int states() {
+        int n = 0;
+        for (int[] o : outcomes) {
+            n += o.length;
+        }
+        return n;
+    }
+
+    void write(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(fingerprint());
+        out.writeInt(edges.length);
+        for (int d = 0; d < edges.length; d++) {
+            out.writeInt(edges[d].length);
+            for (int s = 0; s < edges[d].length; s++) {
+                out.writeInt(outcomes[d][s]);
+                int[] to = edges[d][s];
+                int n = 0;
+                for (int target : to) {
+                    n += target >= 0 ? 1 : 0;
+                }
+                out.writeShort(n);
+                for (int t = 0; t < to.length; t++) {
+                    if (to[t] >= 0) {
+                        out.writeShort(t);
+                        out.writeInt(to[t]);
+                    }
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /** Reads what {@link #write} wrote; an IOException if it is not that, or is for another grammar. */
+    static DfaSnapshot read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("not a DFA snapshot, or of another version");
+        }
+        if (in.readLong() != fingerprint()) {
+            throw new IOException("DFA snapshot of another grammar");
+        }
+        int decisions = in.readInt();
+        if (decisions != MPLParser._ATN.getNumberOfDecisions()) {
+            throw new IOException("DFA snapshot of another grammar");
+        }
+        int[][][] edges = new int[decisions][][];
+        int[][] outcomes = new int[decisions][];
+        for (int d = 0; d < decisions; d++) {
+            int states = in.readInt();
+            edges[d] = new int[states][];
+            outcomes[d] = new int[states];
+            for (int s = 0; s < states; s++) {
+                outcomes[d][s] = in.readInt();
+                int n = in.readUnsignedShort();
+                int[] tokens = new int[n];
+                int[] targets = new int[n];
+                for (int i = 0; i < n; i++) {
+                    tokens[i] = in.readUnsignedShort();
+                    targets[i] = in.readInt();
+                    if (targets[i] < 0 || targets[i] >= states || (i > 0 && tokens[i] <= tokens[i - 1])) {
+                        throw new IOException("corrupt DFA snapshot");
+                    }
+                }
+                int[] to = new int[n == 0 ? 0 : tokens[n - 1] + 1];
+                Arrays.fill(to, -1);
+                for (int i = 0; i < n; i++) {
+                    to[tokens[i]] = targets[i];
+                }
+                edges[d][s] = to;
+            }
+        }
+        return new DfaSnapshot(edges, outcomes);
+    }
+
+    /** The first 8 bytes of the SHA-256 of the parser's serialized ATN. */
+    private static long fingerprint() {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(MPLParser._serializedATN.getBytes(StandardCharsets.UTF_8));
+            long f = 0;
+            for (int i = 0; i < 8; i++) {
+                f = f << 8 | (digest[i] & 0xFF);
+            }
+            return f;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is a required algorithm", e);
+        }
+    }
+}
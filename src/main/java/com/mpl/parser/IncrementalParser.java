@@ -0,0 +1,633 @@
+package com.mpl.parser;
+
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import org.antlr.v4.runtime.tree.TerminalNodeImpl;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Re-lexes and re-parses a document after an edit, touching only what the
+ * edit can have changed. The result — tokens (type, text, offsets, line,
+ * column, index), tree and errors — is exactly what {@link #parse} of the
+ * edited text gives.
+ *
+ * Re-lexing: MPLLexer has no modes, so the state at a token boundary is the
+ * position alone. Each token remembers the furthest character the lexer
+ * looked at to produce it (skipped whitespace and comments before it
+ * included); the first token that looked at or past the edit is re-lexed
+ * from the end of the one before it, and re-lexing stops at the first new
+ * token that starts where an old token after the edit started (shifted by
+ * the edit). From there on the text is the same, so the tokens are too.
+ * An unclosed {- -} comment simply keeps the resync from happening until
+ * the comment closes again.
+ *
+ * Re-parsing: the top-level items of the seqExpr are independent parses —
+ * SLL prediction never looks at the caller's context — so the items before
+ * the damage are kept, items are re-parsed from the damaged one until a
+ * parse ends where an unchanged old item begins, and the rest are reused.
+ * Anything irregular (an error in the old or new text, an empty program)
+ * falls back to parsing all tokens with {@link TwoStageParser}.
+ *
+ * Offsets are in code points, the unit of token start/stop indexes. What
+ * stays linear in the document is plain copying: splicing the text, the
+ * code point buffer, and shifting the token list and the offsets after the
+ * edit; none of it lexes or predicts. Edits take the previous
+ * {@link Snapshot} over, its tokens are updated in place. One instance per
+ * document session; not thread-safe.
+ */
+public final class IncrementalParser {
+
+    private final MPLLexer lexer = new MPLLexer(CharStreams.fromString(""));
+    private final TwoStageParser parser = new TwoStageParser();
+    private final List<Error> lexerErrors = new ArrayList<>();
+    /** invokingState of seqExpr in program, and of its first and later exprs. */
+    private final int seqState;
+    private final int firstItemState;
+    private final int itemState;
+    /** Whether program's stop token is EOF, as it is once the parser matched EOF. */
+    private final boolean stopsAtEof;
+    /** Items the last {@link #reparse} parsed. */
+    private int reparsedItems;
+
+    public IncrementalParser() {
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(new BaseErrorListener() {
+            @Override
+            public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+                                    int line, int charPositionInLine, String msg,
+                                    RecognitionException e) {
+                lexerErrors.add(new Error(line, charPositionInLine, msg));
+            }
+        });
+        MPLParser.ProgramContext program = parse("1;1").tree;
+        MPLParser.SeqExprContext template = program.seqExpr();
+        stopsAtEof = program.getStop().getType() == Token.EOF;
+        seqState = template.invokingState;
+        firstItemState = template.expr(0).invokingState;
+        itemState = template.expr(1).invokingState;
+    }
+
+    /** A document's text, tokens, tree and syntax errors. */
+    public static final class Snapshot {
+        private final String text;
+        private final int length;
+        private final Document document;
+        private final ArrayList<Token> tokens;
+        /** Per token: the furthest code point the lexer looked at for it. */
+        private final int[] reach;
+        private final MPLParser.ProgramContext tree;
+        private final List<String> errors;
+        private final int relexed;
+        private final int reparsed;
+        private boolean current = true;
+
+        Snapshot(String text, int length, Document document, ArrayList<Token> tokens, int[] reach,
+                 MPLParser.ProgramContext tree, List<Error> errors, int relexed, int reparsed) {
+            this.text = text;
+            this.length = length;
+            this.document = document;
+            this.tokens = tokens;
+            this.reach = reach;
+            this.tree = tree;
+            List<String> messages = new ArrayList<>(errors.size());
+            for (Error e : errors) {
+                messages.add(e.line + ":" + e.col + ": " + e.message);
+            }
+            this.errors = Collections.unmodifiableList(messages);
+            this.relexed = relexed;
+            this.reparsed = reparsed;
+        }
+
+        public String text() {
+            return text;
+        }
+
+        /** Length in code points. */
+        public int length() {
+            return length;
+        }
+
+        /** Default-channel tokens, EOF last. */
+        public List<Token> tokens() {
+            return Collections.unmodifiableList(tokens);
+        }
+
+        public MPLParser.ProgramContext tree() {
+            return tree;
+        }
+
+        /** "line:col: message" per syntax error, lexer and parser, in source order. */
+        public List<String> errors() {
+            return errors;
+        }
+
+        /** Tokens lexed to produce this snapshot (all of them after a full parse). */
+        public int relexedTokens() {
+            return relexed;
+        }
+
+        /** Top-level items parsed to produce this snapshot; -1 after a full parse. */
+        public int reparsedItems() {
+            return reparsed;
+        }
+    }
+
+    /** Lexes and parses the whole text. */
+    public Snapshot parse(String text) {
+        Document document = new Document(text);
+        lexerErrors.clear();
+        ArrayList<Token> tokens = new ArrayList<>();
+        int[] reach = lex(document, 0, 1, 0, tokens, new int[16], null, 0, 0, 0);
+        for (int i = 0; i < tokens.size(); i++) {
+            ((WritableToken) tokens.get(i)).setTokenIndex(i);
+        }
+        return parsed(text, document, tokens, reach, tokens.size());
+    }
+
+    /**
+     * Replaces code points [start, end) of {@code previous} by
+     * {@code replacement}. {@code previous} must be the latest snapshot of
+     * its document; it is taken over and must not be used afterwards.
+     */
+    public Snapshot edit(Snapshot previous, int start, int end, String replacement) {
+        if (!previous.current) {
+            throw new IllegalStateException("snapshot was already edited");
+        }
+        if (start < 0 || start > end || end > previous.length) {
+            throw new IndexOutOfBoundsException("edit [" + start + ", " + end + ") of " + previous.length);
+        }
+        previous.current = false;
+        String old = previous.text;
+        String text = old.substring(0, offset(previous, start)) + replacement
+                + old.substring(offset(previous, end));
+        int inserted = replacement.codePointCount(0, replacement.length());
+        int delta = inserted - (end - start);
+        if (!previous.errors.isEmpty()) {
+            return parse(text);
+        }
+
+        ArrayList<Token> tokens = previous.tokens;
+        int[] reach = previous.reach;
+        int n = tokens.size();
+        // The first token whose lexing looked at the edit; EOF always did.
+        int lo = 0;
+        int hi = n - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (reach[mid] >= start) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        int damaged = lo;
+        int from = 0;
+        int line = 1;
+        int col = 0;
+        if (damaged > 0) {
+            Token before = tokens.get(damaged - 1);
+            from = before.getStopIndex() + 1;
+            line = before.getLine();
+            col = before.getCharPositionInLine();
+            String t = before.getText();
+            for (int i = 0; i < t.length(); i = t.offsetByCodePoints(i, 1)) {
+                if (t.charAt(i) == '\n') {
+                    line++;
+                    col = 0;
+                } else {
+                    col++;
+                }
+            }
+        }
+        Document document = previous.document;
+        document.setText(text);
+        lexerErrors.clear();
+        ArrayList<Token> fresh = new ArrayList<>();
+        int[] freshReach = lex(document, from, line, col, fresh, new int[16], tokens, damaged,
+                start + inserted, delta);
+
+        // Splice: tokens [damaged, resync) are replaced by the fresh ones.
+        int count = fresh.size();
+        Token last = fresh.get(count - 1);
+        int resync = n;
+        if (last.getType() != Token.EOF) {
+            resync = find(tokens, damaged, n, last.getStartIndex() - delta);
+            fresh.remove(--count);
+        }
+        shift(tokens, resync, last, delta, damaged + count - resync);
+        int size = damaged + count + n - resync;
+        int[] newReach = reach.length >= size ? reach : Arrays.copyOf(reach, size + size / 2);
+        System.arraycopy(reach, resync, newReach, damaged + count, n - resync);
+        for (int i = damaged + count; i < size; i++) {
+            newReach[i] += delta;
+        }
+        System.arraycopy(freshReach, 0, newReach, damaged, count);
+        tokens.subList(damaged, resync).clear();
+        tokens.addAll(damaged, fresh);
+        for (int i = damaged; i < damaged + count; i++) {
+            ((WritableToken) tokens.get(i)).setTokenIndex(i);
+        }
+
+        if (!lexerErrors.isEmpty()) {
+            return parsed(text, document, tokens, newReach, count);
+        }
+        MPLParser.ProgramContext tree = reparse(previous.tree, tokens, damaged, damaged + count);
+        if (tree == null) {
+            return parsed(text, document, tokens, newReach, count);
+        }
+        return new Snapshot(text, previous.length + delta, document, tokens, newReach, tree,
+                List.of(), count, reparsedItems);
+    }
+
+    /**
+     * The new tree, reusing the old top-level items outside tokens
+     * [damaged, damagedEnd); null when only a full parse will do.
+     */
+    private MPLParser.ProgramContext reparse(MPLParser.ProgramContext old, List<Token> tokens,
+                                             int damaged, int damagedEnd) {
+        MPLParser.SeqExprContext oldSeq = old.seqExpr();
+        if (oldSeq == null) {
+            return null;
+        }
+        List<ParseTree> children = oldSeq.children;
+        // Children alternate expr, ';'. The first item ending at or after the
+        // token before the damage may have changed (its end may have moved).
+        int lo = 0;
+        int hi = (children.size() + 1) / 2;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (((ParserRuleContext) children.get(2 * mid)).getStop().getTokenIndex() >= damaged - 1) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        int kept = 2 * lo;
+        int p = kept == 0 ? 0 : ((TerminalNode) children.get(kept - 1)).getSymbol().getTokenIndex() + 1;
+
+        MPLParser.ProgramContext program = new MPLParser.ProgramContext(null, -1);
+        MPLParser.SeqExprContext seq = new MPLParser.SeqExprContext(program, seqState);
+        for (int c = 0; c < kept; c++) {
+            adopt(seq, children.get(c));
+        }
+        TokenList stream = new TokenList(tokens, lexer);
+        MPLParser items = parser.stageOne(stream);
+        stream.seek(p);
+        reparsedItems = 0;
+        int next = kept;
+        try {
+            while (stream.LA(1) != Token.EOF) {
+                int q = stream.index();
+                // Skip old items that started inside the damage or before q.
+                while (next < children.size()) {
+                    Token s = ((ParserRuleContext) children.get(next)).getStart();
+                    int i = s.getTokenIndex();
+                    boolean live = i >= damagedEnd && i < tokens.size() && tokens.get(i) == s;
+                    if (live && i >= q) {
+                        break;
+                    }
+                    next += 2;
+                }
+                if (next < children.size() && ((ParserRuleContext) children.get(next)).getStart().getTokenIndex() == q) {
+                    for (int c = next; c < children.size(); c++) {
+                        adopt(seq, children.get(c));
+                    }
+                    break;
+                }
+                MPLParser.ExprContext item = items.expr();
+                reparsedItems++;
+                adopt(seq, item);
+                if (stream.LA(1) == MPLParser.SEMICOLON) {
+                    stream.consume();
+                    adopt(seq, new TerminalNodeImpl(stream.LT(-1)));
+                } else if (stream.LA(1) != Token.EOF) {
+                    return null;
+                }
+            }
+        } catch (ParseCancellationException e) {
+            return null;
+        }
+        if (seq.getChildCount() == 0) {
+            return null;
+        }
+        for (int c = 0; c < seq.getChildCount(); c += 2) {
+            ((ParserRuleContext) seq.getChild(c)).invokingState = c == 0 ? firstItemState : itemState;
+        }
+        Token eof = tokens.get(tokens.size() - 1);
+        seq.start = tokens.get(0);
+        ParseTree end = seq.getChild(seq.getChildCount() - 1);
+        seq.stop = end instanceof TerminalNode
+                ? ((TerminalNode) end).getSymbol() : ((ParserRuleContext) end).getStop();
+        program.addChild(seq);
+        adopt(program, new TerminalNodeImpl(eof));
+        program.start = tokens.get(0);
+        program.stop = stopsAtEof ? eof : seq.stop;
+        return program;
+    }
+
+    private static void adopt(ParserRuleContext parent, ParseTree child) {
+        if (child instanceof ParserRuleContext) {
+            ((ParserRuleContext) child).parent = parent;
+            parent.addChild((ParserRuleContext) child);
+        } else {
+            TerminalNode terminal = (TerminalNode) child;
+            terminal.setParent(parent);
+            parent.addAnyChild(terminal);
+        }
+    }
+
+    /** The full-parse tail of {@link #parse}, and the fallback of {@link #edit}. */
+    private Snapshot parsed(String text, Document document, ArrayList<Token> tokens, int[] reach, int relexed) {
+        List<Error> errors = new ArrayList<>(lexerErrors);
+        MPLParser.ProgramContext tree = parser.parse(new TokenList(tokens, lexer), new BaseErrorListener() {
+            @Override
+            public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+                                    int line, int charPositionInLine, String msg,
+                                    RecognitionException e) {
+                errors.add(new Error(line, charPositionInLine, msg));
+            }
+        });
+        errors.sort(Comparator.comparingInt((Error e) -> e.line).thenComparingInt(e -> e.col));
+        return new Snapshot(text, document.size(), document, tokens, reach, tree, errors, relexed, -1);
+    }
+
+    /**
+     * Lexes from code point {@code from} (at line/col) into {@code tokens},
+     * recording reach; returns the reach array, grown as needed. Stops after
+     * EOF or, when {@code old} is given, after the first token at or past
+     * {@code resyncFrom} that starts where one of old[oldFrom..] started
+     * before the edit moved it by {@code delta}. That last token stands in
+     * for the old one; it is not kept.
+     */
+    private int[] lex(Document document, int from, int line, int col, ArrayList<Token> tokens, int[] reach,
+                      List<Token> old, int oldFrom, int resyncFrom, int delta) {
+        lexer.setInputStream(document);
+        document.seek(from);
+        lexer.setLine(line);
+        lexer.setCharPositionInLine(col);
+        while (true) {
+            document.reach = -1;
+            Token t = lexer.nextToken();
+            if (tokens.size() == reach.length) {
+                reach = Arrays.copyOf(reach, reach.length * 2);
+            }
+            reach[tokens.size()] = document.reach;
+            tokens.add(t);
+            if (t.getType() == Token.EOF) {
+                return reach;
+            }
+            if (old != null && t.getStartIndex() >= resyncFrom
+                    && find(old, oldFrom, old.size(), t.getStartIndex() - delta) >= 0) {
+                return reach;
+            }
+        }
+    }
+
+    /** Index in tokens[from, to) of the token starting at code point {@code start}, or -1. */
+    private static int find(List<Token> tokens, int from, int to, int start) {
+        int lo = from;
+        int hi = to - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int s = tokens.get(mid).getStartIndex();
+            if (s < start) {
+                lo = mid + 1;
+            } else if (s > start) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Moves tokens[resync..] to where the edit put them: {@code stand} is
+     * the re-lexed token standing in for tokens[resync]; offsets move by
+     * delta, indexes by indexDelta, lines by the stand-in's, and columns
+     * too on the stand-in's line.
+     */
+    private static void shift(List<Token> tokens, int resync, Token stand, int delta, int indexDelta) {
+        if (resync == tokens.size()) {
+            return;
+        }
+        Token o = tokens.get(resync);
+        int lineDelta = stand.getLine() - o.getLine();
+        int colDelta = stand.getCharPositionInLine() - o.getCharPositionInLine();
+        if (delta == 0 && indexDelta == 0 && lineDelta == 0 && colDelta == 0) {
+            return;
+        }
+        int onLine = o.getLine();
+        for (int i = resync; i < tokens.size(); i++) {
+            CommonToken t = (CommonToken) tokens.get(i);
+            if (t.getLine() == onLine) {
+                t.setCharPositionInLine(t.getCharPositionInLine() + colDelta);
+            }
+            t.setLine(t.getLine() + lineDelta);
+            t.setStartIndex(t.getStartIndex() + delta);
+            t.setStopIndex(t.getStopIndex() + delta);
+            t.setTokenIndex(t.getTokenIndex() + indexDelta);
+        }
+    }
+
+    /** The UTF-16 index of code point {@code cp} of the snapshot's text. */
+    private static int offset(Snapshot snapshot, int cp) {
+        return snapshot.text.length() == snapshot.length ? cp : snapshot.text.offsetByCodePoints(0, cp);
+    }
+
+    private static final class Error {
+        final int line;
+        final int col;
+        final String message;
+
+        Error(int line, int col, String message) {
+            this.line = line;
+            this.col = col;
+            this.message = message;
+        }
+    }
+
+    /**
+     * The document's characters, one stream for its whole session so tokens
+     * keep reading their text from it after an edit; records the furthest
+     * index looked at.
+     */
+    private static final class Document implements CharStream {
+        private CharStream text;
+        int reach;
+
+        Document(String text) {
+            setText(text);
+        }
+
+        void setText(String text) {
+            this.text = CharStreams.fromString(text);
+        }
+
+        @Override
+        public int LA(int i) {
+            int at = text.index() + i - 1;
+            if (at > reach) {
+                reach = at;
+            }
+            return text.LA(i);
+        }
+
+        @Override
+        public void consume() {
+            text.consume();
+        }
+
+        @Override
+        public int mark() {
+            return text.mark();
+        }
+
+        @Override
+        public void release(int marker) {
+            text.release(marker);
+        }
+
+        @Override
+        public int index() {
+            return text.index();
+        }
+
+        @Override
+        public void seek(int index) {
+            text.seek(index);
+        }
+
+        @Override
+        public int size() {
+            return text.size();
+        }
+
+        @Override
+        public String getSourceName() {
+            return text.getSourceName();
+        }
+
+        @Override
+        public String getText(Interval interval) {
+            return text.getText(interval);
+        }
+    }
+
+    /**
+     * A token stream over a finished token list. BufferedTokenStream would
+     * refill from the lexer and renumber the tokens, which are already
+     * numbered and shared with the snapshot.
+     */
+    private static final class TokenList implements TokenStream {
+        private final List<Token> tokens;
+        private final TokenSource source;
+        private int p;
+
+        TokenList(List<Token> tokens, TokenSource source) {
+            this.tokens = tokens;
+            this.source = source;
+        }
+
+        @Override
+        public Token LT(int k) {
+            if (k == 0) {
+                return null;
+            }
+            int i = k > 0 ? p + k - 1 : p + k;
+            if (i < 0) {
+                return null;
+            }
+            return tokens.get(Math.min(i, tokens.size() - 1));
+        }
+
+        @Override
+        public int LA(int i) {
+            Token t = LT(i);
+            return t == null ? 0 : t.getType();
+        }
+
+        @Override
+        public void consume() {
+            if (LA(1) == Token.EOF) {
+                throw new IllegalStateException("cannot consume EOF");
+            }
+            p++;
+        }
+
+        @Override
+        public Token get(int index) {
+            return tokens.get(index);
+        }
+
+        @Override
+        public TokenSource getTokenSource() {
+            return source;
+        }
+
+        @Override
+        public String getText(Interval interval) {
+            StringBuilder sb = new StringBuilder();
+            int stop = Math.min(interval.b, tokens.size() - 1);
+            for (int i = Math.max(interval.a, 0); i <= stop; i++) {
+                Token t = tokens.get(i);
+                if (t.getType() == Token.EOF) {
+                    break;
+                }
+                sb.append(t.getText());
+            }
+            return sb.toString();
+        }
+
+        @Override
+        public String getText() {
+            return getText(Interval.of(0, tokens.size() - 1));
+        }
+
+        @Override
+        public String getText(RuleContext ctx) {
+            return getText(ctx.getSourceInterval());
+        }
+
+        @Override
+        public String getText(Token start, Token stop) {
+            return start == null || stop == null ? "" : getText(Interval.of(start.getTokenIndex(), stop.getTokenIndex()));
+        }
+
+        @Override
+        public int mark() {
+            return -1;
+        }
+
+        @Override
+        public void release(int marker) {
+        }
+
+        @Override
+        public int index() {
+            return p;
+        }
+
+        @Override
+        public void seek(int index) {
+            p = index;
+        }
+
+        @Override
+        public int size() {
+            return tokens.size();
+        }
+
+        @Override
+        public String getSourceName() {
+            return source.getSourceName();
+        }
+    }
+}
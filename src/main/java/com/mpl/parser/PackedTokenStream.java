@@ -0,0 +1,316 @@
+package com.mpl.parser;
+
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.misc.Pair;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A TokenStream that keeps its tokens as rows of parallel int arrays —
+ * type, start and stop offset, line, column — instead of one CommonToken
+ * per token, lexing with its own {@link TableLexer}. Lexing allocates
+ * nothing per token; a Token object is made only when a consumer asks for
+ * one (LT, get), and the last few are cached, so MPLParser runs on it
+ * unchanged while prediction, which only calls LA, reads the arrays.
+ *
+ * Tokens are fetched as a CommonTokenStream fetches them, one ahead of
+ * what the consumer has looked at, so lexer errors reach the listeners at
+ * the same points of the parse. {@link #rewind} starts another pass over
+ * the tokens already lexed and reports their errors again as the pass
+ * reaches them, which is what a second parse of a freshly lexed input
+ * would see. MPL has no hidden-channel tokens, so every token is on the
+ * default channel. Not thread-safe.
+ */
+public final class PackedTokenStream implements TokenStream {
+
+    /** Materialized tokens, by token index modulo the cache size. */
+    private static final int CACHE = 64;
+
+    private final TableLexer lexer;
+    private final List<ANTLRErrorListener> listeners = new ArrayList<>();
+    private final List<LexerError> errors = new ArrayList<>();
+    private final Token[] cache = new Token[CACHE];
+    private Pair<TokenSource, CharStream> source;
+    private int[] types = new int[256];
+    private int[] starts = new int[256];
+    private int[] stops = new int[256];
+    private int[] lines = new int[256];
+    private int[] columns = new int[256];
+    /** Tokens lexed; the last is EOF once {@link #lexedEof}. */
+    private int lexed;
+    private boolean lexedEof;
+    /** Tokens fetched in this pass, and the errors reported in it. */
+    private int fetched;
+    private int reported;
+    private int p;
+
+    public PackedTokenStream(CharStream input) {
+        lexer = new TableLexer(input);
+        lexer.addErrorListener(new BaseErrorListener() {
+            @Override
+            public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+                                    int line, int charPositionInLine, String msg,
+                                    RecognitionException e) {
+                errors.add(new LexerError(lexed, line, charPositionInLine, msg));
+            }
+        });
+        setInputStream(input);
+    }
+
+    /**
+     * Starts over on a new input, keeping the arrays unless they are larger
+     * than it could need (one token per code point, plus EOF).
+     */
+    public void setInputStream(CharStream input) {
+        int most = Math.max(256, input.size() + 1);
+        if (types.length > most) {
+            resize(most);
+        }
+        lexer.setInputStream(input);
+        source = new Pair<>(lexer, input);
+        errors.clear();
+        Arrays.fill(cache, null);
+        lexed = 0;
+        lexedEof = false;
+        rewind();
+    }
+
+    /**
+     * Back to the first token for another pass. Lexer errors are reported
+     * again, each when the pass fetches the token after it.
+     */
+    public void rewind() {
+        fetched = 0;
+        reported = 0;
+        p = 0;
+    }
+
+    /** Receives lexer errors as MPLLexer reports them (no recognizer, no exception). */
+    public void addErrorListener(ANTLRErrorListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeErrorListeners() {
+        listeners.clear();
+    }
+
+    /** The type of token {@code i}, without materializing it. */
+    public int type(int i) {
+        return types[i];
+    }
+
+    /** Code point offset of token {@code i}'s first character. */
+    public int start(int i) {
+        return starts[i];
+    }
+
+    /** Code point offset of token {@code i}'s last character (start - 1 for EOF). */
+    public int stop(int i) {
+        return stops[i];
+    }
+
+    public int line(int i) {
+        return lines[i];
+    }
+
+    public int column(int i) {
+        return columns[i];
+    }
+
+    /**
+     * Makes token {@code i} fetched in this pass, lexing up to it if need
+     * be; false when the input ends before it.
+     */
+    private boolean sync(int i) {
+        if (i < fetched) {
+            return true;
+        }
+        while (lexed <= i && !lexedEof) {
+            lex();
+        }
+        fetched = Math.min(i + 1, lexed);
+        while (reported < errors.size() && errors.get(reported).token < fetched) {
+            LexerError error = errors.get(reported++);
+            for (ANTLRErrorListener listener : listeners) {
+                listener.syntaxError(null, null, error.line, error.column, error.message, null);
+            }
+        }
+        return i < fetched;
+    }
+
+    private void lex() {
+        if (lexed == types.length) {
+            resize(lexed * 2);
+        }
+        int type = lexer.next();
+        types[lexed] = type;
+        starts[lexed] = lexer.tokenStart;
+        stops[lexed] = lexer.tokenStop;
+        lines[lexed] = lexer.tokenLine;
+        columns[lexed] = lexer.tokenCol;
+        lexed++;
+        lexedEof = type == Token.EOF;
+    }
+
+    private void resize(int capacity) {
+        types = Arrays.copyOf(types, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        stops = Arrays.copyOf(stops, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        columns = Arrays.copyOf(columns, capacity);
+    }
+
+    /** Token {@code i} as an object, made on the first request since it left the cache. */
+    private Token token(int i) {
+        Token t = cache[i % CACHE];
+        if (t != null && t.getTokenIndex() == i) {
+            return t;
+        }
+        t = lexer.getTokenFactory().create(source, types[i], null, Token.DEFAULT_CHANNEL,
+                starts[i], stops[i], lines[i], columns[i]);
+        if (t instanceof WritableToken) {
+            ((WritableToken) t).setTokenIndex(i);
+        }
+        cache[i % CACHE] = t;
+        return t;
+    }
+
+    /** The index LT(k) and LA(k) read, -1 before the first token. */
+    private int lookahead(int k) {
+        if (k < 0) {
+            return p + k;
+        }
+        int i = p + k - 1;
+        sync(i);
+        return Math.min(i, fetched - 1);
+    }
+
+    @Override
+    public Token LT(int k) {
+        if (k == 0) {
+            return null;
+        }
+        int i = lookahead(k);
+        return i < 0 ? null : token(i);
+    }
+
+    @Override
+    public int LA(int k) {
+        if (k == 0) {
+            return 0;
+        }
+        int i = lookahead(k);
+        return i < 0 ? Token.INVALID_TYPE : types[i];
+    }
+
+    @Override
+    public Token get(int i) {
+        if (i < 0 || i >= fetched) {
+            throw new IndexOutOfBoundsException("token index " + i + " out of range 0.." + (fetched - 1));
+        }
+        return token(i);
+    }
+
+    @Override
+    public void consume() {
+        sync(p);
+        if (types[p] == Token.EOF) {
+            throw new IllegalStateException("cannot consume EOF");
+        }
+        if (sync(p + 1)) {
+            p++;
+        }
+    }
+
+    @Override
+    public int index() {
+        return p;
+    }
+
+    @Override
+    public void seek(int index) {
+        sync(index);
+        p = Math.min(index, fetched - 1);
+    }
+
+    @Override
+    public int mark() {
+        return 0;
+    }
+
+    @Override
+    public void release(int marker) {
+    }
+
+    /** Tokens fetched so far in this pass. */
+    @Override
+    public int size() {
+        return fetched;
+    }
+
+    @Override
+    public TokenSource getTokenSource() {
+        return lexer;
+    }
+
+    @Override
+    public String getSourceName() {
+        return lexer.getSourceName();
+    }
+
+    /** The tokens' texts, concatenated (skipped whitespace and comments are not tokens). */
+    @Override
+    public String getText(Interval interval) {
+        int a = interval.a;
+        int b = interval.b;
+        if (a < 0 || b < 0) {
+            return "";
+        }
+        sync(b);
+        CharStream input = lexer.getInputStream();
+        StringBuilder sb = new StringBuilder();
+        for (int i = a; i <= b && i < fetched && types[i] != Token.EOF; i++) {
+            sb.append(input.getText(Interval.of(starts[i], stops[i])));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String getText() {
+        while (!lexedEof) {
+            lex();
+        }
+        sync(lexed - 1);
+        return getText(Interval.of(0, lexed - 1));
+    }
+
+    @Override
+    public String getText(RuleContext ctx) {
+        return getText(ctx.getSourceInterval());
+    }
+
+    @Override
+    public String getText(Token start, Token stop) {
+        if (start == null || stop == null) {
+            return "";
+        }
+        return getText(Interval.of(start.getTokenIndex(), stop.getTokenIndex()));
+    }
+
+    private static final class LexerError {
+        /** Index of the token lexed right after the error. */
+        final int token;
+        final int line;
+        final int column;
+        final String message;
+
+        LexerError(int token, int line, int column, String message) {
+            this.token = token;
+            this.line = line;
+            this.column = column;
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.mpl.parser;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for one {@link TwoStageParser} parse, lexing included; its
+ * duration is the parse's. Made only while a recording enables it.
+ */
+@Name("com.mpl.Parse")
+@Label("MPL Parse")
+@Category("MPL")
+@Description("One program lexed and parsed by TwoStageParser")
+final class ParseEvent extends jdk.jfr.Event {
+
+    private static final EventType TYPE = EventType.getEventType(ParseEvent.class);
+
+    @Label("Characters")
+    @Description("Code points of input (its UTF-8 bytes when it is ASCII)")
+    long characters;
+
+    @Label("Tokens")
+    long tokens;
+
+    @Label("LL Fallback")
+    @Description("SLL failed and the program was re-parsed in full LL")
+    boolean llFallback;
+
+    /** A started event, or null when no recording wants one. */
+    static ParseEvent start() {
+        if (!TYPE.isEnabled()) {
+            return null;
+        }
+        ParseEvent e = new ParseEvent();
+        e.begin();
+        return e;
+    }
+}
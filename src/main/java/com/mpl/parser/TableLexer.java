@@ -0,0 +1,593 @@
+package com.mpl.parser;
+
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.misc.Pair;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A hand-written lexer producing exactly MPLLexer's tokens — type, text,
+ * offsets, line and column — and its lexer errors, without the lexer ATN.
+ *
+ * Most tokens are one glyph or one backslash escape word. Glyphs are found
+ * in a table (a direct table for ASCII, a sorted code point table for the
+ * rest, supplementary-plane glyphs like 𝔹 included) and escape words by
+ * walking a trie, so every token costs a switch and a lookup. The rules
+ * that are more than a literal — identifiers, numbers, strings, comments —
+ * are scanned by hand with ANTLR's matching semantics: longest match, ties
+ * to the earlier rule, and on failure an error covering everything up to
+ * and including the character where the last alternative died. The nested
+ * {- -} comment rule is non-greedy with recursion, and ANTLR's result for
+ * it (an unclosed outer comment may end at an inner -}) comes from the
+ * order in which it prunes alternatives; {@link #commentLength} replays
+ * that simulation for this one rule.
+ *
+ * The tables mirror the lexer rules in MPL.g4 and must change with them;
+ * TableLexerTest compares the two lexers over the corpus and fuzzed input.
+ * Usable wherever MPLLexer is, as the TokenSource of a CommonTokenStream.
+ * Not thread-safe.
+ */
+public final class TableLexer implements TokenSource {
+
+    /** Type per ASCII code point, 0 if the character starts no literal token. */
+    private static final int[] ASCII = new int[128];
+    /** Non-ASCII glyphs, sorted, and their token types. */
+    private static final int[] GLYPHS;
+    private static final int[] GLYPH_TYPES;
+    /** Escape words after the backslash, as a trie over [A-Za-z]: child per node and letter, 0 for none. */
+    private static final int[][] TRIE;
+    /** Token type per trie node, 0 where no word ends. */
+    private static final int[] WORD_TYPES;
+    /** The spellings of each literal token type, in rule order. */
+    private static final List<List<String>> SPELLINGS = new ArrayList<>();
+
+    static {
+        List<int[]> glyphs = new ArrayList<>();
+        List<int[]> trie = new ArrayList<>();
+        List<Integer> words = new ArrayList<>();
+        trie.add(new int[52]);
+        words.add(0);
+        Object[][] rules = {
+            {MPLLexer.IN, "∈", "in"},
+            {MPLLexer.ALPHA, "α", "alpha"}, {MPLLexer.BETA, "β", "beta"}, {MPLLexer.GAMMA, "γ", "gamma"},
+            {MPLLexer.DELTA, "δ", "delta"}, {MPLLexer.EPSILON, "ε", "epsilon"}, {MPLLexer.ZETA, "ζ", "zeta"},
+            {MPLLexer.ETA, "η", "eta"}, {MPLLexer.THETA, "θ", "theta"}, {MPLLexer.IOTA, "ι", "iota"},
+            {MPLLexer.KAPPA, "κ", "kappa"}, {MPLLexer.LAMBDA_VAR, "λ", "lambda"}, {MPLLexer.MU, "μ", "mu"},
+            {MPLLexer.NU, "ν", "nu"}, {MPLLexer.XI, "ξ", "xi"}, {MPLLexer.OMICRON, "ο", "omicron"},
+            {MPLLexer.PI, "π", "pi"}, {MPLLexer.RHO, "ρ", "rho"}, {MPLLexer.SIGMA, "σ", "sigma"},
+            {MPLLexer.TAU, "τ", "tau"}, {MPLLexer.UPSILON, "υ", "upsilon"}, {MPLLexer.PHI, "φ", "phi"},
+            {MPLLexer.CHI, "χ", "chi"}, {MPLLexer.PSI, "ψ", "psi"}, {MPLLexer.OMEGA, "ω", "omega"},
+            {MPLLexer.NAT, "ℕ", "nat"}, {MPLLexer.INT, "ℤ", "int"}, {MPLLexer.RAT, "ℚ", "rat"},
+            {MPLLexer.REAL, "ℝ", "real"}, {MPLLexer.COMPLEX, "ℂ", "complex"}, {MPLLexer.BOOL, "𝔹", "bool"},
+            {MPLLexer.SEMICOLON, ";"}, {MPLLexer.PARALLEL, "‖", "parallel"},
+            {MPLLexer.LEFTARROW, "←", "leftarrow"}, {MPLLexer.IMPLIES, "⟹", "implies"},
+            {MPLLexer.OR, "∨", "or"}, {MPLLexer.AND, "∧", "and"}, {MPLLexer.EQ, "="},
+            {MPLLexer.NEQ, "≠", "neq"}, {MPLLexer.LT, "<"}, {MPLLexer.GT, ">"},
+            {MPLLexer.LEQ, "≤", "leq"}, {MPLLexer.GEQ, "≥", "geq"}, {MPLLexer.APPROX, "≈", "approx"},
+            {MPLLexer.SIM, "∼", "sim"}, {MPLLexer.PLUS, "+"}, {MPLLexer.MINUS, "-"},
+            {MPLLexer.TIMES, "×", "times"}, {MPLLexer.DIV, "÷", "div", "/"}, {MPLLexer.AST, "∗", "ast"},
+            {MPLLexer.COMPOSE, "∘", "circ"},
+            {MPLLexer.RAISE, "↯", "raise"}, {MPLLexer.TRACE, "✎", "trace"}, {MPLLexer.BREAK, "⧈", "break"},
+            {MPLLexer.DELAY, "⏲", "delay"},
+            {MPLLexer.FORALL, "∀", "forall"}, {MPLLexer.DEFINITION, "≜", "coloneq"},
+            {MPLLexer.HANDLE, "↴", "handle"}, {MPLLexer.ALLOC, "⊕", "oplus"}, {MPLLexer.RELEASE, "⊖", "ominus"},
+            {MPLLexer.MODULE, "𝓜", "module"}, {MPLLexer.EXPORT, "⇒", "Rightarrow"},
+            {MPLLexer.SEND, "⇀", "send"}, {MPLLexer.RECEIVE, "↽", "receive"}, {MPLLexer.PATH, "🖫", "path"},
+            {MPLLexer.PERIODIC, "⟳", "periodic"}, {MPLLexer.BOTTOM, "⊥", "bot"},
+            {MPLLexer.EMPTYSET, "∅", "emptyset"},
+            {MPLLexer.LPAREN, "("}, {MPLLexer.RPAREN, ")"}, {MPLLexer.LBRACK, "["}, {MPLLexer.RBRACK, "]"},
+            {MPLLexer.LBRACE, "{"}, {MPLLexer.RBRACE, "}"},
+            {MPLLexer.LANGLE, "⟨", "langle"}, {MPLLexer.RANGLE, "⟩", "rangle"},
+            {MPLLexer.LCEIL, "⌈", "lceil"}, {MPLLexer.RCEIL, "⌉", "rceil"},
+            {MPLLexer.LRAII, "〔", "lbracket"}, {MPLLexer.RRAII, "〕", "rbracket"},
+            {MPLLexer.ULCORNER, "⌜", "ulcorner"}, {MPLLexer.URCORNER, "⌝", "urcorner"},
+            {MPLLexer.LLCORNER, "⌞", "llcorner"}, {MPLLexer.LRCORNER, "⌟", "lrcorner"},
+            {MPLLexer.COLON, ":"}, {MPLLexer.COMMA, ","}, {MPLLexer.UNDERSCORE, "_"}, {MPLLexer.BAR, "|"},
+            {MPLLexer.MIDDOT, "‧", "middot"},
+        };
+        for (int type = 0; type <= MPLLexer.VOCABULARY.getMaxTokenType(); type++) {
+            SPELLINGS.add(new ArrayList<>());
+        }
+        SPELLINGS.get(MPLLexer.TRUE).add("true");
+        SPELLINGS.get(MPLLexer.FALSE).add("false");
+        for (Object[] rule : rules) {
+            int type = (Integer) rule[0];
+            for (int i = 1; i < rule.length; i++) {
+                String s = (String) rule[i];
+                int first = s.codePointAt(0);
+                SPELLINGS.get(type).add(letter(first) < 0 ? s : "\\" + s);
+                if (letter(first) < 0) {
+                    if (first < 128) {
+                        ASCII[first] = type;
+                    } else {
+                        glyphs.add(new int[] {first, type});
+                    }
+                    continue;
+                }
+                // An escape word: '\\' + s.
+                int node = 0;
+                for (int j = 0; j < s.length(); j++) {
+                    int letter = letter(s.charAt(j));
+                    if (trie.get(node)[letter] == 0) {
+                        trie.get(node)[letter] = trie.size();
+                        trie.add(new int[52]);
+                        words.add(0);
+                    }
+                    node = trie.get(node)[letter];
+                }
+                if (words.get(node) != 0) {
+                    throw new IllegalStateException("escape \\" + s + " in two rules");
+                }
+                words.set(node, type);
+            }
+        }
+        glyphs.sort((a, b) -> Integer.compare(a[0], b[0]));
+        GLYPHS = new int[glyphs.size()];
+        GLYPH_TYPES = new int[glyphs.size()];
+        for (int i = 0; i < GLYPHS.length; i++) {
+            GLYPHS[i] = glyphs.get(i)[0];
+            GLYPH_TYPES[i] = glyphs.get(i)[1];
+        }
+        TRIE = trie.toArray(new int[0][]);
+        WORD_TYPES = words.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Every spelling of a token type that is a literal in MPL.g4 — glyph,
+     * ASCII and escape word alike, as in the rule — or an empty list for
+     * identifiers, numbers, strings and skipped tokens.
+     */
+    public static List<String> spellings(int type) {
+        return type > 0 && type < SPELLINGS.size() ? List.copyOf(SPELLINGS.get(type)) : List.of();
+    }
+
+    /** Trie column of an ASCII letter, -1 for anything else. */
+    private static int letter(int c) {
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a';
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return 26 + c - 'A';
+        }
+        return -1;
+    }
+
+    private CharStream input;
+    private Pair<TokenSource, CharStream> source;
+    private TokenFactory<?> factory = CommonTokenFactory.DEFAULT;
+    private final List<ANTLRErrorListener> listeners = new ArrayList<>();
+    private int line = 1;
+    private int col = 0;
+    /** The comment simulation's configurations, reused: depth * 8 + state. */
+    private int[] configs = new int[16];
+    private int[] next = new int[16];
+    private long[] seen = new long[1];
+    /** The trie node of the escape word {@link #escapeLength} matched. */
+    private int escapeNode;
+    /** Where the token {@link #next} returned starts and ends, and its line and column. */
+    int tokenStart;
+    int tokenStop;
+    int tokenLine;
+    int tokenCol;
+
+    public TableLexer(CharStream input) {
+        setInputStream(input);
+    }
+
+    /** Restarts on a new input at line 1, column 0. */
+    public void setInputStream(CharStream input) {
+        this.input = input;
+        this.source = new Pair<>(this, input);
+        line = 1;
+        col = 0;
+    }
+
+    /** Receives lexer errors as MPLLexer reports them (no recognizer, no exception). */
+    public void addErrorListener(ANTLRErrorListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeErrorListeners() {
+        listeners.clear();
+    }
+
+    @Override
+    public Token nextToken() {
+        int type = next();
+        return factory.create(source, type, null, Token.DEFAULT_CHANNEL, tokenStart, tokenStop, tokenLine, tokenCol);
+    }
+
+    /**
+     * Lexes the next token without creating it: returns its type (EOF at
+     * the end) and leaves its offsets and position in the token* fields.
+     */
+    int next() {
+        while (true) {
+            int start = input.index();
+            tokenStart = start;
+            tokenLine = line;
+            tokenCol = col;
+            int c = input.LA(1);
+            if (c == IntStream.EOF) {
+                tokenStop = start - 1;
+                return Token.EOF;
+            }
+            int type;
+            int length = 1;
+            switch (c) {
+                case ' ': case '\t': case '\r': case '\n':
+                    do {
+                        consume();
+                        c = input.LA(1);
+                    } while (c == ' ' || c == '\t' || c == '\r' || c == '\n');
+                    continue;
+                case '-':
+                    if (input.LA(2) != '-') {
+                        type = MPLLexer.MINUS;
+                        break;
+                    }
+                    do {
+                        consume();
+                        c = input.LA(1);
+                    } while (c != IntStream.EOF && c != '\r' && c != '\n');
+                    continue;
+                case '{':
+                    if (input.LA(2) == '-') {
+                        int comment = commentLength();
+                        if (comment > 0) {
+                            consume(comment);
+                            continue;
+                        }
+                    }
+                    type = MPLLexer.LBRACE;
+                    break;
+                case '"':
+                    if (input.LA(2) == '"' && input.LA(3) == '"') {
+                        int raw = rawStringLength();
+                        type = raw > 0 ? MPLLexer.RAWSTRING : MPLLexer.STRING;
+                        length = raw > 0 ? raw : 2;
+                        break;
+                    }
+                    length = stringLength();
+                    if (length < 0) {
+                        error(-length);
+                        continue;
+                    }
+                    type = MPLLexer.STRING;
+                    break;
+                case '\\':
+                    length = escapeLength();
+                    if (length < 0) {
+                        error(-length);
+                        continue;
+                    }
+                    type = WORD_TYPES[escapeNode];
+                    break;
+                default:
+                    if (c >= '0' && c <= '9') {
+                        type = MPLLexer.NUMBER;
+                        length = numberLength(c);
+                    } else if (letter(c) >= 0) {
+                        length = 1;
+                        int d = input.LA(2);
+                        while (letter(d) >= 0 || isDigit(d) || d == '_') {
+                            d = input.LA(++length + 1);
+                        }
+                        type = keyword(length);
+                    } else if (c < 128) {
+                        type = ASCII[c];
+                    } else {
+                        int i = Arrays.binarySearch(GLYPHS, c);
+                        type = i >= 0 ? GLYPH_TYPES[i] : 0;
+                    }
+                    if (type == 0) {
+                        error(1);
+                        continue;
+                    }
+            }
+            consume(length);
+            tokenStop = start + length - 1;
+            return type;
+        }
+    }
+
+    private void consume() {
+        if (input.LA(1) == '\n') {
+            line++;
+            col = 0;
+        } else {
+            col++;
+        }
+        input.consume();
+    }
+
+    private void consume(int n) {
+        for (int i = 0; i < n && input.LA(1) != IntStream.EOF; i++) {
+            consume();
+        }
+    }
+
+    /**
+     * Reports the {@code length} characters from here (fewer at the end of
+     * the input) as a token recognition error and skips them — what
+     * MPLLexer does when its last alternative dies on the last of them.
+     */
+    private void error(int length) {
+        int start = input.index();
+        int errorLine = line;
+        int errorCol = col;
+        String text = input.getText(Interval.of(start, start + length - 1));
+        consume(length);
+        StringBuilder display = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            display.append(c == '\n' ? "\\n" : c == '\t' ? "\\t" : c == '\r' ? "\\r" : String.valueOf(c));
+        }
+        String msg = "token recognition error at: '" + display + "'";
+        for (ANTLRErrorListener listener : listeners) {
+            listener.syntaxError(null, null, errorLine, errorCol, msg, null);
+        }
+    }
+
+    /** TRUE or FALSE if the identifier of that length is one, else IDENTIFIER. */
+    private int keyword(int length) {
+        if (length == 4 && input.LA(1) == 't' && input.LA(2) == 'r' && input.LA(3) == 'u' && input.LA(4) == 'e') {
+            return MPLLexer.TRUE;
+        }
+        if (length == 5 && input.LA(1) == 'f' && input.LA(2) == 'a' && input.LA(3) == 'l' && input.LA(4) == 's'
+                && input.LA(5) == 'e') {
+            return MPLLexer.FALSE;
+        }
+        return MPLLexer.IDENTIFIER;
+    }
+
+    /**
+     * Length of the longest escape word at the backslash here; or, if none,
+     * minus the length up to and including the character that ended every
+     * word.
+     */
+    private int escapeLength() {
+        int node = 0;
+        int accepted = -1;
+        int i = 1;
+        while (true) {
+            int letter = letter(input.LA(i + 1));
+            int child = letter < 0 ? 0 : TRIE[node][letter];
+            if (child == 0) {
+                break;
+            }
+            node = child;
+            i++;
+            if (WORD_TYPES[node] != 0) {
+                accepted = i;
+                escapeNode = node;
+            }
+        }
+        return accepted > 0 ? accepted : -(i + 1);
+    }
+
+    /** INTEGER | FLOAT | HEX | BINARY, longest; there is always at least one digit. */
+    private int numberLength(int c) {
+        int digits = 1;
+        while (isDigit(input.LA(digits + 1))) {
+            digits++;
+        }
+        int length = digits;
+        if (c == '0' && input.LA(2) == 'x') {
+            int n = 0;
+            while (isHex(input.LA(3 + n))) {
+                n++;
+            }
+            return n > 0 ? 2 + n : length;
+        }
+        if (c == '0' && input.LA(2) == 'b') {
+            int n = 0;
+            while (input.LA(3 + n) == '0' || input.LA(3 + n) == '1') {
+                n++;
+            }
+            return n > 0 ? 2 + n : length;
+        }
+        if (input.LA(digits + 1) == '.' && isDigit(input.LA(digits + 2))) {
+            length = digits + 2;
+            while (isDigit(input.LA(length + 1))) {
+                length++;
+            }
+            int e = input.LA(length + 1);
+            if (e == 'e' || e == 'E') {
+                int exp = length + 1;
+                int sign = input.LA(exp + 1);
+                if (sign == '+' || sign == '-') {
+                    exp++;
+                }
+                if (isDigit(input.LA(exp + 1))) {
+                    length = exp + 1;
+                    while (isDigit(input.LA(length + 1))) {
+                        length++;
+                    }
+                }
+            }
+        }
+        return length;
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isHex(int c) {
+        return isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    /**
+     * '"' (ESC | ~["\\])* '"': its length, or minus the length up to and
+     * including where it failed (the end of the input counts as one past).
+     */
+    private int stringLength() {
+        int i = 2;
+        while (true) {
+            int c = input.LA(i);
+            if (c == IntStream.EOF) {
+                return -i;
+            }
+            if (c == '"') {
+                return i;
+            }
+            if (c == '\\') {
+                int e = input.LA(i + 1);
+                if (e != '\\' && e != 'n' && e != 't' && e != '"') {
+                    return -(i + 1);
+                }
+                i++;
+            }
+            i++;
+        }
+    }
+
+    /** '"""' .*? '"""' ends at the first closing quotes; 0 if there are none. */
+    private int rawStringLength() {
+        int run = 0;
+        for (int i = 4; ; i++) {
+            int c = input.LA(i);
+            if (c == IntStream.EOF) {
+                return 0;
+            }
+            run = c == '"' ? run + 1 : 0;
+            if (run == 3) {
+                return i;
+            }
+        }
+    }
+
+    // ---- '{-' (MULTILINE_COMMENT | .)*? '-}' --------------------------------
+    //
+    // A configuration is a position in the rule and a nesting depth (the
+    // depth is the rule's call stack, every return going to the same place).
+    // Positions, as ANTLR orders a closure: at the loop the non-greedy exit
+    // comes first, then the nested comment, then the wildcard.
+
+    private static final int CLOSE = 0;      // expects the '-' of '-}'
+    private static final int CLOSE_BRACE = 1; // expects its '}'
+    private static final int NEST = 2;       // expects the '{' of a nested comment (depth is the nested one)
+    private static final int NEST_DASH = 3;  // expects its '-'
+    private static final int ANY = 4;        // expects anything
+
+    /**
+     * The length MULTILINE_COMMENT matches at the "{-" here, 0 if none:
+     * ANTLR's lexer simulation for this rule, step for step. In each step,
+     * once a configuration reaches the end of the outer rule, every later
+     * one is dropped (all of them went through the non-greedy loop); the
+     * longest length reached wins.
+     */
+    private int commentLength() {
+        configs[0] = CLOSE;
+        configs[1] = 1 << 3 | NEST;
+        configs[2] = ANY;
+        int count = 3;
+        int accepted = 0;
+        for (int i = 3; count > 0; i++) {
+            int c = input.LA(i);
+            if (c == IntStream.EOF) {
+                break;
+            }
+            int n = 0;
+            for (int k = 0; k < count; k++) {
+                int config = configs[k];
+                int depth = config >>> 3;
+                switch (config & 7) {
+                    case CLOSE:
+                        if (c == '-') {
+                            n = add(n, depth << 3 | CLOSE_BRACE);
+                        }
+                        break;
+                    case CLOSE_BRACE:
+                        if (c == '}') {
+                            if (depth == 0) {
+                                accepted = i;
+                                k = count;
+                            } else {
+                                n = addLoop(n, depth - 1);
+                            }
+                        }
+                        break;
+                    case NEST:
+                        if (c == '{') {
+                            n = add(n, depth << 3 | NEST_DASH);
+                        }
+                        break;
+                    case NEST_DASH:
+                        if (c == '-') {
+                            n = addLoop(n, depth);
+                        }
+                        break;
+                    default:
+                        n = addLoop(n, depth);
+                }
+            }
+            for (int k = 0; k < n; k++) {
+                seen[next[k] >>> 6] = 0;
+            }
+            int[] t = configs;
+            configs = next;
+            next = t;
+            count = n;
+        }
+        return accepted;
+    }
+
+    /** The closure at the loop: exit, nested comment, wildcard. */
+    private int addLoop(int n, int depth) {
+        n = add(n, depth << 3 | CLOSE);
+        n = add(n, (depth + 1) << 3 | NEST);
+        return add(n, depth << 3 | ANY);
+    }
+
+    /** Appends to the next step's configurations unless already there. */
+    private int add(int n, int config) {
+        int word = config >>> 6;
+        if (word >= seen.length) {
+            seen = Arrays.copyOf(seen, Math.max(word + 1, seen.length * 2));
+        }
+        long bit = 1L << (config & 63);
+        if ((seen[word] & bit) != 0) {
+            return n;
+        }
+        seen[word] |= bit;
+        if (n == next.length) {
+            next = Arrays.copyOf(next, n * 2);
+        }
+        next[n] = config;
+        return n + 1;
+    }
+
+    @Override
+    public int getLine() {
+        return line;
+    }
+
+    @Override
+    public int getCharPositionInLine() {
+        return col;
+    }
+
+    @Override
+    public CharStream getInputStream() {
+        return input;
+    }
+
+    @Override
+    public String getSourceName() {
+        return input.getSourceName();
+    }
+
+    @Override
+    public void setTokenFactory(TokenFactory<?> factory) {
+        this.factory = factory;
+    }
+
+    @Override
+    public TokenFactory<?> getTokenFactory() {
+        return factory;
+    }
+}
@@ -0,0 +1,403 @@
+package com.mpl.parser;
+
+import com.mpl.metrics.Metrics;
+import jdk.jfr.FlightRecorder;
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.atn.*;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The parsing entry point for tooling and the runtime: SLL first, full LL
+ * only when SLL fails.
+ *
+ * Stage one runs {@link PredictionMode#SLL} with a bail-out error strategy
+ * and no parser listeners. SLL prediction skips the full-context lookahead
+ * that the brace disambiguation (record / set / block after a '{') and the
+ * condExpr → impliesExpr chain would otherwise pay for, and a program it
+ * accepts is a program full LL accepts with the same tree. When it bails,
+ * stage two re-lexes and re-parses from the start in full LL with the
+ * default error strategy, so the listener sees exactly the errors — first
+ * error included — that a plain MPLParser would have reported. Lexer errors
+ * seen during stage one are held back and replayed only if it succeeds.
+ *
+ * {@link #firstError} needs no tree, so it lexes into a {@link PackedTokenStream}
+ * and parses without building one; stage two rewinds that stream instead
+ * of lexing again.
+ *
+ * Every instance predicts with one DFA shared across the JVM (separate from
+ * the generated parser's own static cache, so it can be cleared and
+ * bounded). An instance reuses its lexer/parser pair and is not thread-safe;
+ * use one per thread. {@link #saveDfaSnapshot} writes that DFA to a file
+ * once a training run has warmed it, and {@link #loadDfaSnapshot} puts it
+ * in front of the live one in another JVM (see {@link DfaSnapshot}):
+ * predictions it holds are read from it, the rest are made as before.
+ *
+ * Each parse is a {@code com.mpl.Parse} JFR event when a recording enables
+ * it, and adds to the {@code parse.*} metrics (see {@link Metrics}) when
+ * they are on: programs, characters, tokens, LL fallbacks and a histogram
+ * of parse times in nanoseconds.
+ */
+public final class TwoStageParser {
+
+    private static final DFA[] decisionToDFA = freshDFA();
+    private static final ClearableContextCache contextCache = new ClearableContextCache();
+    private static final LongAdder sllSuccesses = new LongAdder();
+    private static final LongAdder llFallbacks = new LongAdder();
+    private static volatile int dfaStateLimit = 0;
+    private static volatile DfaSnapshot snapshot;
+
+    private static final Metrics.Counter PARSED = Metrics.registry().counter("parse.programs");
+    private static final Metrics.Counter CHARACTERS = Metrics.registry().counter("parse.characters");
+    private static final Metrics.Counter TOKENS = Metrics.registry().counter("parse.tokens");
+    private static final Metrics.Counter FALLBACKS = Metrics.registry().counter("parse.ll_fallbacks");
+    private static final Metrics.Histogram NANOS = Metrics.registry().histogram("parse.nanos");
+
+    private final MPLLexer lexer = new MPLLexer(CharStreams.fromString(""));
+    private final CommonTokenStream tokens = new CommonTokenStream(lexer);
+    private final MPLParser parser = new MPLParser(tokens);
+    private final PackedTokenStream packed = new PackedTokenStream(CharStreams.fromString(""));
+    private final BailErrorStrategy bail = new BailErrorStrategy();
+    private final DefaultErrorStrategy recovering = new DefaultErrorStrategy();
+
+    public TwoStageParser() {
+        parser.setInterpreter(new SnapshotSimulator(parser));
+        lexer.removeErrorListeners();
+        parser.removeErrorListeners();
+    }
+
+    /**
+     * Parses a whole program. Syntax errors go to the listener (lexer and
+     * parser alike) in the order a single full-LL parse reports them.
+     */
+    public MPLParser.ProgramContext parse(CharStream input, ANTLRErrorListener listener) {
+        ParseEvent event = startEvent();
+        boolean metered = Metrics.enabled();
+        long start = metered ? System.nanoTime() : 0;
+        boolean fallback = false;
+        try {
+            var held = new HeldErrors();
+            reset(input, held, bail, PredictionMode.SLL);
+            try {
+                MPLParser.ProgramContext tree = parser.program();
+                sllSuccesses.increment();
+                held.replay(listener);
+                return tree;
+            } catch (ParseCancellationException e) {
+                llFallbacks.increment();
+                fallback = true;
+            }
+            reset(input, listener, recovering, PredictionMode.LL);
+            parser.addErrorListener(listener);
+            try {
+                return parser.program();
+            } finally {
+                parser.removeErrorListeners();
+            }
+        } finally {
+            enforceDfaStateLimit();
+            observe(event, metered, start, input.size(), tokens.size(), fallback);
+        }
+    }
+
+    /**
+     * Parses a whole program from tokens lexed elsewhere (lexer errors are
+     * the caller's to report). The stream is rewound for each stage.
+     */
+    public MPLParser.ProgramContext parse(TokenStream tokens, ANTLRErrorListener listener) {
+        ParseEvent event = startEvent();
+        boolean metered = Metrics.enabled();
+        long start = metered ? System.nanoTime() : 0;
+        boolean fallback = false;
+        try {
+            reset(tokens, bail, PredictionMode.SLL);
+            try {
+                MPLParser.ProgramContext tree = parser.program();
+                sllSuccesses.increment();
+                return tree;
+            } catch (ParseCancellationException e) {
+                llFallbacks.increment();
+                fallback = true;
+            }
+            reset(tokens, recovering, PredictionMode.LL);
+            parser.addErrorListener(listener);
+            try {
+                return parser.program();
+            } finally {
+                parser.removeErrorListeners();
+            }
+        } finally {
+            enforceDfaStateLimit();
+            CharStream source = tokens.getTokenSource().getInputStream();
+            observe(event, metered, start, source == null ? 0 : source.size(), tokens.size(), fallback);
+        }
+    }
+
+    /**
+     * The stage-one parser over {@code tokens}, for callers in this package
+     * that parse a program piece by piece: SLL on the shared DFA, throwing
+     * ParseCancellationException at the first syntax error. Parser.reset
+     * rewinds the stream; callers seek to where they start.
+     */
+    MPLParser stageOne(TokenStream tokens) {
+        reset(tokens, bail, PredictionMode.SLL);
+        return parser;
+    }
+
+    private static void enforceDfaStateLimit() {
+        int limit = dfaStateLimit;
+        if (limit > 0 && dfaStateCount() > limit) {
+            clearDFA();
+        }
+    }
+
+    /** Returns "line:col: message" for the first syntax error, or null. */
+    public String firstError(CharStream input) {
+        var first = new BaseErrorListener() {
+            String error;
+
+            @Override
+            public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+                                    int line, int charPositionInLine, String msg,
+                                    RecognitionException e) {
+                if (error == null) {
+                    error = line + ":" + charPositionInLine + ": " + msg;
+                }
+            }
+        };
+        input.seek(0);
+        packed.setInputStream(input);
+        parser.setBuildParseTree(false);
+        try {
+            parsePacked(first);
+        } finally {
+            parser.setBuildParseTree(true);
+        }
+        return first.error;
+    }
+
+    /** {@link #parse(CharStream, ANTLRErrorListener)} over the packed stream's input. */
+    private void parsePacked(ANTLRErrorListener listener) {
+        ParseEvent event = startEvent();
+        boolean metered = Metrics.enabled();
+        long start = metered ? System.nanoTime() : 0;
+        boolean fallback = false;
+        try {
+            var held = new HeldErrors();
+            packed.removeErrorListeners();
+            packed.addErrorListener(held);
+            packed.rewind();
+            reset(packed, bail, PredictionMode.SLL);
+            try {
+                parser.program();
+                sllSuccesses.increment();
+                held.replay(listener);
+                return;
+            } catch (ParseCancellationException e) {
+                llFallbacks.increment();
+                fallback = true;
+            }
+            packed.removeErrorListeners();
+            packed.addErrorListener(listener);
+            packed.rewind();
+            reset(packed, recovering, PredictionMode.LL);
+            parser.addErrorListener(listener);
+            try {
+                parser.program();
+            } finally {
+                parser.removeErrorListeners();
+            }
+        } finally {
+            enforceDfaStateLimit();
+            observe(event, metered, start, packed.getTokenSource().getInputStream().size(), packed.size(), fallback);
+        }
+    }
+
+    /**
+     * {@link ParseEvent#start}, without loading ParseEvent before Flight
+     * Recorder runs: loading an event class sets up JFR's instrumentation,
+     * which would cost a one-file ParseCheck most of its startup.
+     */
+    private static ParseEvent startEvent() {
+        return FlightRecorder.isInitialized() ? ParseEvent.start() : null;
+    }
+
+    /** Records a finished parse: its JFR event, if one was started, and the metrics, if they were on. */
+    private static void observe(ParseEvent event, boolean metered, long start, int characters, int tokens,
+                                boolean fallback) {
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.characters = characters;
+                event.tokens = tokens;
+                event.llFallback = fallback;
+                event.commit();
+            }
+        }
+        if (metered) {
+            PARSED.increment();
+            CHARACTERS.add(characters);
+            TOKENS.add(tokens);
+            if (fallback) {
+                FALLBACKS.increment();
+            }
+            NANOS.record(System.nanoTime() - start);
+        }
+    }
+
+    private void reset(CharStream input, ANTLRErrorListener lexerListener,
+                       ANTLRErrorStrategy strategy, PredictionMode mode) {
+        input.seek(0);
+        lexer.setInputStream(input);
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(lexerListener);
+        tokens.setTokenSource(lexer);
+        parser.setErrorHandler(strategy);
+        parser.setTokenStream(tokens);
+        parser.getInterpreter().setPredictionMode(mode);
+    }
+
+    private void reset(TokenStream input, ANTLRErrorStrategy strategy, PredictionMode mode) {
+        input.seek(0);
+        parser.setErrorHandler(strategy);
+        parser.setTokenStream(input);
+        parser.getInterpreter().setPredictionMode(mode);
+    }
+
+    /** Programs accepted by stage one (SLL) since startup. */
+    public static long sllSuccesses() {
+        return sllSuccesses.sum();
+    }
+
+    /** Programs that needed the full-LL second stage since startup. */
+    public static long llFallbacks() {
+        return llFallbacks.sum();
+    }
+
+    /** States currently held by the shared prediction DFA, over all decisions. */
+    public static int dfaStateCount() {
+        int n = 0;
+        for (DFA dfa : decisionToDFA) {
+            n += dfa.states.size();
+        }
+        return n;
+    }
+
+    /**
+     * Bounds the shared DFA: after any parse that leaves more than
+     * {@code maxStates} states, the DFA is cleared and re-warms from the
+     * next inputs. 0 (the default) means unbounded.
+     */
+    public static void setDfaStateLimit(int maxStates) {
+        if (maxStates < 0) {
+            throw new IllegalArgumentException("maxStates must be >= 0: " + maxStates);
+        }
+        dfaStateLimit = maxStates;
+    }
+
+    /**
+     * Drops every cached DFA state and prediction context. Parses already
+     * running finish correctly; they just stop benefiting from the cache.
+     */
+    public static void clearDFA() {
+        ATN atn = MPLParser._ATN;
+        for (int d = 0; d < decisionToDFA.length; d++) {
+            decisionToDFA[d] = new DFA(atn.getDecisionState(d), d);
+        }
+        contextCache.clear();
+    }
+
+    /**
+     * Writes the shared DFA as it stands to {@code file}, for
+     * {@link #loadDfaSnapshot}; returns the number of states written.
+     */
+    public static int saveDfaSnapshot(Path file) throws IOException {
+        DfaSnapshot frozen = DfaSnapshot.of(decisionToDFA);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            frozen.write(out);
+        }
+        return frozen.states();
+    }
+
+    /**
+     * Predicts from the snapshot in {@code file} before the shared DFA,
+     * in every instance; returns its number of states. An IOException if
+     * it cannot be read or was saved for another grammar, and then the
+     * snapshot loaded before, if any, stays. {@link #clearDFA} leaves it.
+     */
+    public static int loadDfaSnapshot(Path file) throws IOException {
+        DfaSnapshot loaded;
+        try (InputStream in = Files.newInputStream(file)) {
+            loaded = DfaSnapshot.read(in);
+        }
+        snapshot = loaded;
+        return loaded.states();
+    }
+
+    /** Stops predicting from the loaded snapshot, if any. */
+    public static void unloadDfaSnapshot() {
+        snapshot = null;
+    }
+
+    private static DFA[] freshDFA() {
+        ATN atn = MPLParser._ATN;
+        DFA[] dfa = new DFA[atn.getNumberOfDecisions()];
+        for (int d = 0; d < dfa.length; d++) {
+            dfa[d] = new DFA(atn.getDecisionState(d), d);
+        }
+        return dfa;
+    }
+
+    /** ANTLR's simulator on the shared DFA, asking the loaded snapshot first. */
+    static final class SnapshotSimulator extends ParserATNSimulator {
+        SnapshotSimulator(Parser parser) {
+            super(parser, parser.getATN(), TwoStageParser.decisionToDFA, contextCache);
+        }
+
+        @Override
+        public int adaptivePredict(TokenStream input, int decision, ParserRuleContext outerContext) {
+            DfaSnapshot frozen = snapshot;
+            if (frozen != null) {
+                int alt = frozen.predict(decision, input, getPredictionMode() == PredictionMode.SLL);
+                if (alt != ATN.INVALID_ALT_NUMBER) {
+                    return alt;
+                }
+            }
+            return super.adaptivePredict(input, decision, outerContext);
+        }
+    }
+
+    /** ANTLR synchronizes on the cache itself when it reads or adds. */
+    private static final class ClearableContextCache extends PredictionContextCache {
+        synchronized void clear() {
+            cache.clear();
+        }
+    }
+
+    /** Lexer errors of the SLL stage, kept until we know whether it stands. */
+    private static final class HeldErrors extends BaseErrorListener {
+        private final List<Object[]> errors = new ArrayList<>();
+
+        @Override
+        public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+                                int line, int charPositionInLine, String msg,
+                                RecognitionException e) {
+            errors.add(new Object[] {recognizer, offendingSymbol, line, charPositionInLine, msg, e});
+        }
+
+        void replay(ANTLRErrorListener listener) {
+            for (Object[] e : errors) {
+                listener.syntaxError((Recognizer<?, ?>) e[0], e[1], (Integer) e[2], (Integer) e[3],
+                        (String) e[4], (RecognitionException) e[5]);
+            }
+        }
+    }
+}
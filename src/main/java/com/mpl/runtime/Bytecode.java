@@ -0,0 +1,304 @@
+package com.mpl.runtime;
+
+import com.mpl.ast.Ast;
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * An M0 program compiled for the {@link VirtualMachine}: one dense
+ * {@code int[]} of instructions (see {@link Opcode}), a constant pool of
+ * numbers and strings (names included), a function table — function 0 is
+ * the program, each λ in it another — and the source positions errors are
+ * reported at. Immutable; one instance may run on any number of machines.
+ *
+ * {@link #write} and {@link #read} give a versioned binary form, so a
+ * precompiled program starts without lexing or parsing. {@link #read}
+ * checks the structure it loads (opcodes, operand ranges, jump targets),
+ * but it is not a verifier: it trusts stack discipline to the compiler
+ * that wrote the file.
+ */
+public final class Bytecode {
+
+    /** "MPLB". */
+    private static final int MAGIC = 0x4D504C42;
+    private static final int VERSION = 1;
+
+    final int[] code;
+    final Object[] constants;
+    /** Per function: first instruction, parameter count, stack slots it needs. */
+    final int[] entry;
+    final int[] arity;
+    final int[] maxStack;
+    /** Per function and parameter: the name's pool index, or -1 for _. */
+    final int[][] params;
+    /** (pc, line, col) triples by ascending pc: the position of the code from pc on. */
+    final int[] positions;
+    /** (pc, line, col) per step an instruction takes, in the order it takes them. */
+    final int[] steps;
+
+    Bytecode(int[] code, Object[] constants, int[] entry, int[] arity, int[] maxStack, int[][] params,
+             int[] positions, int[] steps) {
+        this.code = code;
+        this.constants = constants;
+        this.entry = entry;
+        this.arity = arity;
+        this.maxStack = maxStack;
+        this.params = params;
+        this.positions = positions;
+        this.steps = steps;
+    }
+
+    /** Compiles a program loaded by the {@link Frontend}. */
+    public static Bytecode compile(Ast program) {
+        return BytecodeCompiler.compile(program);
+    }
+
+    /** Instruction words, operands included. */
+    public int size() {
+        return code.length;
+    }
+
+    public int functionCount() {
+        return entry.length;
+    }
+
+    /** The 1-based line and column errors at {@code pc} are reported at. */
+    int line(int pc) {
+        return positions[position(positions, pc) + 1];
+    }
+
+    int col(int pc) {
+        return positions[position(positions, pc) + 2];
+    }
+
+    /** Index of the last triple in {@code table} at or before {@code pc}. */
+    static int position(int[] table, int pc) {
+        int lo = 0;
+        int hi = table.length / 3 - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (table[mid * 3] <= pc) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo * 3;
+    }
+
+    /** The position of the {@code n}th step (0-based) taken by the instruction at {@code pc}. */
+    MplException stepError(int pc, int n) {
+        int i = position(steps, pc);
+        // position() finds the last triple for pc; walk back to its first.
+        while (i >= 3 && steps[i - 3] == pc) {
+            i -= 3;
+        }
+        i += 3 * n;
+        return new MplException("err_steps", steps[i + 1], steps[i + 2]);
+    }
+
+    // ---- binary form -----------------------------------------------------------
+
+    public void write(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeInts(out, code);
+        out.writeInt(constants.length);
+        for (Object c : constants) {
+            if (c instanceof Rational) {
+                Rational r = (Rational) c;
+                out.writeByte('R');
+                writeBytes(out, r.numerator().toByteArray());
+                writeBytes(out, r.denominator().toByteArray());
+            } else {
+                out.writeByte('S');
+                writeBytes(out, ((String) c).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        out.writeInt(entry.length);
+        for (int f = 0; f < entry.length; f++) {
+            out.writeInt(entry[f]);
+            out.writeInt(maxStack[f]);
+            writeInts(out, params[f]);
+        }
+        writeInts(out, positions);
+        writeInts(out, steps);
+        out.flush();
+    }
+
+    /** Reads what {@link #write} wrote; IOException if it is not that. */
+    public static Bytecode read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not MPL bytecode");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("MPL bytecode version " + version + ", expected " + VERSION);
+        }
+        int[] code = readInts(in);
+        Object[] constants = new Object[count(in)];
+        for (int i = 0; i < constants.length; i++) {
+            int tag = in.readByte();
+            if (tag == 'R') {
+                BigInteger n = new BigInteger(readBytes(in));
+                BigInteger d = new BigInteger(readBytes(in));
+                if (d.signum() <= 0) {
+                    throw new IOException("malformed constant " + i);
+                }
+                constants[i] = Rational.of(n, d);
+            } else if (tag == 'S') {
+                constants[i] = new String(readBytes(in), StandardCharsets.UTF_8);
+            } else {
+                throw new IOException("malformed constant " + i);
+            }
+        }
+        int functions = count(in);
+        int[] entry = new int[functions];
+        int[] arity = new int[functions];
+        int[] maxStack = new int[functions];
+        int[][] params = new int[functions][];
+        for (int f = 0; f < functions; f++) {
+            entry[f] = in.readInt();
+            maxStack[f] = in.readInt();
+            params[f] = readInts(in);
+            arity[f] = params[f].length;
+        }
+        Bytecode program = new Bytecode(code, constants, entry, arity, maxStack, params,
+                readInts(in), readInts(in));
+        program.check();
+        return program;
+    }
+
+    /** The structural checks {@link #read} promises. */
+    private void check() throws IOException {
+        boolean[] starts = new boolean[code.length + 1];
+        for (int pc = 0; pc < code.length; pc += 1 + Opcode.operands(code[pc] & 0xFF)) {
+            int op = code[pc] & 0xFF;
+            if (op >= Opcode.COUNT || pc + Opcode.operands(op) >= code.length) {
+                throw malformed(pc);
+            }
+            starts[pc] = true;
+        }
+        if (entry.length == 0 || entry[0] != 0 || positions.length < 3 || positions.length % 3 != 0
+                || steps.length % 3 != 0) {
+            throw new IOException("malformed MPL bytecode");
+        }
+        for (int f = 0; f < entry.length; f++) {
+            if (entry[f] < 0 || entry[f] >= code.length || !starts[entry[f]] || maxStack[f] < 0) {
+                throw new IOException("malformed function " + f);
+            }
+            for (int p : params[f]) {
+                if (p != -1 && !isName(p)) {
+                    throw new IOException("malformed function " + f);
+                }
+            }
+        }
+        for (int pc = 0; pc < code.length; pc += 1 + Opcode.operands(code[pc] & 0xFF)) {
+            int a = Opcode.operands(code[pc] & 0xFF) > 0 ? code[pc + 1] : 0;
+            int b = Opcode.operands(code[pc] & 0xFF) > 1 ? code[pc + 2] : 0;
+            boolean ok;
+            switch (code[pc] & 0xFF) {
+                case Opcode.CONST:
+                    ok = a >= 0 && a < constants.length;
+                    break;
+                case Opcode.LAMBDA:
+                    ok = a > 0 && a < entry.length;
+                    break;
+                case Opcode.LIST: case Opcode.CALL:
+                    ok = a >= 0;
+                    break;
+                case Opcode.LOAD: case Opcode.STORE:
+                    ok = a >= 0 && b >= 0;
+                    break;
+                case Opcode.LOOKUP: case Opcode.OWNER:
+                    ok = a >= 0 && isName(b);
+                    break;
+                case Opcode.CHECK_NEW: case Opcode.DEFINE: case Opcode.ASSIGN:
+                    ok = isName(a);
+                    break;
+                case Opcode.JUMP: case Opcode.JUMP_FALSE: case Opcode.JUMP_MATCHED:
+                case Opcode.OR: case Opcode.AND: case Opcode.LOOP:
+                    ok = a >= 0 && a < code.length && starts[a];
+                    break;
+                case Opcode.FOR_NEXT:
+                    ok = isName(a) && b >= 0 && b < code.length && starts[b];
+                    break;
+                default:
+                    ok = true;
+            }
+            if (!ok) {
+                throw malformed(pc);
+            }
+        }
+    }
+
+    private boolean isName(int i) {
+        return i >= 0 && i < constants.length && constants[i] instanceof String;
+    }
+
+    private static IOException malformed(int pc) {
+        return new IOException("malformed instruction at " + pc);
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int v : values) {
+            out.writeInt(v);
+        }
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int[] values = new int[count(in)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[count(in)];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static int count(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        if (n < 0) {
+            throw new IOException("malformed MPL bytecode");
+        }
+        return n;
+    }
+
+    /** One instruction per line: pc, steps taken (+n), opcode, operands. */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int f = 0; f < entry.length; f++) {
+            sb.append("function ").append(f).append(" at ").append(entry[f])
+                    .append(", params ").append(Arrays.toString(params[f])).append('\n');
+        }
+        for (int pc = 0; pc < code.length; pc += 1 + Opcode.operands(code[pc] & 0xFF)) {
+            int op = code[pc] & 0xFF;
+            sb.append(String.format("%5d ", pc));
+            sb.append(code[pc] >>> 8 == 0 ? "    " : String.format("+%-3d", code[pc] >>> 8));
+            sb.append(Opcode.name(op));
+            for (int i = 1; i <= Opcode.operands(op); i++) {
+                sb.append(' ').append(code[pc + i]);
+            }
+            if (op == Opcode.CONST) {
+                sb.append("  ; ").append(constants[code[pc + 1]]);
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+}
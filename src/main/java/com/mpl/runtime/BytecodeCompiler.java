@@ -0,0 +1,627 @@
+package com.mpl.runtime;
+
+import com.mpl.ast.Ast;
+import com.mpl.ast.NodeKind;
+import java.util.*;
+
+/**
+ * Ast to {@link Bytecode}. Each expression compiles to code that leaves its
+ * value on the VM's value stack; the program is function 0 and each λ,
+ * compiled after it, is another function.
+ *
+ * Steps are charged where the Interpreter charges them: each expression
+ * the Interpreter would push a frame for adds one step to the first
+ * instruction of its code, so an instruction starting several nested
+ * expressions takes several steps at once, and err_steps falls between the
+ * same two side effects in both engines.
+ *
+ * Names are resolved as {@link LambdaCompiler} resolves them, but across
+ * λ boundaries too: a closure's scope is the one its λ expression ran in,
+ * which is known here. A λ parameter or ∀ binder is read from its slot
+ * ({@link Opcode#LOAD}); a name some ≜ may bind is looked up from the
+ * innermost scope that may hold it.
+ *
+ * An expression {@link ConstantFolding} folds compiles to its value, one
+ * instruction taking the steps of every expression evaluating it would
+ * have started; a guarded alternative it finds never matches compiles to
+ * nothing, its steps taken by the next alternative's first instruction.
+ *
+ * The compiler recurses on the Ast; programs nested deeper than
+ * {@link #NESTING_ON_CALLER} are compiled on a thread with a stack sized
+ * for them.
+ */
+final class BytecodeCompiler {
+
+    static final int NESTING_ON_CALLER = 1_000;
+
+    private final Ast ast;
+    private final ConstantFolding folding;
+
+    private int[] code = new int[256];
+    private int size;
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndex = new HashMap<>();
+    private final IntList positions = new IntList();
+    private final IntList steps = new IntList();
+
+    private final IntList entry = new IntList();
+    private final IntList maxStack = new IntList();
+    private final List<int[]> params = new ArrayList<>();
+    private final ArrayDeque<Function> pending = new ArrayDeque<>();
+
+    /** Expressions whose evaluation starts with the next instruction. */
+    private final IntList starting = new IntList();
+    private Region region;
+    private int depth;
+    private int maxDepth;
+
+    /** One scope the code runs in: the global one, a λ application's, or a ∀ step's. */
+    private static final class Region {
+        final Region parent;
+        /** Names bound on entry, by slot; nothing can rebind them (err_redef). */
+        final Map<String, Integer> bound;
+        /** Names a ≜ in this scope may add. */
+        final Set<String> defined;
+
+        Region(Region parent, Map<String, Integer> bound, Set<String> defined) {
+            this.parent = parent;
+            this.bound = bound;
+            this.defined = defined;
+        }
+    }
+
+    /** A λ waiting for its body to be compiled, with the region it closes over. */
+    private static final class Function {
+        final int lambda;
+        final int index;
+        final Region env;
+
+        Function(int lambda, int index, Region env) {
+            this.lambda = lambda;
+            this.index = index;
+            this.env = env;
+        }
+    }
+
+    private BytecodeCompiler(Ast ast) {
+        this.ast = ast;
+        this.folding = ConstantFolding.of(ast);
+    }
+
+    static Bytecode compile(Ast ast) {
+        if (nesting(ast) <= NESTING_ON_CALLER) {
+            return new BytecodeCompiler(ast).run();
+        }
+        Bytecode[] result = new Bytecode[1];
+        RuntimeException[] failure = new RuntimeException[1];
+        Thread t = new Thread(null, () -> {
+            try {
+                result[0] = new BytecodeCompiler(ast).run();
+            } catch (RuntimeException e) {
+                failure[0] = e;
+            }
+        }, "mpl-compile", (1L << 20) + 1024L * nesting(ast));
+        t.start();
+        try {
+            t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted compiling", e);
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        return result[0];
+    }
+
+    /** The Ast's height: children come before their parents in node order. */
+    private static int nesting(Ast ast) {
+        int[] height = new int[ast.size()];
+        int max = 0;
+        for (int n = 0; n < ast.size(); n++) {
+            int h = 0;
+            for (int i = 0; i < ast.childCount(n); i++) {
+                h = Math.max(h, height[ast.child(n, i)]);
+            }
+            height[n] = h + 1;
+            max = Math.max(max, h + 1);
+        }
+        return max;
+    }
+
+    private Bytecode run() {
+        int root = ast.root();
+        function(new int[0]);
+        region = new Region(null, Map.of(), definitions(root));
+        // The root is not a pushed frame: no step.
+        gen(root);
+        emit(Opcode.HALT, -1);
+        maxStack.set(0, maxDepth);
+        while (!pending.isEmpty()) {
+            Function fn = pending.poll();
+            int lambda = fn.lambda;
+            int body = ast.child(lambda, ast.childCount(lambda) - 1);
+            Map<String, Integer> bound = new HashMap<>();
+            for (int i = 0, slot = 0; i < ast.data(lambda); i++) {
+                int p = ast.child(lambda, i);
+                if (ast.kind(p) == NodeKind.ID) {
+                    bound.putIfAbsent(ast.text(p), slot++);
+                }
+            }
+            entry.set(fn.index, size);
+            region = new Region(fn.env, bound, definitions(body));
+            depth = 0;
+            maxDepth = 0;
+            eval(body);
+            emit(Opcode.RETURN, -1);
+            maxStack.set(fn.index, maxDepth);
+        }
+        return new Bytecode(Arrays.copyOf(code, size), constants.toArray(), entry.toArray(),
+                arities(), maxStack.toArray(), params.toArray(new int[0][]),
+                positions.toArray(), steps.toArray());
+    }
+
+    /** A new function table row; entry and stack size are filled in once compiled. */
+    private int function(int[] names) {
+        entry.add(0);
+        maxStack.add(0);
+        params.add(names);
+        return params.size() - 1;
+    }
+
+    private int[] arities() {
+        int[] a = new int[params.size()];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = params.get(i).length;
+        }
+        return a;
+    }
+
+    /** Names a ≜ may bind in the scope {@code node} runs in (not in nested λs or ∀ bodies). */
+    private Set<String> definitions(int node) {
+        Set<String> names = new HashSet<>();
+        collectDefinitions(node, names);
+        return names;
+    }
+
+    private void collectDefinitions(int node, Set<String> names) {
+        switch (ast.kind(node)) {
+            case NodeKind.LAMBDA:
+                return;
+            case NodeKind.FORALL:
+                collectDefinitions(ast.child(node, 1), names);
+                return;
+            case NodeKind.DEF:
+                names.add(ast.text(ast.child(node, 0)));
+                break;
+            default:
+                break;
+        }
+        for (int i = 0; i < ast.childCount(node); i++) {
+            collectDefinitions(ast.child(node, i), names);
+        }
+    }
+
+    // ---- code generation ---------------------------------------------------------
+    // gen(node) leaves the node's value on the stack; eval(node) is what a
+    // push of a child frame is: one step, then the value.
+
+    private void eval(int node) {
+        starting.add(node);
+        gen(node);
+    }
+
+    /** eval, then the unmatched-guard sentinel as ⊥ if the node can produce it. */
+    private void value(int node) {
+        eval(node);
+        if (mayNotMatch(node)) {
+            emit(Opcode.STRIP, -1);
+        }
+    }
+
+    /** Whether a node's value can be the sentinel: a guard, or | of nothing but such. */
+    private boolean mayNotMatch(int node) {
+        switch (ast.kind(node)) {
+            case NodeKind.IMPLIES:
+                return true;
+            case NodeKind.ALT:
+                for (int i = 0; i < ast.childCount(node); i++) {
+                    if (!mayNotMatch(ast.child(node, i))) {
+                        return false;
+                    }
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void gen(int node) {
+        if (folding.value(node) != null) {
+            genFolded(node);
+            return;
+        }
+        int kind = ast.kind(node);
+        switch (kind) {
+            case NodeKind.NUM:
+                emit(Opcode.CONST, node, constant(Rational.parse(ast.text(node))));
+                push(1);
+                break;
+            case NodeKind.STR:
+                emit(Opcode.CONST, node, constant(ast.text(node)));
+                push(1);
+                break;
+            case NodeKind.TRUE:
+                emit(Opcode.TRUE, node);
+                push(1);
+                break;
+            case NodeKind.FALSE:
+                emit(Opcode.FALSE, node);
+                push(1);
+                break;
+            case NodeKind.BOTTOM:
+                emit(Opcode.BOTTOM, node);
+                push(1);
+                break;
+            case NodeKind.ID:
+                genLookup(ast.text(node), node);
+                break;
+            case NodeKind.LAMBDA: {
+                int[] names = new int[ast.data(node)];
+                for (int i = 0; i < names.length; i++) {
+                    int p = ast.child(node, i);
+                    names[i] = ast.kind(p) == NodeKind.ID ? constant(ast.text(p)) : -1;
+                }
+                int index = function(names);
+                pending.add(new Function(node, index, region));
+                emit(Opcode.LAMBDA, node, index);
+                push(1);
+                break;
+            }
+            case NodeKind.SEQ:
+            case NodeKind.PARALLEL: {
+                // ‖ runs its branches in order (M0 has no concurrency).
+                int n = ast.childCount(node);
+                if (n == 0) {
+                    emit(Opcode.BOTTOM, node);
+                    push(1);
+                    break;
+                }
+                for (int i = 0; i < n - 1; i++) {
+                    eval(ast.child(node, i));
+                    emit(Opcode.POP, -1);
+                    push(-1);
+                }
+                value(ast.child(node, n - 1));
+                break;
+            }
+            case NodeKind.DEF: {
+                int name = constant(ast.text(ast.child(node, 0)));
+                emit(Opcode.CHECK_NEW, node, name);
+                value(ast.child(node, 1));
+                emit(Opcode.DEFINE, node, name);
+                break;
+            }
+            case NodeKind.ASSIGN:
+                genAssign(node);
+                break;
+            case NodeKind.ALT:
+                genAlternatives(node);
+                break;
+            case NodeKind.IMPLIES: {
+                value(ast.child(node, 0));
+                int unmatched = jump(Opcode.JUMP_FALSE, node);
+                push(-1);
+                eval(ast.child(node, 1));
+                int end = jump(Opcode.JUMP, -1);
+                push(-1);
+                patch(unmatched);
+                emit(Opcode.NOMATCH, -1);
+                push(1);
+                patch(end);
+                break;
+            }
+            case NodeKind.OR:
+            case NodeKind.AND: {
+                value(ast.child(node, 0));
+                int end = jump(kind == NodeKind.OR ? Opcode.OR : Opcode.AND, node);
+                push(-1);
+                value(ast.child(node, 1));
+                emit(Opcode.BOOL, node);
+                patch(end);
+                break;
+            }
+            case NodeKind.EQ: case NodeKind.NEQ: case NodeKind.LT: case NodeKind.GT:
+            case NodeKind.LEQ: case NodeKind.GEQ:
+            case NodeKind.ADD: case NodeKind.SUB: case NodeKind.MUL: case NodeKind.DIV:
+            case NodeKind.COMPOSE:
+                value(ast.child(node, 0));
+                value(ast.child(node, 1));
+                emit(binary(kind), node);
+                push(-1);
+                break;
+            case NodeKind.NEG:
+            case NodeKind.TRACE:
+                value(ast.child(node, 0));
+                emit(kind == NodeKind.NEG ? Opcode.NEG : Opcode.TRACE, node);
+                break;
+            case NodeKind.CALL: {
+                int n = ast.childCount(node);
+                value(ast.child(node, 0));
+                emit(Opcode.CHECK_FN, node);
+                for (int i = 1; i < n; i++) {
+                    value(ast.child(node, i));
+                }
+                emit(Opcode.CALL, node, n - 1);
+                push(-(n - 1));
+                break;
+            }
+            case NodeKind.LIST: {
+                int n = ast.childCount(node);
+                for (int i = 0; i < n; i++) {
+                    value(ast.child(node, i));
+                }
+                emit(Opcode.LIST, node, n);
+                push(1 - n);
+                break;
+            }
+            case NodeKind.FORALL:
+                genForall(node);
+                break;
+            default:
+                // Sets and records (rulings 23, 24) and every M1 form.
+                emit(Opcode.NOTYET, node);
+                push(1);
+                break;
+        }
+    }
+
+    private static int binary(int kind) {
+        switch (kind) {
+            case NodeKind.EQ: return Opcode.EQ;
+            case NodeKind.NEQ: return Opcode.NEQ;
+            case NodeKind.LT: return Opcode.LT;
+            case NodeKind.GT: return Opcode.GT;
+            case NodeKind.LEQ: return Opcode.LEQ;
+            case NodeKind.GEQ: return Opcode.GEQ;
+            case NodeKind.ADD: return Opcode.ADD;
+            case NodeKind.SUB: return Opcode.SUB;
+            case NodeKind.MUL: return Opcode.MUL;
+            case NodeKind.DIV: return Opcode.DIV;
+            default: return Opcode.COMPOSE;
+        }
+    }
+
+    /**
+     * The first alternative that is not an unmatched guard, unstripped. A
+     * guard alternative jumps straight past the rest on a match and to the
+     * next alternative on a false condition, without making the sentinel;
+     * alternatives after one that always matches are never reached and not
+     * compiled.
+     */
+    private void genAlternatives(int node) {
+        int n = ast.childCount(node);
+        IntList ends = new IntList();
+        int base = depth;
+        for (int i = 0; i < n; i++) {
+            int alt = ast.child(node, i);
+            depth = base;
+            Object folded = folding.value(alt);
+            if (folded == Values.NOMATCH && i < n - 1) {
+                folding.trace(alt, starting::add);
+                continue;
+            }
+            if (i == n - 1 || folded != null) {
+                eval(alt);
+                break;
+            }
+            if (ast.kind(alt) == NodeKind.IMPLIES) {
+                starting.add(alt);
+                value(ast.child(alt, 0));
+                int next = jump(Opcode.JUMP_FALSE, alt);
+                push(-1);
+                int result = ast.child(alt, 1);
+                eval(result);
+                ends.add(jump(mayNotMatch(result) ? Opcode.JUMP_MATCHED : Opcode.JUMP, -1));
+                patch(next);
+            } else {
+                eval(alt);
+                if (!mayNotMatch(alt)) {
+                    break;
+                }
+                ends.add(jump(Opcode.JUMP_MATCHED, -1));
+            }
+        }
+        depth = base + 1;
+        for (int i = 0; i < ends.size(); i++) {
+            patch(ends.get(i));
+        }
+    }
+
+    /** A folded expression's value, with the steps of the expressions it would have started. */
+    private void genFolded(int node) {
+        // The node's own step, if it takes one, is already waiting.
+        folding.trace(node, n -> {
+            if (n != node) {
+                starting.add(n);
+            }
+        });
+        Object value = folding.value(node);
+        if (value == Boolean.TRUE) {
+            emit(Opcode.TRUE, node);
+        } else if (value == Boolean.FALSE) {
+            emit(Opcode.FALSE, node);
+        } else if (value == Values.BOTTOM) {
+            emit(Opcode.BOTTOM, node);
+        } else if (value == Values.NOMATCH) {
+            emit(Opcode.NOMATCH, node);
+        } else {
+            emit(Opcode.CONST, node, constant(value));
+        }
+        push(1);
+    }
+
+    private void genForall(int node) {
+        // Validated by the Frontend: one bound name.
+        String name = ast.text(ast.child(node, 0));
+        value(ast.child(node, 1));
+        emit(Opcode.ITER, node);
+        int loop = size;
+        int done = jump(Opcode.FOR_NEXT, node, constant(name));
+        int body = ast.child(node, 2);
+        region = new Region(region, Map.of(name, 0), definitions(body));
+        eval(body);
+        region = region.parent;
+        emit(Opcode.LOOP, -1, loop);
+        push(-1);
+        // Ruling 2: ∀ is ⊥, which FOR_NEXT leaves in place of the list.
+        patch(done);
+    }
+
+    private void genAssign(int node) {
+        String name = ast.text(ast.child(node, 0));
+        int hops = 0;
+        for (Region r = region; ; r = r.parent, hops++) {
+            Integer slot = r.bound.get(name);
+            if (slot != null) {
+                // Bound for certain: ← cannot fail.
+                value(ast.child(node, 1));
+                emit(Opcode.STORE, node, hops, slot);
+                return;
+            }
+            if (r.defined.contains(name) || r.parent == null) {
+                break;
+            }
+        }
+        int pooled = constant(name);
+        emit(Opcode.OWNER, node, hops, pooled);
+        push(1);
+        value(ast.child(node, 1));
+        emit(Opcode.ASSIGN, node, pooled);
+        push(-1);
+    }
+
+    /**
+     * A name's value. Scopes that cannot bind it are skipped; a binder's
+     * slot is read directly; otherwise it is searched for by name from the
+     * innermost scope a ≜ may have added it to (from the global scope if
+     * none: err_undef unless something outside the program bound it).
+     */
+    private void genLookup(String name, int node) {
+        int hops = 0;
+        for (Region r = region; ; r = r.parent, hops++) {
+            Integer slot = r.bound.get(name);
+            if (slot != null) {
+                emit(Opcode.LOAD, node, hops, slot);
+                push(1);
+                return;
+            }
+            if (r.defined.contains(name) || r.parent == null) {
+                break;
+            }
+        }
+        emit(Opcode.LOOKUP, node, hops, constant(name));
+        push(1);
+    }
+
+    // ---- emission ----------------------------------------------------------------
+
+    private int constant(Object value) {
+        Integer i = constantIndex.get(value);
+        if (i == null) {
+            i = constants.size();
+            constants.add(value);
+            constantIndex.put(value, i);
+        }
+        return i;
+    }
+
+    /**
+     * Appends an instruction reported at {@code node} (-1: it raises
+     * nothing). It takes the steps of the expressions starting here.
+     */
+    private void emit(int op, int node, int... operands) {
+        if (size + 1 + operands.length > code.length) {
+            code = Arrays.copyOf(code, Math.max(code.length * 2, size + 1 + operands.length));
+        }
+        int pc = size;
+        code[size++] = op | starting.size() << 8;
+        for (int operand : operands) {
+            code[size++] = operand;
+        }
+        for (int i = 0; i < starting.size(); i++) {
+            int n = starting.get(i);
+            steps.add(pc, ast.line(n), ast.col(n) + 1);
+        }
+        starting.clear();
+        if (node >= 0) {
+            int line = ast.line(node);
+            int col = ast.col(node) + 1;
+            int last = positions.size() - 3;
+            if (last < 0 || positions.get(last + 1) != line || positions.get(last + 2) != col) {
+                positions.add(pc, line, col);
+            }
+        } else if (positions.size() == 0) {
+            positions.add(pc, 1, 1);
+        }
+    }
+
+    /** Emits a jump whose target is patched later; returns the operand to patch. */
+    private int jump(int op, int node, int... leading) {
+        int[] operands = Arrays.copyOf(leading, leading.length + 1);
+        emit(op, node, operands);
+        return size - 1;
+    }
+
+    /** Points a jump at the next instruction. */
+    private void patch(int operand) {
+        // Steps waiting for the next instruction would be taken by the jump too.
+        assert starting.size() == 0;
+        code[operand] = size;
+    }
+
+    /** Tracks the stack height the code reaches. */
+    private void push(int n) {
+        depth += n;
+        maxDepth = Math.max(maxDepth, depth);
+    }
+
+    /** A growable int array. */
+    private static final class IntList {
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int v) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = v;
+        }
+
+        void add(int a, int b, int c) {
+            add(a);
+            add(b);
+            add(c);
+        }
+
+        int get(int i) {
+            return values[i];
+        }
+
+        void set(int i, int v) {
+            values[i] = v;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.mpl.runtime;
+
+/** A λ together with the scope it was evaluated in (ruling 9). */
+final class Closure extends FunctionValue {
+
+    final int lambda;
+    final Scope env;
+
+    Closure(int lambda, Scope env) {
+        this.lambda = lambda;
+        this.env = env;
+    }
+}
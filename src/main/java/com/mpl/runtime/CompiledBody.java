@@ -0,0 +1,8 @@
+package com.mpl.runtime;
+
+/** A λ body compiled by {@link LambdaCompiler}, run in the λ's entered scope. */
+interface CompiledBody {
+
+    /** The body's value, unstripped (it may be the unmatched-guard sentinel). */
+    Object run(Interpreter in, Scope scope);
+}
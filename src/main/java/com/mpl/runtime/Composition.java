@@ -0,0 +1,13 @@
+package com.mpl.runtime;
+
+/** f ∘ g: applied to args, applies g to them and f to the result (ruling 22). */
+final class Composition extends FunctionValue {
+
+    final FunctionValue f;
+    final FunctionValue g;
+
+    Composition(FunctionValue f, FunctionValue g) {
+        this.f = f;
+        this.g = g;
+    }
+}
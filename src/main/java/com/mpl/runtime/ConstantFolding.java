@@ -0,0 +1,268 @@
+package com.mpl.runtime;
+
+import com.mpl.ast.Ast;
+import com.mpl.ast.NodeKind;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * The constant-folding pass: the value of every expression made only of
+ * literals, worked out once per {@link Ast} so the engines need not
+ * evaluate it on every run. Numbers are exact rationals (ruling 4), so a
+ * folded value is the value evaluation yields, to the last digit.
+ *
+ * Folded are arithmetic (+ − × ÷, unary −), comparisons, ∧ and ∨, guards
+ * and | over constant operands, with evaluation's own short-circuits: a
+ * ∧ whose left side is false is false whatever its right side, a guard
+ * whose condition is false is an unmatched guard whatever its result, and
+ * | takes its first matched alternative. A guard whose condition is
+ * constant is thus decided here, and the alternative it guards is pruned.
+ * Lists, ✎, calls and everything that binds are never folded.
+ *
+ * Folding never moves an error. Each operation runs the interpreter's own
+ * code; one that raises (1 ÷ 0, err_bool, err_num, err_compare, …) leaves
+ * its node, and every node around it, to be evaluated at run time, where
+ * the error is raised at its own line and column as before.
+ *
+ * Steps are not folded away either: a folded node records its cost, the
+ * frames evaluating it would push, itself included, and the engines charge
+ * it in full, with the heap its values would have taken. Where that would
+ * cross a budget the interpreter evaluates the node after all, so
+ * err_steps and err_heap still fall on the node they always fell on.
+ */
+public final class ConstantFolding {
+
+    private final Ast ast;
+    /** Per node: its constant value, or null. Literals included. */
+    private final Object[] values;
+    /** Per constant node: the frames evaluating it pushes; 0 for the rest. */
+    private final int[] costs;
+    /** Per constant node: the bytes of the values evaluating it makes (see {@link Governor}). */
+    private final long[] bytes;
+    private final int folded;
+    private final int eliminated;
+
+    private ConstantFolding(Ast ast, Object[] values, int[] costs, long[] bytes, int folded, int eliminated) {
+        this.ast = ast;
+        this.values = values;
+        this.costs = costs;
+        this.bytes = bytes;
+        this.folded = folded;
+        this.eliminated = eliminated;
+    }
+
+    /** Folds every constant expression in {@code ast}. */
+    public static ConstantFolding of(Ast ast) {
+        Interpreter ops = Interpreter.operations(ast);
+        int n = ast.size();
+        Object[] values = new Object[n];
+        int[] costs = new int[n];
+        long[] bytes = new long[n];
+        int[] parent = new int[n];
+        int[] sizes = new int[n];
+        parent[ast.root()] = -1;
+        // Children come before their parents in node order.
+        for (int node = 0; node < n; node++) {
+            sizes[node] = 1;
+            for (int i = 0; i < ast.childCount(node); i++) {
+                int c = ast.child(node, i);
+                parent[c] = node;
+                sizes[node] += sizes[c];
+            }
+            long before = ops.allocated();
+            try {
+                fold(ast, ops, node, values, costs, bytes);
+            } catch (MplException e) {
+                // Raised at run time, where it belongs.
+                values[node] = null;
+                costs[node] = 0;
+            }
+            if (costs[node] > 0) {
+                bytes[node] += ops.allocated() - before;
+            }
+        }
+        int folded = 0;
+        int eliminated = 0;
+        for (int node = 0; node < n; node++) {
+            if (costs[node] > 1 && (parent[node] < 0 || costs[parent[node]] <= 1)) {
+                folded++;
+                eliminated += sizes[node] - 1;
+            }
+        }
+        return new ConstantFolding(ast, values, costs, bytes, folded, eliminated);
+    }
+
+    private static void fold(Ast ast, Interpreter ops, int node, Object[] values, int[] costs, long[] bytes) {
+        int kind = ast.kind(node);
+        Object value;
+        int cost = 1;
+        long made = 0;
+        switch (kind) {
+            case NodeKind.NUM:
+                value = Rational.parse(ast.text(node));
+                break;
+            case NodeKind.STR:
+                value = ast.text(node);
+                break;
+            case NodeKind.TRUE:
+                value = Boolean.TRUE;
+                break;
+            case NodeKind.FALSE:
+                value = Boolean.FALSE;
+                break;
+            case NodeKind.BOTTOM:
+                value = Values.BOTTOM;
+                break;
+            case NodeKind.EQ: case NodeKind.NEQ: case NodeKind.LT: case NodeKind.GT:
+            case NodeKind.LEQ: case NodeKind.GEQ:
+            case NodeKind.ADD: case NodeKind.SUB: case NodeKind.MUL: case NodeKind.DIV: {
+                int a = ast.child(node, 0);
+                int b = ast.child(node, 1);
+                if (costs[a] == 0 || costs[b] == 0) {
+                    return;
+                }
+                value = ops.binary(kind, node, Values.strip(values[a]), Values.strip(values[b]));
+                cost += costs[a] + costs[b];
+                made += bytes[a] + bytes[b];
+                break;
+            }
+            case NodeKind.NEG: {
+                int a = ast.child(node, 0);
+                if (costs[a] == 0) {
+                    return;
+                }
+                value = ops.negate(Values.strip(values[a]), node);
+                cost += costs[a];
+                made += bytes[a];
+                break;
+            }
+            case NodeKind.OR:
+            case NodeKind.AND: {
+                int a = ast.child(node, 0);
+                int b = ast.child(node, 1);
+                if (costs[a] == 0) {
+                    return;
+                }
+                boolean shortCircuit = kind == NodeKind.OR;
+                cost += costs[a];
+                made += bytes[a];
+                if (ops.bool(Values.strip(values[a]), node) == shortCircuit) {
+                    value = shortCircuit;
+                } else if (costs[b] == 0) {
+                    return;
+                } else {
+                    value = ops.bool(Values.strip(values[b]), node);
+                    cost += costs[b];
+                    made += bytes[b];
+                }
+                break;
+            }
+            case NodeKind.IMPLIES: {
+                int guard = ast.child(node, 0);
+                int result = ast.child(node, 1);
+                if (costs[guard] == 0) {
+                    return;
+                }
+                cost += costs[guard];
+                made += bytes[guard];
+                if (!ops.bool(Values.strip(values[guard]), node)) {
+                    value = Values.NOMATCH;
+                } else if (costs[result] == 0) {
+                    return;
+                } else {
+                    // Unstripped, as the guard yields it.
+                    value = values[result];
+                    cost += costs[result];
+                    made += bytes[result];
+                }
+                break;
+            }
+            case NodeKind.ALT: {
+                value = Values.NOMATCH;
+                for (int i = 0; i < ast.childCount(node) && value == Values.NOMATCH; i++) {
+                    int alt = ast.child(node, i);
+                    if (costs[alt] == 0) {
+                        return;
+                    }
+                    value = values[alt];
+                    cost += costs[alt];
+                    made += bytes[alt];
+                }
+                break;
+            }
+            default:
+                return;
+        }
+        values[node] = value;
+        costs[node] = cost;
+        bytes[node] = made;
+    }
+
+    /** The value of a folded node; null for a literal or a node that is not constant. */
+    Object value(int node) {
+        return costs[node] > 1 ? values[node] : null;
+    }
+
+    /** The frames evaluating a folded node pushes, itself included. */
+    int cost(int node) {
+        return costs[node];
+    }
+
+    /** The bytes of the values evaluating a folded node makes. */
+    long bytes(int node) {
+        return bytes[node];
+    }
+
+    /**
+     * The nodes evaluating a folded {@code node} pushes frames for, in the
+     * order the interpreter pushes them, {@code node} first.
+     */
+    void trace(int node, IntConsumer into) {
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = node;
+        while (top > 0) {
+            int n = stack[--top];
+            into.accept(n);
+            int reached = reached(n);
+            if (top + reached > stack.length) {
+                stack = Arrays.copyOf(stack, 2 * (top + reached));
+            }
+            for (int i = reached - 1; i >= 0; i--) {
+                stack[top++] = ast.child(n, i);
+            }
+        }
+    }
+
+    /** How many of a constant node's children its evaluation reaches. */
+    private int reached(int node) {
+        switch (ast.kind(node)) {
+            case NodeKind.OR:
+            case NodeKind.AND: {
+                Boolean shortCircuit = ast.kind(node) == NodeKind.OR;
+                return shortCircuit.equals(values[ast.child(node, 0)]) ? 1 : 2;
+            }
+            case NodeKind.IMPLIES:
+                return Boolean.FALSE.equals(values[ast.child(node, 0)]) ? 1 : 2;
+            case NodeKind.ALT: {
+                int i = 0;
+                while (values[ast.child(node, i)] == Values.NOMATCH && i < ast.childCount(node) - 1) {
+                    i++;
+                }
+                return i + 1;
+            }
+            default:
+                return ast.childCount(node);
+        }
+    }
+
+    /** Expressions folded: constant nodes whose parent is not constant, literals aside. */
+    public int folded() {
+        return folded;
+    }
+
+    /** Nodes no engine evaluates any more: those below each folded expression. */
+    public int eliminated() {
+        return eliminated;
+    }
+}
@@ -0,0 +1,321 @@
+package com.mpl.runtime;
+
+import com.mpl.ast.Ast;
+import com.mpl.ast.AstBuilder;
+import com.mpl.ast.NodeKind;
+import com.mpl.ast.ParseCache;
+import com.mpl.parser.MPLLexer;
+import com.mpl.parser.MPLParser;
+import com.mpl.parser.TwoStageParser;
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.misc.IntervalSet;
+import java.util.BitSet;
+
+/**
+ * Source text to an M0-checked {@link Ast}, or the {@link MplException} the
+ * reference engine (js/mpl.js) raises for the same source.
+ *
+ * Three passes, in the reference engine's order:
+ * <ol>
+ * <li>Lex. The first lexer error, or the first token of a construct that is
+ *     not M0 (↯, ⊕, ⟨, _, …), is fatal: err_escape if it starts with a
+ *     backslash or is a string that breaks at an escape, err_string for an
+ *     unterminated string, err_char otherwise.</li>
+ * <li>Parse, through {@link TwoStageParser}. The first syntax error is
+ *     err_unexpected where the reference parser was reading an operand (the
+ *     start of an expression would have fit, perhaps beside a closing
+ *     bracket or EOF), err_expect where it wanted a particular token.</li>
+ * <li>Check what MPL.g4 accepts but M0 does not: ≜ and ← need an identifier
+ *     on the left (err_def_target, err_assign_target) and ∀ binds exactly
+ *     one name (err_expect).</li>
+ * </ol>
+ * Positions are 1-based line and column. With a {@link ParseCache}, a
+ * program the cache has seen parse skips pass 2 for the cached tree, and
+ * every parse is recorded there. Not thread-safe; use one per thread.
+ */
+public final class Frontend {
+
+    /** Tokens M0 does not have; their appearance is a lexical error. */
+    private static final BitSet NOT_M0 = tokens(
+            MPLLexer.APPROX, MPLLexer.SIM, MPLLexer.RAISE, MPLLexer.BREAK, MPLLexer.DELAY,
+            MPLLexer.HANDLE, MPLLexer.ALLOC, MPLLexer.RELEASE, MPLLexer.MODULE, MPLLexer.EXPORT,
+            MPLLexer.SEND, MPLLexer.RECEIVE, MPLLexer.PATH, MPLLexer.PERIODIC, MPLLexer.EMPTYSET,
+            MPLLexer.LANGLE, MPLLexer.RANGLE, MPLLexer.LCEIL, MPLLexer.RCEIL,
+            MPLLexer.LRAII, MPLLexer.RRAII, MPLLexer.ULCORNER, MPLLexer.URCORNER,
+            MPLLexer.LLCORNER, MPLLexer.LRCORNER, MPLLexer.UNDERSCORE, MPLLexer.MIDDOT);
+
+    /** Tokens that can begin an expression. */
+    private static final BitSet EXPRESSION_START = tokens(
+            MPLLexer.TRACE, MPLLexer.MINUS, MPLLexer.RAISE, MPLLexer.BREAK, MPLLexer.DELAY,
+            MPLLexer.SEND, MPLLexer.RECEIVE, MPLLexer.LAMBDA_VAR, MPLLexer.FORALL,
+            MPLLexer.LPAREN, MPLLexer.LBRACK, MPLLexer.LBRACE, MPLLexer.LANGLE, MPLLexer.LCEIL,
+            MPLLexer.LRAII, MPLLexer.ULCORNER, MPLLexer.LLCORNER, MPLLexer.PERIODIC,
+            MPLLexer.MODULE, MPLLexer.PATH, MPLLexer.IDENTIFIER, MPLLexer.NUMBER,
+            MPLLexer.STRING, MPLLexer.RAWSTRING, MPLLexer.TRUE, MPLLexer.FALSE,
+            MPLLexer.BOTTOM, MPLLexer.EMPTYSET,
+            MPLLexer.ALPHA, MPLLexer.BETA, MPLLexer.GAMMA, MPLLexer.DELTA, MPLLexer.EPSILON,
+            MPLLexer.ZETA, MPLLexer.ETA, MPLLexer.THETA, MPLLexer.IOTA, MPLLexer.KAPPA,
+            MPLLexer.MU, MPLLexer.NU, MPLLexer.XI, MPLLexer.OMICRON, MPLLexer.PI, MPLLexer.RHO,
+            MPLLexer.SIGMA, MPLLexer.TAU, MPLLexer.UPSILON, MPLLexer.PHI, MPLLexer.CHI,
+            MPLLexer.PSI, MPLLexer.OMEGA, MPLLexer.NAT, MPLLexer.INT, MPLLexer.RAT,
+            MPLLexer.REAL, MPLLexer.COMPLEX, MPLLexer.BOOL);
+
+    /** Brackets that may close an empty list, argument list or block; EOF counts too. */
+    private static final BitSet CLOSE = tokens(MPLLexer.RPAREN, MPLLexer.RBRACK, MPLLexer.RBRACE);
+
+    private final MPLLexer lexer = new MPLLexer(CharStreams.fromString(""));
+    private final TwoStageParser parser = new TwoStageParser();
+    private final ParseCache cache;
+
+    /** A front end using the {@link ParseCache#configured} cache, if there is one. */
+    public Frontend() {
+        this(ParseCache.configured());
+    }
+
+    /** A front end using {@code cache}; null for none. */
+    public Frontend(ParseCache cache) {
+        this.cache = cache;
+        lexer.removeErrorListeners();
+    }
+
+    public Ast load(String source) {
+        CharStream input = CharStreams.fromString(source);
+        Token late = lex(input);
+        ParseCache.Entry cached = cache == null ? null : cache.lookup(source);
+        Ast ast;
+        if (cached != null && cached.ok()) {
+            if (late != null) {
+                throw error("err_expect", late.getLine(), late.getCharPositionInLine());
+            }
+            ast = cached.ast();
+        } else {
+            // A cached error is not enough: which key it gets depends on the
+            // parser state at the error.
+            FirstError first = new FirstError();
+            MPLParser.ProgramContext tree = parser.parse(input, first);
+            ast = first.line < 0 ? AstBuilder.build(tree) : null;
+            if (cache != null && cached == null) {
+                cache.store(source, first.message, ast);
+            }
+            if (late != null && (first.line < 0 || before(late.getLine(), late.getCharPositionInLine(),
+                    first.line, first.col))) {
+                throw error("err_expect", late.getLine(), late.getCharPositionInLine());
+            }
+            if (first.line >= 0) {
+                throw error(first.unexpected ? "err_unexpected" : "err_expect", first.line, first.col);
+            }
+        }
+        check(ast);
+        return ast;
+    }
+
+    /**
+     * Pass 1. Throws on a lexical error; otherwise returns the first token
+     * the reference lexer would have split differently so that its parser
+     * fails there (a hex, binary or exponent NUMBER, a """raw""" string),
+     * or null.
+     */
+    private Token lex(CharStream input) {
+        LexError err = new LexError();
+        lexer.setInputStream(input);
+        lexer.addErrorListener(err);
+        Token late = null;
+        try {
+            for (Token t = lexer.nextToken(); ; t = lexer.nextToken()) {
+                if (err.line >= 0) {
+                    throw lexError(input, err);
+                }
+                int type = t.getType();
+                if (type == Token.EOF) {
+                    return late;
+                }
+                String text = t.getText();
+                boolean escaped = text.charAt(0) == '\\';
+                if (NOT_M0.get(type)) {
+                    throw error(escaped ? "err_escape" : "err_char", t.getLine(), t.getCharPositionInLine());
+                }
+                // The reference lexer reads a whole backslash word: \into is
+                // an unknown escape there, not \int followed by o.
+                if (escaped && isAsciiLetter(input, t.getStopIndex() + 1)) {
+                    throw error("err_escape", t.getLine(), t.getCharPositionInLine());
+                }
+                if (late == null && (type == MPLLexer.RAWSTRING
+                        || (type == MPLLexer.NUMBER && !isDecimal(text)))) {
+                    late = t;
+                }
+            }
+        } finally {
+            lexer.removeErrorListeners();
+        }
+    }
+
+    private static MplException lexError(CharStream input, LexError err) {
+        int c = charAt(input, err.index);
+        if (c == '\\') {
+            return error("err_escape", err.line, err.col);
+        }
+        if (c != '"') {
+            return error("err_char", err.line, err.col);
+        }
+        // An unterminated string, or an escape outside ruling 12 (reported
+        // at its backslash)?
+        int line = err.line;
+        int col = err.col;
+        for (int i = err.index + 1; ; i++) {
+            c = charAt(input, i);
+            col++;
+            if (c == IntStream.EOF) {
+                return error("err_string", err.line, err.col);
+            }
+            if (c == '\\') {
+                int e = charAt(input, ++i);
+                if (e == IntStream.EOF) {
+                    return error("err_string", err.line, err.col);
+                }
+                if (e != 'n' && e != 't' && e != '"' && e != '\\') {
+                    return error("err_escape", line, col);
+                }
+                col++;
+            } else if (c == '"') {
+                return error("err_char", err.line, err.col);
+            } else if (c == '\n') {
+                line++;
+                col = -1;
+            }
+        }
+    }
+
+    private static int charAt(CharStream input, int index) {
+        if (index >= input.size()) {
+            return IntStream.EOF;
+        }
+        // The lexer may be mid-stream: look, then put the position back.
+        int at = input.index();
+        input.seek(index);
+        int c = input.LA(1);
+        input.seek(at);
+        return c;
+    }
+
+    private static boolean isAsciiLetter(CharStream input, int index) {
+        int c = charAt(input, index);
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isDecimal(String number) {
+        for (int i = 0; i < number.length(); i++) {
+            char c = number.charAt(i);
+            if ((c < '0' || c > '9') && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Pass 3: the earliest M0 violation the grammar let through. */
+    private static void check(Ast ast) {
+        String key = null;
+        int line = 0;
+        int col = 0;
+        for (int n = 0; n < ast.size(); n++) {
+            int k = ast.kind(n);
+            String found = null;
+            int at = n;
+            if (k == NodeKind.DEF && ast.kind(ast.child(n, 0)) != NodeKind.ID) {
+                found = "err_def_target";
+            } else if (k == NodeKind.ASSIGN && ast.kind(ast.child(n, 0)) != NodeKind.ID) {
+                found = "err_assign_target";
+            } else if (k == NodeKind.FORALL && ast.data(n) != 1) {
+                found = "err_expect";
+                at = ast.child(n, 1);
+            }
+            if (found != null && (key == null || before(ast.line(at), ast.col(at), line, col))) {
+                key = found;
+                line = ast.line(at);
+                col = ast.col(at);
+            }
+        }
+        if (key != null) {
+            throw error(key, line, col);
+        }
+    }
+
+    private static boolean before(int line, int col, int otherLine, int otherCol) {
+        return line < otherLine || (line == otherLine && col < otherCol);
+    }
+
+    /** An error at an ANTLR position (0-based column). */
+    private static MplException error(String key, int line, int charPositionInLine) {
+        return new MplException(key, line, charPositionInLine + 1);
+    }
+
+    private static BitSet tokens(int... types) {
+        BitSet set = new BitSet();
+        for (int t : types) {
+            set.set(t);
+        }
+        return set;
+    }
+
+    private static final class LexError extends BaseErrorListener {
+        int line = -1;
+        int col;
+        int index;
+
+        @Override
+        public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+                                int line, int charPositionInLine, String msg,
+                                RecognitionException e) {
+            if (this.line < 0) {
+                this.line = line;
+                this.col = charPositionInLine;
+                this.index = e instanceof LexerNoViableAltException
+                        ? ((LexerNoViableAltException) e).getStartIndex()
+                        : ((Lexer) recognizer)._tokenStartCharIndex;
+            }
+        }
+    }
+
+    private static final class FirstError extends BaseErrorListener {
+        int line = -1;
+        int col;
+        String message;
+        boolean unexpected;
+
+        @Override
+        public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+                                int line, int charPositionInLine, String msg,
+                                RecognitionException e) {
+            if (this.line >= 0) {
+                return;
+            }
+            this.line = line;
+            this.col = charPositionInLine;
+            this.message = line + ":" + charPositionInLine + ": " + msg;
+            if (recognizer instanceof Parser) {
+                // The reference parser ends a sequence at "; <closer>" and
+                // then wants the closer; anywhere else an expression start
+                // means it was reading an operand.
+                Parser parser = (Parser) recognizer;
+                Token at = (Token) offendingSymbol;
+                if (endsSequence(at, parser.getInputStream())) {
+                    return;
+                }
+                for (int t : parser.getExpectedTokens().toArray()) {
+                    if (t >= 0 && EXPRESSION_START.get(t)) {
+                        unexpected = true;
+                    } else if (t >= 0 && !CLOSE.get(t)) {
+                        unexpected = false;
+                        break;
+                    }
+                }
+            }
+        }
+
+        private static boolean endsSequence(Token at, TokenStream tokens) {
+            return (at.getType() == Token.EOF || CLOSE.get(at.getType()))
+                    && at.getTokenIndex() > 0
+                    && tokens.get(at.getTokenIndex() - 1).getType() == MPLLexer.SEMICOLON;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.mpl.runtime;
+
+/**
+ * An MPL function value: a closure or a composition. Functions display as
+ * λ and cannot be compared (ruling 7).
+ */
+public abstract class FunctionValue {
+
+    FunctionValue() {}
+
+    @Override
+    public final String toString() {
+        return "λ";
+    }
+}
@@ -0,0 +1,121 @@
+package com.mpl.runtime;
+
+import java.time.Duration;
+
+/**
+ * Resource budgets for one run of the {@link Interpreter}, each raising its
+ * own key when exceeded:
+ * <ul>
+ * <li>steps, the frame pushes of ruling 11 — err_steps;</li>
+ * <li>λ depth (ruling 10) — err_depth;</li>
+ * <li>heap: an estimate of the bytes of strings, lists and large numbers
+ *     the run creates, counted as they are made — err_heap;</li>
+ * <li>wall-clock time from the start of the run — err_time.</li>
+ * </ul>
+ * {@link #DEFAULT} is the conformance setting: 500 000 steps, depth
+ * 10 000, no heap or time budget; a budget that is not set stays at its
+ * default.
+ *
+ * Enforcement is cheap: each push compares the step count with the next
+ * checkpoint, at most {@link #BATCH} steps ahead, and only there are the
+ * step budget and the clock looked at — so err_steps is exact and err_time
+ * is late by at most one batch. The heap estimate is checked as values are
+ * made, so one doubling string cannot overshoot it. At each checkpoint a
+ * run on a virtual thread also yields its carrier, so many programs
+ * sharing a JVM on virtual threads each get their turn. Frames and scopes
+ * are not counted; the step and depth budgets bound them.
+ *
+ * Immutable; one instance may govern any number of interpreters.
+ */
+public final class Governor {
+
+    /** Steps between checkpoints. */
+    public static final int BATCH = 4096;
+
+    public static final Governor DEFAULT = new Governor(Interpreter.MAX_STEPS, Interpreter.MAX_DEPTH, Long.MAX_VALUE,
+            Long.MAX_VALUE);
+
+    private final long steps;
+    private final int depth;
+    private final long heapBytes;
+    private final long wallNanos;
+
+    private Governor(long steps, int depth, long heapBytes, long wallNanos) {
+        this.steps = steps;
+        this.depth = depth;
+        this.heapBytes = heapBytes;
+        this.wallNanos = wallNanos;
+    }
+
+    /**
+     * This governor with a budget of {@code steps} frame pushes;
+     * {@code Long.MAX_VALUE} leaves the steps unbounded.
+     */
+    public Governor withSteps(long steps) {
+        if (steps < 0) {
+            throw new IllegalArgumentException("negative step budget: " + steps);
+        }
+        return new Governor(steps, depth, heapBytes, wallNanos);
+    }
+
+    /** This governor with λ applications nested at most {@code depth} deep. */
+    public Governor withDepth(int depth) {
+        if (depth < 0) {
+            throw new IllegalArgumentException("negative depth budget: " + depth);
+        }
+        return new Governor(steps, depth, heapBytes, wallNanos);
+    }
+
+    /** This governor with about {@code bytes} of values per run. */
+    public Governor withHeapBytes(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("negative heap budget: " + bytes);
+        }
+        return new Governor(steps, depth, bytes, wallNanos);
+    }
+
+    /** This governor with each run stopped after {@code time}. */
+    public Governor withWallTime(Duration time) {
+        if (time.isNegative()) {
+            throw new IllegalArgumentException("negative time budget: " + time);
+        }
+        return new Governor(steps, depth, heapBytes, saturatedNanos(time));
+    }
+
+    private static long saturatedNanos(Duration time) {
+        try {
+            return time.toNanos();
+        } catch (ArithmeticException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    public long steps() {
+        return steps;
+    }
+
+    public int depth() {
+        return depth;
+    }
+
+    /** The heap budget in bytes; {@code Long.MAX_VALUE} when there is none. */
+    public long heapBytes() {
+        return heapBytes;
+    }
+
+    /** The time budget; {@code null} when there is none. */
+    public Duration wallTime() {
+        return wallNanos == Long.MAX_VALUE ? null : Duration.ofNanos(wallNanos);
+    }
+
+    long wallNanos() {
+        return wallNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "Governor[steps=" + steps + ", depth=" + depth + ", heapBytes="
+                + (heapBytes == Long.MAX_VALUE ? "∞" : heapBytes) + ", wallTime="
+                + (wallNanos == Long.MAX_VALUE ? "∞" : Duration.ofNanos(wallNanos)) + "]";
+    }
+}
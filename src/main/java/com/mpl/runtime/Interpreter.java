@@ -0,0 +1,1520 @@
+package com.mpl.runtime;
+
+import com.mpl.ast.Ast;
+import com.mpl.ast.NodeKind;
+import com.mpl.metrics.Metrics;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import jdk.jfr.FlightRecorder;
+
+/**
+ * The M0 evaluator: runs an {@link Ast} with the semantics ratified in
+ * conformance/JUDGMENT_CALLS.md, raising the same error keys as the
+ * reference engine (js/mpl.js).
+ *
+ * Like the reference engine's ev(), it is an explicit-stack machine, so
+ * recursion in MPL never recurses in Java: it is bounded by the
+ * λ-application depth counter — {@link #MAX_DEPTH}, err_depth (ruling 10)
+ * — and never by the host stack. Each frame is one row of parallel arrays
+ * (operation, node, state, scope, a value slot and an int slot) rather
+ * than an object, and call arguments and list elements accumulate on a
+ * separate value stack; both are kept between runs. A λ application
+ * allocates only its scope.
+ *
+ * {@link #MAX_STEPS} frame pushes per run (err_steps) is this
+ * implementation's resource limit (ruling 11), not semantics, so the count
+ * need not be the reference engine's: | and ‖ chains are one n-ary frame
+ * here where js/mpl.js pushes one per operator. A {@link Governor} ({@link #setGovernor}) changes it
+ * and the depth limit, and adds budgets for the heap the run's values take
+ * (err_heap) and its wall-clock time (err_time). An instance runs one
+ * program at a time.
+ *
+ * Optionally ({@link #setJitThreshold}) a λ applied often enough has its
+ * body compiled to a JVM hidden class by {@link LambdaCompiler}. Compiled
+ * bodies keep every observable behaviour above, steps included, and call
+ * each other on the Java stack; at {@link #JIT_NESTING} nested compiled
+ * activations further applications are interpreted instead, so deep MPL
+ * recursion still runs on the frame arrays and ends in err_depth.
+ *
+ * By default ‖ runs its branches one after another, as the reference
+ * engine does. With {@link #setParallel} each branch of a ‖ runs on its
+ * own virtual thread, in its own frames over the same tree and scopes, and
+ * the ‖ waits for all of them. Its value is the last branch's, as in
+ * sequence. Each branch's ✎ lines are held back and emitted in branch
+ * order once all have finished, so the output is what sequential
+ * execution prints. If branches fail, the leftmost failure is raised,
+ * after the output of the branches before it and its own, and a failure
+ * stops the branches to its right at their next checkpoint. The branches
+ * claim their steps, {@link Governor#BATCH} at a time, from the steps left
+ * when the ‖ started, shared with the ‖s and ∀s nested in them; a branch
+ * that finds none left raises err_steps at its ‖. Scopes are locked per
+ * operation (see {@link Scope}), so concurrent ≜ and ← cannot corrupt
+ * them, and ≜ binds only if no branch beside it has bound the name since
+ * it checked, so of two branches defining a name one raises err_redef.
+ * Branches run interpreted, and a λ whose body contains ‖ is not compiled.
+ *
+ * A ∀ over at least {@link #setForkThreshold} elements whose body
+ * {@link Purity} finds pure — nothing it does is visible outside its own
+ * scopes, and its value is ⊥ (ruling 2) — has its iterations split across
+ * the common ForkJoinPool. Only failures and the step count can tell the
+ * iterations apart, so if any slice fails or together they run out of
+ * the steps left, the loop is run again in order from its first element,
+ * and the error is exactly the one sequential execution raises: the
+ * lowest-index failure, or err_steps where the limit is crossed. Slices run
+ * interpreted; a ∀ inside a compiled body keeps its loop.
+ *
+ * Expressions {@link ConstantFolding} folds are not evaluated: their frame
+ * yields the folded value at once and takes all the steps evaluating it
+ * would have, unless that crosses the limit, when it is evaluated after all
+ * and err_steps falls where it always did. {@link #setFolding} turns this
+ * off; compiled bodies evaluate every expression.
+ *
+ * Applications of closures {@link Purity} finds pure are memoized (see
+ * {@link Memo}), up to {@link #setMemoCapacity} results. A result taken
+ * from the table is charged the steps and depth its evaluation took, and
+ * where that would cross either limit the application is evaluated after
+ * all, so err_steps and err_depth fall where they always did. Any ≜ or ←
+ * outside a memoized application empties the table. Branches of a
+ * parallel ‖ and slices of a forked ∀ do not memoize.
+ *
+ * A run is a {@code com.mpl.Run} JFR event ({@link RunEvent}) while a
+ * recording enables it, and adds to the {@code run.*} metrics of
+ * {@link Metrics} while they are on. Both are taken from counts kept in
+ * fields and read once the run ends; with neither wanted, a run costs one
+ * EventType and one volatile check more, and ✎ lines are not measured.
+ */
+public final class Interpreter {
+
+    public static final int MAX_DEPTH = 10_000;
+    /** Default {@link #setForkThreshold}. */
+    public static final int FORK_THRESHOLD = 4096;
+    public static final int MAX_STEPS = 500_000;
+    /** Default {@link #setMemoCapacity}. */
+    public static final int MEMO_CAPACITY = 10_000;
+
+    /** Compiled activations allowed on the Java stack at once. */
+    static final int JIT_NESTING = 256;
+
+    /** Frame operation applying fVal to the arguments on the value stack from fBase. */
+    private static final int APPLY = NodeKind.COUNT;
+    /** Frame operation yielding a folded expression's value. */
+    private static final int FOLDED = NodeKind.COUNT + 1;
+
+    private final Consumer<String> out;
+    /** Where ✎ renders values directly, or null to hand {@link #out} a String per line. */
+    private final Utf8Sink sink;
+    private Frontend frontend;
+
+    private int[] fOp = new int[256];
+    private int[] fNode = new int[256];
+    private int[] fState = new int[256];
+    private int[] fBase = new int[256];
+    private Scope[] fScope = new Scope[256];
+    private Object[] fVal = new Object[256];
+    private int sp;
+
+    private Object[] vals = new Object[256];
+    private int vp;
+
+    private Ast ast;
+    private Rational[] numbers;
+    /** Lexical addresses, kept while the same Ast runs again. */
+    private Ast resolvedFor;
+    private Resolution resolution;
+    private ConstantFolding constants;
+    private boolean folding = true;
+    private long steps;
+    private int depth;
+
+    /** The run's budgets, read from the governor when it starts. */
+    private Governor governor = Governor.DEFAULT;
+    private long maxSteps = MAX_STEPS;
+    private int maxDepth = MAX_DEPTH;
+    private long maxHeap = Long.MAX_VALUE;
+    /** System.nanoTime() at which the run is out of time; meaningless if untimed. */
+    private long deadline;
+    private boolean timed;
+    /** The step count at which the budgets are next checked. */
+    private long checkpoint = MAX_STEPS;
+    /** Estimated bytes of the values made so far. */
+    private long allocated;
+
+    /** Compiled tier: off below 0; bodies and counts kept while the same Ast runs again. */
+    private int jitThreshold = -1;
+    private Ast compiledFor;
+    private int[] applications;
+    private CompiledBody[] bodies;
+    private int compiledCount;
+    private int jitNesting;
+
+    /** ‖ branches on virtual threads; off runs them in order. */
+    private boolean parallel;
+    /** Where a worker claims its steps; null on the run's own thread. */
+    private Budget budget;
+    /** The ‖ branch or ∀ slices this worker runs for, if any. */
+    private Branch branch;
+    private Slices slices;
+    /** {@link #binds}, for {@link Scope#claim}. */
+    private final Predicate<Object> binds = this::binds;
+    /** Pure ∀s over this many elements run on the ForkJoinPool; off below 0. */
+    private int forkThreshold = FORK_THRESHOLD;
+    private int forkedCount;
+
+    /** Results of pure applications; null when off. */
+    private Memo memo;
+    private int memoCapacity = MEMO_CAPACITY;
+    /** Memoized applications being evaluated. */
+    private int memoizing;
+    /** Deepest λ level reached since the innermost memoized application began. */
+    private int peak;
+    private long memoHits;
+    private long memoMisses;
+    private long memoEvictions;
+
+    /** λ applications entered this run. */
+    private long entered;
+    /** Deepest λ level this run reached or was charged for. */
+    private int deepest;
+    /** UTF-8 bytes of this run's ✎ lines, counted while {@link #metered}. */
+    private long printed;
+    /** Whether this run is observed: metrics on, or a JFR recording wants its event. */
+    private boolean metered;
+
+    private static final Metrics.Counter RUNS = Metrics.registry().counter("run.programs");
+    private static final Metrics.Counter APPLICATIONS = Metrics.registry().counter("run.applications");
+    private static final Metrics.Counter OUTPUT = Metrics.registry().counter("run.output_bytes");
+    private static final Metrics.Histogram STEPS = Metrics.registry().histogram("run.steps");
+    private static final Metrics.Histogram STEP_SHARE = Metrics.registry().histogram("run.steps_permille");
+    private static final Metrics.Histogram DEPTH = Metrics.registry().histogram("run.peak_depth");
+    private static final Metrics.Histogram DEPTH_SHARE = Metrics.registry().histogram("run.peak_depth_permille");
+    private static final Metrics.Histogram NANOS = Metrics.registry().histogram("run.nanos");
+
+    /** {@code out} receives each ✎ line, without a line terminator. */
+    public Interpreter(Consumer<String> out) {
+        this.out = out;
+        this.sink = null;
+    }
+
+    /**
+     * ✎ renders each value straight into {@code sink}, as UTF-8 ended by
+     * '\n', without making its line a String. The caller flushes the sink.
+     */
+    public Interpreter(Utf8Sink sink) {
+        this.out = sink::println;
+        this.sink = sink;
+    }
+
+    /**
+     * Compiles a λ's body once it has been applied {@code applications}
+     * times (0: on its first application); negative turns the compiled tier
+     * off, which is the default.
+     */
+    public void setJitThreshold(int applications) {
+        jitThreshold = applications;
+    }
+
+    /**
+     * Runs the branches of each ‖ concurrently, on virtual threads; off,
+     * the default, runs them in order.
+     */
+    public void setParallel(boolean on) {
+        parallel = on;
+    }
+
+    /**
+     * Splits a pure ∀ over at least {@code elements} elements across the
+     * common ForkJoinPool; negative runs every ∀ in order. Default
+     * {@link #FORK_THRESHOLD}.
+     */
+    public void setForkThreshold(int elements) {
+        forkThreshold = elements;
+    }
+
+    /** The budgets of every later run; default {@link Governor#DEFAULT}. */
+    public void setGovernor(Governor governor) {
+        this.governor = governor;
+    }
+
+    /** Folded expressions yield their value without being evaluated; on by default. */
+    public void setFolding(boolean on) {
+        folding = on;
+    }
+
+    /**
+     * Keeps up to {@code entries} results of pure applications per run; 0
+     * turns memoization off, as for conformance runs. Default
+     * {@link #MEMO_CAPACITY}. Off while {@link #setParallel} is on.
+     */
+    public void setMemoCapacity(int entries) {
+        memoCapacity = entries;
+    }
+
+    /** Applications the last run answered from the memo table. */
+    public long memoHits() {
+        return memoHits;
+    }
+
+    /** Memoizable applications the last run evaluated. */
+    public long memoMisses() {
+        return memoMisses;
+    }
+
+    /** Results the last run dropped from a full memo table. */
+    public long memoEvictions() {
+        return memoEvictions;
+    }
+
+    /** λ bodies compiled so far for the program last run. */
+    public int compiledCount() {
+        return compiledCount;
+    }
+
+    /** ∀ loops the last run split across the pool (not counting those inside slices). */
+    public int forkedCount() {
+        return forkedCount;
+    }
+
+    /** Loads and runs a program; see {@link Frontend} for the load-time errors. */
+    public Object run(String source) {
+        if (frontend == null) {
+            frontend = new Frontend();
+        }
+        return run(frontend.load(source));
+    }
+
+    /** Runs a loaded program and returns the value of its last expression. */
+    public Object run(Ast program) {
+        // RunEvent is not loaded before Flight Recorder runs (see TwoStageParser).
+        RunEvent event = FlightRecorder.isInitialized() ? RunEvent.start() : null;
+        boolean observed = Metrics.enabled();
+        long start = observed ? System.nanoTime() : 0;
+        metered = observed || event != null;
+        entered = 0;
+        deepest = 0;
+        printed = 0;
+        String failure = null;
+        ast = program;
+        numbers = new Rational[program.size()];
+        if (resolvedFor != program) {
+            resolution = Resolution.of(program);
+            constants = ConstantFolding.of(program);
+            resolvedFor = program;
+        }
+        steps = 0;
+        depth = 0;
+        maxSteps = governor.steps();
+        maxDepth = governor.depth();
+        maxHeap = governor.heapBytes();
+        timed = governor.wallNanos() != Long.MAX_VALUE;
+        deadline = System.nanoTime() + governor.wallNanos();
+        checkpoint = Math.min(maxSteps, Governor.BATCH);
+        allocated = 0;
+        jitNesting = 0;
+        forkedCount = 0;
+        memo = memoCapacity > 0 && !parallel ? new Memo(memoCapacity) : null;
+        memoizing = 0;
+        peak = 0;
+        sp = 0;
+        vp = 0;
+        if (jitThreshold >= 0 && compiledFor != program) {
+            compiledFor = program;
+            applications = new int[program.size()];
+            bodies = new CompiledBody[program.size()];
+            compiledCount = 0;
+        }
+        try {
+            frame(program.root(), new Scope(null, resolution.layout(program.root()), parallel));
+            return Values.strip(execute(0));
+        } catch (MplException e) {
+            failure = e.key();
+            throw e;
+        } finally {
+            // Drop references into the finished run.
+            Arrays.fill(fScope, null);
+            Arrays.fill(fVal, null);
+            Arrays.fill(vals, null);
+            ast = null;
+            numbers = null;
+            memoHits = memo == null ? 0 : memo.hits;
+            memoMisses = memo == null ? 0 : memo.misses;
+            memoEvictions = memo == null ? 0 : memo.evictions;
+            memo = null;
+            if (metered) {
+                observe(event, observed, start, failure);
+            }
+        }
+    }
+
+    /**
+     * Records a finished run: its JFR event, if one was started, and the
+     * {@code run.*} metrics, if they were on — programs, λ applications,
+     * ✎ bytes, steps and peak depth (also in thousandths of their budgets),
+     * time, and a {@code run.errors.<key>} count per error key.
+     */
+    private void observe(RunEvent event, boolean observed, long start, String failure) {
+        long applied = entered + memoHits;
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.applications = applied;
+                event.steps = steps;
+                event.stepBudget = maxSteps;
+                event.peakDepth = deepest;
+                event.depthBudget = maxDepth;
+                event.outputBytes = printed;
+                event.error = failure;
+                event.commit();
+            }
+        }
+        if (observed) {
+            RUNS.increment();
+            APPLICATIONS.add(applied);
+            OUTPUT.add(printed);
+            STEPS.record(steps);
+            STEP_SHARE.record(maxSteps == 0 ? 1000 : (long) (1000.0 * steps / maxSteps));
+            DEPTH.record(deepest);
+            DEPTH_SHARE.record(maxDepth == 0 ? 1000 : 1000L * deepest / maxDepth);
+            NANOS.record(System.nanoTime() - start);
+            if (failure != null) {
+                Metrics.registry().counter("run.errors." + failure).increment();
+            }
+        }
+    }
+
+    /** Bytes of {@code s} in UTF-8, without encoding it. */
+    private static long utf8Length(String s) {
+        long n = s.length();
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x800) {
+                // Three bytes, or four for a surrogate pair's two chars.
+                n += Character.isSurrogate(c) ? 1 : 2;
+            } else if (c >= 0x80) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Runs frames until the stack is back down to {@code floor} and returns
+     * the last result. Re-entrant: compiled code interprets an application
+     * by pushing its frame and running the frames above it.
+     */
+    private Object execute(int floor) {
+        Object ret = null;
+        while (sp > floor) {
+            int f = sp - 1;
+            int node = fNode[f];
+            Scope sc = fScope[f];
+            int st = fState[f];
+            int op = fOp[f];
+            switch (op) {
+                case NodeKind.NUM:
+                    ret = number(node);
+                    sp--;
+                    break;
+                case NodeKind.STR:
+                    ret = ast.text(node);
+                    sp--;
+                    break;
+                case NodeKind.TRUE:
+                    ret = Boolean.TRUE;
+                    sp--;
+                    break;
+                case NodeKind.FALSE:
+                    ret = Boolean.FALSE;
+                    sp--;
+                    break;
+                case NodeKind.BOTTOM:
+                    ret = Values.BOTTOM;
+                    sp--;
+                    break;
+                case NodeKind.ID:
+                    ret = resolve(sc, node);
+                    sp--;
+                    break;
+                case FOLDED:
+                    ret = constants.value(node);
+                    sp--;
+                    break;
+                case NodeKind.LAMBDA:
+                    ret = new Closure(node, sc);
+                    sp--;
+                    break;
+                case NodeKind.SEQ:
+                case NodeKind.PARALLEL:
+                    if (op == NodeKind.PARALLEL && parallel) {
+                        ret = fork(node, sc);
+                        sp--;
+                        break;
+                    }
+                    // Otherwise ‖ runs its branches in order, as sequence.
+                    if (st > 0) {
+                        fVal[f] = Values.strip(ret);
+                    }
+                    if (st < ast.childCount(node)) {
+                        fState[f] = st + 1;
+                        push(ast.child(node, st), sc);
+                    } else {
+                        ret = st == 0 ? Values.BOTTOM : fVal[f];
+                        sp--;
+                    }
+                    break;
+                case NodeKind.DEF: {
+                    int slot = resolution.bindingSlot(node);
+                    if (st == 0) {
+                        if (sc.get(slot) != null) {
+                            throw error("err_redef", node);
+                        }
+                        fState[f] = 1;
+                        push(ast.child(node, 1), sc);
+                    } else {
+                        ret = bind(sc, slot, Values.strip(ret), node);
+                        sp--;
+                    }
+                    break;
+                }
+                case NodeKind.ASSIGN:
+                    if (st == 0) {
+                        owner(sc, node, f);
+                        fState[f] = 1;
+                        push(ast.child(node, 1), sc);
+                    } else {
+                        ret = rebind((Scope) fVal[f], fBase[f], Values.strip(ret));
+                        fVal[f] = null;
+                        sp--;
+                    }
+                    break;
+                case NodeKind.ALT:
+                    if (st == 0 || (ret == Values.NOMATCH && st < ast.childCount(node))) {
+                        fState[f] = st + 1;
+                        push(ast.child(node, st), sc);
+                    } else {
+                        sp--;
+                    }
+                    break;
+                case NodeKind.IMPLIES:
+                    if (st == 0) {
+                        fState[f] = 1;
+                        push(ast.child(node, 0), sc);
+                    } else if (st == 1) {
+                        if (bool(Values.strip(ret), node)) {
+                            fState[f] = 2;
+                            push(ast.child(node, 1), sc);
+                        } else {
+                            ret = Values.NOMATCH;
+                            sp--;
+                        }
+                    } else {
+                        // The result as is: a nested unmatched guard still reaches |.
+                        sp--;
+                    }
+                    break;
+                case NodeKind.OR:
+                case NodeKind.AND: {
+                    boolean shortCircuit = op == NodeKind.OR;
+                    if (st == 0) {
+                        fState[f] = 1;
+                        push(ast.child(node, 0), sc);
+                    } else if (st == 1) {
+                        if (bool(Values.strip(ret), node) == shortCircuit) {
+                            ret = shortCircuit;
+                            sp--;
+                        } else {
+                            fState[f] = 2;
+                            push(ast.child(node, 1), sc);
+                        }
+                    } else {
+                        ret = bool(Values.strip(ret), node);
+                        sp--;
+                    }
+                    break;
+                }
+                case NodeKind.EQ: case NodeKind.NEQ: case NodeKind.LT: case NodeKind.GT:
+                case NodeKind.LEQ: case NodeKind.GEQ:
+                case NodeKind.ADD: case NodeKind.SUB: case NodeKind.MUL: case NodeKind.DIV:
+                case NodeKind.COMPOSE:
+                    if (st == 0) {
+                        fState[f] = 1;
+                        push(ast.child(node, 0), sc);
+                    } else if (st == 1) {
+                        fVal[f] = Values.strip(ret);
+                        fState[f] = 2;
+                        push(ast.child(node, 1), sc);
+                    } else {
+                        ret = binary(op, node, fVal[f], Values.strip(ret));
+                        fVal[f] = null;
+                        sp--;
+                    }
+                    break;
+                case NodeKind.NEG:
+                case NodeKind.TRACE:
+                    if (st == 0) {
+                        fState[f] = 1;
+                        push(ast.child(node, 0), sc);
+                    } else {
+                        Object v = Values.strip(ret);
+                        ret = op == NodeKind.NEG ? negate(v, node) : trace(v);
+                        sp--;
+                    }
+                    break;
+                case NodeKind.CALL:
+                    if (st == 0) {
+                        fBase[f] = vp;
+                        fState[f] = 1;
+                        push(ast.child(node, 0), sc);
+                        break;
+                    }
+                    if (st == 1) {
+                        fVal[f] = function(Values.strip(ret), node);
+                    } else {
+                        pushValue(Values.strip(ret));
+                    }
+                    int next = vp - fBase[f] + 1;
+                    if (next < ast.childCount(node)) {
+                        fState[f] = 2;
+                        push(ast.child(node, next), sc);
+                    } else {
+                        // The call frame becomes the application frame in place.
+                        fOp[f] = APPLY;
+                        fState[f] = 0;
+                    }
+                    break;
+                case APPLY:
+                    ret = apply(f, node, st, ret);
+                    break;
+                case NodeKind.FORALL: {
+                    // Validated by the Frontend: one bound name.
+                    if (st == 0) {
+                        fState[f] = 1;
+                        push(ast.child(node, 1), sc);
+                        break;
+                    }
+                    if (st == 1) {
+                        ListValue list = iterable(Values.strip(ret), node);
+                        if (forkThreshold >= 0 && list.size() >= forkThreshold
+                                && Purity.forallBody(ast, node, sc) && forkForall(node, sc, list)) {
+                            ret = Values.BOTTOM;
+                            sp--;
+                            break;
+                        }
+                        fVal[f] = list;
+                        fBase[f] = 0;
+                        fState[f] = 2;
+                    }
+                    ListValue list = (ListValue) fVal[f];
+                    int i = fBase[f];
+                    if (i < list.size()) {
+                        fBase[f] = i + 1;
+                        Scope step = new Scope(sc, resolution.layout(node));
+                        step.set(0, list.get(i));
+                        push(ast.child(node, 2), step);
+                    } else {
+                        // Ruling 2: ∀ is an iterator; its value is always ⊥.
+                        ret = Values.BOTTOM;
+                        fVal[f] = null;
+                        sp--;
+                    }
+                    break;
+                }
+                case NodeKind.LIST: {
+                    if (st == 0) {
+                        fBase[f] = vp;
+                        fState[f] = 1;
+                    } else {
+                        pushValue(Values.strip(ret));
+                    }
+                    int n = vp - fBase[f];
+                    if (n < ast.childCount(node)) {
+                        push(ast.child(node, n), sc);
+                    } else {
+                        ListValue list = ListValue.copyOf(vals, fBase[f], vp);
+                        allocate(list.footprintBytes(), node);
+                        ret = list;
+                        popValues(fBase[f]);
+                        sp--;
+                    }
+                    break;
+                }
+                default:
+                    // Sets and records (rulings 23, 24) and every M1 form.
+                    throw error("err_notyet", node);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * One step of an application frame. States: 0 start; 1 and 2 inside a
+     * composition (g, then f); 3 a λ body has returned.
+     */
+    private Object apply(int f, int node, int st, Object ret) {
+        if (st == 3) {
+            depth--;
+            Pending p = (Pending) fVal[f];
+            fVal[f] = null;
+            sp--;
+            return p == null ? Values.strip(ret) : end(p, Values.strip(ret));
+        }
+        FunctionValue fn = (FunctionValue) fVal[f];
+        int base = fBase[f];
+        if (fn instanceof Composition) {
+            Composition c = (Composition) fn;
+            if (st == 0) {
+                fState[f] = 1;
+                applyFrame(c.g, node, base);
+            } else if (st == 1) {
+                pushValue(Values.strip(ret));
+                fState[f] = 2;
+                applyFrame(c.f, node, base);
+            } else {
+                fVal[f] = null;
+                sp--;
+            }
+            return ret;
+        }
+        Closure c = (Closure) fn;
+        Memo.Key key = memo == null ? null : memo.key(ast, c, vals, base, vp - base);
+        Object known = key == null ? null : recall(key);
+        if (known != null) {
+            popValues(base);
+            fVal[f] = null;
+            sp--;
+            return known;
+        }
+        Pending p = key == null ? null : begin(key);
+        Scope inner = enter(c, vals, base, vp - base, node);
+        popValues(base);
+        CompiledBody body = compiled(c.lambda);
+        if (body != null && jitNesting < JIT_NESTING) {
+            fVal[f] = null;
+            sp--;
+            Object v = runCompiled(body, c.lambda, inner);
+            return p == null ? v : end(p, v);
+        }
+        // The λ's result comes back in state 3, to the memo table if p is set.
+        fVal[f] = p;
+        fState[f] = 3;
+        push(body(c.lambda), inner);
+        return ret;
+    }
+
+    /**
+     * Starts applying a closure to {@code count} arguments from
+     * {@code args[from]}: err_arity, then one level of depth (err_depth),
+     * then the λ's scope with its parameters bound.
+     */
+    private Scope enter(Closure c, Object[] args, int from, int count, int node) {
+        int lambda = c.lambda;
+        int params = ast.data(lambda);
+        if (count != params) {
+            throw error("err_arity", node);
+        }
+        if (++depth > maxDepth) {
+            throw error("err_depth", node);
+        }
+        entered++;
+        if (depth > peak) {
+            peak = depth;
+            if (depth > deepest) {
+                deepest = depth;
+            }
+        }
+        Scope inner = new Scope(c.env, resolution.layout(lambda));
+        for (int i = 0; i < params; i++) {
+            int slot = resolution.bindingSlot(ast.child(lambda, i));
+            // In order, so a repeated parameter name takes its last argument.
+            if (slot >= 0) {
+                inner.set(slot, args[from + i]);
+            }
+        }
+        return inner;
+    }
+
+    /** A memoized application in progress: its key and where it started. */
+    private static final class Pending {
+        final Memo.Key key;
+        final long steps;
+        final int depth;
+        /** The enclosing memoized application's peak. */
+        final int peak;
+        final long allocated;
+
+        Pending(Memo.Key key, long steps, int depth, int peak, long allocated) {
+            this.key = key;
+            this.steps = steps;
+            this.depth = depth;
+            this.peak = peak;
+            this.allocated = allocated;
+        }
+    }
+
+    /**
+     * A memoized result, charged the steps, depth and heap its evaluation took;
+     * null if there is none, or if charging it would cross a limit and the
+     * application must be evaluated to fail where it fails.
+     */
+    private Object recall(Memo.Key key) {
+        Memo.Entry e = memo.get(key);
+        if (e == null || e.steps > maxSteps - steps || depth + e.depth > maxDepth
+                || allocated + e.bytes > maxHeap) {
+            memo.misses++;
+            return null;
+        }
+        steps += e.steps;
+        allocated += e.bytes;
+        peak = Math.max(peak, depth + e.depth);
+        deepest = Math.max(deepest, peak);
+        memo.hits++;
+        return e.value;
+    }
+
+    /** Starts evaluating a memoizable application, before its λ is entered. */
+    private Pending begin(Memo.Key key) {
+        Pending p = new Pending(key, steps, depth, peak, allocated);
+        peak = depth;
+        memoizing++;
+        return p;
+    }
+
+    /** Records a memoizable application's result and cost. */
+    private Object end(Pending p, Object v) {
+        memoizing--;
+        memo.put(p.key, v, steps - p.steps, peak - p.depth, allocated - p.allocated);
+        peak = Math.max(p.peak, peak);
+        return v;
+    }
+
+    /** A binding changed; outside memoized applications the table may now be stale. */
+    private void rebound() {
+        if (memo != null && memoizing == 0) {
+            memo.invalidate();
+        }
+    }
+
+    private int body(int lambda) {
+        return ast.child(lambda, ast.childCount(lambda) - 1);
+    }
+
+    /** The λ's compiled body, compiling it on the application that reaches the threshold. */
+    private CompiledBody compiled(int lambda) {
+        if (jitThreshold < 0) {
+            return null;
+        }
+        CompiledBody body = bodies[lambda];
+        if (body == null && applications[lambda] <= jitThreshold
+                && applications[lambda]++ == jitThreshold) {
+            // null when the compiler declines; the λ then stays interpreted.
+            // Compiled code runs ‖ in order, so λs with one stay interpreted here.
+            body = parallel && forks(lambda) ? null : LambdaCompiler.compile(ast, resolution, lambda);
+            if (body != null) {
+                bodies[lambda] = body;
+                compiledCount++;
+            }
+        }
+        return body;
+    }
+
+    /** Runs an entered closure's compiled body: the body push's step, then the body. */
+    private Object runCompiled(CompiledBody body, int lambda, Scope inner) {
+        tick(body(lambda));
+        jitNesting++;
+        Object ret = body.run(this, inner);
+        jitNesting--;
+        depth--;
+        return Values.strip(ret);
+    }
+
+    /** Whether a λ's body has a ‖ of its own (not one inside a nested λ). */
+    private boolean forks(int lambda) {
+        int[] work = {body(lambda)};
+        int n = 1;
+        while (n > 0) {
+            int node = work[--n];
+            if (ast.kind(node) == NodeKind.PARALLEL) {
+                return true;
+            }
+            if (ast.kind(node) == NodeKind.LAMBDA) {
+                continue;
+            }
+            int kids = ast.childCount(node);
+            if (n + kids > work.length) {
+                work = Arrays.copyOf(work, Math.max(2 * work.length, n + kids));
+            }
+            for (int i = 0; i < kids; i++) {
+                work[n++] = ast.child(node, i);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs a ‖'s branches on virtual threads and joins them: their output
+     * in branch order, the leftmost failure, the last branch's value.
+     */
+    private Object fork(int node, Scope sc) {
+        int n = ast.childCount(node);
+        Budget shared = share();
+        AtomicInteger failedAt = new AtomicInteger(n);
+        Branch[] branches = new Branch[n];
+        Thread[] threads = new Thread[n];
+        for (int i = 0; i < n; i++) {
+            branches[i] = new Branch(node, i, failedAt, sc, shared);
+            threads[i] = Thread.ofVirtual().name("mpl-branch-" + i).start(branches[i]);
+        }
+        boolean interrupted = false;
+        for (Thread t : threads) {
+            // Branches are bounded by the step budget; wait them out.
+            while (true) {
+                try {
+                    t.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        long start = steps;
+        for (Branch b : branches) {
+            steps += b.worker.steps - start;
+        }
+        resume();
+        long startBytes = allocated;
+        for (Branch b : branches) {
+            for (String line : b.lines) {
+                out.accept(line);
+            }
+            allocated += b.worker.allocated - startBytes;
+            entered += b.worker.entered;
+            printed += b.worker.printed;
+            deepest = Math.max(deepest, b.worker.deepest);
+            if (b.failure instanceof RuntimeException) {
+                throw (RuntimeException) b.failure;
+            }
+            if (b.failure != null) {
+                throw (Error) b.failure;
+            }
+        }
+        if (allocated > maxHeap) {
+            throw error("err_heap", node);
+        }
+        return branches[n - 1].result;
+    }
+
+    /**
+     * The budget the workers about to start claim their steps from: on the
+     * run's own thread, the steps left; in a worker, the one it claims from,
+     * with its unused claim handed back. See {@link #resume}.
+     */
+    private Budget share() {
+        if (budget == null) {
+            return new Budget(maxSteps - steps);
+        }
+        release();
+        return budget;
+    }
+
+    /** After the workers {@link #share} started: a worker claims afresh at its next step. */
+    private void resume() {
+        if (budget != null) {
+            maxSteps = steps;
+            checkpoint = steps;
+        }
+    }
+
+    /** Hands a worker's unclaimed steps back to its budget. */
+    private void release() {
+        if (maxSteps > steps) {
+            budget.refund(maxSteps - steps);
+        }
+        maxSteps = steps;
+        checkpoint = steps;
+    }
+
+    /**
+     * An interpreter for part of this run on another thread: the same tree,
+     * number cache and modes, this run's depth, and the steps taken and
+     * bytes made so far, so the budgets stay those of the whole run. It
+     * claims its steps from {@code shared} as it goes. Interpreted only.
+     */
+    private Interpreter worker(Consumer<String> lines, Budget shared) {
+        Interpreter w = new Interpreter(lines);
+        w.ast = ast;
+        w.numbers = numbers;
+        w.resolvedFor = resolvedFor;
+        w.resolution = resolution;
+        w.constants = constants;
+        w.folding = folding;
+        w.steps = steps;
+        w.depth = depth;
+        w.governor = governor;
+        w.budget = shared;
+        w.branch = branch;
+        w.maxSteps = steps;
+        w.maxDepth = maxDepth;
+        w.maxHeap = maxHeap;
+        w.timed = timed;
+        w.deadline = deadline;
+        w.checkpoint = steps;
+        w.allocated = allocated;
+        w.parallel = parallel;
+        w.forkThreshold = forkThreshold;
+        w.metered = metered;
+        return w;
+    }
+
+    /**
+     * Runs a pure ∀'s iterations on the ForkJoinPool. False, with nothing
+     * changed, if a slice failed or ran out of steps, or the slices took
+     * more than the heap left; the loop then runs in order.
+     */
+    private boolean forkForall(int node, Scope sc, ListValue list) {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int grain = Math.max(forkThreshold / 4, list.size() / (4 * pool.getParallelism()));
+        Budget shared = share();
+        Slices slices = new Slices(node, sc, list, Math.max(grain, 1), shared);
+        pool.invoke(slices.new Slice(0, list.size()));
+        if (slices.failed.get() || allocated + slices.bytes.get() > maxHeap) {
+            // The loop runs again in order, on steps it has not spent.
+            if (budget != null) {
+                shared.refund(slices.used.get());
+            }
+            resume();
+            return false;
+        }
+        steps += slices.used.get();
+        resume();
+        allocated += slices.bytes.get();
+        entered += slices.entered.get();
+        deepest = Math.max(deepest, slices.deepest.get());
+        forkedCount++;
+        return true;
+    }
+
+    /** One forked ∀: what its slices share. */
+    private final class Slices {
+        final int body;
+        final Scope.Layout layout;
+        final Scope scope;
+        final ListValue list;
+        final int grain;
+        final Budget budget;
+        final AtomicBoolean failed = new AtomicBoolean();
+        final AtomicLong used = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+        final AtomicLong entered = new AtomicLong();
+        final AtomicInteger deepest = new AtomicInteger();
+
+        Slices(int node, Scope scope, ListValue list, int grain, Budget budget) {
+            this.body = ast.child(node, 2);
+            this.layout = resolution.layout(node);
+            this.scope = scope;
+            this.list = list;
+            this.grain = grain;
+            this.budget = budget;
+        }
+
+        /** Iterations [from, to), halved until a slice is at most the grain. */
+        final class Slice extends RecursiveAction {
+            final int from;
+            final int to;
+
+            Slice(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from > grain) {
+                    int mid = (from + to) >>> 1;
+                    invokeAll(new Slice(from, mid), new Slice(mid, to));
+                    return;
+                }
+                // A pure body never prints.
+                Interpreter w = worker(out, budget);
+                w.slices = Slices.this;
+                try {
+                    for (int i = from; i < to && !failed.get(); i++) {
+                        Scope step = new Scope(scope, layout);
+                        step.set(0, list.get(i));
+                        w.push(body, step);
+                        w.execute(0);
+                    }
+                    bytes.addAndGet(w.allocated - allocated);
+                    entered.addAndGet(w.entered);
+                    deepest.accumulateAndGet(w.deepest, Math::max);
+                } catch (Throwable e) {
+                    // Re-run in order, which raises it where it belongs.
+                    failed.set(true);
+                } finally {
+                    // Claimed and spent; a step it could not claim was not.
+                    used.addAndGet(Math.min(w.steps, w.maxSteps) - steps);
+                    w.release();
+                }
+            }
+        }
+    }
+
+    /** One ‖ branch: its own frames and stacks over this run's tree and scopes. */
+    private final class Branch implements Runnable {
+        /** The ‖ and this branch's index in it. */
+        final int fork;
+        final int index;
+        /** The lowest index of a sibling that failed; the ‖'s branch count while none has. */
+        final AtomicInteger failedAt;
+        /** The branch running the ‖, if it runs in one. */
+        final Branch parent = Interpreter.this.branch;
+        final Scope scope;
+        final List<String> lines = new ArrayList<>();
+        final Interpreter worker;
+        Object result;
+        Throwable failure;
+
+        Branch(int fork, int index, AtomicInteger failedAt, Scope scope, Budget budget) {
+            this.fork = fork;
+            this.index = index;
+            this.failedAt = failedAt;
+            this.scope = scope;
+            worker = worker(lines::add, budget);
+            worker.parallel = true;
+            worker.branch = this;
+        }
+
+        /** Whether a failure to the left, here or in an enclosing ‖, has made this branch's work moot. */
+        boolean cancelled() {
+            return failedAt.get() < index || (parent != null && parent.cancelled());
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (cancelled()) {
+                    throw CANCELLED;
+                }
+                worker.push(ast.child(fork, index), scope);
+                result = Values.strip(worker.execute(0));
+            } catch (Throwable e) {
+                failure = e;
+                failedAt.accumulateAndGet(index, Math::min);
+            } finally {
+                worker.release();
+            }
+        }
+    }
+
+    /**
+     * Steps that the branches and slices running at once claim, a batch at
+     * a time, so that together they take no more than the run had left.
+     */
+    private static final class Budget {
+        private final AtomicLong left;
+
+        Budget(long left) {
+            this.left = new AtomicLong(left);
+        }
+
+        /** Up to {@code n} steps, fewer if fewer are left; 0 when none are. */
+        long claim(long n) {
+            while (true) {
+                long l = left.get();
+                if (l <= 0) {
+                    return 0;
+                }
+                long taken = Math.min(n, l);
+                if (left.compareAndSet(l, l - taken)) {
+                    return taken;
+                }
+            }
+        }
+
+        void refund(long n) {
+            left.addAndGet(n);
+        }
+    }
+
+    /**
+     * Stops a branch or slice whose result can no longer matter, a failure
+     * to its left having decided the outcome; never reaches the caller.
+     */
+    private static final RuntimeException CANCELLED = new RuntimeException("cancelled", null, false, false) {
+    };
+
+    Object binary(int op, int node, Object a, Object b) {
+        switch (op) {
+            case NodeKind.EQ:
+                return equal(a, b, node);
+            case NodeKind.NEQ:
+                return !equal(a, b, node);
+            case NodeKind.LT:
+                return compare(a, b, node) < 0;
+            case NodeKind.GT:
+                return compare(a, b, node) > 0;
+            case NodeKind.LEQ:
+                return compare(a, b, node) <= 0;
+            case NodeKind.GEQ:
+                return compare(a, b, node) >= 0;
+            case NodeKind.ADD:
+                return add(a, b, node);
+            case NodeKind.SUB:
+                return subtract(a, b, node);
+            case NodeKind.MUL:
+                return multiply(a, b, node);
+            case NodeKind.DIV:
+                return divide(a, b, node);
+            default: // COMPOSE
+                return compose(a, b, node);
+        }
+    }
+
+    // ---- operations, shared with compiled code ----------------------------------
+    // Operands arrive stripped; each raises the key the reference engine does.
+
+    void tick(int node) {
+        if (++steps > checkpoint) {
+            checkpoint(node);
+        }
+    }
+
+    /**
+     * Every {@link Governor#BATCH} steps and at the step budget: err_steps,
+     * or in a worker more steps from its budget; err_time; a stop if the
+     * worker's work has become moot; and a turn for other virtual threads.
+     */
+    private void checkpoint(int node) {
+        if (steps > maxSteps) {
+            long more = budget == null ? 0 : budget.claim(Governor.BATCH);
+            if (more == 0) {
+                // A branch out of steps stops at its ‖, wherever it was.
+                throw error("err_steps", branch != null ? branch.fork : node);
+            }
+            maxSteps += more;
+        }
+        if (timed && System.nanoTime() - deadline > 0) {
+            throw error("err_time", node);
+        }
+        if ((branch != null && branch.cancelled()) || (slices != null && slices.failed.get())) {
+            throw CANCELLED;
+        }
+        if (Thread.currentThread().isVirtual()) {
+            Thread.yield();
+        }
+        checkpoint = Math.min(maxSteps, steps + Governor.BATCH);
+    }
+
+    /** Estimated bytes of the values made so far. */
+    long allocated() {
+        return allocated;
+    }
+
+    /** Counts a new value's estimated bytes against the heap budget. */
+    void allocate(long bytes, int node) {
+        allocated += bytes;
+        if (allocated > maxHeap) {
+            throw error("err_heap", node);
+        }
+    }
+
+    /** A list literal's value, from compiled code. */
+    ListValue list(Object[] items, int node) {
+        ListValue list = ListValue.wrap(items);
+        allocate(list.footprintBytes(), node);
+        return list;
+    }
+
+    /** An arithmetic result, counted if it has outgrown the long form. */
+    private Rational counted(Rational r, int node) {
+        if (!r.isLong()) {
+            allocate(r.footprintBytes(), node);
+        }
+        return r;
+    }
+
+    /** An identifier's value: its first bound candidate (see {@link Resolution}). */
+    private Object resolve(Scope sc, int node) {
+        Scope s = sc;
+        int at = 0;
+        for (int c = resolution.firstCandidate(node), end = resolution.endCandidate(node); c < end; c++) {
+            s = s.up(resolution.hops(c) - at);
+            at = resolution.hops(c);
+            Object v = s.get(resolution.slot(c));
+            if (v != null) {
+                return v;
+            }
+        }
+        throw error("err_undef", node);
+    }
+
+    /** ← before its right side runs: the binding's scope into fVal, its slot into fBase. */
+    private void owner(Scope sc, int node, int f) {
+        Scope s = sc;
+        int at = 0;
+        for (int c = resolution.firstCandidate(node), end = resolution.endCandidate(node); c < end; c++) {
+            s = s.up(resolution.hops(c) - at);
+            at = resolution.hops(c);
+            if (s.get(resolution.slot(c)) != null) {
+                fVal[f] = s;
+                fBase[f] = resolution.slot(c);
+                return;
+            }
+        }
+        throw error("err_unbound", node);
+    }
+
+    /** A ∀ step's scope for compiled code, laid out like the interpreter's. */
+    Scope stepScope(Scope parent, int forall) {
+        return new Scope(parent, resolution.layout(forall));
+    }
+
+    /**
+     * ≜ once its right side has run, which may itself have bound the name;
+     * err_redef if a branch beside it got there first.
+     */
+    Object bind(Scope sc, int slot, Object v, int node) {
+        if (!sc.claim(slot, v, branch, binds)) {
+            throw error("err_redef", node);
+        }
+        rebound();
+        return v;
+    }
+
+    /**
+     * Whether a binding made while this worker's ≜ ran its right side was
+     * the right side's own: this branch's, or a branch nested in it.
+     */
+    private boolean binds(Object binder) {
+        for (Branch b = (Branch) binder; b != null; b = b.parent) {
+            if (b == branch) {
+                return true;
+            }
+        }
+        return branch == null;
+    }
+
+    /** ← once its right side has run. */
+    Object rebind(Scope owner, int slot, Object v) {
+        owner.set(slot, v);
+        rebound();
+        return v;
+    }
+
+    boolean equal(Object a, Object b, int node) {
+        if (Values.containsFunction(a) || Values.containsFunction(b)) {
+            throw error("err_fn_eq", node);
+        }
+        return Values.equal(a, b);
+    }
+
+    int compare(Object a, Object b, int node) {
+        if (a instanceof Rational && b instanceof Rational) {
+            return ((Rational) a).compareTo((Rational) b);
+        }
+        if (Rope.isString(a) && Rope.isString(b)) {
+            return Rope.compare(a, b);
+        }
+        throw error("err_compare", node);
+    }
+
+    Object add(Object a, Object b, int node) {
+        if (Rope.isString(a) || Rope.isString(b)) {
+            Object x = Rope.isString(a) ? a : Values.show(a);
+            Object y = Rope.isString(b) ? b : Values.show(b);
+            // It shares the longer side and is charged the shorter's chars,
+            // before it is made: a doubling string still stops at the budget.
+            allocate(40 + 2L * Math.min(Rope.length(x), Rope.length(y)), node);
+            return Rope.concat(x, y);
+        }
+        return counted(num(a, node).add(num(b, node)), node);
+    }
+
+    Object subtract(Object a, Object b, int node) {
+        return counted(num(a, node).subtract(num(b, node)), node);
+    }
+
+    Object multiply(Object a, Object b, int node) {
+        return counted(num(a, node).multiply(num(b, node)), node);
+    }
+
+    Object divide(Object a, Object b, int node) {
+        Rational divisor = num(b, node);
+        if (divisor.isZero()) {
+            throw error("err_div0", node);
+        }
+        return counted(num(a, node).divide(divisor), node);
+    }
+
+    Object compose(Object a, Object b, int node) {
+        if (!(a instanceof FunctionValue) || !(b instanceof FunctionValue)) {
+            throw error("err_notfn", node);
+        }
+        return new Composition((FunctionValue) a, (FunctionValue) b);
+    }
+
+    Object negate(Object v, int node) {
+        return counted(num(v, node).negate(), node);
+    }
+
+    Object trace(Object v) {
+        if (sink != null) {
+            long before = sink.bytes();
+            sink.print(v);
+            if (metered) {
+                printed += sink.bytes() - before - 1;
+            }
+            return v;
+        }
+        String line = Values.show(v);
+        if (metered) {
+            printed += utf8Length(line);
+        }
+        out.accept(line);
+        return v;
+    }
+
+    FunctionValue function(Object v, int node) {
+        if (!(v instanceof FunctionValue)) {
+            throw error("err_notfn", node);
+        }
+        return (FunctionValue) v;
+    }
+
+    ListValue iterable(Object v, int node) {
+        if (!(v instanceof ListValue)) {
+            throw error("err_iter", node);
+        }
+        return (ListValue) v;
+    }
+
+    /**
+     * A call from compiled code, with stripped arguments. A closure whose
+     * body is compiled runs directly while the Java stack has room; every
+     * other application (compositions included) is interpreted from an
+     * application frame, exactly as a CALL frame would have continued.
+     */
+    Object call(FunctionValue fn, Object[] args, int node) {
+        if (fn instanceof Closure && jitNesting < JIT_NESTING) {
+            Closure c = (Closure) fn;
+            CompiledBody body = bodies[c.lambda];
+            if (body != null) {
+                Memo.Key key = memo == null ? null : memo.key(ast, c, args, 0, args.length);
+                Object known = key == null ? null : recall(key);
+                if (known != null) {
+                    return known;
+                }
+                Pending p = key == null ? null : begin(key);
+                Object v = runCompiled(body, c.lambda, enter(c, args, 0, args.length, node));
+                return p == null ? v : end(p, v);
+            }
+        }
+        int base = vp;
+        for (Object arg : args) {
+            pushValue(arg);
+        }
+        frame(node, null);
+        int f = sp - 1;
+        fOp[f] = APPLY;
+        fVal[f] = fn;
+        fBase[f] = base;
+        return execute(f);
+    }
+
+    private Rational number(int node) {
+        Rational r = numbers[node];
+        if (r == null) {
+            r = Rational.parse(ast.text(node));
+            numbers[node] = r;
+        }
+        return r;
+    }
+
+    Rational num(Object v, int node) {
+        if (!(v instanceof Rational)) {
+            throw error("err_num", node);
+        }
+        return (Rational) v;
+    }
+
+    boolean bool(Object v, int node) {
+        if (!(v instanceof Boolean)) {
+            throw error("err_bool", node);
+        }
+        return (Boolean) v;
+    }
+
+    /** The operations alone, raising errors at {@code program}'s nodes; for {@link ConstantFolding}. */
+    static Interpreter operations(Ast program) {
+        Interpreter ops = new Interpreter(line -> {});
+        ops.ast = program;
+        return ops;
+    }
+
+    MplException error(String key, int node) {
+        return new MplException(key, ast.line(node), ast.col(node) + 1);
+    }
+
+    // ---- stacks ---------------------------------------------------------------
+
+    /** Pushes a frame for a child expression: one step, or a folded expression's cost. */
+    private void push(int node, Scope sc) {
+        tick(node);
+        frame(node, sc);
+        if (folding) {
+            int more = constants.cost(node) - 1;
+            if (more > 0 && more <= maxSteps - steps && allocated + constants.bytes(node) <= maxHeap) {
+                steps += more;
+                allocated += constants.bytes(node);
+                fOp[sp - 1] = FOLDED;
+            }
+        }
+    }
+
+    private void applyFrame(FunctionValue fn, int callNode, int base) {
+        tick(callNode);
+        frame(callNode, null);
+        int f = sp - 1;
+        fOp[f] = APPLY;
+        fVal[f] = fn;
+        fBase[f] = base;
+    }
+
+    private void frame(int node, Scope sc) {
+        if (sp == fOp.length) {
+            int n = sp * 2;
+            fOp = Arrays.copyOf(fOp, n);
+            fNode = Arrays.copyOf(fNode, n);
+            fState = Arrays.copyOf(fState, n);
+            fBase = Arrays.copyOf(fBase, n);
+            fScope = Arrays.copyOf(fScope, n);
+            fVal = Arrays.copyOf(fVal, n);
+        }
+        fOp[sp] = ast.kind(node);
+        fNode[sp] = node;
+        fState[sp] = 0;
+        fScope[sp] = sc;
+        sp++;
+    }
+
+    private void pushValue(Object v) {
+        if (vp == vals.length) {
+            vals = Arrays.copyOf(vals, vp * 2);
+        }
+        vals[vp++] = v;
+    }
+
+    private void popValues(int to) {
+        Arrays.fill(vals, to, vp, null);
+        vp = to;
+    }
+}
@@ -0,0 +1,522 @@
+package com.mpl.runtime;
+
+import com.mpl.ast.Ast;
+import com.mpl.ast.NodeKind;
+import org.objectweb.asm.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.*;
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * The compiled tier: one λ body becomes the {@code run} method of a hidden
+ * class implementing {@link CompiledBody}, defined next to this class so it
+ * may call the Interpreter's package-private operations. Numeric literals
+ * are the class data, loaded as dynamic constants, so HotSpot sees them as
+ * constants.
+ *
+ * The generated code evaluates the body exactly as the Interpreter's frames
+ * would: the same step before each subexpression (err_steps), the same
+ * operation and error key at each node, ⟹/| through the unmatched-guard
+ * sentinel, ∧/∨ short-circuiting, and real {@link Scope}s so closures made
+ * here capture what the interpreter's would (ruling 9). Names are read
+ * and written by the lexical addresses {@link Resolution} gives: the code
+ * tries each (hops, slot) candidate in turn, as the interpreter does, and
+ * never looks a name up by its text.
+ *
+ * The compiler declines (returns null, and the λ stays interpreted) a body
+ * with a non-M0 form, nested deeper than {@link #MAX_NESTING}, or too large
+ * for one JVM method.
+ */
+final class LambdaCompiler {
+
+    /** Deepest body the compiler recurses through (it recurses on the Ast). */
+    static final int MAX_NESTING = 500;
+
+    private static final String OBJECT = "java/lang/Object";
+    private static final String BOOLEAN = "java/lang/Boolean";
+    private static final String INTERPRETER = Type.getInternalName(Interpreter.class);
+    private static final String SCOPE = Type.getInternalName(Scope.class);
+    private static final String VALUES = Type.getInternalName(Values.class);
+    private static final String LIST = Type.getInternalName(ListValue.class);
+    private static final String CLOSURE = Type.getInternalName(Closure.class);
+
+    private static final String O = "Ljava/lang/Object;";
+    private static final String S = "Ljava/lang/String;";
+    private static final String SC = "L" + SCOPE + ";";
+    private static final String FN = "L" + Type.getInternalName(FunctionValue.class) + ";";
+    private static final String ERROR = "(" + S + "I)L" + Type.getInternalName(MplException.class) + ";";
+
+    private static final Handle CLASS_DATA_AT = new Handle(H_INVOKESTATIC,
+            "java/lang/invoke/MethodHandles", "classDataAt",
+            "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;I)Ljava/lang/Object;",
+            false);
+
+    private final Ast ast;
+    private final Resolution resolution;
+    private final MethodVisitor mv;
+    private final List<Object> constants = new ArrayList<>();
+    private int nextLocal = 3;
+    private Region region;
+
+    /** One scope the body creates: the λ's own, or a ∀ step's. */
+    private static final class Region {
+        final Region parent;
+        /** The local holding the Scope. */
+        final int local;
+
+        Region(Region parent, int local) {
+            this.parent = parent;
+            this.local = local;
+        }
+    }
+
+    private LambdaCompiler(Ast ast, Resolution resolution, MethodVisitor mv) {
+        this.ast = ast;
+        this.resolution = resolution;
+        this.mv = mv;
+    }
+
+    /** The compiled body of {@code lambda}, or null if the compiler declines it. */
+    static CompiledBody compile(Ast ast, Resolution resolution, int lambda) {
+        int body = ast.child(lambda, ast.childCount(lambda) - 1);
+        if (!compilable(ast, body, 0)) {
+            return null;
+        }
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES) {
+            @Override
+            protected String getCommonSuperClass(String type1, String type2) {
+                // Only ever merged where the value is used as an Object.
+                return OBJECT;
+            }
+        };
+        String name = Type.getInternalName(LambdaCompiler.class).replace("LambdaCompiler", "CompiledLambda");
+        cw.visit(V17, ACC_FINAL | ACC_SUPER, name, null, OBJECT,
+                new String[] {Type.getInternalName(CompiledBody.class)});
+
+        MethodVisitor init = cw.visitMethod(0, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(ALOAD, 0);
+        init.visitMethodInsn(INVOKESPECIAL, OBJECT, "<init>", "()V", false);
+        init.visitInsn(RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "run", "(L" + INTERPRETER + ";" + SC + ")" + O, null, null);
+        mv.visitCode();
+        LambdaCompiler c = new LambdaCompiler(ast, resolution, mv);
+        c.region = new Region(null, 2);
+        c.gen(body);
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+
+        try {
+            byte[] bytes = cw.toByteArray();
+            MethodHandles.Lookup lookup = MethodHandles.lookup()
+                    .defineHiddenClassWithClassData(bytes, List.copyOf(c.constants), true);
+            return (CompiledBody) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class))
+                    .invoke();
+        } catch (MethodTooLargeException e) {
+            return null;
+        } catch (Throwable e) {
+            throw new IllegalStateException("compiling λ at node " + lambda, e);
+        }
+    }
+
+    /** Every node M0 evaluates, binders as the Frontend checked them, not too deep. */
+    private static boolean compilable(Ast ast, int node, int depth) {
+        if (depth > MAX_NESTING) {
+            return false;
+        }
+        switch (ast.kind(node)) {
+            case NodeKind.DEF:
+            case NodeKind.ASSIGN:
+                if (ast.kind(ast.child(node, 0)) != NodeKind.ID) {
+                    return false;
+                }
+                break;
+            case NodeKind.FORALL:
+                if (ast.data(node) != 1 || ast.kind(ast.child(node, 0)) != NodeKind.ID) {
+                    return false;
+                }
+                break;
+            case NodeKind.LAMBDA:
+                // Compiled on its own when it gets hot; here it is just a closure.
+                return true;
+            case NodeKind.SEQ: case NodeKind.PARALLEL: case NodeKind.ALT: case NodeKind.IMPLIES:
+            case NodeKind.OR: case NodeKind.AND:
+            case NodeKind.EQ: case NodeKind.NEQ: case NodeKind.LT: case NodeKind.GT:
+            case NodeKind.LEQ: case NodeKind.GEQ:
+            case NodeKind.ADD: case NodeKind.SUB: case NodeKind.MUL: case NodeKind.DIV:
+            case NodeKind.COMPOSE: case NodeKind.NEG: case NodeKind.TRACE: case NodeKind.CALL:
+            case NodeKind.LIST: case NodeKind.ID: case NodeKind.NUM: case NodeKind.STR:
+            case NodeKind.TRUE: case NodeKind.FALSE: case NodeKind.BOTTOM:
+                break;
+            default:
+                return false;
+        }
+        for (int i = 0; i < ast.childCount(node); i++) {
+            if (!compilable(ast, ast.child(node, i), depth + 1)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ---- code generation ---------------------------------------------------------
+    // gen(node) leaves the node's value on the operand stack; eval(node) is
+    // what a push of a child frame is: one step, then the value.
+
+    private void eval(int node) {
+        mv.visitVarInsn(ALOAD, 1);
+        iconst(node);
+        mv.visitMethodInsn(INVOKEVIRTUAL, INTERPRETER, "tick", "(I)V", false);
+        gen(node);
+    }
+
+    /** eval, then strip the unmatched-guard sentinel to ⊥. */
+    private void value(int node) {
+        eval(node);
+        mv.visitMethodInsn(INVOKESTATIC, VALUES, "strip", "(" + O + ")" + O, false);
+    }
+
+    private void gen(int node) {
+        int kind = ast.kind(node);
+        switch (kind) {
+            case NodeKind.NUM:
+                constants.add(Rational.parse(ast.text(node)));
+                mv.visitLdcInsn(new ConstantDynamic("_", "L" + Type.getInternalName(Rational.class) + ";",
+                        CLASS_DATA_AT, constants.size() - 1));
+                break;
+            case NodeKind.STR:
+                mv.visitLdcInsn(ast.text(node));
+                break;
+            case NodeKind.TRUE:
+            case NodeKind.FALSE:
+                mv.visitFieldInsn(GETSTATIC, BOOLEAN, kind == NodeKind.TRUE ? "TRUE" : "FALSE", "L" + BOOLEAN + ";");
+                break;
+            case NodeKind.BOTTOM:
+                mv.visitFieldInsn(GETSTATIC, VALUES, "BOTTOM", O);
+                break;
+            case NodeKind.ID:
+                genLookup(node);
+                break;
+            case NodeKind.LAMBDA:
+                mv.visitTypeInsn(NEW, CLOSURE);
+                mv.visitInsn(DUP);
+                iconst(node);
+                mv.visitVarInsn(ALOAD, region.local);
+                mv.visitMethodInsn(INVOKESPECIAL, CLOSURE, "<init>", "(I" + SC + ")V", false);
+                break;
+            case NodeKind.SEQ:
+            case NodeKind.PARALLEL: {
+                int n = ast.childCount(node);
+                if (n == 0) {
+                    mv.visitFieldInsn(GETSTATIC, VALUES, "BOTTOM", O);
+                    break;
+                }
+                for (int i = 0; i < n - 1; i++) {
+                    eval(ast.child(node, i));
+                    mv.visitInsn(POP);
+                }
+                value(ast.child(node, n - 1));
+                break;
+            }
+            case NodeKind.DEF: {
+                // The name must be new to this scope before the right side runs.
+                int slot = resolution.bindingSlot(node);
+                Label free = new Label();
+                mv.visitVarInsn(ALOAD, region.local);
+                iconst(slot);
+                mv.visitMethodInsn(INVOKEVIRTUAL, SCOPE, "get", "(I)" + O, false);
+                mv.visitJumpInsn(IFNULL, free);
+                genError("err_redef", node);
+                mv.visitLabel(free);
+                mv.visitVarInsn(ALOAD, 1);
+                mv.visitVarInsn(ALOAD, region.local);
+                iconst(slot);
+                value(ast.child(node, 1));
+                iconst(node);
+                mv.visitMethodInsn(INVOKEVIRTUAL, INTERPRETER, "bind", "(" + SC + "I" + O + "I)" + O, false);
+                break;
+            }
+            case NodeKind.ASSIGN:
+                genAssign(node);
+                break;
+            case NodeKind.ALT: {
+                // The first alternative that is not an unmatched guard, unstripped.
+                Label end = new Label();
+                eval(ast.child(node, 0));
+                for (int i = 1; i < ast.childCount(node); i++) {
+                    mv.visitInsn(DUP);
+                    mv.visitFieldInsn(GETSTATIC, VALUES, "NOMATCH", O);
+                    mv.visitJumpInsn(IF_ACMPNE, end);
+                    mv.visitInsn(POP);
+                    eval(ast.child(node, i));
+                }
+                mv.visitLabel(end);
+                break;
+            }
+            case NodeKind.IMPLIES: {
+                Label unmatched = new Label();
+                Label end = new Label();
+                condition(ast.child(node, 0), node);
+                mv.visitJumpInsn(IFEQ, unmatched);
+                eval(ast.child(node, 1));
+                mv.visitJumpInsn(GOTO, end);
+                mv.visitLabel(unmatched);
+                mv.visitFieldInsn(GETSTATIC, VALUES, "NOMATCH", O);
+                mv.visitLabel(end);
+                break;
+            }
+            case NodeKind.OR:
+            case NodeKind.AND: {
+                Label right = new Label();
+                Label end = new Label();
+                condition(ast.child(node, 0), node);
+                mv.visitJumpInsn(kind == NodeKind.OR ? IFEQ : IFNE, right);
+                mv.visitFieldInsn(GETSTATIC, BOOLEAN, kind == NodeKind.OR ? "TRUE" : "FALSE", "L" + BOOLEAN + ";");
+                mv.visitJumpInsn(GOTO, end);
+                mv.visitLabel(right);
+                condition(ast.child(node, 1), node);
+                mv.visitMethodInsn(INVOKESTATIC, BOOLEAN, "valueOf", "(Z)L" + BOOLEAN + ";", false);
+                mv.visitLabel(end);
+                break;
+            }
+            case NodeKind.EQ: case NodeKind.NEQ:
+            case NodeKind.LT: case NodeKind.GT: case NodeKind.LEQ: case NodeKind.GEQ:
+                genComparison(kind, node);
+                break;
+            case NodeKind.ADD:
+                genOperation("add", node);
+                break;
+            case NodeKind.SUB:
+                genOperation("subtract", node);
+                break;
+            case NodeKind.MUL:
+                genOperation("multiply", node);
+                break;
+            case NodeKind.DIV:
+                genOperation("divide", node);
+                break;
+            case NodeKind.COMPOSE:
+                genOperation("compose", node);
+                break;
+            case NodeKind.NEG:
+                mv.visitVarInsn(ALOAD, 1);
+                value(ast.child(node, 0));
+                iconst(node);
+                mv.visitMethodInsn(INVOKEVIRTUAL, INTERPRETER, "negate", "(" + O + "I)" + O, false);
+                break;
+            case NodeKind.TRACE:
+                mv.visitVarInsn(ALOAD, 1);
+                value(ast.child(node, 0));
+                mv.visitMethodInsn(INVOKEVIRTUAL, INTERPRETER, "trace", "(" + O + ")" + O, false);
+                break;
+            case NodeKind.CALL: {
+                mv.visitVarInsn(ALOAD, 1);
+                mv.visitVarInsn(ALOAD, 1);
+                value(ast.child(node, 0));
+                iconst(node);
+                mv.visitMethodInsn(INVOKEVIRTUAL, INTERPRETER, "function", "(" + O + "I)" + FN, false);
+                genArray(node, 1);
+                iconst(node);
+                mv.visitMethodInsn(INVOKEVIRTUAL, INTERPRETER, "call", "(" + FN + "[" + O + "I)" + O, false);
+                break;
+            }
+            case NodeKind.LIST:
+                if (ast.childCount(node) == 0) {
+                    mv.visitFieldInsn(GETSTATIC, LIST, "EMPTY", "L" + LIST + ";");
+                } else {
+                    mv.visitVarInsn(ALOAD, 1);
+                    genArray(node, 0);
+                    iconst(node);
+                    mv.visitMethodInsn(INVOKEVIRTUAL, INTERPRETER, "list", "([" + O + "I)L" + LIST + ";", false);
+                }
+                break;
+            case NodeKind.FORALL:
+                genForall(node);
+                break;
+            default:
+                throw new IllegalArgumentException(NodeKind.name(kind));
+        }
+    }
+
+    /** A stripped operand as a Java boolean, err_bool at {@code node}. */
+    private void condition(int operand, int node) {
+        mv.visitVarInsn(ALOAD, 1);
+        value(operand);
+        iconst(node);
+        mv.visitMethodInsn(INVOKEVIRTUAL, INTERPRETER, "bool", "(" + O + "I)Z", false);
+    }
+
+    private void genOperation(String method, int node) {
+        mv.visitVarInsn(ALOAD, 1);
+        value(ast.child(node, 0));
+        value(ast.child(node, 1));
+        iconst(node);
+        mv.visitMethodInsn(INVOKEVIRTUAL, INTERPRETER, method, "(" + O + O + "I)" + O, false);
+    }
+
+    private void genComparison(int kind, int node) {
+        mv.visitVarInsn(ALOAD, 1);
+        value(ast.child(node, 0));
+        value(ast.child(node, 1));
+        iconst(node);
+        boolean equality = kind == NodeKind.EQ || kind == NodeKind.NEQ;
+        mv.visitMethodInsn(INVOKEVIRTUAL, INTERPRETER, equality ? "equal" : "compare",
+                "(" + O + O + "I)" + (equality ? "Z" : "I"), false);
+        int jump;
+        switch (kind) {
+            case NodeKind.EQ: jump = IFEQ; break;
+            case NodeKind.NEQ: jump = IFNE; break;
+            case NodeKind.LT: jump = IFGE; break;
+            case NodeKind.GT: jump = IFLE; break;
+            case NodeKind.LEQ: jump = IFGT; break;
+            default: jump = IFLT; break;
+        }
+        Label no = new Label();
+        Label end = new Label();
+        mv.visitJumpInsn(jump, no);
+        mv.visitFieldInsn(GETSTATIC, BOOLEAN, "TRUE", "L" + BOOLEAN + ";");
+        mv.visitJumpInsn(GOTO, end);
+        mv.visitLabel(no);
+        mv.visitFieldInsn(GETSTATIC, BOOLEAN, "FALSE", "L" + BOOLEAN + ";");
+        mv.visitLabel(end);
+    }
+
+    /** An Object[] of the stripped values of children {@code from..}. */
+    private void genArray(int node, int from) {
+        int n = ast.childCount(node) - from;
+        iconst(n);
+        mv.visitTypeInsn(ANEWARRAY, OBJECT);
+        for (int i = 0; i < n; i++) {
+            mv.visitInsn(DUP);
+            iconst(i);
+            value(ast.child(node, from + i));
+            mv.visitInsn(AASTORE);
+        }
+    }
+
+    private void genForall(int node) {
+        int list = nextLocal++;
+        int index = nextLocal++;
+        int step = nextLocal++;
+        mv.visitVarInsn(ALOAD, 1);
+        value(ast.child(node, 1));
+        iconst(node);
+        mv.visitMethodInsn(INVOKEVIRTUAL, INTERPRETER, "iterable", "(" + O + "I)L" + LIST + ";", false);
+        mv.visitVarInsn(ASTORE, list);
+        iconst(0);
+        mv.visitVarInsn(ISTORE, index);
+
+        Label loop = new Label();
+        Label done = new Label();
+        mv.visitLabel(loop);
+        mv.visitVarInsn(ILOAD, index);
+        mv.visitVarInsn(ALOAD, list);
+        mv.visitMethodInsn(INVOKEVIRTUAL, LIST, "size", "()I", false);
+        mv.visitJumpInsn(IF_ICMPGE, done);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitVarInsn(ALOAD, region.local);
+        iconst(node);
+        mv.visitMethodInsn(INVOKEVIRTUAL, INTERPRETER, "stepScope", "(" + SC + "I)" + SC, false);
+        mv.visitVarInsn(ASTORE, step);
+        // The binder is the step layout's slot 0.
+        mv.visitVarInsn(ALOAD, step);
+        iconst(0);
+        mv.visitVarInsn(ALOAD, list);
+        mv.visitVarInsn(ILOAD, index);
+        mv.visitMethodInsn(INVOKEVIRTUAL, LIST, "get", "(I)" + O, false);
+        mv.visitMethodInsn(INVOKEVIRTUAL, SCOPE, "set", "(I" + O + ")V", false);
+        mv.visitIincInsn(index, 1);
+
+        int body = ast.child(node, 2);
+        region = new Region(region, step);
+        eval(body);
+        region = region.parent;
+        mv.visitInsn(POP);
+        mv.visitJumpInsn(GOTO, loop);
+        mv.visitLabel(done);
+        // Ruling 2: ∀ is ⊥.
+        mv.visitFieldInsn(GETSTATIC, VALUES, "BOTTOM", O);
+    }
+
+    /** A name's value: its first bound candidate, else err_undef. */
+    private void genLookup(int node) {
+        Label found = new Label();
+        for (int c = resolution.firstCandidate(node), end = resolution.endCandidate(node); c < end; c++) {
+            loadScope(resolution.hops(c));
+            iconst(resolution.slot(c));
+            mv.visitMethodInsn(INVOKEVIRTUAL, SCOPE, "get", "(I)" + O, false);
+            mv.visitInsn(DUP);
+            mv.visitJumpInsn(IFNONNULL, found);
+            mv.visitInsn(POP);
+        }
+        genError("err_undef", node);
+        mv.visitLabel(found);
+    }
+
+    /** ←: the first bound candidate's scope and slot, else err_unbound; then the right side. */
+    private void genAssign(int node) {
+        int owner = nextLocal++;
+        int slot = nextLocal++;
+        Label found = new Label();
+        for (int c = resolution.firstCandidate(node), end = resolution.endCandidate(node); c < end; c++) {
+            loadScope(resolution.hops(c));
+            mv.visitVarInsn(ASTORE, owner);
+            iconst(resolution.slot(c));
+            mv.visitVarInsn(ISTORE, slot);
+            mv.visitVarInsn(ALOAD, owner);
+            mv.visitVarInsn(ILOAD, slot);
+            mv.visitMethodInsn(INVOKEVIRTUAL, SCOPE, "get", "(I)" + O, false);
+            mv.visitJumpInsn(IFNONNULL, found);
+        }
+        genError("err_unbound", node);
+        mv.visitLabel(found);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitVarInsn(ALOAD, owner);
+        mv.visitVarInsn(ILOAD, slot);
+        value(ast.child(node, 1));
+        mv.visitMethodInsn(INVOKEVIRTUAL, INTERPRETER, "rebind", "(" + SC + "I" + O + ")" + O, false);
+    }
+
+    /**
+     * The scope {@code hops} parents out from the one the code runs in:
+     * a region's local while the body made it, then parents of the λ's.
+     */
+    private void loadScope(int hops) {
+        Region r = region;
+        int h = hops;
+        for (; h > 0 && r.parent != null; h--) {
+            r = r.parent;
+        }
+        mv.visitVarInsn(ALOAD, r.local);
+        for (; h > 0; h--) {
+            mv.visitFieldInsn(GETFIELD, SCOPE, "parent", SC);
+        }
+    }
+
+    /** Throws the Interpreter's error {@code key} at {@code node}. */
+    private void genError(String key, int node) {
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitLdcInsn(key);
+        iconst(node);
+        mv.visitMethodInsn(INVOKEVIRTUAL, INTERPRETER, "error", ERROR, false);
+        mv.visitInsn(ATHROW);
+    }
+
+    private void iconst(int v) {
+        if (v >= -1 && v <= 5) {
+            mv.visitInsn(ICONST_0 + v);
+        } else if (v >= Byte.MIN_VALUE && v <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(BIPUSH, v);
+        } else if (v >= Short.MIN_VALUE && v <= Short.MAX_VALUE) {
+            mv.visitIntInsn(SIPUSH, v);
+        } else {
+            mv.visitLdcInsn(v);
+        }
+    }
+}
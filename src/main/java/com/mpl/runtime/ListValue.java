@@ -0,0 +1,130 @@
+package com.mpl.runtime;
+
+import java.util.Arrays;
+
+/**
+ * An immutable MPL list. Storage follows the contents: a list of numbers
+ * that all fit {@link Rational}'s long form keeps them unboxed — integers
+ * as one {@code long[]}, other rationals as numerator and denominator
+ * arrays — and anything else is an {@code Object[]}. A million integers
+ * take 8 MB and a million fractions 16 MB, against a Rational object per
+ * element. The choice is made once, when the list is built, and is
+ * canonical: equal lists of numbers have equal arrays. {@link #get} boxes
+ * a number on the way out; equality, display and the function scan read
+ * the arrays directly.
+ */
+public final class ListValue {
+
+    public static final ListValue EMPTY = new ListValue(new Object[0], null, null);
+
+    /** Mixed contents; null when the list is numeric. */
+    private final Object[] items;
+    /** Numerators of a numeric list. */
+    private final long[] nums;
+    /** Denominators, or null when every element is an integer. */
+    private final long[] dens;
+
+    private ListValue(Object[] items, long[] nums, long[] dens) {
+        this.items = items;
+        this.nums = nums;
+        this.dens = dens;
+    }
+
+    public static ListValue of(Object... items) {
+        return copyOf(items, 0, items.length);
+    }
+
+    /** A list of {@code src[from .. to)}. */
+    static ListValue copyOf(Object[] src, int from, int to) {
+        if (from == to) {
+            return EMPTY;
+        }
+        ListValue numeric = numeric(src, from, to);
+        return numeric != null ? numeric : new ListValue(Arrays.copyOfRange(src, from, to), null, null);
+    }
+
+    /** A list of {@code items}, which the caller hands over and no longer touches. */
+    static ListValue wrap(Object[] items) {
+        if (items.length == 0) {
+            return EMPTY;
+        }
+        ListValue numeric = numeric(items, 0, items.length);
+        return numeric != null ? numeric : new ListValue(items, null, null);
+    }
+
+    /** The unboxed form of {@code src[from .. to)}, or null if it has other values. */
+    private static ListValue numeric(Object[] src, int from, int to) {
+        boolean integers = true;
+        for (int i = from; i < to; i++) {
+            if (!(src[i] instanceof Rational) || !((Rational) src[i]).isLong()) {
+                return null;
+            }
+            integers &= ((Rational) src[i]).longDen() == 1;
+        }
+        long[] nums = new long[to - from];
+        long[] dens = integers ? null : new long[to - from];
+        for (int i = from; i < to; i++) {
+            Rational r = (Rational) src[i];
+            nums[i - from] = r.longNum();
+            if (dens != null) {
+                dens[i - from] = r.longDen();
+            }
+        }
+        return new ListValue(null, nums, dens);
+    }
+
+    public int size() {
+        return items != null ? items.length : nums.length;
+    }
+
+    public Object get(int i) {
+        if (items != null) {
+            return items[i];
+        }
+        return Rational.small(nums[i], dens == null ? 1 : dens[i]);
+    }
+
+    /** About the bytes this list's own storage takes on the heap; elements are their own. */
+    long footprintBytes() {
+        if (items != null) {
+            return 40 + 4L * items.length;
+        }
+        return 40 + 8L * nums.length * (dens == null ? 1 : 2);
+    }
+
+    /** Whether every element is a number, held unboxed. */
+    boolean isNumeric() {
+        return items == null;
+    }
+
+    /** Element-wise equality of two numeric lists, on the arrays. */
+    boolean sameNumbers(ListValue other) {
+        // Canonical: an integer list never equals one holding a fraction.
+        return Arrays.equals(nums, other.nums) && Arrays.equals(dens, other.dens);
+    }
+
+    /** A hash of a numeric list's arrays, consistent with {@link #sameNumbers}. */
+    int numbersHash() {
+        return 31 * Arrays.hashCode(nums) + Arrays.hashCode(dens);
+    }
+
+    /** Appends ruling 5's "[a, b, …]" for a numeric list, draining into {@code sink} if there is one. */
+    void renderNumbers(StringBuilder sb, Utf8Sink sink) {
+        sb.append('[');
+        for (int i = 0; i < nums.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            Rational.appendLong(nums[i], dens == null ? 1 : dens[i], sb);
+            if (sink != null && (i & 255) == 255) {
+                sink.drain();
+            }
+        }
+        sb.append(']');
+    }
+
+    @Override
+    public String toString() {
+        return Values.show(this);
+    }
+}
@@ -0,0 +1,151 @@
+package com.mpl.runtime;
+
+import com.mpl.ast.Ast;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The interpreter's memo table: results of applying pure closures (see
+ * {@link Purity}) to arguments, least recently used first out once it
+ * holds its capacity.
+ *
+ * A key is the closure itself — its λ and the scope it closed over — and
+ * its arguments, equal under ruling 7 and hashed to match. Applications
+ * with a function among their arguments or in their result are not kept:
+ * functions have no equality, and a closure made by the application would
+ * be shared between calls that each made their own.
+ *
+ * An entry also records what evaluating the application cost: the steps
+ * it took, how many λ levels deep it went, counting its own, and the heap
+ * its values took. The interpreter charges all three on a hit, so the
+ * budgets run out where they would without the table.
+ *
+ * A pure body may still read names bound outside it, so the table holds
+ * only while no binding changes outside a memoized application; the
+ * interpreter {@link #invalidate}s it when one does.
+ */
+final class Memo {
+
+    private final int capacity;
+    private final Map<Key, Entry> entries;
+    /** Purity of the closures applied so far. */
+    private final Map<Closure, Boolean> pure = new IdentityHashMap<>();
+    long hits;
+    long misses;
+    long evictions;
+
+    Memo(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > Memo.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /** An application's key, or null if it may not be memoized (wrong arity included). */
+    Key key(Ast ast, Closure c, Object[] args, int from, int count) {
+        if (count != ast.data(c.lambda)) {
+            return null;
+        }
+        int hash = System.identityHashCode(c);
+        for (int i = from; i < from + count; i++) {
+            if (Values.containsFunction(args[i])) {
+                return null;
+            }
+            hash = 31 * hash + Values.hash(args[i]);
+        }
+        Boolean known = pure.get(c);
+        if (known == null) {
+            if (pure.size() >= capacity) {
+                pure.clear();
+            }
+            known = Purity.closure(ast, c);
+            pure.put(c, known);
+        }
+        if (!known) {
+            return null;
+        }
+        Object[] copy = new Object[count];
+        System.arraycopy(args, from, copy, 0, count);
+        return new Key(c, copy, hash);
+    }
+
+    Entry get(Key key) {
+        return entries.get(key);
+    }
+
+    /** Keeps a finished application unless its result holds a function. */
+    void put(Key key, Object value, long steps, int depth, long bytes) {
+        if (!Values.containsFunction(value)) {
+            entries.put(key, new Entry(value, steps, depth, bytes));
+        }
+    }
+
+    /** Drops every entry and purity answer: a binding they may depend on has changed. */
+    void invalidate() {
+        if (!entries.isEmpty()) {
+            entries.clear();
+        }
+        if (!pure.isEmpty()) {
+            pure.clear();
+        }
+    }
+
+    static final class Key {
+        final Closure closure;
+        final Object[] args;
+        final int hash;
+
+        Key(Closure closure, Object[] args, int hash) {
+            this.closure = closure;
+            this.args = args;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            if (k.closure != closure || k.hash != hash) {
+                return false;
+            }
+            for (int i = 0; i < args.length; i++) {
+                if (!Values.equal(args[i], k.args[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    static final class Entry {
+        final Object value;
+        /** Steps the application took, from entering the λ to its result. */
+        final long steps;
+        /** λ levels it reached, its own included. */
+        final int depth;
+        /** Estimated bytes of the values it made (see {@link Governor}). */
+        final long bytes;
+
+        Entry(Object value, long steps, int depth, long bytes) {
+            this.value = value;
+            this.steps = steps;
+            this.depth = depth;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.mpl.runtime;
+
+/**
+ * An MPL error: a stable key (err_div0, err_expect, … — the keys the
+ * conformance corpus records in expected.err) and the 1-based source
+ * position it was raised at. The key is the contract; the message is for
+ * people.
+ */
+public final class MplException extends RuntimeException {
+
+    private final String key;
+    private final int line;
+    private final int col;
+
+    public MplException(String key, int line, int col) {
+        // No stack trace: these are program errors, not interpreter bugs,
+        // and deep recursion makes filling one in expensive.
+        super(key + " at " + line + ":" + col, null, false, false);
+        this.key = key;
+        this.line = line;
+        this.col = col;
+    }
+
+    public String key() {
+        return key;
+    }
+
+    public int line() {
+        return line;
+    }
+
+    public int col() {
+        return col;
+    }
+}
@@ -0,0 +1,102 @@
+package com.mpl.runtime;
+
+/**
+ * Instructions of {@link Bytecode}. An instruction is an opcode word
+ * followed by its operands, all ints in one {@code int[]}. The opcode is
+ * the word's low 8 bits; the bits above count the steps (err_steps) the
+ * instruction takes before it runs — the frame pushes the Interpreter
+ * makes as it starts evaluating the expressions whose code begins here.
+ *
+ * The comment after each opcode lists its operands and its effect on the
+ * value stack ("pool" = constant pool index, "target" = a pc, "hops" =
+ * scopes to walk out from the current one).
+ */
+final class Opcode {
+
+    private Opcode() {}
+
+    // Values
+    static final int CONST = 0;        // pool: → constant
+    static final int TRUE = 1;         // → true
+    static final int FALSE = 2;        // → false
+    static final int BOTTOM = 3;       // → ⊥
+    static final int NOMATCH = 4;      // → the unmatched-guard sentinel
+    static final int LAMBDA = 5;       // function: → closure over the current scope
+    static final int LIST = 6;         // count: items → list
+
+    // Names
+    static final int LOAD = 7;         // hops, slot: → the variable in that slot
+    static final int LOOKUP = 8;       // hops, pool name: → by name from there out (err_undef)
+    static final int CHECK_NEW = 9;    // pool name: ≜ target unbound here (err_redef)
+    static final int DEFINE = 10;      // pool name: v → v, bound in the current scope
+    static final int STORE = 11;       // hops, slot: v → v, written to that slot
+    static final int OWNER = 12;       // hops, pool name: → the scope binding it (err_unbound)
+    static final int ASSIGN = 13;      // pool name: scope, v → v, written there
+
+    // Control
+    static final int POP = 14;         // v →
+    static final int STRIP = 15;       // v → v, the sentinel as ⊥
+    static final int JUMP = 16;        // target
+    static final int JUMP_FALSE = 17;  // target: b → (err_bool); jumps if false
+    static final int JUMP_MATCHED = 18; // target: v → v and jumps, unless v is the sentinel: v →
+    static final int OR = 19;          // target: b → (err_bool); if true, → true and jumps
+    static final int AND = 20;         // target: b → (err_bool); if false, → false and jumps
+    static final int BOOL = 21;        // b → b (err_bool)
+
+    // Operators: a, b → result
+    static final int EQ = 22;
+    static final int NEQ = 23;
+    static final int LT = 24;
+    static final int GT = 25;
+    static final int LEQ = 26;
+    static final int GEQ = 27;
+    static final int ADD = 28;
+    static final int SUB = 29;
+    static final int MUL = 30;
+    static final int DIV = 31;
+    static final int COMPOSE = 32;
+    static final int NEG = 33;         // v → -v
+    static final int TRACE = 34;       // v → v, printed
+
+    // Application
+    static final int CHECK_FN = 35;    // f → f (err_notfn)
+    static final int CALL = 36;        // count: f, args → result
+    static final int RETURN = 37;      // v: back to the caller, stripped
+
+    // ∀: the list and its next index occupy one stack slot
+    static final int ITER = 38;        // v → list (err_iter)
+    static final int FOR_NEXT = 39;    // pool name, target: enters a step scope binding the next
+                                       // item, or replaces the list with ⊥ and jumps
+    static final int LOOP = 40;        // target: v →, leaves the step scope and jumps
+
+    static final int NOTYET = 41;      // err_notyet: sets, records and M1 forms
+    static final int HALT = 42;        // v: the program's value
+
+    static final int COUNT = 43;
+
+    private static final String[] NAMES = {
+        "CONST", "TRUE", "FALSE", "BOTTOM", "NOMATCH", "LAMBDA", "LIST",
+        "LOAD", "LOOKUP", "CHECK_NEW", "DEFINE", "STORE", "OWNER", "ASSIGN",
+        "POP", "STRIP", "JUMP", "JUMP_FALSE", "JUMP_MATCHED", "OR", "AND", "BOOL",
+        "EQ", "NEQ", "LT", "GT", "LEQ", "GEQ", "ADD", "SUB", "MUL", "DIV", "COMPOSE", "NEG", "TRACE",
+        "CHECK_FN", "CALL", "RETURN", "ITER", "FOR_NEXT", "LOOP", "NOTYET", "HALT"
+    };
+
+    static String name(int op) {
+        return NAMES[op];
+    }
+
+    /** Operand words after the opcode. */
+    static int operands(int op) {
+        switch (op) {
+            case LOAD: case LOOKUP: case STORE: case OWNER: case FOR_NEXT:
+                return 2;
+            case CONST: case LAMBDA: case LIST: case CHECK_NEW: case DEFINE: case ASSIGN:
+            case JUMP: case JUMP_FALSE: case JUMP_MATCHED: case OR: case AND:
+            case CALL: case LOOP:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.mpl.runtime;
+
+import com.mpl.ast.Ast;
+import com.mpl.ast.NodeKind;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Effect analysis for ∀ bodies and closures: whether running a body can
+ * be seen anywhere but in its own scopes. A body is pure when it has no ✎, every
+ * ← targets a binding made inside it — the ∀ name, a λ parameter, or a ≜
+ * that has certainly run in the same scope before — and every call is to
+ * a λ written in it or to a closure, bound outside it, whose body is pure
+ * in turn. A callee whose value is not known before the loop runs (a
+ * name the body itself binds or takes as a parameter, a computed
+ * function) makes the body impure. Errors are not effects here: a failing
+ * iteration is re-run in order by the caller.
+ *
+ * The answer is conservative, and valid for the scopes it was asked about
+ * until something rebinds a callee. One instance answers one question.
+ */
+final class Purity {
+
+    private final Ast ast;
+    /** Closures being or already checked; true while in progress. */
+    private final Map<Closure, Boolean> closures = new IdentityHashMap<>();
+
+    private Purity(Ast ast) {
+        this.ast = ast;
+    }
+
+    /** Whether the body of {@code forall}, running in scopes under {@code sc}, is pure. */
+    static boolean forallBody(Ast ast, int forall, Scope sc) {
+        Set<String> locals = new HashSet<>();
+        locals.add(ast.text(ast.child(forall, 0)));
+        return new Purity(ast).region(ast.child(forall, 2), locals, Set.of(), sc);
+    }
+
+    /** Whether applying {@code c} is pure: its body, with its parameters bound. */
+    static boolean closure(Ast ast, Closure c) {
+        return new Purity(ast).function(c);
+    }
+
+    /**
+     * A scope's code: {@code root} with {@code locals} bound, names the
+     * enclosing code may bind in {@code outer}, others resolved from
+     * {@code env}.
+     */
+    private boolean region(int root, Set<String> locals, Set<String> outer, Scope env) {
+        Set<String> defined = new HashSet<>(outer);
+        collectDefinitions(root, defined);
+        return check(root, true, locals, defined, env);
+    }
+
+    /**
+     * {@code top}: reached from the scope's root through sequencing only, so
+     * a ≜ here has run before every later item of the sequence.
+     */
+    private boolean check(int node, boolean top, Set<String> locals, Set<String> defined, Scope env) {
+        switch (ast.kind(node)) {
+            case NodeKind.TRACE:
+                return false;
+            case NodeKind.ASSIGN:
+                return locals.contains(ast.text(ast.child(node, 0)))
+                        && check(ast.child(node, 1), false, locals, defined, env);
+            case NodeKind.DEF:
+                if (!check(ast.child(node, 1), false, locals, defined, env)) {
+                    return false;
+                }
+                if (top) {
+                    locals.add(ast.text(ast.child(node, 0)));
+                }
+                return true;
+            case NodeKind.SEQ:
+                for (int i = 0; i < ast.childCount(node); i++) {
+                    if (!check(ast.child(node, i), top, locals, defined, env)) {
+                        return false;
+                    }
+                }
+                return true;
+            case NodeKind.LAMBDA: {
+                Set<String> inner = new HashSet<>(locals);
+                int params = ast.childCount(node) - 1;
+                for (int i = 0; i < params; i++) {
+                    int p = ast.child(node, i);
+                    if (ast.kind(p) == NodeKind.ID) {
+                        inner.add(ast.text(p));
+                    }
+                }
+                return region(ast.child(node, params), inner, defined, env);
+            }
+            case NodeKind.FORALL: {
+                if (!check(ast.child(node, 1), false, locals, defined, env)) {
+                    return false;
+                }
+                Set<String> inner = new HashSet<>(locals);
+                inner.add(ast.text(ast.child(node, 0)));
+                return region(ast.child(node, 2), inner, defined, env);
+            }
+            case NodeKind.CALL: {
+                if (!callee(ast.child(node, 0), locals, defined, env)) {
+                    return false;
+                }
+                for (int i = 0; i < ast.childCount(node); i++) {
+                    if (!check(ast.child(node, i), false, locals, defined, env)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            default:
+                for (int i = 0; i < ast.childCount(node); i++) {
+                    if (!check(ast.child(node, i), false, locals, defined, env)) {
+                        return false;
+                    }
+                }
+                return true;
+        }
+    }
+
+    /** Whether what a call applies is known now and pure. */
+    private boolean callee(int node, Set<String> locals, Set<String> defined, Scope env) {
+        switch (ast.kind(node)) {
+            case NodeKind.LAMBDA:
+                // Its body is checked as part of the call's children.
+                return true;
+            case NodeKind.ID: {
+                String name = ast.text(node);
+                if (locals.contains(name) || defined.contains(name)) {
+                    return false;
+                }
+                Scope owner = Scope.find(env, name);
+                // Unbound: the call fails, which is not an effect.
+                return owner == null || function(owner.get(owner.indexOf(name)));
+            }
+            default:
+                return false;
+        }
+    }
+
+    /** Whether applying a value can have an effect; non-functions only fail. */
+    private boolean function(Object v) {
+        if (v instanceof Composition) {
+            Composition c = (Composition) v;
+            return function(c.f) && function(c.g);
+        }
+        if (!(v instanceof Closure)) {
+            return true;
+        }
+        Closure c = (Closure) v;
+        Boolean known = closures.get(c);
+        if (known != null) {
+            // Recursion is assumed pure; any effect on the cycle fails the whole answer.
+            return known;
+        }
+        closures.put(c, true);
+        Set<String> params = new HashSet<>();
+        int count = ast.childCount(c.lambda) - 1;
+        for (int i = 0; i < count; i++) {
+            int p = ast.child(c.lambda, i);
+            if (ast.kind(p) == NodeKind.ID) {
+                params.add(ast.text(p));
+            }
+        }
+        boolean pure = region(ast.child(c.lambda, count), params, Set.of(), c.env);
+        closures.put(c, pure);
+        return pure;
+    }
+
+    /** Every name ≜ binds in a region, nested λs and ∀s included. */
+    private void collectDefinitions(int node, Set<String> names) {
+        if (ast.kind(node) == NodeKind.DEF) {
+            names.add(ast.text(ast.child(node, 0)));
+        }
+        for (int i = 0; i < ast.childCount(node); i++) {
+            collectDefinitions(ast.child(node, i), names);
+        }
+    }
+}
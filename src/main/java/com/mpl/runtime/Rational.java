@@ -0,0 +1,480 @@
+package com.mpl.runtime;
+
+import java.math.BigInteger;
+
+/**
+ * An exact rational number (ruling 4): numerator and denominator always in
+ * lowest terms with a positive denominator. Immutable. Decimal literals
+ * convert exactly — 0.1 is 1/10.
+ *
+ * A value is held in one of two forms. While both parts fit in a long
+ * (excluding Long.MIN_VALUE, so negation never overflows) it is a pair of
+ * longs and arithmetic is overflow-checked long arithmetic with a binary
+ * GCD; an operation that would overflow redoes itself in BigInteger, and a
+ * BigInteger result that fits again goes back to longs. The form is
+ * canonical, so equal values have equal fields. Small integers are cached:
+ * a counting loop allocates nothing until it passes {@link #CACHE_HIGH}.
+ */
+public final class Rational implements Comparable<Rational> {
+
+    private static final BigInteger LONG_MIN = BigInteger.valueOf(Long.MIN_VALUE);
+
+    private static final int CACHE_LOW = -128;
+    private static final int CACHE_HIGH = 1023;
+    private static final Rational[] CACHE = new Rational[CACHE_HIGH - CACHE_LOW + 1];
+
+    static {
+        for (int i = 0; i < CACHE.length; i++) {
+            CACHE[i] = new Rational(i + CACHE_LOW, 1, null, null);
+        }
+    }
+
+    public static final Rational ZERO = of(0);
+    public static final Rational ONE = of(1);
+
+    /** The long form; meaningless when {@code bigNum} is set. */
+    private final long num;
+    private final long den;
+    /** The BigInteger form, or both null. */
+    private final BigInteger bigNum;
+    private final BigInteger bigDen;
+
+    private Rational(long num, long den, BigInteger bigNum, BigInteger bigDen) {
+        this.num = num;
+        this.den = den;
+        this.bigNum = bigNum;
+        this.bigDen = bigDen;
+    }
+
+    public static Rational of(long n) {
+        if (n >= CACHE_LOW && n <= CACHE_HIGH) {
+            return CACHE[(int) n - CACHE_LOW];
+        }
+        if (n == Long.MIN_VALUE) {
+            return new Rational(0, 0, LONG_MIN, BigInteger.ONE);
+        }
+        return new Rational(n, 1, null, null);
+    }
+
+    /** n/d in lowest terms. Throws ArithmeticException when d is 0. */
+    public static Rational of(BigInteger n, BigInteger d) {
+        if (d.signum() == 0) {
+            throw new ArithmeticException("zero denominator");
+        }
+        if (d.signum() < 0) {
+            n = n.negate();
+            d = d.negate();
+        }
+        if (!d.equals(BigInteger.ONE)) {
+            // BigInteger.gcd is already a hybrid Euclid/binary GCD.
+            BigInteger g = n.gcd(d);
+            if (!g.equals(BigInteger.ONE)) {
+                n = n.divide(g);
+                d = d.divide(g);
+            }
+        }
+        return reduced(n, d);
+    }
+
+    /**
+     * The exact value of an MPL NUMBER literal: decimal integers and
+     * fractions, 0x hex, 0b binary, and e-notation.
+     */
+    public static Rational parse(String literal) {
+        if (literal.startsWith("0x") || literal.startsWith("0X")) {
+            return reduced(new BigInteger(literal.substring(2), 16), BigInteger.ONE);
+        }
+        if (literal.startsWith("0b") || literal.startsWith("0B")) {
+            return reduced(new BigInteger(literal.substring(2), 2), BigInteger.ONE);
+        }
+        int exp = 0;
+        int e = Math.max(literal.indexOf('e'), literal.indexOf('E'));
+        String mantissa = literal;
+        if (e >= 0) {
+            exp = Integer.parseInt(literal.substring(e + 1).replace("+", ""));
+            mantissa = literal.substring(0, e);
+        }
+        int dot = mantissa.indexOf('.');
+        if (dot >= 0) {
+            exp -= mantissa.length() - dot - 1;
+            mantissa = mantissa.substring(0, dot) + mantissa.substring(dot + 1);
+        }
+        BigInteger n = new BigInteger(mantissa);
+        return exp >= 0
+                ? reduced(n.multiply(BigInteger.TEN.pow(exp)), BigInteger.ONE)
+                : of(n, BigInteger.TEN.pow(-exp));
+    }
+
+    /** An already-reduced n/d with d > 0, in its canonical form. */
+    private static Rational reduced(BigInteger n, BigInteger d) {
+        if (fits(n) && fits(d)) {
+            return small(n.longValue(), d.longValue());
+        }
+        return new Rational(0, 0, n, d);
+    }
+
+    /** An already-reduced n/d with d > 0, neither Long.MIN_VALUE. */
+    static Rational small(long n, long d) {
+        if (d == 1 && n >= CACHE_LOW && n <= CACHE_HIGH) {
+            return CACHE[(int) n - CACHE_LOW];
+        }
+        return new Rational(n, d, null, null);
+    }
+
+    private static boolean fits(BigInteger x) {
+        return x.bitLength() < 64 && !x.equals(LONG_MIN);
+    }
+
+    private boolean isBig() {
+        return bigNum != null;
+    }
+
+    /** About the bytes this value takes on the heap. */
+    long footprintBytes() {
+        return isBig() ? 64 + (bigNum.bitLength() + bigDen.bitLength()) / 8 : 32;
+    }
+
+    /** Whether {@link #longNum} and {@link #longDen} hold the value. */
+    boolean isLong() {
+        return bigNum == null;
+    }
+
+    /** The numerator in the long form. */
+    long longNum() {
+        return num;
+    }
+
+    /** The denominator in the long form. */
+    long longDen() {
+        return den;
+    }
+
+    /** What {@link #toString} gives for the long form n/d. */
+    static void appendLong(long n, long d, StringBuilder sb) {
+        sb.append(n);
+        if (d != 1) {
+            sb.append('/').append(d);
+        }
+    }
+
+    public BigInteger numerator() {
+        return isBig() ? bigNum : BigInteger.valueOf(num);
+    }
+
+    public BigInteger denominator() {
+        return isBig() ? bigDen : BigInteger.valueOf(den);
+    }
+
+    public int signum() {
+        return isBig() ? bigNum.signum() : Long.signum(num);
+    }
+
+    public boolean isZero() {
+        return !isBig() && num == 0;
+    }
+
+    public boolean isInteger() {
+        return isBig() ? bigDen.equals(BigInteger.ONE) : den == 1;
+    }
+
+    public Rational add(Rational o) {
+        if (!isBig() && !o.isBig()) {
+            Rational r = addSmall(num, den, o.num, o.den);
+            if (r != null) {
+                return r;
+            }
+        }
+        return of(numerator().multiply(o.denominator()).add(o.numerator().multiply(denominator())),
+                denominator().multiply(o.denominator()));
+    }
+
+    public Rational subtract(Rational o) {
+        if (!isBig() && !o.isBig()) {
+            Rational r = addSmall(num, den, -o.num, o.den);
+            if (r != null) {
+                return r;
+            }
+        }
+        return of(numerator().multiply(o.denominator()).subtract(o.numerator().multiply(denominator())),
+                denominator().multiply(o.denominator()));
+    }
+
+    public Rational multiply(Rational o) {
+        if (!isBig() && !o.isBig()) {
+            Rational r = multiplySmall(num, den, o.num, o.den);
+            if (r != null) {
+                return r;
+            }
+        }
+        return of(numerator().multiply(o.numerator()), denominator().multiply(o.denominator()));
+    }
+
+    /** Throws ArithmeticException when o is 0 (err_div0 to the interpreter). */
+    public Rational divide(Rational o) {
+        if (!isBig() && !o.isBig()) {
+            if (o.num == 0) {
+                throw new ArithmeticException("division by zero");
+            }
+            // Multiply by the reciprocal, sign moved to the numerator.
+            Rational r = o.num > 0
+                    ? multiplySmall(num, den, o.den, o.num)
+                    : multiplySmall(num, den, -o.den, -o.num);
+            if (r != null) {
+                return r;
+            }
+        }
+        return of(numerator().multiply(o.denominator()), denominator().multiply(o.numerator()));
+    }
+
+    public Rational negate() {
+        return isBig() ? reduced(bigNum.negate(), bigDen) : small(-num, den);
+    }
+
+    /**
+     * n1/d1 + n2/d2 in longs (Knuth 4.5.1: gcds of the denominators keep
+     * intermediates small and the result reduced), or null on overflow.
+     */
+    private static Rational addSmall(long n1, long d1, long n2, long d2) {
+        if (d1 == 1 && d2 == 1) {
+            long s = n1 + n2;
+            return overflowed(n1, n2, s) ? null : small(s, 1);
+        }
+        long g = gcd(d1, d2);
+        if (g == 1) {
+            long a = mul(n1, d2);
+            long b = mul(n2, d1);
+            long d = mul(d1, d2);
+            if (a == Long.MIN_VALUE || b == Long.MIN_VALUE || d == Long.MIN_VALUE) {
+                return null;
+            }
+            long s = a + b;
+            // gcd(s, d1·d2) is 1 when the denominators are coprime.
+            return overflowed(a, b, s) ? null : small(s, d);
+        }
+        long a = mul(n1, d2 / g);
+        long b = mul(n2, d1 / g);
+        if (a == Long.MIN_VALUE || b == Long.MIN_VALUE) {
+            return null;
+        }
+        long t = a + b;
+        if (overflowed(a, b, t)) {
+            return null;
+        }
+        long g2 = gcd(Math.abs(t), g);
+        long d = mul(d1 / g, d2 / g2);
+        return d == Long.MIN_VALUE ? null : small(t / g2, d);
+    }
+
+    /** n1/d1 × n2/d2 in longs, cross-reduced first, or null on overflow. */
+    private static Rational multiplySmall(long n1, long d1, long n2, long d2) {
+        if (d1 == 1 && d2 == 1) {
+            long p = mul(n1, n2);
+            return p == Long.MIN_VALUE ? null : small(p, 1);
+        }
+        long g1 = gcd(Math.abs(n1), d2);
+        long g2 = gcd(Math.abs(n2), d1);
+        long n = mul(n1 / g1, n2 / g2);
+        long d = mul(d1 / g2, d2 / g1);
+        return n == Long.MIN_VALUE || d == Long.MIN_VALUE ? null : small(n, d);
+    }
+
+    private static boolean overflowed(long a, long b, long sum) {
+        return ((a ^ sum) & (b ^ sum)) < 0 || sum == Long.MIN_VALUE;
+    }
+
+    /** a × b, or Long.MIN_VALUE when the product does not fit (or is MIN_VALUE). */
+    private static long mul(long a, long b) {
+        long hi = Math.multiplyHigh(a, b);
+        long lo = a * b;
+        return (hi == 0 && lo >= 0) || (hi == -1 && lo < 0) ? lo : Long.MIN_VALUE;
+    }
+
+    /** Binary (Stein) GCD of two non-negative longs; gcd(0, b) = b. */
+    static long gcd(long a, long b) {
+        if (a == 0) {
+            return b;
+        }
+        if (b == 0) {
+            return a;
+        }
+        if (a == 1 || b == 1) {
+            return 1;
+        }
+        int shift = Long.numberOfTrailingZeros(a | b);
+        a >>= Long.numberOfTrailingZeros(a);
+        do {
+            b >>= Long.numberOfTrailingZeros(b);
+            if (a > b) {
+                long t = b;
+                b = a;
+                a = t;
+            }
+            b -= a;
+        } while (b != 0);
+        return a << shift;
+    }
+
+    @Override
+    public int compareTo(Rational o) {
+        if (!isBig() && !o.isBig()) {
+            if (den == o.den) {
+                return Long.compare(num, o.num);
+            }
+            // n1·d2 against n2·d1 as exact 128-bit products.
+            long hi1 = Math.multiplyHigh(num, o.den);
+            long hi2 = Math.multiplyHigh(o.num, den);
+            if (hi1 != hi2) {
+                return Long.compare(hi1, hi2);
+            }
+            return Long.compareUnsigned(num * o.den, o.num * den);
+        }
+        if (denominator().equals(o.denominator())) {
+            return numerator().compareTo(o.numerator());
+        }
+        return numerator().multiply(o.denominator()).compareTo(o.numerator().multiply(denominator()));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Rational)) {
+            return false;
+        }
+        Rational r = (Rational) o;
+        if (isBig() != r.isBig()) {
+            return false;
+        }
+        return isBig()
+                ? bigNum.equals(r.bigNum) && bigDen.equals(r.bigDen)
+                : num == r.num && den == r.den;
+    }
+
+    @Override
+    public int hashCode() {
+        return isBig()
+                ? 31 * bigNum.hashCode() + bigDen.hashCode()
+                : 31 * Long.hashCode(num) + Long.hashCode(den);
+    }
+
+    /** "n" for integers, else "n/d" in lowest terms (ruling 4). */
+    @Override
+    public String toString() {
+        if (isBig()) {
+            StringBuilder sb = new StringBuilder();
+            appendTo(sb);
+            return sb.toString();
+        }
+        return den == 1 ? Long.toString(num) : num + "/" + den;
+    }
+
+    /** Appends {@link #toString}'s text without making it. */
+    void appendTo(StringBuilder sb) {
+        if (!isBig()) {
+            appendLong(num, den, sb);
+            return;
+        }
+        appendDecimal(bigNum, sb);
+        if (!bigDen.equals(BigInteger.ONE)) {
+            sb.append('/');
+            appendDecimal(bigDen, sb);
+        }
+    }
+
+    /** Decimal digits in a long chunk: 10^18 is the largest power of ten below 2^63. */
+    private static final int CHUNK_DIGITS = 18;
+    /** Below this many bits a number is cut into chunks one division at a time. */
+    private static final int SPLIT_BITS = 2048;
+    /** 10^(18·2^k) at index k, extended on demand; the array is replaced, never changed. */
+    private static volatile BigInteger[] tenPowers = {BigInteger.TEN.pow(CHUNK_DIGITS)};
+
+    private static BigInteger tenPower(int k) {
+        BigInteger[] powers = tenPowers;
+        if (k >= powers.length) {
+            synchronized (Rational.class) {
+                powers = tenPowers;
+                if (k >= powers.length) {
+                    BigInteger[] grown = java.util.Arrays.copyOf(powers, k + 1);
+                    for (int i = powers.length; i <= k; i++) {
+                        grown[i] = grown[i - 1].multiply(grown[i - 1]);
+                    }
+                    tenPowers = powers = grown;
+                }
+            }
+        }
+        return powers[k];
+    }
+
+    /**
+     * Appends x in decimal by divide and conquer: x = q·10^m + r with m
+     * about half its digits, q written first and r padded to m digits, so
+     * the cost is that of the divisions — subquadratic for BigInteger's
+     * Burnikel-Ziegler — rather than one pass per digit chunk. Digits go
+     * straight into {@code sb}.
+     */
+    static void appendDecimal(BigInteger x, StringBuilder sb) {
+        if (x.signum() < 0) {
+            sb.append('-');
+            x = x.negate();
+        }
+        if (x.bitLength() < 63) {
+            sb.append(x.longValue());
+            return;
+        }
+        int k = 0;
+        while (tenPower(k).compareTo(x) <= 0) {
+            k++;
+        }
+        appendDigits(x, k, false, sb);
+    }
+
+    /**
+     * Appends x, which is below 10^(18·2^k), padded to 18·2^k digits when
+     * {@code pad} is set.
+     */
+    private static void appendDigits(BigInteger x, int k, boolean pad, StringBuilder sb) {
+        if (!pad) {
+            // Unpadded, split where the high half is not 0.
+            while (k > 0 && tenPower(k - 1).compareTo(x) > 0) {
+                k--;
+            }
+        }
+        if (x.bitLength() < SPLIT_BITS || k == 0) {
+            appendChunks(x, pad ? CHUNK_DIGITS << k : 0, sb);
+            return;
+        }
+        BigInteger[] qr = x.divideAndRemainder(tenPower(k - 1));
+        appendDigits(qr[0], k - 1, pad, sb);
+        appendDigits(qr[1], k - 1, true, sb);
+    }
+
+    /** Appends a number of a few chunks, padded to {@code width} digits (0: unpadded). */
+    private static void appendChunks(BigInteger x, int width, StringBuilder sb) {
+        long[] chunks = new long[x.bitLength() / 59 + 1];
+        int n = 0;
+        BigInteger chunk = tenPower(0);
+        while (x.bitLength() >= 63) {
+            BigInteger[] qr = x.divideAndRemainder(chunk);
+            chunks[n++] = qr[1].longValue();
+            x = qr[0];
+        }
+        long top = x.longValue();
+        for (int i = n * CHUNK_DIGITS + digits(top); i < width; i++) {
+            sb.append('0');
+        }
+        sb.append(top);
+        for (int i = n - 1; i >= 0; i--) {
+            for (int z = digits(chunks[i]); z < CHUNK_DIGITS; z++) {
+                sb.append('0');
+            }
+            sb.append(chunks[i]);
+        }
+    }
+
+    private static int digits(long v) {
+        int d = 1;
+        while (v >= 10) {
+            v /= 10;
+            d++;
+        }
+        return d;
+    }
+}
@@ -0,0 +1,247 @@
+package com.mpl.runtime;
+
+import com.mpl.ast.Ast;
+import com.mpl.ast.NodeKind;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The resolver pass: lexical addresses for one {@link Ast}, so the
+ * interpreter reads variables by slot instead of hashing names up the
+ * scope chain.
+ *
+ * A region is the code one runtime scope runs: the program, a λ body, or
+ * a ∀ body. Braces group and do not scope (ruling 15), so a region runs
+ * through them and stops only at a nested λ or ∀ body. Each region gets a
+ * {@link Scope.Layout}: its binders (λ parameters or the ∀ name), bound on
+ * entry, then every name a ≜ in it may bind, in order of appearance.
+ *
+ * A ≜ runs when it is reached, so a name a region may bind is not bound
+ * before then, and the reference engine looks further out in the meantime.
+ * A reference therefore resolves to a list of candidates — (hops, slot)
+ * pairs, one per enclosing region that binds the name or may — ending at
+ * the first region that binds it from entry. At run time the first bound
+ * candidate is the binding; none is err_undef for a name and err_unbound
+ * for ← (ruling 16). A λ body's reference to a name its enclosing region
+ * binds later, such as a recursive function's own name, finds it bound by
+ * the time the λ is applied.
+ *
+ * Runtime scopes mirror regions one for one — a λ scope's parent is the
+ * scope the λ was evaluated in, a ∀ step's is the loop's — so hops count
+ * parents from the scope a node runs in.
+ */
+final class Resolution {
+
+    private final Scope.Layout[] layouts;
+    /** Per ≜ and λ parameter node: the slot it binds, or -1. */
+    private final int[] slots;
+    /** Candidates of node n are [first[n], first[n + 1]) in hops and slot. */
+    private final int[] first;
+    private final int[] hops;
+    private final int[] candidateSlots;
+
+    private Resolution(Scope.Layout[] layouts, int[] slots, int[] first, int[] hops, int[] candidateSlots) {
+        this.layouts = layouts;
+        this.slots = slots;
+        this.first = first;
+        this.hops = hops;
+        this.candidateSlots = candidateSlots;
+    }
+
+    /** Resolves every region, ≜ and reference in {@code ast}. */
+    static Resolution of(Ast ast) {
+        return new Builder(ast).build();
+    }
+
+    /** The layout of the program's root, a λ, or a ∀. */
+    Scope.Layout layout(int node) {
+        return layouts[node];
+    }
+
+    /**
+     * The slot a ≜ binds in its region's scope, or a λ parameter in the
+     * λ's; -1 for a parameter that binds nothing.
+     */
+    int bindingSlot(int node) {
+        return slots[node];
+    }
+
+    /** First candidate of an identifier or ← node. */
+    int firstCandidate(int node) {
+        return first[node];
+    }
+
+    /** One past the last candidate of an identifier or ← node. */
+    int endCandidate(int node) {
+        return first[node + 1];
+    }
+
+    int hops(int candidate) {
+        return hops[candidate];
+    }
+
+    int slot(int candidate) {
+        return candidateSlots[candidate];
+    }
+
+    /** One region while it is being resolved. */
+    private static final class Region {
+        final Region parent;
+        /** Slot by name: binders, then ≜ names. */
+        final Map<String, Integer> slots = new LinkedHashMap<>();
+        final int binders;
+
+        Region(Region parent, List<String> binders) {
+            this.parent = parent;
+            for (String name : binders) {
+                slots.putIfAbsent(name, slots.size());
+            }
+            this.binders = slots.size();
+        }
+
+        Scope.Layout layout() {
+            return new Scope.Layout(slots.keySet().toArray(new String[0]));
+        }
+    }
+
+    private static final class Builder {
+        final Ast ast;
+        final Scope.Layout[] layouts;
+        final int[] slots;
+        final int[] first;
+        int[] hops = new int[64];
+        int[] candidateSlots = new int[64];
+        int count;
+
+        Builder(Ast ast) {
+            this.ast = ast;
+            this.layouts = new Scope.Layout[ast.size()];
+            this.slots = new int[ast.size()];
+            this.first = new int[ast.size() + 1];
+            Arrays.fill(slots, -1);
+        }
+
+        Resolution build() {
+            int root = ast.root();
+            Region global = new Region(null, List.of());
+            declare(root, global);
+            layouts[root] = global.layout();
+            int[][] byNode = new int[ast.size()][];
+            resolve(root, global, byNode);
+            for (int n = 0; n < ast.size(); n++) {
+                first[n] = count;
+                if (byNode[n] != null) {
+                    for (int i = 0; i < byNode[n].length; i += 2) {
+                        add(byNode[n][i], byNode[n][i + 1]);
+                    }
+                }
+            }
+            first[ast.size()] = count;
+            return new Resolution(layouts, slots, first, Arrays.copyOf(hops, count), Arrays.copyOf(candidateSlots, count));
+        }
+
+        private void add(int h, int slot) {
+            if (count == hops.length) {
+                hops = Arrays.copyOf(hops, 2 * count);
+                candidateSlots = Arrays.copyOf(candidateSlots, 2 * count);
+            }
+            hops[count] = h;
+            candidateSlots[count] = slot;
+            count++;
+        }
+
+        /** Gives each ≜ in {@code region}'s code its slot. */
+        private void declare(int node, Region region) {
+            switch (ast.kind(node)) {
+                case NodeKind.LAMBDA:
+                    return;
+                case NodeKind.FORALL:
+                    declare(ast.child(node, 1), region);
+                    return;
+                case NodeKind.DEF: {
+                    String name = ast.text(ast.child(node, 0));
+                    region.slots.putIfAbsent(name, region.slots.size());
+                    slots[node] = region.slots.get(name);
+                    declare(ast.child(node, 1), region);
+                    return;
+                }
+                default:
+                    for (int i = 0; i < ast.childCount(node); i++) {
+                        declare(ast.child(node, i), region);
+                    }
+            }
+        }
+
+        /** Opens the regions below {@code node} and resolves its references. */
+        private void resolve(int node, Region region, int[][] byNode) {
+            switch (ast.kind(node)) {
+                case NodeKind.ID:
+                    byNode[node] = candidates(ast.text(node), region);
+                    return;
+                case NodeKind.DEF:
+                    resolve(ast.child(node, 1), region, byNode);
+                    return;
+                case NodeKind.ASSIGN:
+                    byNode[node] = candidates(ast.text(ast.child(node, 0)), region);
+                    resolve(ast.child(node, 1), region, byNode);
+                    return;
+                case NodeKind.LAMBDA: {
+                    int params = ast.data(node);
+                    List<String> names = new ArrayList<>();
+                    for (int i = 0; i < params; i++) {
+                        int p = ast.child(node, i);
+                        if (ast.kind(p) == NodeKind.ID) {
+                            names.add(ast.text(p));
+                        }
+                    }
+                    Region inner = new Region(region, names);
+                    for (int i = 0; i < params; i++) {
+                        int p = ast.child(node, i);
+                        if (ast.kind(p) == NodeKind.ID) {
+                            slots[p] = inner.slots.get(ast.text(p));
+                        }
+                    }
+                    int body = ast.child(node, ast.childCount(node) - 1);
+                    declare(body, inner);
+                    layouts[node] = inner.layout();
+                    resolve(body, inner, byNode);
+                    return;
+                }
+                case NodeKind.FORALL: {
+                    resolve(ast.child(node, 1), region, byNode);
+                    Region step = new Region(region, List.of(ast.text(ast.child(node, 0))));
+                    int body = ast.child(node, 2);
+                    declare(body, step);
+                    layouts[node] = step.layout();
+                    resolve(body, step, byNode);
+                    return;
+                }
+                default:
+                    for (int i = 0; i < ast.childCount(node); i++) {
+                        resolve(ast.child(node, i), region, byNode);
+                    }
+            }
+        }
+
+        /** (hops, slot) pairs, innermost first, up to the first region binding the name on entry. */
+        private static int[] candidates(String name, Region region) {
+            int[] found = new int[0];
+            int h = 0;
+            for (Region r = region; r != null; r = r.parent, h++) {
+                Integer slot = r.slots.get(name);
+                if (slot != null) {
+                    found = Arrays.copyOf(found, found.length + 2);
+                    found[found.length - 2] = h;
+                    found[found.length - 1] = slot;
+                    if (slot < r.binders) {
+                        break;
+                    }
+                }
+            }
+            return found;
+        }
+    }
+}
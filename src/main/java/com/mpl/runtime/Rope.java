@@ -0,0 +1,270 @@
+package com.mpl.runtime;
+
+/**
+ * A string value made by + (ruling 6): the concatenation of two string
+ * values, each a String or another Rope, so appending shares what was
+ * there rather than copying it. A string value is a String or a Rope; the
+ * two are interchangeable everywhere but {@code equals}, which is why
+ * {@link Values#equal} compares them by content.
+ *
+ * Two Strings that meet, at most {@link #LEAF} chars together, are joined
+ * into one, so a loop appending short pieces copies a leaf's worth at a
+ * time, not the whole value. Larger ones meet in a node, and the tree is
+ * kept balanced as an AVL tree is — children differ in depth by at most
+ * one — so an append, at either end, costs the depth of the tree:
+ * building an n-char string by appends takes about n·log(n/LEAF)/LEAF
+ * node allocations besides the n chars. Comparison ({@link #compare}) and
+ * rendering ({@link #appendTo}) walk the leaves; only {@link #toString}
+ * flattens.
+ *
+ * Immutable; safe to share between threads.
+ */
+public final class Rope {
+
+    /** Pieces joined into one String when together they are this short. */
+    static final int LEAF = 512;
+
+    private final Object left;
+    private final Object right;
+    private final long length;
+    private final int depth;
+    /** String.hashCode of the content, computed once; 0 until then. */
+    private int hash;
+
+    private Rope(Object left, Object right) {
+        this.left = left;
+        this.right = right;
+        this.length = length(left) + length(right);
+        this.depth = 1 + Math.max(depth(left), depth(right));
+    }
+
+    static boolean isString(Object v) {
+        return v instanceof String || v instanceof Rope;
+    }
+
+    /** Chars in a string value. */
+    static long length(Object s) {
+        return s instanceof Rope ? ((Rope) s).length : ((String) s).length();
+    }
+
+    private static int depth(Object s) {
+        return s instanceof Rope ? ((Rope) s).depth : 0;
+    }
+
+    /** The string value x followed by y. */
+    static Object concat(Object x, Object y) {
+        if (length(x) == 0) {
+            return y;
+        }
+        if (length(y) == 0) {
+            return x;
+        }
+        return join(x, y);
+    }
+
+    /** Joins two non-empty string values. */
+    private static Object join(Object x, Object y) {
+        if (x instanceof String && y instanceof String && length(x) + length(y) <= LEAF) {
+            return (String) x + (String) y;
+        }
+        int dx = depth(x);
+        int dy = depth(y);
+        if (dx > dy + 1) {
+            return joinRight((Rope) x, y);
+        }
+        if (dy > dx + 1) {
+            return joinLeft(x, (Rope) y);
+        }
+        // A short piece at an end joins the leaf beside it.
+        if (y instanceof String && x instanceof Rope && ((Rope) x).right instanceof String
+                && length(((Rope) x).right) + length(y) <= LEAF) {
+            return new Rope(((Rope) x).left, (String) ((Rope) x).right + (String) y);
+        }
+        if (x instanceof String && y instanceof Rope && ((Rope) y).left instanceof String
+                && length(x) + length(((Rope) y).left) <= LEAF) {
+            return new Rope((String) x + (String) ((Rope) y).left, ((Rope) y).right);
+        }
+        return new Rope(x, y);
+    }
+
+    /** Joins y to the right spine of x, which is deeper by more than one. */
+    private static Rope joinRight(Rope x, Object y) {
+        Object l = x.left;
+        Object c = x.right;
+        if (depth(c) <= depth(y) + 1) {
+            Object t = join(c, y);
+            if (depth(t) <= depth(l) + 1) {
+                return new Rope(l, t);
+            }
+            return rotateLeft(new Rope(l, rotateRight((Rope) t)));
+        }
+        Rope t = joinRight((Rope) c, y);
+        Rope joined = new Rope(l, t);
+        return t.depth <= depth(l) + 1 ? joined : rotateLeft(joined);
+    }
+
+    /** Joins x to the left spine of y, which is deeper by more than one. */
+    private static Rope joinLeft(Object x, Rope y) {
+        Object r = y.right;
+        Object c = y.left;
+        if (depth(c) <= depth(x) + 1) {
+            Object t = join(x, c);
+            if (depth(t) <= depth(r) + 1) {
+                return new Rope(t, r);
+            }
+            return rotateRight(new Rope(rotateLeft((Rope) t), r));
+        }
+        Rope t = joinLeft(x, (Rope) c);
+        Rope joined = new Rope(t, r);
+        return t.depth <= depth(r) + 1 ? joined : rotateRight(joined);
+    }
+
+    private static Rope rotateLeft(Rope n) {
+        Rope r = (Rope) n.right;
+        return new Rope(new Rope(n.left, r.left), r.right);
+    }
+
+    private static Rope rotateRight(Rope n) {
+        Rope l = (Rope) n.left;
+        return new Rope(l.left, new Rope(l.right, n.right));
+    }
+
+    /** Appends the content leaf by leaf, draining into {@code sink} if there is one. */
+    void appendTo(StringBuilder sb, Utf8Sink sink) {
+        Leaves leaves = new Leaves(this);
+        for (String leaf = leaves.next(); leaf != null; leaf = leaves.next()) {
+            sb.append(leaf);
+            if (sink != null) {
+                sink.drain();
+            }
+        }
+    }
+
+    /** The content as one String. */
+    @Override
+    public String toString() {
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new OutOfMemoryError("string of " + length + " chars");
+        }
+        StringBuilder sb = new StringBuilder((int) length);
+        appendTo(sb, null);
+        return sb.toString();
+    }
+
+    /** Equal to another Rope with the same content; a String never is (see {@link Values#equal}). */
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Rope && compare(this, o) == 0;
+    }
+
+    /** The hash a String of the same content has. */
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            Leaves leaves = new Leaves(this);
+            for (String leaf = leaves.next(); leaf != null; leaf = leaves.next()) {
+                for (int i = 0; i < leaf.length(); i++) {
+                    h = 31 * h + leaf.charAt(i);
+                }
+            }
+            hash = h;
+        }
+        return h;
+    }
+
+    /**
+     * Unicode code-point order of two string values (ruling 8), walking
+     * the leaves of both: -1, 0 or 1. Chars are compared as they are;
+     * only the first pair that differs is looked at as code points, by
+     * moving surrogates above the rest of the BMP, which puts UTF-16 in
+     * code-point order.
+     */
+    static int compare(Object a, Object b) {
+        if (a instanceof String && b instanceof String) {
+            return compare((String) a, 0, (String) b, 0, Integer.MAX_VALUE);
+        }
+        Leaves x = new Leaves(a);
+        Leaves y = new Leaves(b);
+        String p = x.next();
+        String q = y.next();
+        int i = 0;
+        int j = 0;
+        while (true) {
+            if (i == p.length()) {
+                p = x.next();
+                i = 0;
+            }
+            if (j == q.length()) {
+                q = y.next();
+                j = 0;
+            }
+            if (p == null || q == null) {
+                return Boolean.compare(p != null, q != null);
+            }
+            int n = Math.min(p.length() - i, q.length() - j);
+            int c = compare(p, i, q, j, n);
+            if (c != 0) {
+                return c;
+            }
+            i += n;
+            j += n;
+        }
+    }
+
+    /**
+     * Compares n chars of a from i with b from j; when one runs out first,
+     * the shorter is less.
+     */
+    private static int compare(String a, int i, String b, int j, int n) {
+        int m = Math.min(n, Math.min(a.length() - i, b.length() - j));
+        for (int k = 0; k < m; k++) {
+            char c = a.charAt(i + k);
+            char d = b.charAt(j + k);
+            if (c != d) {
+                return order(c) < order(d) ? -1 : 1;
+            }
+        }
+        if (m == n) {
+            return 0;
+        }
+        return Boolean.compare(a.length() - i > m, b.length() - j > m);
+    }
+
+    /** A char's rank in code-point order, for the first char that differs. */
+    private static int order(char c) {
+        if (c >= 0xE000) {
+            return c - 0x800;
+        }
+        return Character.isSurrogate(c) ? c + 0x2000 : c;
+    }
+
+    /** The leaves of a string value, left to right, on a stack as deep as the tree. */
+    private static final class Leaves {
+        private final Rope[] stack;
+        private int top;
+        private Object first;
+
+        Leaves(Object s) {
+            stack = new Rope[depth(s)];
+            first = s;
+        }
+
+        /** The next leaf; null after the last. */
+        String next() {
+            Object s = first;
+            first = null;
+            if (s == null) {
+                if (top == 0) {
+                    return null;
+                }
+                s = stack[--top].right;
+            }
+            while (s instanceof Rope) {
+                stack[top++] = (Rope) s;
+                s = ((Rope) s).left;
+            }
+            return (String) s;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.mpl.runtime;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for one {@link Interpreter#run} of a loaded program; its
+ * duration is the run's. Made only while a recording enables it.
+ */
+@Name("com.mpl.Run")
+@Label("MPL Run")
+@Category("MPL")
+@Description("One program run by the Java interpreter")
+final class RunEvent extends jdk.jfr.Event {
+
+    private static final EventType TYPE = EventType.getEventType(RunEvent.class);
+
+    @Label("λ Applications")
+    @Description("Applications entered or answered from the memo table")
+    long applications;
+
+    @Label("Steps")
+    long steps;
+
+    @Label("Step Budget")
+    long stepBudget;
+
+    @Label("Peak Depth")
+    int peakDepth;
+
+    @Label("Depth Budget")
+    int depthBudget;
+
+    @Label("Output")
+    @DataAmount(DataAmount.BYTES)
+    @Description("UTF-8 bytes of the ✎ lines, without line terminators")
+    long outputBytes;
+
+    @Label("Error Key")
+    @Description("The key the run failed with; null if it finished")
+    String error;
+
+    /** A started event, or null when no recording wants one. */
+    static RunEvent start() {
+        if (!TYPE.isEnabled()) {
+            return null;
+        }
+        RunEvent e = new RunEvent();
+        e.begin();
+        return e;
+    }
+}
@@ -0,0 +1,242 @@
+package com.mpl.runtime;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.function.Predicate;
+
+/**
+ * One lexical scope: the global scope, a λ application, or one ∀ step.
+ * Braces do not open one (ruling 15). Variables live in parallel arrays
+ * searched linearly — application scopes hold a handful of parameters —
+ * with a hash index added once a scope (typically the global one) grows
+ * past {@link #INDEXED}.
+ *
+ * A scope the interpreter makes is laid out by the {@link Resolution}
+ * pass: every name its code can bind has a slot from the start, the
+ * region's binders first, and a slot is bound once it holds a value
+ * (values are never null). The interpreter reads and writes such scopes
+ * by slot; the name-based operations below see only bound slots, so they
+ * work on both kinds of scope.
+ *
+ * A shared scope — one that ‖ branches running concurrently may reach —
+ * does each operation under its own monitor, so a binding added by one
+ * branch never tears a lookup in another. Scopes are shared when their
+ * parent is, so one shared global scope makes every scope of a run shared.
+ * A shared scope also records who bound each slot with ≜, so that two
+ * branches defining the same name cannot both succeed (see {@link #claim}).
+ */
+final class Scope {
+
+    private static final int INDEXED = 8;
+
+    final Scope parent;
+    private final boolean shared;
+    private String[] names;
+    private Object[] values;
+    private int size;
+    private HashMap<String, Integer> index;
+    /** names and index are a Layout's, to be copied before adding to them. */
+    private boolean borrowed;
+    /** In a shared scope, who bound each slot with ≜; made on the first claim. */
+    private Object[] binders;
+
+    Scope(Scope parent, int capacity) {
+        this(parent, capacity, parent != null && parent.shared);
+    }
+
+    Scope(Scope parent, int capacity, boolean shared) {
+        this.parent = parent;
+        this.shared = shared;
+        this.names = new String[Math.max(capacity, 1)];
+        this.values = new Object[names.length];
+    }
+
+    /** A scope with {@code layout}'s slots, all unbound. */
+    Scope(Scope parent, Layout layout) {
+        this(parent, layout, parent != null && parent.shared);
+    }
+
+    Scope(Scope parent, Layout layout, boolean shared) {
+        this.parent = parent;
+        this.shared = shared;
+        this.names = layout.names;
+        this.index = layout.index;
+        this.size = layout.names.length;
+        this.values = new Object[Math.max(size, 1)];
+        this.borrowed = true;
+    }
+
+    /** The scope {@code hops} parents out. */
+    Scope up(int hops) {
+        Scope s = this;
+        for (int i = 0; i < hops; i++) {
+            s = s.parent;
+        }
+        return s;
+    }
+
+    /** Slot of a variable bound directly in this scope, or -1. */
+    int indexOf(String name) {
+        if (shared) {
+            synchronized (this) {
+                return bound(name);
+            }
+        }
+        return bound(name);
+    }
+
+    private int bound(String name) {
+        int slot = slotOf(name);
+        return slot >= 0 && values[slot] != null ? slot : -1;
+    }
+
+    /** The slot {@code name} has here, bound or not, or -1. */
+    private int slotOf(String name) {
+        if (index != null) {
+            Integer i = index.get(name);
+            return i == null ? -1 : i;
+        }
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** The value in a slot; null while it is unbound. */
+    Object get(int slot) {
+        if (shared) {
+            synchronized (this) {
+                return values[slot];
+            }
+        }
+        return values[slot];
+    }
+
+    void set(int slot, Object value) {
+        if (shared) {
+            synchronized (this) {
+                values[slot] = value;
+            }
+        } else {
+            values[slot] = value;
+        }
+    }
+
+    /**
+     * Binds a new variable; callers have checked it is not bound here, or
+     * it is a repeated parameter, bound in order so the last binding wins.
+     */
+    void define(String name, Object value) {
+        put(name, value);
+    }
+
+    /**
+     * ≜'s binding, once its right side has run: binds the slot unless it
+     * has been bound since ≜ found it free by someone {@code mine} rejects.
+     * The right side may itself bind the name, and {@code binder} says who
+     * is binding, for a later claim to ask {@code mine} about. False, with
+     * nothing changed, if another got there first. Check and bind are one
+     * step, so of two branches defining a name exactly one succeeds.
+     */
+    boolean claim(int slot, Object value, Object binder, Predicate<Object> mine) {
+        if (!shared) {
+            values[slot] = value;
+            return true;
+        }
+        synchronized (this) {
+            return claimLocked(slot, value, binder, mine);
+        }
+    }
+
+    private boolean claimLocked(int slot, Object value, Object binder, Predicate<Object> mine) {
+        Object[] by = binders(slot);
+        if (values[slot] != null && !mine.test(by[slot])) {
+            return false;
+        }
+        values[slot] = value;
+        by[slot] = binder;
+        return true;
+    }
+
+    private Object[] binders(int slot) {
+        if (binders == null || binders.length <= slot) {
+            binders = binders == null ? new Object[values.length] : Arrays.copyOf(binders, values.length);
+        }
+        return binders;
+    }
+
+    /** Rebinds {@code name} here if it is bound here, else binds it: one step, even when shared. */
+    void put(String name, Object value) {
+        if (shared) {
+            synchronized (this) {
+                putLocked(name, value);
+            }
+        } else {
+            putLocked(name, value);
+        }
+    }
+
+    private void putLocked(String name, Object value) {
+        int slot = slotOf(name);
+        if (slot >= 0) {
+            values[slot] = value;
+        } else {
+            add(name, value);
+        }
+    }
+
+    private void add(String name, Object value) {
+        if (borrowed) {
+            names = names.clone();
+            index = index == null ? null : new HashMap<>(index);
+            borrowed = false;
+        }
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        if (size == names.length) {
+            names = Arrays.copyOf(names, values.length);
+        }
+        names[size] = name;
+        values[size] = value;
+        if (index != null) {
+            index.put(name, size);
+        } else if (size == INDEXED) {
+            index = new HashMap<>();
+            for (int i = 0; i <= size; i++) {
+                index.put(names[i], i);
+            }
+        }
+        size++;
+    }
+
+    /** The names a region's scopes have slots for; shared by all of them. */
+    static final class Layout {
+        final String[] names;
+        final HashMap<String, Integer> index;
+
+        Layout(String[] names) {
+            this.names = names;
+            if (names.length > INDEXED) {
+                index = new HashMap<>();
+                for (int i = 0; i < names.length; i++) {
+                    index.put(names[i], i);
+                }
+            } else {
+                index = null;
+            }
+        }
+    }
+
+    /** The innermost scope binding {@code name}, or null. */
+    static Scope find(Scope scope, String name) {
+        for (Scope s = scope; s != null; s = s.parent) {
+            if (s.indexOf(name) >= 0) {
+                return s;
+            }
+        }
+        return null;
+    }
+}
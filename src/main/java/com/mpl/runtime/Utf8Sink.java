@@ -0,0 +1,131 @@
+package com.mpl.runtime;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * A buffered UTF-8 destination for ✎ lines, each ended by '\n'. The bytes
+ * are exactly those of {@code line.getBytes(UTF_8)} plus the terminator —
+ * an unpaired surrogate becomes '?' — however the line was built.
+ *
+ * Values are rendered straight into the sink ({@link #print}): text
+ * accumulates in a reusable char buffer that is encoded into a reusable
+ * byte buffer whenever it passes {@link #CHUNK} chars, so a line of any
+ * length takes bounded memory and no String. An I/O failure surfaces as
+ * an UncheckedIOException. Not thread-safe; the interpreter writes to it
+ * from the thread that runs the program.
+ */
+public final class Utf8Sink {
+
+    /** Chars gathered before they are encoded. */
+    static final int CHUNK = 8192;
+
+    private final OutputStream out;
+    private final StringBuilder chars = new StringBuilder(CHUNK + 64);
+    private final byte[] bytes;
+    private int used;
+    private long written;
+
+    public Utf8Sink(OutputStream out) {
+        this(out, 1 << 16);
+    }
+
+    public Utf8Sink(OutputStream out, int bufferSize) {
+        if (bufferSize < 4) {
+            throw new IllegalArgumentException("buffer too small: " + bufferSize);
+        }
+        this.out = out;
+        this.bytes = new byte[bufferSize];
+    }
+
+    /** Writes {@code v} as ✎ shows it (ruling 5), then '\n'. */
+    public void print(Object v) {
+        Values.render(v, this);
+        line();
+    }
+
+    /** Writes a finished line, then '\n'. */
+    public void println(String line) {
+        chars.append(line);
+        line();
+    }
+
+    /** The char buffer rendering appends to; see {@link #drain}. */
+    StringBuilder chars() {
+        return chars;
+    }
+
+    /** Encodes the gathered chars once there are a chunk's worth. */
+    void drain() {
+        if (chars.length() >= CHUNK) {
+            encode(false);
+        }
+    }
+
+    private void line() {
+        chars.append('\n');
+        encode(true);
+    }
+
+    /**
+     * Moves the gathered chars into the byte buffer. A high surrogate at
+     * the end waits for its pair unless the line is complete.
+     */
+    private void encode(boolean complete) {
+        int n = chars.length();
+        int end = !complete && n > 0 && Character.isHighSurrogate(chars.charAt(n - 1)) ? n - 1 : n;
+        for (int i = 0; i < end; i++) {
+            if (bytes.length - used < 4) {
+                spill();
+            }
+            char c = chars.charAt(i);
+            if (c < 0x80) {
+                bytes[used++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[used++] = (byte) (0xC0 | (c >> 6));
+                bytes[used++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, chars.charAt(++i));
+                    bytes[used++] = (byte) (0xF0 | (cp >> 18));
+                    bytes[used++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    bytes[used++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    bytes[used++] = (byte) (0x80 | (cp & 0x3F));
+                } else {
+                    bytes[used++] = '?';
+                }
+            } else {
+                bytes[used++] = (byte) (0xE0 | (c >> 12));
+                bytes[used++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[used++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        chars.delete(0, end);
+    }
+
+    private void spill() {
+        try {
+            out.write(bytes, 0, used);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        written += used;
+        used = 0;
+    }
+
+    /** Bytes encoded so far, terminators included, flushed or not. */
+    public long bytes() {
+        return written + used;
+    }
+
+    /** Writes out the buffered bytes and flushes the stream. */
+    public void flush() {
+        spill();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
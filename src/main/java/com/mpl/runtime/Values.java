@@ -0,0 +1,152 @@
+package com.mpl.runtime;
+
+/**
+ * MPL values and the operations the rulings define on them. A value is a
+ * {@link Rational}, a string (a String or a {@link Rope}), a Boolean, a {@link ListValue}, a
+ * {@link FunctionValue}, or {@link #BOTTOM}.
+ */
+public final class Values {
+
+    /** ⊥, a first-class value (ruling 6). */
+    public static final Object BOTTOM = new Object() {
+        @Override
+        public String toString() {
+            return "⊥";
+        }
+    };
+
+    /**
+     * What an unmatched guard yields (ruling 3). Only | looks at it; every
+     * other consumer sees ⊥ (see {@link #strip}). Never escapes a run.
+     */
+    static final Object NOMATCH = new Object() {
+        @Override
+        public String toString() {
+            return "⊥";
+        }
+    };
+
+    private Values() {}
+
+    static Object strip(Object v) {
+        return v == NOMATCH ? BOTTOM : v;
+    }
+
+    /** ✎ rendering (ruling 5): strings bare at top level. */
+    public static String show(Object v) {
+        if (Rope.isString(v)) {
+            return v.toString();
+        }
+        StringBuilder sb = new StringBuilder();
+        render(v, sb, null);
+        return sb.toString();
+    }
+
+    /** {@link #show} into a sink, encoding as it goes; the line is left open. */
+    static void render(Object v, Utf8Sink sink) {
+        StringBuilder sb = sink.chars();
+        if (v instanceof String) {
+            sb.append((String) v);
+            sink.drain();
+        } else if (v instanceof Rope) {
+            ((Rope) v).appendTo(sb, sink);
+        } else {
+            render(v, sb, sink);
+        }
+    }
+
+    private static void render(Object v, StringBuilder sb, Utf8Sink sink) {
+        if (v instanceof ListValue && ((ListValue) v).isNumeric()) {
+            ((ListValue) v).renderNumbers(sb, sink);
+        } else if (v instanceof ListValue) {
+            ListValue list = (ListValue) v;
+            sb.append('[');
+            for (int i = 0; i < list.size(); i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                Object item = list.get(i);
+                if (item instanceof String) {
+                    sb.append('"').append((String) item).append('"');
+                } else if (item instanceof Rope) {
+                    sb.append('"');
+                    ((Rope) item).appendTo(sb, sink);
+                    sb.append('"');
+                } else {
+                    render(item, sb, sink);
+                }
+                if (sink != null) {
+                    sink.drain();
+                }
+            }
+            sb.append(']');
+        } else if (v instanceof Rational) {
+            ((Rational) v).appendTo(sb);
+        } else if (v instanceof Boolean) {
+            sb.append(((Boolean) v) ? "true" : "false");
+        } else {
+            // String, FunctionValue, ⊥
+            sb.append(v);
+        }
+    }
+
+    /** True if v is a function or a list holding one, at any depth. */
+    static boolean containsFunction(Object v) {
+        if (v instanceof FunctionValue) {
+            return true;
+        }
+        if (v instanceof ListValue && !((ListValue) v).isNumeric()) {
+            ListValue list = (ListValue) v;
+            for (int i = 0; i < list.size(); i++) {
+                if (containsFunction(list.get(i))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Structural equality on function-free values (ruling 7): numbers by
+     * value, lists element-wise, and no two values of different types equal.
+     */
+    static boolean equal(Object a, Object b) {
+        if (a instanceof Rope || b instanceof Rope) {
+            return Rope.isString(a) && Rope.isString(b) && Rope.length(a) == Rope.length(b)
+                    && Rope.compare(a, b) == 0;
+        }
+        if (a instanceof ListValue && b instanceof ListValue) {
+            ListValue x = (ListValue) a;
+            ListValue y = (ListValue) b;
+            if (x.size() != y.size()) {
+                return false;
+            }
+            if (x.isNumeric() && y.isNumeric()) {
+                return x.sameNumbers(y);
+            }
+            for (int i = 0; i < x.size(); i++) {
+                if (!equal(x.get(i), y.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return a == b || (a != null && a.equals(b));
+    }
+
+    /** A hash consistent with {@link #equal}, for function-free values. */
+    static int hash(Object v) {
+        if (v instanceof ListValue) {
+            ListValue list = (ListValue) v;
+            if (list.isNumeric()) {
+                return list.numbersHash();
+            }
+            int h = 1;
+            for (int i = 0; i < list.size(); i++) {
+                h = 31 * h + hash(list.get(i));
+            }
+            return h;
+        }
+        return v.hashCode();
+    }
+}
@@ -0,0 +1,491 @@
+package com.mpl.runtime;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Runs {@link Bytecode} with the Interpreter's semantics: the same output,
+ * the same error keys at the same positions, the same depth and step
+ * limits ({@link Interpreter#MAX_DEPTH}, {@link Interpreter#MAX_STEPS}).
+ *
+ * One dispatch loop over the instruction array. Operands live on a value
+ * stack — an Object[], with an int[] beside it for the index of each ∀ in
+ * progress — and λ applications on a call stack of return pcs and caller
+ * scopes, so MPL recursion never recurses in Java. Guards and | are jumps,
+ * ∀ is a loop of {@link Opcode#FOR_NEXT}, and applying f ∘ g applies g
+ * with a call-stack entry that applies f to what g returns. Each function
+ * declares the stack it needs, checked once per application, so pushes are
+ * unchecked.
+ *
+ * An instance runs one program at a time; both stacks are kept between
+ * runs.
+ */
+public final class VirtualMachine {
+
+    private static final int MAX_DEPTH = Interpreter.MAX_DEPTH;
+    private static final int MAX_STEPS = Interpreter.MAX_STEPS;
+
+    private final Consumer<String> out;
+    private final Utf8Sink sink;
+    private Frontend frontend;
+
+    private Object[] stack = new Object[256];
+    private int[] loops = new int[256];
+
+    /** Per call-stack entry: where to continue, and in which scope. */
+    private int[] rPc = new int[64];
+    private Scope[] rScope = new Scope[64];
+    /**
+     * Non-null for an entry that applies a composition's f to what the
+     * application above it returns; rPc is then the pc of the call.
+     */
+    private FunctionValue[] rThen = new FunctionValue[64];
+    private int fp;
+
+    private Bytecode program;
+    private int steps;
+    private int depth;
+
+    // The dispatch loop keeps these in locals, writing them back around calls.
+    private int sp;
+    private Scope sc;
+
+    /** {@code out} receives each ✎ line, without a line terminator. */
+    public VirtualMachine(Consumer<String> out) {
+        this.out = out;
+        this.sink = null;
+    }
+
+    /** ✎ renders each value straight into {@code sink}; the caller flushes it. */
+    public VirtualMachine(Utf8Sink sink) {
+        this.out = sink::println;
+        this.sink = sink;
+    }
+
+    /** Loads, compiles and runs a program; see {@link Frontend} for the load-time errors. */
+    public Object run(String source) {
+        if (frontend == null) {
+            frontend = new Frontend();
+        }
+        return run(Bytecode.compile(frontend.load(source)));
+    }
+
+    /** Runs a compiled program and returns the value of its last expression. */
+    public Object run(Bytecode program) {
+        this.program = program;
+        steps = 0;
+        depth = 0;
+        sp = 0;
+        fp = 0;
+        sc = new Scope(null, 16);
+        reserve(program.maxStack[0]);
+        try {
+            return Values.strip(execute());
+        } finally {
+            // Drop references into the finished run.
+            Arrays.fill(stack, null);
+            Arrays.fill(rScope, null);
+            Arrays.fill(rThen, null);
+            this.program = null;
+            sc = null;
+        }
+    }
+
+    private Object execute() {
+        final int[] code = program.code;
+        final Object[] constants = program.constants;
+        Object[] stack = this.stack;
+        int[] loops = this.loops;
+        int sp = this.sp;
+        Scope sc = this.sc;
+        int pc = 0;
+        while (true) {
+            int at = pc;
+            int word = code[pc];
+            int taken = word >>> 8;
+            if (taken != 0) {
+                steps += taken;
+                if (steps > MAX_STEPS) {
+                    throw program.stepError(at, taken - (steps - MAX_STEPS));
+                }
+            }
+            switch (word & 0xFF) {
+                case Opcode.CONST:
+                    stack[sp++] = constants[code[pc + 1]];
+                    pc += 2;
+                    break;
+                case Opcode.TRUE:
+                    stack[sp++] = Boolean.TRUE;
+                    pc++;
+                    break;
+                case Opcode.FALSE:
+                    stack[sp++] = Boolean.FALSE;
+                    pc++;
+                    break;
+                case Opcode.BOTTOM:
+                    stack[sp++] = Values.BOTTOM;
+                    pc++;
+                    break;
+                case Opcode.NOMATCH:
+                    stack[sp++] = Values.NOMATCH;
+                    pc++;
+                    break;
+                case Opcode.LAMBDA:
+                    stack[sp++] = new Closure(code[pc + 1], sc);
+                    pc += 2;
+                    break;
+                case Opcode.LIST: {
+                    int n = code[pc + 1];
+                    ListValue list = ListValue.copyOf(stack, sp - n, sp);
+                    sp -= n;
+                    stack[sp++] = list;
+                    pc += 2;
+                    break;
+                }
+                case Opcode.LOAD:
+                    stack[sp++] = scope(sc, code[pc + 1]).get(code[pc + 2]);
+                    pc += 3;
+                    break;
+                case Opcode.LOOKUP:
+                    stack[sp++] = lookup(scope(sc, code[pc + 1]), (String) constants[code[pc + 2]], at);
+                    pc += 3;
+                    break;
+                case Opcode.CHECK_NEW:
+                    if (sc.indexOf((String) constants[code[pc + 1]]) >= 0) {
+                        throw error("err_redef", at);
+                    }
+                    pc += 2;
+                    break;
+                case Opcode.DEFINE:
+                    // The right side may itself have bound the name.
+                    sc.put((String) constants[code[pc + 1]], stack[sp - 1]);
+                    pc += 2;
+                    break;
+                case Opcode.STORE:
+                    scope(sc, code[pc + 1]).set(code[pc + 2], stack[sp - 1]);
+                    pc += 3;
+                    break;
+                case Opcode.OWNER: {
+                    Scope owner = Scope.find(scope(sc, code[pc + 1]), (String) constants[code[pc + 2]]);
+                    if (owner == null) {
+                        throw error("err_unbound", at);
+                    }
+                    stack[sp++] = owner;
+                    pc += 3;
+                    break;
+                }
+                case Opcode.ASSIGN: {
+                    Object v = stack[--sp];
+                    Scope owner = (Scope) stack[sp - 1];
+                    owner.set(owner.indexOf((String) constants[code[pc + 1]]), v);
+                    stack[sp - 1] = v;
+                    pc += 2;
+                    break;
+                }
+                case Opcode.POP:
+                    stack[--sp] = null;
+                    pc++;
+                    break;
+                case Opcode.STRIP:
+                    stack[sp - 1] = Values.strip(stack[sp - 1]);
+                    pc++;
+                    break;
+                case Opcode.JUMP:
+                    pc = code[pc + 1];
+                    break;
+                case Opcode.JUMP_FALSE:
+                    pc = bool(stack[--sp], at) ? pc + 2 : code[pc + 1];
+                    break;
+                case Opcode.JUMP_MATCHED:
+                    if (stack[sp - 1] != Values.NOMATCH) {
+                        pc = code[pc + 1];
+                    } else {
+                        stack[--sp] = null;
+                        pc += 2;
+                    }
+                    break;
+                case Opcode.OR:
+                case Opcode.AND: {
+                    boolean shortCircuit = (word & 0xFF) == Opcode.OR;
+                    if (bool(stack[sp - 1], at) == shortCircuit) {
+                        pc = code[pc + 1];
+                    } else {
+                        stack[--sp] = null;
+                        pc += 2;
+                    }
+                    break;
+                }
+                case Opcode.BOOL:
+                    bool(stack[sp - 1], at);
+                    pc++;
+                    break;
+                case Opcode.EQ:
+                case Opcode.NEQ: {
+                    Object b = stack[--sp];
+                    Object a = stack[sp - 1];
+                    if (Values.containsFunction(a) || Values.containsFunction(b)) {
+                        throw error("err_fn_eq", at);
+                    }
+                    stack[sp - 1] = Values.equal(a, b) == ((word & 0xFF) == Opcode.EQ);
+                    pc++;
+                    break;
+                }
+                case Opcode.LT: case Opcode.GT: case Opcode.LEQ: case Opcode.GEQ: {
+                    Object b = stack[--sp];
+                    int c = compare(stack[sp - 1], b, at);
+                    switch (word & 0xFF) {
+                        case Opcode.LT: stack[sp - 1] = c < 0; break;
+                        case Opcode.GT: stack[sp - 1] = c > 0; break;
+                        case Opcode.LEQ: stack[sp - 1] = c <= 0; break;
+                        default: stack[sp - 1] = c >= 0; break;
+                    }
+                    pc++;
+                    break;
+                }
+                case Opcode.ADD: {
+                    Object b = stack[--sp];
+                    Object a = stack[sp - 1];
+                    stack[sp - 1] = Rope.isString(a) || Rope.isString(b)
+                            ? Rope.concat(Rope.isString(a) ? a : Values.show(a), Rope.isString(b) ? b : Values.show(b))
+                            : num(a, at).add(num(b, at));
+                    pc++;
+                    break;
+                }
+                case Opcode.SUB: {
+                    Object b = stack[--sp];
+                    stack[sp - 1] = num(stack[sp - 1], at).subtract(num(b, at));
+                    pc++;
+                    break;
+                }
+                case Opcode.MUL: {
+                    Object b = stack[--sp];
+                    stack[sp - 1] = num(stack[sp - 1], at).multiply(num(b, at));
+                    pc++;
+                    break;
+                }
+                case Opcode.DIV: {
+                    Rational divisor = num(stack[--sp], at);
+                    if (divisor.isZero()) {
+                        throw error("err_div0", at);
+                    }
+                    stack[sp - 1] = num(stack[sp - 1], at).divide(divisor);
+                    pc++;
+                    break;
+                }
+                case Opcode.COMPOSE: {
+                    Object g = stack[--sp];
+                    Object f = stack[sp - 1];
+                    if (!(f instanceof FunctionValue) || !(g instanceof FunctionValue)) {
+                        throw error("err_notfn", at);
+                    }
+                    stack[sp - 1] = new Composition((FunctionValue) f, (FunctionValue) g);
+                    pc++;
+                    break;
+                }
+                case Opcode.NEG:
+                    stack[sp - 1] = num(stack[sp - 1], at).negate();
+                    pc++;
+                    break;
+                case Opcode.TRACE:
+                    if (sink != null) {
+                        sink.print(stack[sp - 1]);
+                    } else {
+                        out.accept(Values.show(stack[sp - 1]));
+                    }
+                    pc++;
+                    break;
+                case Opcode.CHECK_FN:
+                    if (!(stack[sp - 1] instanceof FunctionValue)) {
+                        throw error("err_notfn", at);
+                    }
+                    pc++;
+                    break;
+                case Opcode.CALL: {
+                    int n = code[pc + 1];
+                    this.sp = sp;
+                    this.sc = sc;
+                    pc = call((FunctionValue) stack[sp - n - 1], n, at, pc + 2);
+                    stack = this.stack;
+                    loops = this.loops;
+                    sp = this.sp;
+                    sc = this.sc;
+                    break;
+                }
+                case Opcode.RETURN:
+                    this.sp = sp;
+                    pc = ret();
+                    stack = this.stack;
+                    loops = this.loops;
+                    sp = this.sp;
+                    sc = this.sc;
+                    break;
+                case Opcode.ITER:
+                    if (!(stack[sp - 1] instanceof ListValue)) {
+                        throw error("err_iter", at);
+                    }
+                    loops[sp - 1] = 0;
+                    pc++;
+                    break;
+                case Opcode.FOR_NEXT: {
+                    ListValue list = (ListValue) stack[sp - 1];
+                    int i = loops[sp - 1];
+                    if (i < list.size()) {
+                        loops[sp - 1] = i + 1;
+                        Scope step = new Scope(sc, 1);
+                        step.define((String) constants[code[pc + 1]], list.get(i));
+                        sc = step;
+                        pc += 3;
+                    } else {
+                        // Ruling 2: ∀ is an iterator; its value is always ⊥.
+                        stack[sp - 1] = Values.BOTTOM;
+                        pc = code[pc + 2];
+                    }
+                    break;
+                }
+                case Opcode.LOOP:
+                    stack[--sp] = null;
+                    sc = sc.parent;
+                    pc = code[pc + 1];
+                    break;
+                case Opcode.NOTYET:
+                    throw error("err_notyet", at);
+                case Opcode.HALT:
+                    return stack[sp - 1];
+                default:
+                    throw new IllegalStateException("bad opcode " + (word & 0xFF) + " at " + at);
+            }
+        }
+    }
+
+    /**
+     * Applies {@code fn} to the {@code n} arguments on top of the stack
+     * (with fn itself below them) and returns the pc to continue at. A
+     * composition applies its g, leaving an entry to apply f afterwards —
+     * a step each, as the Interpreter's application frames take.
+     */
+    private int call(FunctionValue fn, int n, int callPc, int returnPc) {
+        while (fn instanceof Composition) {
+            Composition c = (Composition) fn;
+            tick(callPc);
+            enter(callPc, null, c.f);
+            fn = c.g;
+        }
+        Closure closure = (Closure) fn;
+        int f = closure.lambda;
+        if (n != program.arity[f]) {
+            throw error("err_arity", callPc);
+        }
+        if (++depth > MAX_DEPTH) {
+            throw error("err_depth", callPc);
+        }
+        Scope inner = new Scope(closure.env, n);
+        int[] names = program.params[f];
+        int base = sp - n;
+        for (int i = 0; i < n; i++) {
+            if (names[i] >= 0) {
+                inner.define((String) program.constants[names[i]], stack[base + i]);
+            }
+        }
+        sp = base - 1;
+        enter(returnPc, sc, null);
+        sc = inner;
+        reserve(program.maxStack[f]);
+        return program.entry[f];
+    }
+
+    /** Returns from a λ: its value stripped, and any composition waiting on it applied. */
+    private int ret() {
+        Object v = Values.strip(stack[sp - 1]);
+        depth--;
+        fp--;
+        int pc = rPc[fp];
+        sc = rScope[fp];
+        rScope[fp] = null;
+        if (fp > 0 && rThen[fp - 1] != null) {
+            fp--;
+            FunctionValue f = rThen[fp];
+            int callPc = rPc[fp];
+            rThen[fp] = null;
+            tick(callPc);
+            stack[sp - 1] = f;
+            reserve(1);
+            stack[sp++] = v;
+            return call(f, 1, callPc, pc);
+        }
+        stack[sp - 1] = v;
+        return pc;
+    }
+
+    private void enter(int pc, Scope scope, FunctionValue then) {
+        if (fp == rPc.length) {
+            int n = fp * 2;
+            rPc = Arrays.copyOf(rPc, n);
+            rScope = Arrays.copyOf(rScope, n);
+            rThen = Arrays.copyOf(rThen, n);
+        }
+        rPc[fp] = pc;
+        rScope[fp] = scope;
+        rThen[fp] = then;
+        fp++;
+    }
+
+    /** Room for {@code n} more values above sp. */
+    private void reserve(int n) {
+        if (sp + n > stack.length) {
+            int size = Math.max(stack.length * 2, sp + n);
+            stack = Arrays.copyOf(stack, size);
+            loops = Arrays.copyOf(loops, size);
+        }
+    }
+
+    private static Scope scope(Scope sc, int hops) {
+        for (int i = 0; i < hops; i++) {
+            sc = sc.parent;
+        }
+        return sc;
+    }
+
+    private Object lookup(Scope from, String name, int pc) {
+        for (Scope s = from; s != null; s = s.parent) {
+            int slot = s.indexOf(name);
+            if (slot >= 0) {
+                return s.get(slot);
+            }
+        }
+        throw error("err_undef", pc);
+    }
+
+    private void tick(int pc) {
+        if (++steps > MAX_STEPS) {
+            throw error("err_steps", pc);
+        }
+    }
+
+    private int compare(Object a, Object b, int pc) {
+        if (a instanceof Rational && b instanceof Rational) {
+            return ((Rational) a).compareTo((Rational) b);
+        }
+        if (Rope.isString(a) && Rope.isString(b)) {
+            return Rope.compare(a, b);
+        }
+        throw error("err_compare", pc);
+    }
+
+    private Rational num(Object v, int pc) {
+        if (!(v instanceof Rational)) {
+            throw error("err_num", pc);
+        }
+        return (Rational) v;
+    }
+
+    private boolean bool(Object v, int pc) {
+        if (!(v instanceof Boolean)) {
+            throw error("err_bool", pc);
+        }
+        return (Boolean) v;
+    }
+
+    private MplException error(String key, int pc) {
+        return new MplException(key, program.line(pc), program.col(pc));
+    }
+}
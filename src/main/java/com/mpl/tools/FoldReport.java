@@ -0,0 +1,80 @@
+package com.mpl.tools;
+
+import com.mpl.ast.Ast;
+import com.mpl.runtime.ConstantFolding;
+import com.mpl.runtime.Frontend;
+import com.mpl.runtime.MplException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Before/after report of {@link ConstantFolding}: for each program, its
+ * Ast nodes, the expressions folded, and the nodes left to evaluate once
+ * they are; then the totals. Programs the M0 front end rejects are listed
+ * with their error and left out of the totals.
+ *
+ * Usage: FoldReport [file.mpl | directory]... A directory contributes its
+ * .mpl files and, for corpus entries, each subdirectory's program.mpl.
+ * Default: conformance/corpus and examples.
+ */
+public final class FoldReport {
+
+    private FoldReport() {}
+
+    public static void main(String[] args) throws IOException {
+        List<Path> programs = new ArrayList<>();
+        for (String arg : args.length > 0 ? args : new String[] {"conformance/corpus", "examples"}) {
+            collect(Paths.get(arg), programs);
+        }
+        PrintStream out = new PrintStream(new FileOutputStream(FileDescriptor.out), true, StandardCharsets.UTF_8);
+        Frontend frontend = new Frontend();
+        long before = 0;
+        long after = 0;
+        long folded = 0;
+        int loaded = 0;
+        for (Path program : programs) {
+            Ast ast;
+            try {
+                ast = frontend.load(Files.readString(program));
+            } catch (MplException e) {
+                out.println(program + ": not loaded (" + e.key() + ")");
+                continue;
+            }
+            ConstantFolding folding = ConstantFolding.of(ast);
+            int left = ast.size() - folding.eliminated();
+            out.println(program + ": " + ast.size() + " → " + left + " nodes, "
+                    + folding.folded() + " folded");
+            before += ast.size();
+            after += left;
+            folded += folding.folded();
+            loaded++;
+        }
+        out.printf("%d programs: %d → %d nodes, %d folded, %d eliminated (%.1f%%)%n", loaded, before, after,
+                folded, before - after, before == 0 ? 0.0 : 100.0 * (before - after) / before);
+    }
+
+    private static void collect(Path path, List<Path> into) throws IOException {
+        if (!Files.isDirectory(path)) {
+            into.add(path);
+            return;
+        }
+        try (Stream<Path> s = Files.list(path)) {
+            for (Path p : s.sorted().toList()) {
+                if (Files.isDirectory(p) && Files.exists(p.resolve("program.mpl"))) {
+                    into.add(p.resolve("program.mpl"));
+                } else if (p.toString().endsWith(".mpl")) {
+                    into.add(p);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,836 @@
+package com.mpl.tools;
+
+import com.mpl.parser.MPLLexer;
+import com.mpl.parser.MPLParser;
+import com.mpl.parser.TableLexer;
+import com.mpl.parser.TwoStageParser;
+import com.mpl.runtime.Frontend;
+import com.mpl.runtime.MplException;
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.atn.*;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTree;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process grammar fuzzer: generates programs by walking MPLParser's ATN,
+ * checks each against the parsers' own invariants on every core, and
+ * steers generation toward the parts of MPL.g4 no case has reached yet.
+ *
+ * Coverage is measured on the parse, not the generator: the tree of every
+ * accepted case is matched back against the ATN, which yields the rules it
+ * entered, the alternative taken at every decision (postfixOp → HANDLE
+ * handlerBlock, a loop entered or left) and the tokens it matched. At each
+ * decision the generator weighs an alternative by how rarely it was taken
+ * and how many still-uncovered rules, alternatives and tokens it reaches
+ * directly, and the nearer the case is to its size budget, the likelier it
+ * takes the cheapest way out of the rule instead.
+ *
+ * A case fails when
+ * <ul>
+ * <li>TableLexer and MPLLexer disagree on its tokens or lexer errors
+ *     ("lexer");</li>
+ * <li>TwoStageParser reports other errors than a plain full-LL MPLParser
+ *     ("two-stage"), or its firstError — ParseCheck's path — another first
+ *     error ("first-error");</li>
+ * <li>MPLParser and an interpreter of its ATN disagree on whether the
+ *     tokens parse ("rejected" or "accepted"; generated cases are in the
+ *     ATN's language by construction);</li>
+ * <li>the M0 front end throws anything but an MplException ("frontend").</li>
+ * </ul>
+ * Every third case is also mutated (a token deleted, duplicated, swapped
+ * or inserted) to reach the error paths. Failing cases are minimized in
+ * place by deleting lexical units while the same kind of failure holds.
+ *
+ * Cases run in rounds of {@value #ROUND}, sharded over the threads, each
+ * thread reusing one set of lexers and parsers. A case is a function of the
+ * seed, its index and the coverage at the start of its round — a union,
+ * so the same whatever the thread count — hence output is deterministic
+ * per seed and case count.
+ *
+ * Usage: GrammarFuzzer [--seed=N] [--n=N] [--threads=N]. Defaults: seed
+ * 20260709, 20000 cases, one thread per core. Prints the coverage, what
+ * stayed uncovered and the minimized failures; exit 0 iff none.
+ */
+public final class GrammarFuzzer {
+
+    /** Cases per round; coverage steering is updated between rounds. */
+    static final int ROUND = 512;
+    /** Rule nesting past which the generator only closes what is open. */
+    private static final int MAX_DEPTH = 160;
+
+    private static final String[] IDENTIFIERS = {"a", "b", "f", "g", "n", "x", "y", "foo", "x1", "a_b"};
+    private static final String[] NUMBERS = {"0", "1", "2", "42", "007", "1.5", "0.25", "2.5e-3", "1.0E+2", "0x1F",
+        "0b101"};
+    private static final String[] STRINGS = {"\"\"", "\"hi\"", "\"a b\"", "\"x\\ny\"", "\"q\\\"\\\\\\t\"",
+        "\"مرحبا\""};
+    private static final String[] RAWSTRINGS = {"\"\"\"raw\"\"\"", "\"\"\"a\n\"b\\q\"\"\""};
+    private static final String[] SEPARATORS = {"\n", "\n\n", "{- c -}", "-- c\n", "\t"};
+
+    /** Lexical units for minimization, as the differential fuzzer cuts them. */
+    private static final Pattern UNIT = Pattern.compile(
+            "\"(?:[^\"\\\\]|\\\\.)*\"|\\\\[a-zA-Z]+|[a-zA-Z][a-zA-Z0-9_]*|[0-9]+(?:\\.[0-9]+)?|\\s+|.",
+            Pattern.DOTALL);
+
+    private final long seed;
+    private final int threads;
+    private final Grammar grammar = Grammar.INSTANCE;
+
+    public GrammarFuzzer(long seed, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be >= 1: " + threads);
+        }
+        this.seed = seed;
+        this.threads = threads;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        long seed = 20260709;
+        int n = 20000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (String arg : args) {
+            if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(arg.substring(7));
+            } else if (arg.startsWith("--n=")) {
+                n = Integer.parseInt(arg.substring(4));
+            } else if (arg.startsWith("--threads=")) {
+                threads = Integer.parseInt(arg.substring(10));
+            } else {
+                System.err.println("Usage: GrammarFuzzer [--seed=N] [--n=N] [--threads=N]");
+                System.exit(2);
+            }
+        }
+        long start = System.nanoTime();
+        Report report = new GrammarFuzzer(seed, threads).run(n);
+        var out = new PrintStream(new FileOutputStream(FileDescriptor.out), true, StandardCharsets.UTF_8);
+        out.print(report);
+        System.err.printf("fuzz: %d cases on %d threads in %.1f s%n", n, threads,
+                (System.nanoTime() - start) / 1e9);
+        System.exit(report.failures().isEmpty() ? 0 : 1);
+    }
+
+    /** Runs cases 0 .. cases-1 and reports coverage and minimized failures. */
+    public Report run(int cases) throws InterruptedException {
+        long[] hits = new long[grammar.units];
+        List<Failure> failures = new ArrayList<>();
+        Worker[] workers = new Worker[threads];
+        for (int s = 0; s < threads; s++) {
+            workers[s] = new Worker();
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "grammar-fuzzer");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            for (int first = 0; first < cases; first += ROUND) {
+                Steering steering = new Steering(grammar, hits);
+                int end = Math.min(cases, first + ROUND);
+                List<Future<Worker>> shards = new ArrayList<>();
+                for (int s = 0; s < threads; s++) {
+                    Worker worker = workers[s];
+                    int from = first + s;
+                    shards.add(pool.submit(() -> worker.run(from, end, threads, steering)));
+                }
+                for (Future<Worker> shard : shards) {
+                    Worker worker = shard.get();
+                    for (int u = 0; u < hits.length; u++) {
+                        hits[u] += worker.hits[u];
+                    }
+                    Arrays.fill(worker.hits, 0);
+                    failures.addAll(worker.failures);
+                    worker.failures.clear();
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("fuzz worker failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        failures.sort(Comparator.comparingInt(Failure::index).thenComparing(Failure::mutated));
+        Set<String> seen = new HashSet<>();
+        failures.removeIf(f -> !seen.add(f.kind() + "\n" + f.repro()));
+        return new Report(seed, cases, grammar, hits, failures);
+    }
+
+    /**
+     * Greedy reduction: deletes windows of 8, 4, 2 and 1 lexical units
+     * (strings, escape words, identifiers, numbers, whitespace runs, single
+     * characters) for as long as {@code fails} still holds.
+     */
+    public static String minimize(String program, Predicate<String> fails) {
+        List<String> units = new ArrayList<>();
+        Matcher m = UNIT.matcher(program);
+        while (m.find()) {
+            units.add(m.group());
+        }
+        boolean reduced = true;
+        while (reduced) {
+            reduced = false;
+            for (int w = Math.min(8, units.size()); w >= 1; w /= 2) {
+                for (int i = 0; i + w <= units.size(); ) {
+                    List<String> candidate = new ArrayList<>(units.subList(0, i));
+                    candidate.addAll(units.subList(i + w, units.size()));
+                    if (fails.test(String.join("", candidate))) {
+                        units = candidate;
+                        reduced = true;
+                    } else {
+                        i++;
+                    }
+                }
+            }
+        }
+        String repro = String.join("", units);
+        String trimmed = repro.strip();
+        return fails.test(trimmed) ? trimmed : repro;
+    }
+
+    /** A minimized failing case. {@code index} and {@code mutated} reproduce the original. */
+    public record Failure(String kind, int index, boolean mutated, String program, String repro, String detail) {
+    }
+
+    /** What a run reached and what failed; {@link #toString} is the CLI output. */
+    public static final class Report {
+        private final long seed;
+        private final int cases;
+        private final Grammar grammar;
+        private final long[] hits;
+        private final List<Failure> failures;
+
+        Report(long seed, int cases, Grammar grammar, long[] hits, List<Failure> failures) {
+            this.seed = seed;
+            this.cases = cases;
+            this.grammar = grammar;
+            this.hits = hits;
+            this.failures = List.copyOf(failures);
+        }
+
+        public List<Failure> failures() {
+            return failures;
+        }
+
+        /** Rules, decision alternatives and tokens reached, and how many there are. */
+        public int[] coverage() {
+            int[] out = new int[6];
+            for (int u = 0; u < grammar.units; u++) {
+                int kind = grammar.unitKind(u);
+                out[2 * kind + 1]++;
+                if (hits[u] > 0) {
+                    out[2 * kind]++;
+                }
+            }
+            return out;
+        }
+
+        /** Descriptions of the rules, alternatives and tokens no case reached. */
+        public List<String> uncovered() {
+            List<String> out = new ArrayList<>();
+            for (int u = 0; u < grammar.units; u++) {
+                if (hits[u] == 0) {
+                    out.add(grammar.describe(u));
+                }
+            }
+            return out;
+        }
+
+        @Override
+        public String toString() {
+            int[] c = coverage();
+            StringBuilder sb = new StringBuilder();
+            sb.append("fuzz: seed=").append(seed).append(" cases=").append(cases).append('\n');
+            sb.append("coverage: rules ").append(c[0]).append('/').append(c[1])
+                    .append(", alternatives ").append(c[2]).append('/').append(c[3])
+                    .append(", tokens ").append(c[4]).append('/').append(c[5]).append('\n');
+            for (String u : uncovered()) {
+                sb.append("uncovered: ").append(u).append('\n');
+            }
+            sb.append("failures: ").append(failures.size()).append('\n');
+            for (Failure f : failures) {
+                sb.append("---\n").append(f.kind()).append(" (seed ").append(seed).append(", case ")
+                        .append(f.index()).append(f.mutated() ? ", mutated" : "").append("):\n")
+                        .append(f.repro()).append('\n').append("  ").append(f.detail()).append('\n');
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * MPLParser's ATN as the fuzzer sees it: coverage units (rules, then
+     * decision alternatives, then the tokens the parser matches), the
+     * fewest tokens that finish a rule from each state, and the units
+     * each alternative reaches directly.
+     */
+    static final class Grammar {
+        static final Grammar INSTANCE = new Grammar(MPLParser._ATN);
+
+        final ATN atn;
+        final int rules;
+        final int[] altBase;
+        final int alts;
+        final int[] tokenUnit;
+        final int[] unitToken;
+        final int units;
+        /** Fewest tokens from a state to its rule's stop state. */
+        final int[] cost;
+        final int[] ruleCost;
+        /** Units alternative (decision, alt) reaches within its rule, by alternative unit. */
+        final BitSet[] near;
+
+        private Grammar(ATN atn) {
+            this.atn = atn;
+            rules = atn.ruleToStartState.length;
+            int decisions = atn.getNumberOfDecisions();
+            altBase = new int[decisions];
+            int next = rules;
+            for (int d = 0; d < decisions; d++) {
+                altBase[d] = next;
+                next += atn.getDecisionState(d).getNumberOfTransitions();
+            }
+            alts = next - rules;
+            int maxType = atn.maxTokenType;
+            tokenUnit = new int[maxType + 2];
+            Arrays.fill(tokenUnit, -1);
+            List<Integer> tokens = new ArrayList<>();
+            for (ATNState s : atn.states) {
+                for (int i = 0; s != null && i < s.getNumberOfTransitions(); i++) {
+                    Transition t = s.transition(i);
+                    if (t.label() != null) {
+                        for (int type : t.label().toList()) {
+                            if (type > 0 && type <= maxType && tokenUnit[type] < 0) {
+                                tokenUnit[type] = 0;
+                                tokens.add(type);
+                            }
+                        }
+                    }
+                }
+            }
+            Collections.sort(tokens);
+            unitToken = new int[tokens.size()];
+            for (int i = 0; i < unitToken.length; i++) {
+                unitToken[i] = tokens.get(i);
+                tokenUnit[unitToken[i]] = next + i;
+            }
+            units = next + unitToken.length;
+            cost = new int[atn.states.size()];
+            ruleCost = new int[rules];
+            computeCosts();
+            near = new BitSet[alts];
+            computeNear();
+        }
+
+        int altUnit(int decision, int alt) {
+            return altBase[decision] + alt - 1;
+        }
+
+        /** 0 for a rule, 1 for an alternative, 2 for a token. */
+        int unitKind(int unit) {
+            return unit < rules ? 0 : unit < rules + alts ? 1 : 2;
+        }
+
+        /** Bellman-Ford over the ATN: every cycle consumes a token, so this settles. */
+        private void computeCosts() {
+            int infinite = Integer.MAX_VALUE / 4;
+            Arrays.fill(cost, infinite);
+            Arrays.fill(ruleCost, infinite);
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (ATNState s : atn.states) {
+                    if (s == null) {
+                        continue;
+                    }
+                    int best = s instanceof RuleStopState ? 0 : infinite;
+                    if (!(s instanceof RuleStopState)) {
+                        for (int i = 0; i < s.getNumberOfTransitions(); i++) {
+                            best = Math.min(best, cost(s.transition(i)));
+                        }
+                    }
+                    if (best < cost[s.stateNumber]) {
+                        cost[s.stateNumber] = best;
+                        changed = true;
+                    }
+                }
+                for (int r = 0; r < rules; r++) {
+                    ruleCost[r] = cost[atn.ruleToStartState[r].stateNumber];
+                }
+            }
+        }
+
+        /** Fewest tokens to finish the rule after taking {@code t}. */
+        int cost(Transition t) {
+            if (t instanceof RuleTransition) {
+                RuleTransition rt = (RuleTransition) t;
+                return ruleCost[rt.ruleIndex] + cost[rt.followState.stateNumber];
+            }
+            return (t.isEpsilon() ? 0 : 1) + cost[t.target.stateNumber];
+        }
+
+        /**
+         * The units each alternative reaches before its rule ends, counting a
+         * rule it invokes but not what lies inside: through recursion nearly
+         * every alternative could reach the whole grammar, which says nothing.
+         */
+        private void computeNear() {
+            for (int d = 0; d < altBase.length; d++) {
+                DecisionState s = atn.getDecisionState(d);
+                for (int a = 1; a <= s.getNumberOfTransitions(); a++) {
+                    BitSet reach = from(s.transition(a - 1).target);
+                    reach.set(altUnit(d, a));
+                    near[altUnit(d, a) - rules] = reach;
+                }
+            }
+        }
+
+        private BitSet from(ATNState start) {
+            BitSet reach = new BitSet(units);
+            BitSet visited = new BitSet(atn.states.size());
+            Deque<ATNState> work = new ArrayDeque<>();
+            work.push(start);
+            while (!work.isEmpty()) {
+                ATNState s = work.pop();
+                if (visited.get(s.stateNumber) || s instanceof RuleStopState) {
+                    continue;
+                }
+                visited.set(s.stateNumber);
+                boolean decision = s instanceof DecisionState && ((DecisionState) s).decision >= 0;
+                for (int i = 0; i < s.getNumberOfTransitions(); i++) {
+                    Transition t = s.transition(i);
+                    if (decision) {
+                        reach.set(altUnit(((DecisionState) s).decision, i + 1));
+                    }
+                    if (t instanceof RuleTransition) {
+                        reach.set(((RuleTransition) t).ruleIndex);
+                        work.push(((RuleTransition) t).followState);
+                        continue;
+                    }
+                    if (t.label() != null) {
+                        for (int type : t.label().toList()) {
+                            if (type > 0 && type < tokenUnit.length && tokenUnit[type] >= 0) {
+                                reach.set(tokenUnit[type]);
+                            }
+                        }
+                    }
+                    work.push(t.target);
+                }
+            }
+            return reach;
+        }
+
+        String describe(int unit) {
+            if (unit < rules) {
+                return "rule " + MPLParser.ruleNames[unit];
+            }
+            if (unit >= rules + alts) {
+                return "token " + MPLParser.VOCABULARY.getDisplayName(unitToken[unit - rules - alts]);
+            }
+            int d = 0;
+            while (d + 1 < altBase.length && altBase[d + 1] <= unit) {
+                d++;
+            }
+            int alt = unit - altBase[d] + 1;
+            DecisionState s = atn.getDecisionState(d);
+            return "decision " + d + " alt " + alt + " (" + MPLParser.ruleNames[s.ruleIndex] + " → "
+                    + symbols(s, s.transition(alt - 1).target) + ")";
+        }
+
+        /** The first few symbols along an alternative, "ε" if it ends at once. */
+        private String symbols(DecisionState decision, ATNState s) {
+            StringBuilder sb = new StringBuilder();
+            int n = 0;
+            for (int steps = 0; n < 3 && steps < 50; steps++) {
+                if (s instanceof RuleStopState || s == decision
+                        || (s instanceof BlockEndState && ((BlockEndState) s).startState == decision)
+                        || (s instanceof LoopEndState && decision instanceof StarLoopEntryState
+                            && ((LoopEndState) s).loopBackState == ((StarLoopEntryState) decision).loopBackState)
+                        || s.getNumberOfTransitions() == 0) {
+                    break;
+                }
+                if (s instanceof DecisionState && ((DecisionState) s).decision >= 0 && n > 0) {
+                    sb.append(" …");
+                    return sb.toString();
+                }
+                Transition t = s.transition(0);
+                if (t instanceof RuleTransition) {
+                    sb.append(n++ > 0 ? " " : "").append(MPLParser.ruleNames[((RuleTransition) t).ruleIndex]);
+                    s = ((RuleTransition) t).followState;
+                } else if (t.label() != null) {
+                    sb.append(n++ > 0 ? " " : "").append(t.label().toString(MPLParser.VOCABULARY));
+                    s = t.target;
+                } else {
+                    s = t.target;
+                }
+            }
+            return n == 0 ? "ε" : sb.toString();
+        }
+    }
+
+    /** Generation weights from the coverage at the start of a round. */
+    static final class Steering {
+        final double[] altWeight;
+        final double[] tokenWeight;
+
+        Steering(Grammar g, long[] hits) {
+            BitSet uncovered = new BitSet(g.units);
+            for (int u = 0; u < g.units; u++) {
+                if (hits[u] == 0) {
+                    uncovered.set(u);
+                }
+            }
+            altWeight = new double[g.alts];
+            for (int a = 0; a < g.alts; a++) {
+                BitSet open = (BitSet) g.near[a].clone();
+                open.and(uncovered);
+                altWeight[a] = (hits[g.rules + a] == 0 ? 4.0 : 1.0) * (1.0 + open.cardinality())
+                        / Math.sqrt(1.0 + hits[g.rules + a]);
+            }
+            tokenWeight = new double[g.tokenUnit.length];
+            for (int type = 0; type < tokenWeight.length; type++) {
+                int u = g.tokenUnit[type];
+                tokenWeight[type] = u < 0 ? 0 : (hits[u] == 0 ? 8.0 : 1.0);
+            }
+        }
+    }
+
+    /** One thread's lexers and parsers, reused for every case it runs. */
+    private final class Worker {
+        final long[] hits = new long[grammar.units];
+        final List<Failure> failures = new ArrayList<>();
+        final TwoStageParser twoStage = new TwoStageParser();
+        final MPLLexer lexer = new MPLLexer(CharStreams.fromString(""));
+        final MPLParser parser = new MPLParser(new CommonTokenStream(lexer));
+        final TableLexer table = new TableLexer(CharStreams.fromString(""));
+        final ParserInterpreter interpreter = new ParserInterpreter(parser.getGrammarFileName(),
+                MPLParser.VOCABULARY, Arrays.asList(MPLParser.ruleNames), MPLParser._ATN,
+                new CommonTokenStream(lexer));
+        final Frontend frontend = new Frontend(null);
+        final List<String> errors = new ArrayList<>();
+        final BaseErrorListener collect = new BaseErrorListener() {
+            @Override
+            public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+                                    int line, int charPositionInLine, String msg,
+                                    RecognitionException e) {
+                errors.add(line + ":" + charPositionInLine + ": " + msg);
+            }
+        };
+
+        Worker() {
+            lexer.removeErrorListeners();
+            parser.removeErrorListeners();
+            table.removeErrorListeners();
+            interpreter.removeErrorListeners();
+        }
+
+        Worker run(int from, int end, int step, Steering steering) {
+            for (int i = from; i < end; i += step) {
+                SplittableRandom random = new SplittableRandom(seed + i * 0x9E3779B97F4A7C15L);
+                List<String> tokens = generate(random, steering);
+                fuzz(i, false, String.join(" ", tokens));
+                if (random.nextInt(3) == 0) {
+                    mutate(random, tokens);
+                    fuzz(i, true, String.join(" ", tokens));
+                }
+            }
+            return this;
+        }
+
+        private void fuzz(int index, boolean mutated, String program) {
+            String[] verdict = check(program, true);
+            if (verdict != null) {
+                String kind = verdict[0];
+                String repro = minimize(program, p -> {
+                    String[] v = check(p, false);
+                    return v != null && v[0].equals(kind);
+                });
+                failures.add(new Failure(kind, index, mutated, program, repro, check(repro, false)[1]));
+            }
+        }
+
+        /** A walk from program's start state: token spellings, separators in between. */
+        private List<String> generate(SplittableRandom random, Steering steering) {
+            List<String> out = new ArrayList<>();
+            int budget = 4 + random.nextInt(100);
+            Deque<ATNState> returns = new ArrayDeque<>();
+            ATNState s = grammar.atn.ruleToStartState[MPLParser.RULE_program];
+            while (true) {
+                if (s instanceof RuleStopState) {
+                    if (returns.isEmpty()) {
+                        return out;
+                    }
+                    s = returns.pop();
+                    continue;
+                }
+                boolean finish = returns.size() >= MAX_DEPTH
+                        || random.nextDouble() * budget < out.size();
+                Transition t = s.transition(choose(s, random, steering, finish));
+                if (t instanceof RuleTransition) {
+                    returns.push(((RuleTransition) t).followState);
+                } else if (!t.isEpsilon()) {
+                    int type = pick(t, random, steering);
+                    if (type != Token.EOF) {
+                        if (!out.isEmpty() && random.nextInt(12) == 0) {
+                            out.add(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+                        }
+                        out.add(spell(type, random));
+                    }
+                }
+                s = t.target;
+            }
+        }
+
+        private int choose(ATNState s, SplittableRandom random, Steering steering, boolean finish) {
+            int n = s.getNumberOfTransitions();
+            if (n == 1) {
+                return 0;
+            }
+            if (finish) {
+                int best = 0;
+                for (int i = 1; i < n; i++) {
+                    if (grammar.cost(s.transition(i)) < grammar.cost(s.transition(best))) {
+                        best = i;
+                    }
+                }
+                return best;
+            }
+            int decision = ((DecisionState) s).decision;
+            double total = 0;
+            for (int i = 0; i < n; i++) {
+                total += steering.altWeight[grammar.altUnit(decision, i + 1) - grammar.rules];
+            }
+            double r = random.nextDouble() * total;
+            for (int i = 0; i < n - 1; i++) {
+                r -= steering.altWeight[grammar.altUnit(decision, i + 1) - grammar.rules];
+                if (r < 0) {
+                    return i;
+                }
+            }
+            return n - 1;
+        }
+
+        private int pick(Transition t, SplittableRandom random, Steering steering) {
+            List<Integer> types = t.label().toList();
+            double total = 0;
+            for (int type : types) {
+                total += type > 0 ? steering.tokenWeight[type] : 1;
+            }
+            double r = random.nextDouble() * total;
+            for (int type : types) {
+                r -= type > 0 ? steering.tokenWeight[type] : 1;
+                if (r < 0) {
+                    return type;
+                }
+            }
+            return types.get(types.size() - 1);
+        }
+
+        private String spell(int type, SplittableRandom random) {
+            switch (type) {
+                case MPLLexer.IDENTIFIER:
+                    return IDENTIFIERS[random.nextInt(IDENTIFIERS.length)];
+                case MPLLexer.NUMBER:
+                    return NUMBERS[random.nextInt(NUMBERS.length)];
+                case MPLLexer.STRING:
+                    return STRINGS[random.nextInt(STRINGS.length)];
+                case MPLLexer.RAWSTRING:
+                    return RAWSTRINGS[random.nextInt(RAWSTRINGS.length)];
+                default:
+                    List<String> spellings = TableLexer.spellings(type);
+                    return spellings.get(random.nextInt(spellings.size()));
+            }
+        }
+
+        private void mutate(SplittableRandom random, List<String> tokens) {
+            int at = tokens.isEmpty() ? 0 : random.nextInt(tokens.size());
+            switch (tokens.isEmpty() ? 3 : random.nextInt(4)) {
+                case 0:
+                    tokens.remove(at);
+                    break;
+                case 1:
+                    tokens.add(at, tokens.get(at));
+                    break;
+                case 2:
+                    if (at + 1 < tokens.size()) {
+                        Collections.swap(tokens, at, at + 1);
+                    }
+                    break;
+                default:
+                    int type = grammar.unitToken[random.nextInt(grammar.unitToken.length)];
+                    tokens.add(at, spell(type, random));
+            }
+        }
+
+        /**
+         * Runs every check on one program: null if all hold, else the kind
+         * of the first that fails and what it saw. Coverage is counted for
+         * accepted programs when {@code record} is set.
+         */
+        private String[] check(String program, boolean record) {
+            List<String> generated = tokens(lexer, program);
+            List<String> handWritten = tokens(table, program);
+            if (!generated.equals(handWritten)) {
+                int i = 0;
+                while (i < generated.size() && i < handWritten.size() && generated.get(i).equals(handWritten.get(i))) {
+                    i++;
+                }
+                return new String[] {"lexer", "MPLLexer " + (i < generated.size() ? generated.get(i) : "<end>")
+                        + ", TableLexer " + (i < handWritten.size() ? handWritten.get(i) : "<end>")};
+            }
+            boolean lexerErrors = generated.stream().anyMatch(t -> t.startsWith("error "));
+
+            errors.clear();
+            lexer.setInputStream(CharStreams.fromString(program));
+            lexer.addErrorListener(collect);
+            parser.setTokenStream(new CommonTokenStream(lexer));
+            parser.addErrorListener(collect);
+            parser.program();
+            lexer.removeErrorListeners();
+            parser.removeErrorListeners();
+            List<String> plain = new ArrayList<>(errors);
+
+            errors.clear();
+            MPLParser.ProgramContext tree = twoStage.parse(CharStreams.fromString(program), collect);
+            if (!plain.equals(errors)) {
+                return new String[] {"two-stage", "full LL " + plain + ", two-stage " + errors};
+            }
+            String first = twoStage.firstError(CharStreams.fromString(program));
+            if (!Objects.equals(plain.isEmpty() ? null : plain.get(0), first)) {
+                return new String[] {"first-error", "full LL " + (plain.isEmpty() ? "ok" : plain.get(0))
+                        + ", firstError " + (first == null ? "ok" : first)};
+            }
+            if (!lexerErrors) {
+                errors.clear();
+                lexer.setInputStream(CharStreams.fromString(program));
+                interpreter.setInputStream(new CommonTokenStream(lexer));
+                interpreter.addErrorListener(collect);
+                interpreter.parse(MPLParser.RULE_program);
+                interpreter.removeErrorListeners();
+                if (plain.isEmpty() != errors.isEmpty()) {
+                    return plain.isEmpty()
+                            ? new String[] {"accepted", "MPLParser accepts, the ATN interpreter reports " + errors.get(0)}
+                            : new String[] {"rejected", "the ATN interpreter accepts, MPLParser reports " + plain.get(0)};
+                }
+            }
+            try {
+                frontend.load(program);
+            } catch (MplException e) {
+                // An M0 verdict: fine either way.
+            } catch (RuntimeException | StackOverflowError e) {
+                return new String[] {"frontend", e.getClass().getSimpleName() + ": " + e.getMessage()};
+            }
+            if (record && plain.isEmpty()) {
+                record(tree);
+            }
+            return null;
+        }
+
+        private List<String> tokens(TokenSource source, String program) {
+            List<String> out = new ArrayList<>();
+            BaseErrorListener listener = new BaseErrorListener() {
+                @Override
+                public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+                                        int line, int charPositionInLine, String msg,
+                                        RecognitionException e) {
+                    out.add("error " + line + ":" + charPositionInLine + " " + msg);
+                }
+            };
+            if (source instanceof MPLLexer) {
+                lexer.setInputStream(CharStreams.fromString(program));
+                lexer.addErrorListener(listener);
+            } else {
+                table.setInputStream(CharStreams.fromString(program));
+                table.addErrorListener(listener);
+            }
+            for (Token t = source.nextToken(); ; t = source.nextToken()) {
+                out.add(t.getType() + "@" + t.getLine() + ":" + t.getCharPositionInLine() + "["
+                        + t.getStartIndex() + "," + t.getStopIndex() + "]");
+                if (t.getType() == Token.EOF) {
+                    break;
+                }
+            }
+            lexer.removeErrorListeners();
+            table.removeErrorListeners();
+            return out;
+        }
+
+        /** Counts the rules, alternatives and tokens of an error-free tree. */
+        private void record(ParserRuleContext root) {
+            Deque<ParserRuleContext> work = new ArrayDeque<>();
+            work.push(root);
+            List<Integer> taken = new ArrayList<>();
+            while (!work.isEmpty()) {
+                ParserRuleContext ctx = work.pop();
+                hits[ctx.getRuleIndex()]++;
+                int n = ctx.getChildCount();
+                int[] symbols = new int[n];
+                for (int i = 0; i < n; i++) {
+                    ParseTree child = ctx.getChild(i);
+                    if (child instanceof ParserRuleContext) {
+                        symbols[i] = grammar.atn.maxTokenType + 1 + ((ParserRuleContext) child).getRuleIndex();
+                        work.push((ParserRuleContext) child);
+                    } else if (child instanceof ErrorNode) {
+                        return;
+                    } else {
+                        int type = ((Token) child.getPayload()).getType();
+                        symbols[i] = type;
+                        if (type > 0 && grammar.tokenUnit[type] >= 0) {
+                            hits[grammar.tokenUnit[type]]++;
+                        }
+                    }
+                }
+                taken.clear();
+                if (path(grammar.atn.ruleToStartState[ctx.getRuleIndex()], 0, symbols, taken, new HashSet<>())) {
+                    for (int unit : taken) {
+                        hits[unit]++;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Depth-first search for the ATN path through one rule that matches
+         * its children, collecting the alternative taken at each decision.
+         */
+        private boolean path(ATNState s, int at, int[] symbols, List<Integer> taken, Set<Long> visited) {
+            if (s instanceof RuleStopState) {
+                return at == symbols.length;
+            }
+            if (!visited.add((long) s.stateNumber * (symbols.length + 1) + at)) {
+                return false;
+            }
+            for (int i = 0; i < s.getNumberOfTransitions(); i++) {
+                Transition t = s.transition(i);
+                ATNState next;
+                int after = at;
+                if (t instanceof RuleTransition) {
+                    if (at == symbols.length || symbols[at] != grammar.atn.maxTokenType + 1 + ((RuleTransition) t).ruleIndex) {
+                        continue;
+                    }
+                    next = ((RuleTransition) t).followState;
+                    after++;
+                } else if (t.isEpsilon()) {
+                    next = t.target;
+                } else if (at < symbols.length && symbols[at] <= grammar.atn.maxTokenType
+                        && t.matches(symbols[at], Token.MIN_USER_TOKEN_TYPE, grammar.atn.maxTokenType)) {
+                    next = t.target;
+                    after++;
+                } else {
+                    continue;
+                }
+                if (path(next, after, symbols, taken, visited)) {
+                    if (s instanceof DecisionState && ((DecisionState) s).decision >= 0) {
+                        taken.add(grammar.altUnit(((DecisionState) s).decision, i + 1));
+                    }
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
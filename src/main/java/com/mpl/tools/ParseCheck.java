@@ -1,9 +1,14 @@
 package com.mpl.tools;
 
-import com.mpl.parser.*;
+import com.mpl.parser.DecisionProfiler;
+import com.mpl.parser.TwoStageParser;
 import org.antlr.v4.runtime.*;
-import java.io.IOException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Grammar-check CLI: the stable seam over the ANTLR parser for tooling
@@ -13,14 +18,74 @@ import java.nio.file.*;
  * parses; otherwise exit 1, printing "<file>:<line>:<col>: <message>"
  * for the first error of each failing input (col is 0-based, as ANTLR
  * reports it).
+ *
+ * With the single argument "--server" it stays up instead: stdin carries
+ * frames of "<byte-length>\n" followed by that many bytes of UTF-8 program
+ * text, and stdout gets one verdict line per frame, in order — "ok", or
+ * "<line>:<col>: <message>" exactly as above. One lexer/parser pair serves
+ * every frame, so the prediction DFA warmed by earlier programs is reused.
+ * Exit 0 at end of input, 2 on a malformed frame.
+ *
+ * Parsing goes through {@link TwoStageParser} (SLL, then full LL on
+ * failure), which reports the same first error as a plain full-LL parse;
+ * tokens stay in a PackedTokenStream and no parse tree is built.
+ *
+ * With "--profile" first, the remaining arguments (files, directories
+ * searched for .mpl files, or "-") are parsed by a {@link DecisionProfiler}
+ * and stdout gets one CSV row per grammar decision they exercised, summed
+ * over all of them — or a JSON array of the same records after
+ * "--profile --json". Syntax errors go to stderr in the format above and
+ * the exit status is as in file mode.
+ *
+ * With "--train <snapshot>" first, the remaining arguments (as for
+ * --profile) are parsed to warm the prediction DFA, which is then saved
+ * to {@code <snapshot>}; syntax errors in them are expected and ignored.
+ * In every mode, the system property {@value #SNAPSHOT_PROPERTY} names a
+ * snapshot to load before the first parse (see
+ * {@link TwoStageParser#loadDfaSnapshot}); one that cannot be loaded is
+ * reported on stderr and the check runs cold, with the same verdicts.
+ * The parseCheckLauncher Gradle task trains one, records a class-data
+ * archive of the same run, and writes a launcher script using both.
  */
 public final class ParseCheck {
 
+    /** System property naming a DFA snapshot to load at startup. */
+    public static final String SNAPSHOT_PROPERTY = "mpl.dfaSnapshot";
+
     public static void main(String[] args) throws IOException {
-        if (args.length == 0) {
-            System.err.println("Usage: ParseCheck <file.mpl | -> ...");
+        if (args.length == 0 || (args[0].equals("--train") && args.length < 2)) {
+            System.err.println("Usage: ParseCheck <file.mpl | -> ... | --server | --profile [--json] <file.mpl | dir | -> ..."
+                    + " | --train <snapshot> <file.mpl | dir | -> ...");
             System.exit(2);
         }
+        String snapshot = System.getProperty(SNAPSHOT_PROPERTY);
+        if (snapshot != null && !snapshot.isEmpty() && !args[0].equals("--train")) {
+            try {
+                TwoStageParser.loadDfaSnapshot(Paths.get(snapshot));
+            } catch (IOException e) {
+                System.err.println("ParseCheck: DFA snapshot " + snapshot + " not loaded: " + e.getMessage());
+            }
+        }
+        if (args[0].equals("--train")) {
+            train(List.of(args).subList(2, args.length), Paths.get(args[1]), System.err);
+            System.exit(0);
+        }
+        if (args[0].equals("--profile")) {
+            boolean json = args.length > 1 && args[1].equals("--json");
+            List<String> inputs = List.of(args).subList(json ? 2 : 1, args.length);
+            var out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)), false,
+                    StandardCharsets.UTF_8);
+            boolean allOk = profile(inputs, json, out, System.err);
+            out.flush();
+            System.exit(allOk ? 0 : 1);
+        }
+        if (args.length == 1 && args[0].equals("--server")) {
+            // Buffered: serve() flushes once the frames already sent are answered.
+            var out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)), false,
+                    StandardCharsets.UTF_8);
+            System.exit(serve(new BufferedInputStream(System.in), out) ? 0 : 2);
+        }
+        TwoStageParser checker = new TwoStageParser();
         boolean allOk = true;
         for (String arg : args) {
             String name = arg.equals("-") ? "<stdin>" : arg;
@@ -36,7 +101,7 @@ public final class ParseCheck {
                 allOk = false;
                 continue;
             }
-            String error = firstError(input);
+            String error = checker.firstError(input);
             if (error != null) {
                 System.out.println(name + ":" + error);
                 allOk = false;
@@ -45,27 +110,183 @@ public final class ParseCheck {
         System.exit(allOk ? 0 : 1);
     }
 
-    /** Returns "line:col: message" for the first syntax error, or null. */
-    private static String firstError(CharStream input) {
-        final String[] first = {null};
-        var listener = new BaseErrorListener() {
-            @Override
-            public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
-                                    int line, int charPositionInLine, String msg,
-                                    RecognitionException e) {
-                if (first[0] == null) {
-                    first[0] = line + ":" + charPositionInLine + ": " + msg;
+    /**
+     * Server loop (see the class comment). Returns false on a malformed
+     * frame, true at a clean end of input.
+     */
+    public static boolean serve(InputStream in, PrintStream out) throws IOException {
+        TwoStageParser checker = new TwoStageParser();
+        while (true) {
+            // Flush only when the client has nothing more queued, so a batch
+            // written in one go is answered in one write.
+            if (in.available() == 0) {
+                out.flush();
+            }
+            int length = readHeader(in);
+            if (length == -1) {
+                out.flush();
+                return true;
+            }
+            byte[] program = length < 0 ? null : in.readNBytes(length);
+            if (program == null || program.length != length) {
+                out.flush();
+                System.err.println("ParseCheck: malformed frame (expected \"<byte-length>\\n<bytes>\")");
+                return false;
+            }
+            String error = checker.firstError(
+                    CharStreams.fromString(new String(program, StandardCharsets.UTF_8), "<stdin>"));
+            out.println(error == null ? "ok" : error);
+        }
+    }
+
+    /**
+     * Reads a decimal "<n>\n" frame header: n, -1 at end of input before
+     * any header byte, or -2 when the header is not a well-formed length.
+     */
+    private static int readHeader(InputStream in) throws IOException {
+        int c = in.read();
+        if (c == -1) {
+            return -1;
+        }
+        long n = 0;
+        int digits = 0;
+        while (c >= '0' && c <= '9' && digits < 10) {
+            n = n * 10 + (c - '0');
+            digits++;
+            c = in.read();
+        }
+        return (c == '\n' && digits > 0 && n <= Integer.MAX_VALUE) ? (int) n : -2;
+    }
+
+    /**
+     * Profile mode (see the class comment): profiles every input and writes
+     * the summed decisions to {@code out}, errors to {@code err}. Returns
+     * true iff every input parsed.
+     */
+    public static boolean profile(List<String> inputs, boolean json, PrintStream out, PrintStream err)
+            throws IOException {
+        DecisionProfiler profiler = new DecisionProfiler();
+        boolean allOk = true;
+        for (String input : inputs) {
+            for (String name : expand(input)) {
+                String error;
+                try {
+                    error = profiler.profile(name.equals("-")
+                            ? CharStreams.fromStream(System.in)
+                            : CharStreams.fromPath(Paths.get(name)));
+                } catch (IOException e) {
+                    error = "0:0: " + e.getMessage();
+                }
+                if (error != null) {
+                    err.println((name.equals("-") ? "<stdin>" : name) + ":" + error);
+                    allOk = false;
+                }
+            }
+        }
+        List<DecisionProfiler.Decision> decisions = profiler.decisions();
+        if (json) {
+            writeJson(decisions, out);
+        } else {
+            writeCsv(decisions, out);
+        }
+        return allOk;
+    }
+
+    /**
+     * Training mode (see the class comment): parses every input, then
+     * saves the warmed DFA to {@code snapshot}. Returns the number of
+     * states saved; an unreadable input is reported to {@code err} and
+     * skipped.
+     */
+    public static int train(List<String> inputs, Path snapshot, PrintStream err) throws IOException {
+        TwoStageParser checker = new TwoStageParser();
+        int programs = 0;
+        for (String input : inputs) {
+            for (String name : expand(input)) {
+                try {
+                    checker.firstError(name.equals("-")
+                            ? CharStreams.fromStream(System.in)
+                            : CharStreams.fromPath(Paths.get(name)));
+                    programs++;
+                } catch (IOException e) {
+                    err.println((name.equals("-") ? "<stdin>" : name) + ":0:0: " + e.getMessage());
                 }
             }
-        };
-        MPLLexer lexer = new MPLLexer(input);
-        lexer.removeErrorListeners();
-        lexer.addErrorListener(listener);
-        CommonTokenStream tokens = new CommonTokenStream(lexer);
-        MPLParser parser = new MPLParser(tokens);
-        parser.removeErrorListeners();
-        parser.addErrorListener(listener);
-        parser.program();
-        return first[0];
+        }
+        int states = TwoStageParser.saveDfaSnapshot(snapshot);
+        err.println("ParseCheck: " + programs + " programs, " + states + " DFA states saved to " + snapshot);
+        return states;
+    }
+
+    /** A directory's .mpl files, recursively and in path order; anything else as given. */
+    private static List<String> expand(String input) throws IOException {
+        Path path = Paths.get(input);
+        if (input.equals("-") || !Files.isDirectory(path)) {
+            return List.of(input);
+        }
+        List<String> files = new ArrayList<>();
+        try (Stream<Path> s = Files.walk(path)) {
+            s.filter(p -> p.toString().endsWith(".mpl") && Files.isRegularFile(p))
+                    .sorted()
+                    .forEach(p -> files.add(p.toString()));
+        }
+        return files;
+    }
+
+    private static final String CSV_HEADER = "decision,rule,kind,alternatives,invocations,sll_total_look,"
+            + "sll_max_look,ll_fallbacks,ll_total_look,ll_max_look,ambiguities,context_sensitivities,errors,time_ns";
+
+    private static void writeCsv(List<DecisionProfiler.Decision> decisions, PrintStream out) {
+        out.println(CSV_HEADER);
+        for (DecisionProfiler.Decision d : decisions) {
+            out.println(d.decision + "," + d.rule + "," + d.kind + "," + csvField(d.alternativeNames()) + ","
+                    + d.invocations + "," + d.sllTotalLook + "," + d.sllMaxLook + "," + d.llFallbacks + ","
+                    + d.llTotalLook + "," + d.llMaxLook + "," + d.ambiguities + "," + d.contextSensitivities + ","
+                    + d.errors + "," + d.timeNanos);
+        }
+    }
+
+    /** Quoted when it holds a comma or quote (token names like ',' do). */
+    private static String csvField(String s) {
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0) {
+            return s;
+        }
+        return '"' + s.replace("\"", "\"\"") + '"';
+    }
+
+    private static void writeJson(List<DecisionProfiler.Decision> decisions, PrintStream out) {
+        out.println("[");
+        for (int i = 0; i < decisions.size(); i++) {
+            DecisionProfiler.Decision d = decisions.get(i);
+            StringBuilder alternatives = new StringBuilder("[");
+            for (int a = 0; a < d.alternatives.length; a++) {
+                alternatives.append(a > 0 ? ", " : "").append(jsonString(d.alternatives[a]));
+            }
+            alternatives.append(']');
+            out.println("  {\"decision\": " + d.decision + ", \"rule\": " + jsonString(d.rule)
+                    + ", \"kind\": " + jsonString(d.kind) + ", \"alternatives\": " + alternatives
+                    + ", \"invocations\": " + d.invocations + ", \"sll_total_look\": " + d.sllTotalLook
+                    + ", \"sll_max_look\": " + d.sllMaxLook + ", \"ll_fallbacks\": " + d.llFallbacks
+                    + ", \"ll_total_look\": " + d.llTotalLook + ", \"ll_max_look\": " + d.llMaxLook
+                    + ", \"ambiguities\": " + d.ambiguities + ", \"context_sensitivities\": "
+                    + d.contextSensitivities + ", \"errors\": " + d.errors + ", \"time_ns\": " + d.timeNanos
+                    + "}" + (i + 1 < decisions.size() ? "," : ""));
+        }
+        out.println("]");
+    }
+
+    private static String jsonString(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
     }
 }
@@ -0,0 +1,178 @@
+package com.mpl.test;
+
+import com.mpl.ast.*;
+import com.mpl.parser.MPLParser;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The compact AST: precedence chains collapse, escapes and glyphs build the
+ * same tree, and the cursor walks exactly the nodes the index API exposes.
+ */
+public class AstTest extends MPLTestBase {
+
+    private Ast ast(String source) throws IOException {
+        ParseResult result = parseWithDiagnostics(source);
+        assertTrue("Parse errors: " + result.errors, result.errors.isEmpty());
+        return AstBuilder.build((MPLParser.ProgramContext) result.tree);
+    }
+
+    private String dump(String source) throws IOException {
+        return ast(source).dump();
+    }
+
+    @Test
+    public void literalIsOneNodeNotAPrecedenceChain() throws IOException {
+        Ast ast = ast("1;");
+        assertEquals("(seq (num 1))", ast.dump());
+        assertEquals(2, ast.size());
+    }
+
+    @Test
+    public void precedenceAndAssociativity() throws IOException {
+        assertEquals("(seq (add (num 1) (mul (num 2) (num 3))))", dump("1 + 2 × 3"));
+        assertEquals("(seq (sub (add (id a) (id b)) (id c)))", dump("a + b - c"));
+        assertEquals("(seq (mul (div (id a) (id b)) (id c)))", dump("a / b ∗ c"));
+        assertEquals("(seq (def (id x) (def (id y) (num 1))))", dump("x ≜ y ≜ 1"));
+        assertEquals("(seq (assign (id x) (assign (id y) (num 1))))", dump("x ← y ← 1"));
+        assertEquals("(seq (or (id p) (and (id q) (lt (id a) (id b)))))", dump("p ∨ q ∧ a < b"));
+        assertEquals("(seq (neg (trace (id x))))", dump("-✎x"));
+        assertEquals("(seq (call (compose (id f) (id g)) (num 1)))", dump("(f ∘ g)(1)"));
+    }
+
+    @Test
+    public void guardedAlternatives() throws IOException {
+        assertEquals("(seq (alt (implies (gt (id x) (num 0)) (num 1)) (implies (lt (id x) (num 0)) (num 2)) (num 0)))",
+                dump("(x > 0 ⟹ 1) | (x < 0 ⟹ 2) | 0"));
+    }
+
+    @Test
+    public void bindersKeepTheirPatternCount() throws IOException {
+        assertEquals("(seq (lambda 2 (id a) (id b) (add (id a) (id b))))", dump("λa, b: a + b"));
+        assertEquals("(seq (lambda 1 (id n) (id ℕ) (id n)))", dump("λn∈ℕ: n"));
+        assertEquals("(seq (lambda 0 (num 1)))", dump("λ: 1"));
+        assertEquals("(seq (forall 1 (id x) (list (num 1) (num 2)) (trace (id x))))", dump("∀x∈[1, 2]: ✎x"));
+        assertEquals("(seq (forall 2 (id k) (wildcard) (id m) (id k)))", dump("∀k, _ ∈ m: k"));
+    }
+
+    @Test
+    public void bracesAndParensCollapse() throws IOException {
+        assertEquals("(seq (seq))", dump("{}"));
+        assertEquals("(seq (id x))", dump("{ x }"));
+        assertEquals("(seq (id x))", dump("(x)"));
+        assertEquals("(seq (seq (num 1) (num 2)))", dump("(1; 2)"));
+        assertEquals("(seq (set (num 1) (num 2)))", dump("{1, 2}"));
+        assertEquals("(seq (record (field a (num 1)) (field b (str \"x\"))))", dump("{a: 1, b: \"x\"}"));
+        assertEquals("(seq)", dump(""));
+    }
+
+    @Test
+    public void escapesAndGlyphsBuildTheSameTree() throws IOException {
+        assertEquals(dump("π ≜ λx∈ℝ: x × 2; ∀y∈[π]: ✎(y ≠ ⊥)"),
+                dump("\\pi \\coloneq \\lambda x \\in \\real: x \\times 2; \\forall y \\in [\\pi]: \\trace(y \\neq \\bot)"));
+    }
+
+    @Test
+    public void stringsAreDecodedAndPooledOnce() throws IOException {
+        Ast ast = ast("✎ \"a\\tb\\\"c\\\\\\n\"; ✎ \"a\\tb\\\"c\\\\\\n\"; x ≜ x");
+        int first = ast.child(ast.child(ast.root(), 0), 0);
+        assertEquals(NodeKind.STR, ast.kind(first));
+        assertEquals("a\tb\"c\\\n", ast.text(first));
+        assertEquals(2, ast.poolSize());
+    }
+
+    @Test
+    public void operatorNodesCarryTheOperatorPosition() throws IOException {
+        Ast ast = ast("x ≜ 1;\n  y ← 10 ÷ x");
+        int assign = ast.child(ast.root(), 1);
+        assertEquals(NodeKind.ASSIGN, ast.kind(assign));
+        assertEquals(2, ast.line(assign));
+        assertEquals(4, ast.col(assign));
+        int div = ast.child(assign, 1);
+        assertEquals(NodeKind.DIV, ast.kind(div));
+        assertEquals(9, ast.col(div));
+    }
+
+    @Test
+    public void effectFormsAreRepresented() throws IOException {
+        assertEquals("(seq (handle (call (id f)) (handler-bind e (id e)) (handler-match \"boom\" (num 0))))",
+                dump("f() ↴ { ↯e ⟹ e; ↯\"boom\" ⟹ 0 }"));
+        assertEquals("(seq (send ch (id x)) (receive ch (id y)))", dump("⇀_ch x; ↽_ch y"));
+        assertEquals("(seq (atomic lock (id x)) (release (alloc (id r))) (member f (id M)))",
+                dump("⌈x⌉_lock; r⊕⊖; M‧f"));
+    }
+
+    @Test
+    public void cursorVisitsEveryNodeOnceInPreOrder() throws IOException {
+        for (String source : programs()) {
+            Ast ast = ast(source);
+            List<Integer> expected = new ArrayList<>();
+            preOrder(ast, ast.root(), expected);
+
+            Ast.Cursor c = ast.cursor();
+            List<Integer> seen = new ArrayList<>();
+            do {
+                seen.add(c.node());
+                if (c.depth() > 0) {
+                    int node = c.node();
+                    int index = c.index();
+                    assertTrue(c.parent());
+                    assertEquals(node, ast.child(c.node(), index));
+                    assertTrue(c.child(index));
+                }
+            } while (c.next());
+            assertEquals(expected, seen);
+            assertEquals(ast.size(), seen.size());
+            assertEquals(ast.root(), c.node());
+            assertEquals(0, c.depth());
+        }
+    }
+
+    private static void preOrder(Ast ast, int node, List<Integer> out) {
+        out.add(node);
+        for (int i = 0; i < ast.childCount(node); i++) {
+            preOrder(ast, ast.child(node, i), out);
+        }
+    }
+
+    @Test
+    public void muchSmallerThanTheParseTree() throws IOException {
+        long contexts = 0;
+        long nodes = 0;
+        for (String source : programs()) {
+            ParseTree tree = parse(source);
+            contexts += countContexts(tree);
+            nodes += AstBuilder.build((MPLParser.ProgramContext) tree).size();
+        }
+        assertTrue("AST nodes " + nodes + " vs parse-tree contexts " + contexts,
+                nodes * 4 < contexts);
+    }
+
+    private static long countContexts(ParseTree tree) {
+        if (!(tree instanceof ParserRuleContext)) {
+            return 0;
+        }
+        long n = 1;
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            n += countContexts(tree.getChild(i));
+        }
+        return n;
+    }
+
+    /** Every corpus program and every example that parses. */
+    private List<String> programs() throws IOException {
+        List<String> parsing = new ArrayList<>();
+        for (String source : sources()) {
+            if (parseWithDiagnostics(source).errors.isEmpty()) {
+                parsing.add(source);
+            }
+        }
+        assertTrue(parsing.size() > 50);
+        return parsing;
+    }
+}
@@ -0,0 +1,107 @@
+package com.mpl.test;
+
+import com.mpl.runtime.Interpreter;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiled λ bodies against the interpreter: the same output, error key and
+ * position for programs that lean on what compiled code must preserve —
+ * depth and step limits, guards, short-circuiting, scopes and closures.
+ */
+public class CompiledTierTest extends MPLTestBase {
+
+    /** Runs both tiers, asserts they agree, and returns the observation. */
+    private static List<String> bothTiers(String program) {
+        List<String> interpreted = observe(program, i -> i.setJitThreshold(-1));
+        assertEquals(program, interpreted, observe(program, i -> i.setJitThreshold(0)));
+        assertEquals(program, interpreted, observe(program, i -> i.setJitThreshold(2)));
+        return interpreted;
+    }
+
+    private static final String COUNTDOWN = "f ≜ λn: (n = 0 ⟹ 0) | f(n - 1); ";
+
+    @Test
+    public void deepRecursionEndsInErrDepthNotAStackOverflow() {
+        assertEquals(List.of("0", "ok"), bothTiers(COUNTDOWN + "✎ f(9999)"));
+        assertEquals("err_depth", key(bothTiers(COUNTDOWN + "✎ f(10000)")));
+        bothTiers("g ≜ λn: (n = 0 ⟹ 0) | 1 + h(n - 1); h ≜ λn: g(n); ✎ g(20000)");
+    }
+
+    @Test
+    public void stepLimitHitsAtTheSameStep() {
+        bothTiers("c ≜ 0; tick ≜ λ: c ← c + 1; loop ≜ λn: (n = 0 ⟹ 0) | (tick(); ✎ c; loop(n - 1)); "
+                + "∀ i ∈ [1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20]: loop(5000)");
+    }
+
+    @Test
+    public void guardsAndShortCircuit() {
+        assertEquals(List.of("false", "true", "ok"),
+                bothTiers("p ≜ λx: false ∧ x; q ≜ λx: true ∨ x; ✎ p(1); ✎ q(1)"));
+        assertEquals("err_bool", key(bothTiers("p ≜ λx: true ∧ x; ✎ p(1)")));
+        assertEquals("err_bool", key(bothTiers("g ≜ λx: (x ⟹ 1) | 2; ✎ g(0)")));
+        // An unmatched guard is ⊥ once it leaves the λ (ruling 3).
+        assertEquals(List.of("⊥", "⊥", "ok"),
+                bothTiers("g ≜ λx: (x > 0 ⟹ 1) | ((x < 0 ⟹ 2)); h ≜ λx: g(x) | 3; ✎ g(0); ✎ h(0)"));
+    }
+
+    @Test
+    public void closuresCaptureScopesNotValues() {
+        assertEquals(List.of("1", "2", "1", "3", "ok"), bothTiers(
+                "counter ≜ λ: (n ≜ 0; λ: n ← n + 1); a ≜ counter(); b ≜ counter(); "
+                        + "✎ a(); ✎ a(); ✎ b(); ✎ a()"));
+        assertEquals(List.of("10", "ok"), bothTiers(
+                "k ≜ 1; scale ≜ λx: x × k; k ← 10; ✎ scale(1)"));
+        assertEquals(List.of("[2, 4, 6]", "ok"), bothTiers(
+                "map3 ≜ λf: [f(1), f(2), f(3)]; ✎ map3(λx: x × 2)"));
+    }
+
+    @Test
+    public void scopesFollowTheInterpreter() {
+        // ∀ binds in a step scope that shadows the parameter; ≜ inside the
+        // step stays there; ≜ of a parameter is err_redef.
+        assertEquals(List.of("1", "2", "7", "ok"),
+                bothTiers("f ≜ λx: (∀ x ∈ [1, 2]: ✎ x; x); ✎ f(7)"));
+        assertEquals("err_undef", key(bothTiers("f ≜ λx: (∀ i ∈ [1]: y ≜ i; y); f(0)")));
+        assertEquals("err_redef", key(bothTiers("f ≜ λx: (x ≜ 2); f(1)")));
+        assertEquals(List.of("2", "5", "ok"),
+                bothTiers("f ≜ λx: ((x = 1 ⟹ { y ≜ 2 }) | 0; y); y ≜ 5; ✎ f(1); ✎ f(0)"));
+        // A repeated parameter has one slot, and the ones after it follow on.
+        assertEquals(List.of("[2, 4]", "ok"), bothTiers("f ≜ λx, x, y: [x, y + 1]; ✎ f(1, 2, 3)"));
+    }
+
+    @Test
+    public void namesResolveByLexicalAddress() {
+        // Across ∀ steps, the λ's scope and the closure's environment.
+        assertEquals(List.of("16", "ok"),
+                bothTiers("a ≜ 1; mk ≜ λx: λy: (∀ i ∈ [10]: ✎ (a + x + y + i)); mk(2)(3)"));
+        assertEquals(List.of("6", "ok"),
+                bothTiers("n ≜ 0; f ≜ λx: ∀ i ∈ [1, 2]: n ← n + x × i; f(1); f(1); ✎ n"));
+        assertEquals("err_unbound", key(bothTiers("f ≜ λx: q ← x; f(1)")));
+        assertEquals("err_undef", key(bothTiers("f ≜ λx: x + z; f(1)")));
+        // A name the λ's own scope binds later shadows the global one from then on.
+        assertEquals(List.of("1", "2", "ok"),
+                bothTiers("y ≜ 1; f ≜ λx: (✎ y; y ≜ 2; ✎ y); f(0)"));
+    }
+
+    @Test
+    public void compositionAndListsFromCompiledCode() {
+        assertEquals(List.of("[7, \"s\", ⊥]", "ok"),
+                bothTiers("inc ≜ λn: n + 1; dbl ≜ λn: n × 2; go ≜ λx: [(inc ∘ dbl ∘ inc)(x), \"s\", ⊥]; ✎ go(2)"));
+        bothTiers("id ≜ λx: x; c ≜ id; ∀ i ∈ [1, 2, 3, 4, 5, 6, 7, 8, 9, 10]: c ← c ∘ c; "
+                + "run ≜ λx: c(x); ✎ run(1)");
+    }
+
+    @Test
+    public void compilesOnlyOnceHot() {
+        List<String> lines = new ArrayList<>();
+        Interpreter interpreter = new Interpreter(lines::add);
+        interpreter.setJitThreshold(3);
+        interpreter.run("f ≜ λx: x; f(1); f(2); f(3)");
+        assertEquals(0, interpreter.compiledCount());
+        interpreter.run("f ≜ λx: x; f(1); f(2); f(3); f(4)");
+        assertEquals(1, interpreter.compiledCount());
+    }
+}
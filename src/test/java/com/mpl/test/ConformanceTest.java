@@ -0,0 +1,109 @@
+package com.mpl.test;
+
+import com.mpl.runtime.Bytecode;
+import com.mpl.runtime.Frontend;
+import com.mpl.runtime.VirtualMachine;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * The Java runtime against the ratified conformance corpus, judged the way
+ * conformance/harness/run.mjs judges the reference engine: exact ✎ output
+ * (one trailing newline normalized) or exactly the expected error key, and
+ * two runs must agree. Every engine: interpreted, with and without
+ * memoization and constant folding, with every λ compiled, and as bytecode
+ * on the VM (read back from its binary form first).
+ */
+public class ConformanceTest extends MPLTestBase {
+
+    private static final Pattern RATIFIED = Pattern.compile("\"status\"\\s*:\\s*\"ratified\"");
+
+    private static String norm(String s) {
+        return s.isEmpty() ? "" : s.replaceAll("\n*$", "") + "\n";
+    }
+
+    @Test
+    public void ratifiedCorpusPasses() throws IOException {
+        check(program -> observe(program));
+    }
+
+    /** The same corpus with nothing memoized or folded: the plain tree walk. */
+    @Test
+    public void ratifiedCorpusPassesWithoutMemoOrFolding() throws IOException {
+        check(program -> observe(program, interpreter -> {
+            interpreter.setMemoCapacity(0);
+            interpreter.setFolding(false);
+        }));
+    }
+
+    /** The same corpus with every λ compiled on its first application. */
+    @Test
+    public void ratifiedCorpusPassesCompiled() throws IOException {
+        check(program -> observe(program, interpreter -> interpreter.setJitThreshold(0)));
+    }
+
+    /** The same corpus as bytecode, each program written out and read back before it runs. */
+    @Test
+    public void ratifiedCorpusPassesOnTheVm() throws IOException {
+        Frontend frontend = new Frontend();
+        check(program -> observe(out -> {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                Bytecode.compile(frontend.load(program)).write(bytes);
+                new VirtualMachine(out).run(Bytecode.read(new ByteArrayInputStream(bytes.toByteArray())));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }));
+    }
+
+    /** Judges each ratified entry by two observations of {@code engine} running its program. */
+    private static void check(Function<String, List<String>> engine) throws IOException {
+        List<String> failures = new ArrayList<>();
+        int ran = 0;
+        for (Path dir : corpus()) {
+            if (!RATIFIED.matcher(Files.readString(dir.resolve("meta.json"))).find()) {
+                continue;
+            }
+            ran++;
+            String program = Files.readString(dir.resolve("program.mpl"));
+            List<String> first = engine.apply(program);
+            List<String> second = engine.apply(program);
+            String name = dir.getFileName().toString();
+            if (!first.equals(second)) {
+                failures.add(name + ": two runs disagreed");
+                continue;
+            }
+            String key = key(first).equals("ok") ? null : key(first);
+            List<String> printed = first.subList(0, first.size() - 1);
+            Path out = dir.resolve("expected.out");
+            if (Files.exists(out)) {
+                String actual = printed.isEmpty() ? "" : String.join("\n", printed) + "\n";
+                if (key != null) {
+                    failures.add(name + ": threw " + key + ", expected output");
+                } else if (!norm(actual).equals(norm(Files.readString(out)))) {
+                    failures.add(name + ": output " + actual + " != expected " + Files.readString(out));
+                }
+            } else {
+                List<String> expected = Files.readAllLines(dir.resolve("expected.err")).stream()
+                        .filter(l -> !l.isEmpty()).toList();
+                List<String> actual = key == null ? List.of() : List.of(key);
+                if (!actual.equals(expected)) {
+                    failures.add(name + ": error keys " + actual + " != expected " + expected);
+                }
+            }
+        }
+        assertTrue("no ratified entries found", ran > 0);
+        assertTrue(failures.size() + " of " + ran + " failed:\n" + String.join("\n", failures),
+                failures.isEmpty());
+    }
+}
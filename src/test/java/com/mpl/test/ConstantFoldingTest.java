@@ -0,0 +1,74 @@
+package com.mpl.test;
+
+import com.mpl.runtime.*;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.util.List;
+
+/**
+ * Constant folding is invisible: the interpreter with and without it and
+ * the VM print the same lines and raise the same key at the same position,
+ * err_steps included — an error in a constant expression is never raised
+ * early, moved, or folded away.
+ */
+public class ConstantFoldingTest extends MPLTestBase {
+
+    private static final Frontend FRONTEND = new Frontend();
+
+    /** Unfolded, folded, and on the VM (which folds). */
+    private static List<String> agree(String program) {
+        List<String> unfolded = observe(program, i -> i.setFolding(false));
+        assertEquals(program, unfolded, observe(program, i -> i.setFolding(true)));
+        assertEquals(program, unfolded, observe(out -> new VirtualMachine(out).run(Bytecode.compile(FRONTEND.load(program)))));
+        return unfolded;
+    }
+
+    private static int eliminated(String program) {
+        return ConstantFolding.of(FRONTEND.load(program)).eliminated();
+    }
+
+    @Test
+    public void literalExpressionsFold() {
+        assertEquals(List.of("1/60", "ab1", "true", "false", "ok"),
+                agree("✎ (2 × 3 ÷ 360); ✎ (\"a\" + \"b\" + 1); ✎ (1 < 2 ∧ 2 ≤ 2); ✎ (-(1/2) = 0.5)"));
+        assertEquals(4, eliminated("✎ (2 × 3 ÷ 360)"));
+        assertEquals(0, eliminated("x ≜ 1; ✎ (x + 1)"));
+        // The constant part of a larger expression still folds.
+        assertEquals(List.of("8", "ok"), agree("x ≜ 1; ✎ (x + (3 + 4))"));
+        assertEquals(2, eliminated("x ≜ 1; ✎ (x + (3 + 4))"));
+    }
+
+    @Test
+    public void constantGuardsArePruned() {
+        String program = "✎ ((false ⟹ \"no\") | (1 < 2 ⟹ \"yes\") | \"never\")";
+        assertEquals(List.of("yes", "ok"), agree(program));
+        assertEquals(9, eliminated(program));
+        assertEquals(List.of("2", "ok"), agree("f ≜ λx: (1 > 2 ⟹ 1 ÷ 0) | (x = 2 ⟹ x) | 0; ✎ f(2)"));
+        assertEquals(List.of("⊥", "ok"), agree("✎ ((false ⟹ 1) | (2 = 3 ⟹ 2))"));
+        assertEquals(List.of("true", "false", "ok"), agree("✎ (true ∨ 1 ÷ 0); ✎ (false ∧ \"x\")"));
+    }
+
+    @Test
+    public void errorsStayWhereTheyWere() {
+        assertEquals(List.of("1", "err_div0@1:12"), agree("✎ 1; x ≜ 1 ÷ 0; ✎ 2"));
+        assertEquals(List.of("1", "err_div0@2:10"), agree("✎ 1;\n✎ (2 + 3 ÷ (1 - 1))"));
+        assertEquals(List.of("1", "err_bool@1:11"), agree("✎ 1; ✎ (1 ∧ true)"));
+        assertEquals(List.of("1", "err_num@1:13"), agree("✎ 1; ✎ (\"a\" - 1)"));
+        assertEquals(List.of("err_bool@1:7"), agree("✎ ((2 ⟹ 1) | 3)"));
+        assertEquals(List.of("err_compare@1:6"), agree("✎ (1 < \"b\" ∨ true)"));
+        // Never reached, so never raised.
+        assertEquals(List.of("ok"), agree("f ≜ λx: 1 ÷ 0"));
+    }
+
+    @Test
+    public void theStepLimitFallsOnTheSameNode() {
+        String body = "g ≜ λn: (n = 0 ⟹ 0) | (1 + 2 × 3 - 4 ÷ 2 + (true ∧ 1 < 2 ⟹ 5)) + g(n - 1); "
+                + "∀ i ∈ [1, 2, 3, 4, 5, 6, 7, 8, 9, 10]: ✎ g(3000)";
+        StringBuilder padding = new StringBuilder();
+        for (int k = 0; k < 24; k++) {
+            List<String> observed = agree(padding + body);
+            assertEquals("err_steps", key(observed));
+            padding.append("0; ");
+        }
+    }
+}
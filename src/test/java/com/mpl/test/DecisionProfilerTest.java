@@ -0,0 +1,131 @@
+package com.mpl.test;
+
+import com.mpl.parser.DecisionProfiler;
+import com.mpl.parser.TwoStageParser;
+import com.mpl.tools.ParseCheck;
+import org.antlr.v4.runtime.CharStreams;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * DecisionProfiler and ParseCheck --profile: decisions named by rule and
+ * alternatives, figures summed over programs, the same first error as
+ * TwoStageParser, and CSV/JSON a directory's worth at a time.
+ */
+public class DecisionProfilerTest {
+
+    private static final String BRACES = "✎ {a: 1}; ✎ {1, 2}; ✎ {1; 2}; ✎ {};";
+
+    private static DecisionProfiler.Decision find(List<DecisionProfiler.Decision> decisions, String rule,
+                                                  String... alternatives) {
+        for (DecisionProfiler.Decision d : decisions) {
+            if (d.rule.equals(rule) && Arrays.asList(d.alternatives).containsAll(List.of(alternatives))) {
+                return d;
+            }
+        }
+        fail(rule + " " + List.of(alternatives) + " not among the decisions predicted");
+        return null;
+    }
+
+    @Test
+    public void decisionsAreNamedByRuleAndAlternative() {
+        DecisionProfiler profiler = new DecisionProfiler();
+        assertNull(profiler.profile(CharStreams.fromString(BRACES)));
+        List<DecisionProfiler.Decision> decisions = profiler.decisions();
+        DecisionProfiler.Decision brace = find(decisions, "atomExpr", "record", "set", "block", "lambda");
+        assertEquals("block", brace.kind);
+        assertTrue(brace.invocations >= 4);
+        // Telling them apart takes more than the '{'.
+        assertTrue(Math.max(brace.sllMaxLook, brace.llMaxLook) > 1);
+        assertTrue(brace.alternativeNames(), brace.alternativeNames().contains(":record"));
+        DecisionProfiler.Decision sequence = find(decisions, "seqExpr", "ε");
+        assertTrue(sequence.kind, sequence.kind.endsWith("loop") || sequence.kind.equals("block"));
+        for (DecisionProfiler.Decision d : decisions) {
+            assertTrue(d.invocations > 0);
+            assertTrue(d.sllTotalLook >= d.invocations);
+            assertTrue(d.llFallbacks <= d.invocations);
+            assertTrue(d.timeNanos >= 0);
+        }
+        // ⟨a|b⟩: the BAR is condExpr's.
+        DecisionProfiler choice = new DecisionProfiler();
+        assertNull(choice.profile(CharStreams.fromString("✎ ⟨1 | 2⟩;")));
+        assertTrue(find(choice.decisions(), "condExpr", "'|'").invocations > 0);
+    }
+
+    @Test
+    public void figuresAddUpAcrossPrograms() {
+        DecisionProfiler once = new DecisionProfiler();
+        once.profile(CharStreams.fromString(BRACES));
+        DecisionProfiler twice = new DecisionProfiler();
+        twice.profile(CharStreams.fromString(BRACES));
+        twice.profile(CharStreams.fromString(BRACES));
+        List<DecisionProfiler.Decision> a = once.decisions();
+        List<DecisionProfiler.Decision> b = twice.decisions();
+        assertEquals(a.size(), b.size());
+        for (int i = 0; i < a.size(); i++) {
+            assertEquals(a.get(i).decision, b.get(i).decision);
+            assertEquals(2 * a.get(i).invocations, b.get(i).invocations);
+        }
+    }
+
+    @Test
+    public void firstErrorIsTwoStageParsers() {
+        DecisionProfiler profiler = new DecisionProfiler();
+        TwoStageParser parser = new TwoStageParser();
+        for (String program : List.of("(1", "f x;", "✎ \"abc;", "✎ 1;", "λ(x): x")) {
+            assertEquals(program, parser.firstError(CharStreams.fromString(program)),
+                    profiler.profile(CharStreams.fromString(program)));
+        }
+    }
+
+    @Test
+    public void parseCheckWritesCsvAndJsonForADirectory() throws IOException {
+        Path dir = Files.createTempDirectory("profile");
+        try {
+            Files.createDirectories(dir.resolve("nested"));
+            Files.writeString(dir.resolve("a.mpl"), BRACES);
+            Files.writeString(dir.resolve("nested/b.mpl"), "f ≜ λx: x + 1; ✎ f(2)");
+            Files.writeString(dir.resolve("notes.txt"), "not a program (");
+
+            var csv = new ByteArrayOutputStream();
+            var err = new ByteArrayOutputStream();
+            assertTrue(ParseCheck.profile(List.of(dir.toString()), false,
+                    new PrintStream(csv, true, StandardCharsets.UTF_8), new PrintStream(err, true)));
+            assertEquals("", err.toString());
+            String[] rows = csv.toString(StandardCharsets.UTF_8).split("\n");
+            assertTrue(rows[0].startsWith("decision,rule,kind,alternatives,invocations,"));
+            assertTrue(rows.length > 10);
+            boolean lambda = false;
+            for (String row : Arrays.copyOfRange(rows, 1, rows.length)) {
+                // Commas inside quotes (the ',' token) are not separators.
+                assertEquals(row, 14, row.split(",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)", -1).length);
+                lambda |= row.contains(",lambda,");
+            }
+            assertTrue(lambda);
+
+            var json = new ByteArrayOutputStream();
+            assertTrue(ParseCheck.profile(List.of(dir.toString()), true,
+                    new PrintStream(json, true, StandardCharsets.UTF_8), new PrintStream(err, true)));
+            String text = json.toString(StandardCharsets.UTF_8).trim();
+            assertTrue(text.startsWith("[") && text.endsWith("]"));
+            assertTrue(text.contains("\"rule\": \"atomExpr\""));
+            assertTrue(text.contains("\"alternatives\": [\"'('\", \"lambda\""));
+            assertEquals(rows.length - 1, text.split("\"decision\": ").length - 1);
+
+            Files.writeString(dir.resolve("nested/c.mpl"), "✎ (1");
+            assertFalse(ParseCheck.profile(List.of(dir.toString()), false,
+                    new PrintStream(new ByteArrayOutputStream(), true), new PrintStream(err, true)));
+            assertTrue(err.toString(), err.toString().startsWith(dir.resolve("nested/c.mpl") + ":1:4: "));
+        } finally {
+            try (var files = Files.walk(dir)) {
+                files.sorted(java.util.Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.mpl.test;
+
+import com.mpl.parser.TwoStageParser;
+import com.mpl.tools.ParseCheck;
+import org.antlr.v4.runtime.CharStreams;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A DFA snapshot saved by a training run and loaded into a cleared DFA
+ * gives the verdicts a cold parse gives, for the programs it was trained
+ * on and for others; a file that is not a whole snapshot is refused.
+ */
+public class DfaSnapshotTest extends MPLTestBase {
+
+    /** Each source with a code point deleted, doubled or swapped with the next. */
+    private static List<String> mutants(List<String> sources) {
+        Random rnd = new Random(20261018);
+        List<String> mutants = new ArrayList<>();
+        for (String source : sources) {
+            int[] cps = source.codePoints().toArray();
+            for (int k = 0; k < 5 && cps.length > 1; k++) {
+                int i = rnd.nextInt(cps.length - 1);
+                StringBuilder sb = new StringBuilder();
+                for (int j = 0; j < cps.length; j++) {
+                    int op = j == i ? k % 3 : -1;
+                    if (op == 2) {
+                        sb.appendCodePoint(cps[j + 1]).appendCodePoint(cps[j]);
+                        j++;
+                    } else if (op != 0) {
+                        sb.appendCodePoint(cps[j]);
+                        if (op == 1) {
+                            sb.appendCodePoint(cps[j]);
+                        }
+                    }
+                }
+                mutants.add(sb.toString());
+            }
+        }
+        return mutants;
+    }
+
+    private static List<String> verdicts(List<String> sources) {
+        TwoStageParser parser = new TwoStageParser();
+        List<String> verdicts = new ArrayList<>();
+        for (String source : sources) {
+            verdicts.add(parser.firstError(CharStreams.fromString(source)));
+        }
+        return verdicts;
+    }
+
+    @Test
+    public void loadedSnapshotGivesColdVerdicts() throws IOException {
+        List<String> sources = sources();
+        List<String> programs = new ArrayList<>(sources);
+        programs.addAll(mutants(sources));
+        Path file = Files.createTempFile("mpl", ".dfa");
+        try {
+            TwoStageParser.unloadDfaSnapshot();
+            TwoStageParser.clearDFA();
+            List<String> cold = verdicts(programs);
+
+            TwoStageParser.clearDFA();
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            int saved = ParseCheck.train(List.of("conformance/corpus", "examples"), file, new PrintStream(err, true));
+            assertEquals(saved, TwoStageParser.dfaStateCount());
+            assertTrue(err.toString(), err.toString().contains(saved + " DFA states saved"));
+
+            TwoStageParser.clearDFA();
+            assertEquals(saved, TwoStageParser.loadDfaSnapshot(file));
+            assertEquals(cold, verdicts(programs));
+            // Loading again, into the DFA that run warmed, changes nothing.
+            assertEquals(saved, TwoStageParser.loadDfaSnapshot(file));
+            assertEquals(cold, verdicts(programs));
+        } finally {
+            TwoStageParser.unloadDfaSnapshot();
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void onlyWholeSnapshotsLoad() throws IOException {
+        Path file = Files.createTempFile("mpl", ".dfa");
+        try {
+            new TwoStageParser().firstError(CharStreams.fromString("{a: 1}; {a, b}; {a; b}; ⟨a|b⟩; f x;"));
+            TwoStageParser.saveDfaSnapshot(file);
+            byte[] whole = Files.readAllBytes(file);
+            List<byte[]> bad = new ArrayList<>();
+            bad.add(new byte[0]);
+            bad.add("✎ 1;\n".getBytes());
+            bad.add(Arrays.copyOf(whole, whole.length - 1));
+            for (int at : new int[] {0, 7, 11}) {
+                // The magic number, the version and the grammar fingerprint.
+                byte[] b = whole.clone();
+                b[at] ^= 1;
+                bad.add(b);
+            }
+            for (byte[] b : bad) {
+                Files.write(file, b);
+                try {
+                    TwoStageParser.loadDfaSnapshot(file);
+                    fail("loaded " + b.length + " bytes");
+                } catch (IOException expected) {
+                }
+            }
+        } finally {
+            TwoStageParser.unloadDfaSnapshot();
+            Files.deleteIfExists(file);
+        }
+    }
+}
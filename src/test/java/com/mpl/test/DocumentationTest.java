@@ -42,10 +42,10 @@ public class DocumentationTest extends MPLTestBase {
         while (m.find()) {
             count++;
             String code = m.group(1);
-            ParseResult result = parseWithDiagnostics(code);
-            if (!result.errors.isEmpty()) {
+            String error = cachedFirstError(code);
+            if (error != null) {
                 Assert.fail(doc + " ```mpl block #" + count + " does not parse:\n"
-                    + code + "\nErrors:\n" + String.join("\n", result.errors));
+                    + code + "\nFirst error: " + error);
             }
         }
         Assert.assertTrue("No ```mpl blocks found in " + doc, count > 0);
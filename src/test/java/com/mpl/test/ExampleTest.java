@@ -27,7 +27,7 @@ public class ExampleTest extends MPLTestBase {
         try {
             System.out.println("Testing: " + file);
             String content = Files.readString(file);
-            assertParses(content);
+            assertExampleParses(content);
             System.out.println("  ✓ Parsed successfully");
         } catch (Exception e) {
             throw new AssertionError("Failed to parse " + file + ": " + e.getMessage(), e);
@@ -87,6 +87,13 @@ public class ExampleTest extends MPLTestBase {
     private void testSpecificExample(String filename) throws IOException {
         Path file = Paths.get("examples", filename);
         String content = Files.readString(file);
-        assertParses(content);
+        assertExampleParses(content);
+    }
+
+    private void assertExampleParses(String content) {
+        String error = cachedFirstError(content);
+        if (error != null) {
+            throw new AssertionError("Parse error: " + error);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,93 @@
+package com.mpl.test;
+
+import com.mpl.runtime.Interpreter;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Pure ∀ bodies over large lists on the ForkJoinPool: only pure bodies are
+ * forked, and forked loops give the output, error key, position and step
+ * count of running in order, the lowest-index failure included.
+ */
+public class ForkedForallTest extends MPLTestBase {
+
+    /** [1, 2, …, n]. */
+    private static String range(int n) {
+        return IntStream.rangeClosed(1, n).mapToObj(Integer::toString)
+                .collect(Collectors.joining(", ", "[", "]"));
+    }
+
+    private static final String BIG = "xs ≜ " + range(6000) + "; ";
+
+    /** The observation (see {@link MPLTestBase#observe}), then how many loops forked. */
+    private static List<String> observe(String program, int forkThreshold) {
+        Interpreter[] ran = new Interpreter[1];
+        List<String> lines = observe(program, interpreter -> {
+            interpreter.setForkThreshold(forkThreshold);
+            ran[0] = interpreter;
+        });
+        lines.add("forked " + ran[0].forkedCount());
+        return lines;
+    }
+
+    /** Runs in order and forked, asserts they agree, and returns whether it forked. */
+    private static boolean forks(String program) {
+        List<String> serial = observe(program, -1);
+        List<String> forked = observe(program, 1000);
+        assertEquals("forked 0", serial.remove(serial.size() - 1));
+        String count = forked.remove(forked.size() - 1);
+        assertEquals(program, serial, forked);
+        return !count.equals("forked 0");
+    }
+
+    @Test
+    public void pureBodiesFork() {
+        assertTrue(forks(BIG + "∀ x ∈ xs: (x × x ≥ 0 ⟹ ⊥) | 1 ÷ 0"));
+        // Locals, nested loops, λs written in the body and pure helpers are fine.
+        assertTrue(forks(BIG + "sq ≜ λn: n × n; ∀ x ∈ xs: (y ≜ sq(x); y ← y + 1; "
+                + "∀ z ∈ [1, 2]: (λk: k ← k + z)(y))"));
+        assertTrue(forks(BIG + "sum ≜ λl: (acc ≜ 0; ∀ v ∈ l: acc ← acc + v; acc); "
+                + "∀ x ∈ xs: sum([x, x]) > 0"));
+        assertTrue(forks(BIG + "even ≜ λn: (n = 0 ⟹ true) | odd(n - 1); odd ≜ λn: (n = 0 ⟹ false) | even(n - 1); "
+                + "∀ x ∈ xs: even(3)"));
+    }
+
+    @Test
+    public void impureBodiesRunInOrder() {
+        assertFalse(forks(BIG + "∀ x ∈ xs: (x = 6000 ⟹ ✎ x)"));
+        assertFalse(forks(BIG + "total ≜ 0; ∀ x ∈ xs: total ← total + x; ✎ total"));
+        assertFalse(forks(BIG + "log ≜ λn: ✎ n; ∀ x ∈ xs: (x = 1 ⟹ log(x))"));
+        assertFalse(forks(BIG + "c ≜ 0; tick ≜ λ: c ← c + 1; ∀ x ∈ xs: tick(); ✎ c"));
+        assertFalse(forks(BIG + "apply ≜ λf: ∀ x ∈ xs: f(x); apply(λn: (n = 1 ⟹ ✎ n))"));
+        assertFalse(forks(BIG + "∀ x ∈ xs: (f ≜ λn: n; f(x))"));
+        // Before the body's own ≜, ← still reaches the outer binding.
+        assertFalse(forks(BIG + "t ≜ 0; ∀ x ∈ xs: (t ← x; t ≜ 1); ✎ t"));
+        // Small lists are not worth it.
+        assertFalse(forks("∀ x ∈ " + range(999) + ": x × x"));
+    }
+
+    @Test
+    public void lowestIndexFailureWins() {
+        // Index 4999 fails with err_div0, index 5999 with err_undef.
+        assertFalse(forks(BIG + "∀ x ∈ xs: (x = 6000 ⟹ nope) | 1 ÷ (x - 5000)"));
+        List<String> serial = observe(BIG + "∀ x ∈ xs: (x = 6000 ⟹ nope) | 1 ÷ (x - 5000)", -1);
+        assertEquals("err_div0", serial.get(0).split("@")[0]);
+        assertFalse(forks(BIG + "∀ x ∈ xs: x × [x]"));
+    }
+
+    @Test
+    public void stepsAreThoseOfTheLoopInOrder() {
+        // Each slice is within the limit; together the slices are not.
+        String heavy = BIG + "spin ≜ λn: (n = 0 ⟹ 0) | spin(n - 1); ∀ x ∈ xs: spin(20)";
+        assertFalse(forks(heavy));
+        assertEquals("err_steps", observe(heavy, -1).get(0).split("@")[0]);
+        // A forked loop leaves the count exactly where the loop in order does.
+        String after = BIG + "∀ x ∈ xs: x × x; spin ≜ λn: (n = 0 ⟹ 0) | spin(n - 1); "
+                + "t ≜ 0; ∀ x ∈ xs: (spin(7); t ← x)";
+        assertTrue(forks(after));
+        assertEquals("err_steps", observe(after, -1).get(0).split("@")[0]);
+    }
+}
@@ -0,0 +1,148 @@
+package com.mpl.test;
+
+import com.mpl.ast.Ast;
+import com.mpl.metrics.Metrics;
+import com.mpl.runtime.*;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Governor budgets: each raises its own key, the step budget exactly at
+ * its count whatever the batching, and the same way in every tier and with
+ * folding and memoization on or off; runaway programs sharing a JVM on
+ * virtual threads do not hold up the others.
+ */
+public class GovernorTest extends MPLTestBase {
+
+    private static final Frontend FRONTEND = new Frontend();
+
+    private static final String LOOP = "f ≜ λn: (n = 0 ⟹ 0) | f(n - 1); ";
+
+    private static List<String> observe(String program, Governor governor, int jitThreshold, boolean optimized) {
+        return observe(program, interpreter -> {
+            interpreter.setGovernor(governor);
+            interpreter.setJitThreshold(jitThreshold);
+            interpreter.setFolding(optimized);
+            interpreter.setMemoCapacity(optimized ? Interpreter.MEMO_CAPACITY : 0);
+        });
+    }
+
+    private static List<String> agree(String program, Governor governor) {
+        List<String> plain = observe(program, governor, -1, false);
+        assertEquals(program, plain, observe(program, governor, -1, true));
+        assertEquals(program, plain, observe(program, governor, 0, true));
+        return plain;
+    }
+
+    @Test
+    public void theStepBudgetIsExact() {
+        String program = LOOP + "∀ i ∈ [1, 2, 3]: ✎ f(700 + i)";
+        // The fewest steps it runs in: one less is err_steps, whatever the batch.
+        int lo = 0;
+        int hi = Interpreter.MAX_STEPS;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key(agree(program, Governor.DEFAULT.withSteps(mid))).equals("ok")) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        assertTrue(lo > Governor.BATCH);
+        assertNotEquals(0, lo % Governor.BATCH);
+        assertEquals("err_steps", key(agree(program, Governor.DEFAULT.withSteps(lo - 1))));
+        assertEquals(List.of("0", "0", "0", "ok"), agree(program, Governor.DEFAULT.withSteps(lo)));
+        assertEquals("err_steps", key(agree(program, Governor.DEFAULT.withSteps(0))));
+    }
+
+    @Test
+    public void depthHeapAndTimeHaveTheirOwnKeys() {
+        Governor shallow = Governor.DEFAULT.withDepth(50);
+        assertEquals(List.of("0", "ok"), agree(LOOP + "✎ f(48)", shallow));
+        assertEquals("err_depth", key(agree(LOOP + "✎ f(50)", shallow)));
+
+        Governor small = Governor.DEFAULT.withHeapBytes(100_000);
+        String doubling = "s ≜ \"ab\"; ∀ i ∈ [1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16]: "
+                + "(s ← s + s; ✎ i)";
+        List<String> doubled = agree(doubling, small);
+        assertEquals("err_heap@1:81", doubled.get(doubled.size() - 1));
+        assertEquals(List.of("1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12", "13", "14", "15", "16", "ok"),
+                agree(doubling, Governor.DEFAULT));
+        assertEquals("err_heap", key(agree(
+                "g ≜ λn: (n = 0 ⟹ []) | [n, g(n - 1)]; ✎ g(400); ✎ \"x\"", Governor.DEFAULT.withHeapBytes(10_000))));
+        assertEquals("err_heap", key(agree(
+                "b ≜ 1024 × 1024 × 1024 × 1024 × 1024 × 1024 × 1024; ∀ i ∈ [1, 2, 3, 4, 5, 6, 7, 8]: b ← b × b",
+                Governor.DEFAULT.withHeapBytes(2_000))));
+
+        Governor unbounded = Governor.DEFAULT.withSteps(Long.MAX_VALUE).withWallTime(Duration.ofMillis(50));
+        long start = System.nanoTime();
+        List<String> timed = observe(LOOP + "∀ i ∈ [1, 2, 3, 4, 5, 6, 7, 8, 9, 10]: ∀ j ∈ [1, 2, 3, 4, 5, 6, 7, 8]: "
+                + "∀ k ∈ [1, 2, 3, 4, 5, 6, 7, 8]: ∀ m ∈ [1, 2, 3, 4, 5, 6, 7, 8]: f(5000)", unbounded, -1, false);
+        assertEquals("err_time", key(timed));
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(5).toNanos());
+    }
+
+    // A wrapped step count never reaches a checkpoint again, so the run would not end.
+    @Test(timeout = 30_000)
+    public void unboundedStepsPastTwoToTheThirtyOneStillRunOutOfTime() {
+        Metrics.registry().reset();
+        Metrics.setEnabled(true);
+        try {
+            Governor unbounded = Governor.DEFAULT.withSteps(Long.MAX_VALUE).withWallTime(Duration.ofMillis(1500));
+            // f(5000) is memoized, and each recall is charged its 5001 steps at once.
+            StringBuilder loops = new StringBuilder();
+            for (String v : new String[] {"a", "b", "c", "d", "e", "g", "h", "i", "j", "k"}) {
+                loops.append("∀ ").append(v).append(" ∈ [1, 2, 3, 4, 5, 6, 7, 8]: ");
+            }
+            long start = System.nanoTime();
+            assertEquals("err_time", key(observe(LOOP + loops + "f(5000)", unbounded, -1, true)));
+            assertTrue(System.nanoTime() - start < Duration.ofSeconds(5).toNanos());
+            long steps = Metrics.registry().histograms().get("run.steps.max");
+            assertTrue(steps + " steps", steps > 1L << 31);
+        } finally {
+            Metrics.setEnabled(false);
+        }
+    }
+
+    @Test
+    public void runawaysOnVirtualThreadsLeaveRoomForOthers() throws InterruptedException {
+        Governor governor = Governor.DEFAULT.withSteps(Long.MAX_VALUE).withWallTime(Duration.ofMillis(1500));
+        Ast runaway = FRONTEND.load(LOOP + "∀ i ∈ [1, 2, 3, 4, 5, 6, 7, 8]: ∀ j ∈ [1, 2, 3, 4, 5, 6, 7, 8]: "
+                + "∀ k ∈ [1, 2, 3, 4, 5, 6, 7, 8]: ∀ m ∈ [1, 2, 3, 4, 5, 6, 7, 8]: f(9000)");
+        Ast quick = FRONTEND.load("✎ (6 × 7)");
+        int n = 4 * Runtime.getRuntime().availableProcessors();
+        List<Thread> threads = new ArrayList<>();
+        List<String> keys = java.util.Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < n; i++) {
+            threads.add(Thread.ofVirtual().start(() -> {
+                Interpreter interpreter = new Interpreter(line -> {});
+                interpreter.setGovernor(governor);
+                interpreter.setMemoCapacity(0);
+                try {
+                    interpreter.run(runaway);
+                    keys.add("ok");
+                } catch (MplException e) {
+                    keys.add(e.key());
+                }
+            }));
+        }
+        Thread.sleep(100);
+        AtomicReference<String> printed = new AtomicReference<>();
+        long start = System.nanoTime();
+        Thread t = Thread.ofVirtual().start(() -> new Interpreter(printed::set).run(quick));
+        t.join();
+        long waited = System.nanoTime() - start;
+        for (Thread runawayThread : threads) {
+            runawayThread.join();
+        }
+        assertEquals("42", printed.get());
+        // Well before any runaway is stopped by its own budget.
+        assertTrue("waited " + waited / 1_000_000 + " ms", waited < Duration.ofMillis(1000).toNanos());
+        assertEquals(n, keys.size());
+        assertTrue(keys.toString(), keys.stream().allMatch("err_time"::equals));
+    }
+}
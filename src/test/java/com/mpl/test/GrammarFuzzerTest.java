@@ -0,0 +1,34 @@
+package com.mpl.test;
+
+import com.mpl.tools.GrammarFuzzer;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.util.List;
+
+/**
+ * GrammarFuzzer: a short run reaches every rule, alternative and token
+ * with no failures, the report depends on the seed and not on the thread
+ * count, and minimization keeps lexical units whole.
+ */
+public class GrammarFuzzerTest {
+
+    @Test
+    public void coversTheGrammarWithoutFailures() throws InterruptedException {
+        GrammarFuzzer.Report report = new GrammarFuzzer(20260709, 4).run(1000);
+        assertEquals(report.toString(), List.of(), report.failures());
+        assertEquals(report.toString(), List.of(), report.uncovered());
+    }
+
+    @Test
+    public void sameReportOnAnyNumberOfThreads() throws InterruptedException {
+        assertEquals(new GrammarFuzzer(7, 1).run(300).toString(), new GrammarFuzzer(7, 3).run(300).toString());
+    }
+
+    @Test
+    public void minimizeDeletesWholeUnits() {
+        String program = "x ≜ foo(1, 2) ⊕; ✎ \"a b\"; -- done\n";
+        assertEquals("foo⊕", GrammarFuzzer.minimize(program, p -> p.contains("foo") && p.contains("⊕")));
+        assertEquals("\"a b\"", GrammarFuzzer.minimize(program, p -> p.contains("a b")));
+        assertEquals(program, GrammarFuzzer.minimize(program, p -> p.equals(program)));
+    }
+}
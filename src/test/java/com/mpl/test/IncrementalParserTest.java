@@ -0,0 +1,150 @@
+package com.mpl.test;
+
+import com.mpl.parser.IncrementalParser;
+import com.mpl.parser.IncrementalParser.Snapshot;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * An edited snapshot must be indistinguishable from a fresh parse of the
+ * edited text — tokens, tree and errors — while re-lexing and re-parsing
+ * only around the edit.
+ */
+public class IncrementalParserTest extends MPLTestBase {
+
+    /** Pieces that open, close and break tokens, comments and items. */
+    private static final String[] FRAGMENTS = {
+        "x", "1", " ", "\n", ";", "; ", "✎ 1;", "{-", "-}", "--", "\"", "\"\"\"", "(", ")",
+        "{", "}", "λ", "≜", "|", "⟹", "𝔸", "?", "f(1, 2)", "\n✎ [1, 2];\n",
+    };
+
+    private static void assertSameAsFresh(Snapshot edited) {
+        Snapshot fresh = new IncrementalParser().parse(edited.text());
+        String text = edited.text().length() > 200 ? "edited document" : edited.text();
+        assertEquals(text, fresh.length(), edited.length());
+        assertEquals(text, fresh.errors(), edited.errors());
+        assertEquals(text, describe(fresh.tokens()), describe(edited.tokens()));
+        assertEquals(text, tree(fresh.tree()), tree(edited.tree()));
+    }
+
+    private static List<String> describe(List<Token> tokens) {
+        List<String> out = new ArrayList<>();
+        for (Token t : tokens) {
+            out.add(t.getTokenIndex() + ":" + t.getType() + "[" + t.getStartIndex() + "," + t.getStopIndex()
+                    + "]@" + t.getLine() + ":" + t.getCharPositionInLine() + "=" + t.getText());
+        }
+        return out;
+    }
+
+    /** The tree with every field a listener or visitor could see. */
+    private static String tree(ParseTree node) {
+        StringBuilder sb = new StringBuilder();
+        tree(node, sb);
+        return sb.toString();
+    }
+
+    private static void tree(ParseTree node, StringBuilder sb) {
+        if (node instanceof TerminalNode) {
+            Token t = ((TerminalNode) node).getSymbol();
+            sb.append(t.getTokenIndex()).append(':').append(t.getText());
+        } else {
+            ParserRuleContext ctx = (ParserRuleContext) node;
+            sb.append('(').append(ctx.getClass().getSimpleName()).append('/').append(ctx.invokingState)
+                    .append('[').append(ctx.getStart().getTokenIndex()).append(',')
+                    .append(ctx.getStop() == null ? "-" : ctx.getStop().getTokenIndex()).append(']');
+            for (int i = 0; i < ctx.getChildCount(); i++) {
+                assertSame(node, ctx.getChild(i).getParent());
+                sb.append(' ');
+                tree(ctx.getChild(i), sb);
+            }
+            sb.append(')');
+        }
+    }
+
+    @Test
+    public void randomEditsMatchAFreshParse() throws IOException {
+        Random random = new Random(9);
+        IncrementalParser parser = new IncrementalParser();
+        for (String source : sources()) {
+            Snapshot snapshot = parser.parse(source);
+            for (int n = 0; n < 40; n++) {
+                int length = snapshot.length();
+                int start = random.nextInt(length + 1);
+                int end = Math.min(length, start + (random.nextInt(3) == 0 ? random.nextInt(12) : 0));
+                String replacement = random.nextInt(4) == 0 ? "" : FRAGMENTS[random.nextInt(FRAGMENTS.length)];
+                snapshot = parser.edit(snapshot, start, end, replacement);
+                assertSameAsFresh(snapshot);
+            }
+        }
+    }
+
+    @Test
+    public void typingAndDeletingAProgram() {
+        String program = "{- note -}\nf ≜ λn: (n ≤ 1 ⟹ n) | f(n - 1);\n✎ \"\"\"a;b\"\"\"; -- c\n✎ f(𝔸);\n";
+        IncrementalParser parser = new IncrementalParser();
+        Snapshot snapshot = parser.parse("");
+        int at = 0;
+        for (int i = 0; i < program.length(); i = program.offsetByCodePoints(i, 1)) {
+            String c = new String(Character.toChars(program.codePointAt(i)));
+            snapshot = parser.edit(snapshot, at, at, c);
+            at++;
+            assertSameAsFresh(snapshot);
+        }
+        while (at > 0) {
+            snapshot = parser.edit(snapshot, 0, 1, "");
+            at--;
+            assertSameAsFresh(snapshot);
+        }
+    }
+
+    @Test
+    public void editsStayLocalInALargeDocument() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            sb.append("f").append(i).append(" ≜ λx: (x ≤ ").append(i).append(" ⟹ x) | x + 1;\n");
+        }
+        IncrementalParser parser = new IncrementalParser();
+        Snapshot snapshot = parser.parse(sb.toString());
+        int middle = snapshot.text().indexOf("≤ 1000 ") + 2;
+
+        snapshot = parser.edit(snapshot, middle, middle + 4, "1001");
+        assertSameAsFresh(snapshot);
+        assertTrue("relexed " + snapshot.relexedTokens(), snapshot.relexedTokens() < 16);
+        assertEquals(1, snapshot.reparsedItems());
+
+        // Splitting one item in two, then joining them back.
+        int semicolon = snapshot.text().indexOf(";", middle);
+        snapshot = parser.edit(snapshot, semicolon, semicolon, "; ✎ 2");
+        assertSameAsFresh(snapshot);
+        assertEquals(2, snapshot.reparsedItems());
+        snapshot = parser.edit(snapshot, semicolon, semicolon + 5, "");
+        assertSameAsFresh(snapshot);
+        assertEquals(1, snapshot.reparsedItems());
+
+        // Opening a comment swallows the rest; closing it again comes back to a local edit.
+        snapshot = parser.edit(snapshot, middle, middle, "{-");
+        assertSameAsFresh(snapshot);
+        snapshot = parser.edit(snapshot, middle, middle + 2, "");
+        assertSameAsFresh(snapshot);
+        assertEquals(List.of(), snapshot.errors());
+        snapshot = parser.edit(snapshot, middle, middle, " ");
+        assertSameAsFresh(snapshot);
+        assertEquals(1, snapshot.reparsedItems());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void anEditedSnapshotIsTakenOver() {
+        IncrementalParser parser = new IncrementalParser();
+        Snapshot first = parser.parse("✎ 1;");
+        parser.edit(first, 0, 0, " ");
+        parser.edit(first, 0, 0, " ");
+    }
+}
@@ -0,0 +1,89 @@
+package com.mpl.test;
+
+import com.mpl.runtime.*;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * The Java M0 evaluator beyond what the corpus pins: limits are reported as
+ * error keys (never a JVM stack overflow), positions are 1-based, and one
+ * interpreter can run program after program.
+ */
+public class InterpreterTest extends MPLTestBase {
+
+    private static final String COUNTDOWN = "f ≜ λn: (n = 0 ⟹ 0) | f(n - 1); ";
+
+    @Test
+    public void recursionDepthIsALimitNotAStackOverflow() {
+        assertEquals(List.of("0", "ok"), observe(COUNTDOWN + "✎ f(9999)"));
+        assertEquals("err_depth", key(observe(COUNTDOWN + "✎ f(10000)")));
+        assertEquals("err_depth", key(observe(COUNTDOWN + "✎ f(1000000)")));
+    }
+
+    @Test
+    public void runawayLoopsHitTheStepLimit() {
+        String loop = "c ≜ 0; ∀ i ∈ [1, 2, 3, 4, 5, 6, 7, 8, 9, 10]: "
+                + "∀ j ∈ [1, 2, 3, 4, 5, 6, 7, 8, 9, 10]: "
+                + "∀ k ∈ [1, 2, 3, 4, 5, 6, 7, 8, 9, 10]: "
+                + "∀ m ∈ [1, 2, 3, 4, 5, 6, 7, 8, 9, 10]: "
+                + "∀ p ∈ [1, 2, 3, 4, 5, 6, 7, 8, 9, 10]: "
+                + "∀ q ∈ [1, 2, 3, 4, 5, 6, 7, 8, 9, 10]: c ← c + 1";
+        assertEquals("err_steps", key(observe(loop)));
+    }
+
+    @Test
+    public void errorsCarryOneBasedPositions() {
+        assertEquals(List.of("err_undef@2:5"), observe("x ≜ 1;\n  ✎ y"));
+        assertEquals(List.of("err_escape@1:5"), observe("✎ \"a\\qb\""));
+        assertEquals("err_undef at 2:5", new MplException("err_undef", 2, 5).getMessage());
+    }
+
+    @Test
+    public void outputBeforeAnErrorIsKept() {
+        assertEquals(List.of("1", "err_div0@1:11"), observe("✎ 1; ✎ (2 ÷ 0)"));
+    }
+
+    @Test
+    public void aRepeatedParameterTakesTheLastArgument() {
+        // Parameters bind in order, as js/mpl.js sets them in its scope's Map.
+        assertEquals(List.of("3", "ok"), observe("f ≜ λx, x: x; ✎ f(2, 3)"));
+    }
+
+    @Test
+    public void closuresCompositionAndRendering() {
+        assertEquals(List.of("5", "7", "[1/3, \"s\", ⊥, [λ]]", "s", "⊥", "ok"), observe(
+                "x ≜ 1; f ≜ λ: x; x ← 5; ✎ f(); "
+                        + "inc ≜ λn: n + 1; dbl ≜ λn: n × 2; ✎ (inc ∘ dbl)(3); "
+                        + "✎ [1 ÷ 3, \"s\", ⊥, [inc]]; ✎ \"s\"; ✎ ⊥"));
+    }
+
+    @Test
+    public void oneInterpreterRunsManyPrograms() {
+        // Its output goes to whichever observation is running.
+        AtomicReference<Consumer<String>> out = new AtomicReference<>();
+        Interpreter interpreter = new Interpreter(line -> out.get().accept(line));
+        for (int i = 0; i < 3; i++) {
+            for (String[] run : new String[][] {
+                    {"y ≜ 1; y ≜ 2", "err_redef@1:10"}, {"y ≜ 1; ✎ y", "1", "ok"}, {"✎ y", "err_undef@1:3"}}) {
+                assertEquals(List.of(run).subList(1, run.length), observe(lines -> {
+                    out.set(lines);
+                    interpreter.run(run[0]);
+                }));
+            }
+        }
+    }
+
+    @Test
+    public void rationalsAreExact() {
+        assertEquals(List.of("1", "1/10", "-3/2", "7", "ok"), observe(
+                "✎ (1/3 + 1/6 + 1/2); ✎ (0.3 - 0.2); ✎ -1.5; ✎ 007"));
+        assertEquals(Rational.of(BigInteger.ONE, BigInteger.valueOf(10)), Rational.parse("0.1"));
+        assertEquals(Rational.of(255), Rational.parse("0xff"));
+        assertEquals(Rational.of(1500), Rational.parse("1.5e3"));
+        assertEquals("-2/3", Rational.of(BigInteger.valueOf(4), BigInteger.valueOf(-6)).toString());
+    }
+}
@@ -0,0 +1,71 @@
+package com.mpl.test;
+
+import com.mpl.runtime.ListValue;
+import com.mpl.runtime.Rational;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * ListValue's unboxed storage: elements, display and equality are those of
+ * a list of Rational objects, across integer, fraction and mixed lists and
+ * at the edges of the long form.
+ */
+public class ListValueTest extends MPLTestBase {
+
+    private static final Rational BIG = Rational.of(BigInteger.ONE.shiftLeft(70), BigInteger.ONE);
+
+    /** The boxed reference rendering of ruling 5. */
+    private static String render(Object[] items) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < items.length; i++) {
+            sb.append(i > 0 ? ", " : "").append(items[i] instanceof String ? "\"" + items[i] + "\"" : items[i]);
+        }
+        return sb.append(']').toString();
+    }
+
+    @Test
+    public void elementsAndDisplayMatchTheBoxedList() {
+        Random rnd = new Random(16);
+        for (int trial = 0; trial < 2000; trial++) {
+            Object[] items = new Object[rnd.nextInt(6)];
+            int shape = rnd.nextInt(3);
+            for (int i = 0; i < items.length; i++) {
+                long n = rnd.nextBoolean() ? rnd.nextInt(2001) - 1000 : rnd.nextLong();
+                long d = shape == 0 ? 1 : 1 + rnd.nextInt(12);
+                items[i] = Rational.of(BigInteger.valueOf(n), BigInteger.valueOf(d));
+                if (shape == 2 && rnd.nextInt(4) == 0) {
+                    items[i] = rnd.nextBoolean() ? BIG : "s" + i;
+                }
+            }
+            ListValue list = ListValue.of(items);
+            assertEquals(items.length, list.size());
+            for (int i = 0; i < items.length; i++) {
+                assertEquals(items[i], list.get(i));
+            }
+            assertEquals(render(items), list.toString());
+        }
+        assertSame(Rational.of(7), ListValue.of(Rational.of(7)).get(0));
+        assertEquals("[]", ListValue.of().toString());
+    }
+
+    @Test
+    public void equalityAcrossStorage() {
+        assertEquals(List.of("true", "true", "false", "false", "true", "false", "ok"), observe(
+                "✎ ([1, 2, 3] = [1, 2, 6 ÷ 2]); ✎ ([1/2, 3] = [2/4, 3]); ✎ ([1, 2] = [1, 2, 3]); "
+                        + "✎ ([1, 2] = [1/2, 2]); ✎ ([[1, 2], \"a\"] = [[1, 2], \"a\"]); ✎ ([1] = [\"1\"])"));
+        // 2^70 has no long form, so this list is boxed; the other is not.
+        assertEquals(List.of("false", "true", "ok"), observe(
+                "big ≜ 1024 × 1024 × 1024 × 1024 × 1024 × 1024 × 1024; "
+                        + "✎ ([big, 1] = [1, 1]); ✎ ([big ÷ big, 1] = [1, 1])"));
+    }
+
+    @Test
+    public void loopsAndFunctionsSeeTheSameElements() {
+        assertEquals(List.of("1/2", "-3", "7", "⊥", "ok"), observe("∀ x ∈ [1/2, -3, 7]: ✎ x; ✎ ⊥"));
+        assertEquals(List.of("[1, 2, 3/4]", "ok"), observe("✎ [0.5 + 0.5, 2, 0.75]"));
+        assertEquals("err_fn_eq", key(observe("✎ ([1, λx: x] = [1, 2])")));
+    }
+}
@@ -1,6 +1,9 @@
 package com.mpl.test;
 
+import com.mpl.ast.ParseCache;
 import com.mpl.parser.*;
+import com.mpl.runtime.Interpreter;
+import com.mpl.runtime.MplException;
 import org.antlr.v4.runtime.*;
 import org.antlr.v4.runtime.tree.*;
 import org.junit.Assert;
@@ -8,10 +11,15 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.stream.Stream;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.function.Consumer;
 
 public class MPLTestBase {
+
+    private static final ThreadLocal<TwoStageParser> parser =
+        ThreadLocal.withInitial(TwoStageParser::new);
     
     /**
      * Parse MPL code and return the parse tree
@@ -38,12 +46,9 @@ public class MPLTestBase {
         // ANTLRInputStream fed UTF-16 units and broke on supplementary-plane
         // glyphs such as 𝔹, 𝓜 and 🖫.
         CharStream inputStream = CharStreams.fromString(input);
-        MPLLexer lexer = new MPLLexer(inputStream);
-        CommonTokenStream tokens = new CommonTokenStream(lexer);
-        MPLParser parser = new MPLParser(tokens);
-
+        ANTLRErrorListener listener = ConsoleErrorListener.INSTANCE;
         if (collectErrors && errorList != null) {
-            BaseErrorListener listener = new BaseErrorListener() {
+            listener = new BaseErrorListener() {
                 @Override
                 public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
                                       int line, int charPositionInLine, String msg,
@@ -51,13 +56,10 @@ public class MPLTestBase {
                     errorList.add(String.format("line %d:%d %s", line, charPositionInLine, msg));
                 }
             };
-            lexer.removeErrorListeners();
-            lexer.addErrorListener(listener);
-            parser.removeErrorListeners();
-            parser.addErrorListener(listener);
         }
-
-        return parser.program();
+        // The same two-stage (SLL, then full LL) parse the tools use; it
+        // reports exactly the errors a plain full-LL parse would.
+        return parser.get().parse(inputStream, listener);
     }
     
     /**
@@ -78,6 +80,19 @@ public class MPLTestBase {
         }
     }
     
+    /**
+     * The first syntax error ("line:col: message"), or null if the code
+     * parses. Unchanged sources are answered from the parse cache when one
+     * is configured (-Dmpl.parseCache, set by the Gradle test task).
+     */
+    protected String cachedFirstError(String input) {
+        ParseCache cache = ParseCache.configured();
+        if (cache == null) {
+            return parser.get().firstError(CharStreams.fromString(input));
+        }
+        return cache.parse(input, parser.get()).firstError();
+    }
+
     /**
      * Assert that code does not parse (contains syntax errors)
      */
@@ -115,6 +130,62 @@ public class MPLTestBase {
         }
     }
     
+    /** The conformance corpus entries' directories, in path order. */
+    protected static List<Path> corpus() throws IOException {
+        try (Stream<Path> dirs = Files.list(Paths.get("conformance", "corpus"))) {
+            return dirs.filter(Files::isDirectory).sorted().toList();
+        }
+    }
+
+    /** Every conformance corpus program, then every example, in path order. */
+    protected static List<String> sources() throws IOException {
+        List<String> sources = new ArrayList<>();
+        for (Path dir : corpus()) {
+            sources.add(Files.readString(dir.resolve("program.mpl")));
+        }
+        try (Stream<Path> files = Files.list(Paths.get("examples"))) {
+            for (Path file : files.sorted().toList()) {
+                sources.add(Files.readString(file));
+            }
+        }
+        return sources;
+    }
+
+    /** Runs a program on a default interpreter; see {@link #observe(String, Consumer)}. */
+    protected static List<String> observe(String program) {
+        return observe(program, interpreter -> { });
+    }
+
+    /**
+     * Runs a program on an interpreter that {@code configure} has set up:
+     * the printed lines, then "key@line:col" of the error raised, or "ok".
+     */
+    protected static List<String> observe(String program, Consumer<Interpreter> configure) {
+        return observe(out -> {
+            Interpreter interpreter = new Interpreter(out);
+            configure.accept(interpreter);
+            interpreter.run(program);
+        });
+    }
+
+    /** The same observation of any engine, which {@code run} starts printing to the consumer given. */
+    protected static List<String> observe(Consumer<Consumer<String>> run) {
+        List<String> lines = new ArrayList<>();
+        String outcome = "ok";
+        try {
+            run.accept(lines::add);
+        } catch (MplException e) {
+            outcome = e.key() + "@" + e.line() + ":" + e.col();
+        }
+        lines.add(outcome);
+        return lines;
+    }
+
+    /** The error key an observation ends with, or "ok". */
+    protected static String key(List<String> observation) {
+        return observation.get(observation.size() - 1).split("@")[0];
+    }
+
     protected static class ParseResult {
         public final ParseTree tree;
         public final List<String> errors;
@@ -0,0 +1,88 @@
+package com.mpl.test;
+
+import com.mpl.runtime.*;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.util.List;
+
+/**
+ * Memoized pure applications: the same output, keys and positions as a
+ * run without the table — err_steps and err_depth included — interpreted
+ * and compiled, and effects, rebindings and fresh closures never served
+ * from it.
+ */
+public class MemoTest extends MPLTestBase {
+
+    private static final String FIB = "fib ≜ λn: (n < 2 ⟹ n) | fib(n - 1) + fib(n - 2); ";
+
+    private static List<String> observe(String program, int capacity, int jitThreshold) {
+        return observe(program, interpreter -> {
+            interpreter.setMemoCapacity(capacity);
+            interpreter.setJitThreshold(jitThreshold);
+        });
+    }
+
+    /** Without the table, then with it, interpreted and compiled from the first application. */
+    private static List<String> agree(String program) {
+        List<String> plain = observe(program, 0, -1);
+        assertEquals(program, plain, observe(program, Interpreter.MEMO_CAPACITY, -1));
+        assertEquals(program, plain, observe(program, Interpreter.MEMO_CAPACITY, 0));
+        assertEquals(program, plain, observe(program, 3, -1));
+        return plain;
+    }
+
+    @Test
+    public void recursionIsAnsweredFromTheTable() {
+        assertEquals(List.of("6765", "ok"), agree(FIB + "✎ fib(20)"));
+        Interpreter interpreter = new Interpreter(line -> {});
+        interpreter.run(FIB + "fib(20)");
+        assertEquals(21, interpreter.memoMisses());
+        assertEquals(18, interpreter.memoHits());
+        assertEquals(0, interpreter.memoEvictions());
+        interpreter.setMemoCapacity(4);
+        interpreter.run(FIB + "fib(20)");
+        assertTrue(interpreter.memoEvictions() > 0);
+        interpreter.setMemoCapacity(0);
+        interpreter.run(FIB + "fib(20)");
+        assertEquals(0, interpreter.memoHits() + interpreter.memoMisses());
+    }
+
+    @Test
+    public void limitsAreThoseOfTheUnmemoizedRun() {
+        // fib(30) takes far more than the step limit evaluated.
+        assertEquals("err_steps", key(agree(FIB + "✎ fib(10); ✎ fib(30)")));
+        StringBuilder padding = new StringBuilder();
+        for (int k = 0; k < 12; k++) {
+            assertEquals("err_steps", key(agree(padding + FIB + "∀ i ∈ [19, 20, 21, 22, 23]: ✎ fib(i)")));
+            padding.append("0; ");
+        }
+        // Deep enough alone; not from 20 levels down, where a hit would have hidden it.
+        assertEquals(List.of("0", "err_depth@1:24"), agree(
+                "g ≜ λn: (n = 0 ⟹ 0) | g(n - 1); h ≜ λn: (n = 0 ⟹ g(9990)) | h(n - 1); "
+                        + "✎ g(9990); ✎ h(20)"));
+    }
+
+    @Test
+    public void effectsAreNeverSkipped() {
+        assertEquals(List.of("1", "1", "2", "ok"), agree("p ≜ λn: (✎ n; n); p(1); p(1); c ≜ 0; "
+                + "f ≜ λn: (c ← c + 1; n); f(1); f(1); ✎ c"));
+        // A pure caller of an impure function is impure.
+        assertEquals(List.of("1", "1", "ok"), agree("p ≜ λn: (✎ n; n); q ≜ λn: p(n); q(1); q(1)"));
+        // Each application makes its own closure, with its own c.
+        assertEquals(List.of("1", "1", "ok"), agree(
+                "mk ≜ λn: (c ≜ n; λx: (c ← c + x; c)); a ≜ mk(0); b ≜ mk(0); ✎ a(1); ✎ b(1)"));
+    }
+
+    @Test
+    public void rebindingEmptiesTheTable() {
+        assertEquals(List.of("2", "11", "ok"), agree("k ≜ 1; f ≜ λn: n + k; ✎ f(1); k ← 10; ✎ f(1)"));
+        assertEquals(List.of("3", "ok"), agree(
+                "x ≜ 1; g ≜ λm: (h ≜ λn: x + n; y ≜ h(1); x ≜ h(1); h(1)); ✎ g(0)"));
+        assertEquals("err_undef", key(agree("f ≜ λn: later(n); ✎ f(1); later ≜ λn: n")));
+        assertEquals(List.of("1", "1", "ok"), agree(
+                "f ≜ λn: g(n); g ≜ λn: n; ✎ f(1); g ← λn: (✎ n; n); f(1)"));
+        // Equal arguments share an entry whatever their storage.
+        assertEquals(List.of("3", "3", "ok"), agree(
+                "len ≜ λl: (l = [] ⟹ 0) | 3; ✎ len([1, 2, 6 ÷ 2]); ✎ len([1, 2, 3])"));
+    }
+}
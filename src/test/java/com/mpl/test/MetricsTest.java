@@ -0,0 +1,199 @@
+package com.mpl.test;
+
+import com.mpl.ast.Ast;
+import com.mpl.metrics.Metrics;
+import com.mpl.metrics.MetricsMXBean;
+import com.mpl.parser.TwoStageParser;
+import com.mpl.runtime.*;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.antlr.v4.runtime.CharStreams;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import javax.management.JMX;
+import javax.management.ObjectName;
+
+/**
+ * Parse and run metrics and their JFR events: counted once a program, only
+ * when wanted, visible over JMX, and without allocating per step.
+ */
+public class MetricsTest extends MPLTestBase {
+
+    private static final Frontend FRONTEND = new Frontend();
+
+    private static final String COUNTDOWN = "f ≜ λn: (n = 0 ⟹ 0) | f(n - 1); ";
+
+    private static long counter(String name) {
+        return Metrics.registry().counters().getOrDefault(name, 0L);
+    }
+
+    /** Every application runs, none recalled, so each is counted. */
+    private static final Consumer<Interpreter> NO_MEMO = i -> i.setMemoCapacity(0);
+
+    @Test
+    public void runsAndParsesAreCountedWhileEnabled() {
+        Metrics.registry().reset();
+        try {
+            observe(COUNTDOWN + "✎ f(10)", NO_MEMO);
+            new TwoStageParser().firstError(CharStreams.fromString("✎ 1;"));
+            assertEquals(0, counter("run.programs"));
+            assertEquals(0, counter("parse.programs"));
+
+            Metrics.setEnabled(true);
+            observe(COUNTDOWN + "✎ f(10); ✎ \"é\"", NO_MEMO);
+            assertEquals("err_div0", key(observe("✎ 1; ✎ (1 ÷ 0)", NO_MEMO)));
+            assertEquals(2, counter("run.programs"));
+            assertEquals(11, counter("run.applications"));
+            // "0", "é" (two bytes) and "1".
+            assertEquals(4, counter("run.output_bytes"));
+            assertEquals(1, counter("run.errors.err_div0"));
+            Map<String, Long> histograms = Metrics.registry().histograms();
+            assertEquals(Long.valueOf(11), histograms.get("run.peak_depth.max"));
+            assertEquals(Long.valueOf(2), histograms.get("run.steps.count"));
+            assertEquals(Long.valueOf(1), histograms.get("run.peak_depth_permille.max"));
+
+            // Both runs were parsed first.
+            assertEquals(2, counter("parse.programs"));
+            long characters = counter("parse.characters");
+            long tokens = counter("parse.tokens");
+            new TwoStageParser().firstError(CharStreams.fromString("✎ 1;"));
+            assertEquals(3, counter("parse.programs"));
+            assertEquals(characters + 4, counter("parse.characters"));
+            // ✎ 1 ; EOF
+            assertEquals(tokens + 4, counter("parse.tokens"));
+            assertEquals(0, counter("parse.ll_fallbacks"));
+            new TwoStageParser().firstError(CharStreams.fromString("(1"));
+            assertEquals(1, counter("parse.ll_fallbacks"));
+            assertEquals(Long.valueOf(4), Metrics.registry().histograms().get("parse.nanos.count"));
+        } finally {
+            Metrics.setEnabled(false);
+        }
+    }
+
+    @Test
+    public void theRegistryIsAnMXBean() throws Exception {
+        Metrics.registry().reset();
+        try {
+            Metrics.registerMBean();
+            Metrics.registerMBean();
+            MetricsMXBean bean = JMX.newMXBeanProxy(ManagementFactory.getPlatformMBeanServer(),
+                    new ObjectName(Metrics.OBJECT_NAME), MetricsMXBean.class);
+            bean.setEnabled(true);
+            assertTrue(Metrics.enabled());
+            observe(COUNTDOWN + "f(3)", NO_MEMO);
+            assertEquals(Long.valueOf(4), bean.getCounters().get("run.applications"));
+            assertEquals(Long.valueOf(1), bean.getHistograms().get("run.nanos.count"));
+            bean.reset();
+            assertEquals(Long.valueOf(0), bean.getCounters().get("run.applications"));
+        } finally {
+            Metrics.setEnabled(false);
+        }
+    }
+
+    /** Run in a JVM of its own: exits 0 if the registry is exported once the parser has run. */
+    public static final class Exported {
+        public static void main(String[] args) throws Exception {
+            new TwoStageParser().firstError(CharStreams.fromString("✎ 1;"));
+            boolean registered = ManagementFactory.getPlatformMBeanServer()
+                    .isRegistered(new ObjectName(Metrics.OBJECT_NAME));
+            System.exit(registered && Metrics.enabled() ? 0 : 1);
+        }
+    }
+
+    @Test
+    public void thePropertyExportsTheRegistry() throws Exception {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        String classPath = System.getProperty("java.class.path");
+        Process on = new ProcessBuilder(java, "-Dmpl.metrics=true", "-cp", classPath, Exported.class.getName())
+                .inheritIO().start();
+        assertEquals(0, on.waitFor());
+        Process off = new ProcessBuilder(java, "-cp", classPath, Exported.class.getName()).inheritIO().start();
+        assertEquals(1, off.waitFor());
+    }
+
+    @Test
+    public void flightRecorderEventsCarryEachProgram() throws Exception {
+        Metrics.registry().reset();
+        List<RecordedEvent> events = new ArrayList<>();
+        try (Recording recording = new Recording()) {
+            recording.enable("com.mpl.Run");
+            recording.enable("com.mpl.Parse");
+            recording.start();
+            FRONTEND.load("✎ 1;");
+            observe(COUNTDOWN + "✎ f(20)", NO_MEMO);
+            assertEquals("err_depth", key(observe(COUNTDOWN + "f(20)", i -> i.setGovernor(Governor.DEFAULT.withDepth(5)))));
+            recording.stop();
+            Path file = Files.createTempFile("mpl", ".jfr");
+            try {
+                recording.dump(file);
+                events.addAll(RecordingFile.readAllEvents(file));
+            } finally {
+                Files.delete(file);
+            }
+        }
+        List<RecordedEvent> runs = new ArrayList<>();
+        int parses = 0;
+        for (RecordedEvent e : events) {
+            if (e.getEventType().getName().equals("com.mpl.Run")) {
+                runs.add(e);
+            } else if (e.getEventType().getName().equals("com.mpl.Parse")) {
+                parses++;
+                assertTrue(e.getLong("tokens") > 0);
+            }
+        }
+        assertEquals(3, parses);
+        assertEquals(2, runs.size());
+        RecordedEvent ok = runs.get(0);
+        assertEquals(21, ok.getLong("applications"));
+        assertEquals(21, ok.getInt("peakDepth"));
+        assertEquals(Interpreter.MAX_DEPTH, ok.getInt("depthBudget"));
+        assertEquals(Interpreter.MAX_STEPS, ok.getLong("stepBudget"));
+        assertEquals(1, ok.getLong("outputBytes"));
+        assertNull(ok.getString("error"));
+        assertEquals("err_depth", runs.get(1).getString("error"));
+        assertEquals(5, runs.get(1).getInt("depthBudget"));
+        // Metrics were off; the events do not need them.
+        assertEquals(0, counter("run.programs"));
+    }
+
+    @Test
+    public void observingDoesNotAllocatePerStep() {
+        Metrics.registry().reset();
+        try {
+            var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            Ast small = FRONTEND.load(COUNTDOWN + "∀ i ∈ [1, 2]: f(100)");
+            Ast large = FRONTEND.load(COUNTDOWN + "∀ i ∈ [1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, "
+                    + "19, 20]: f(1000)");
+            long[] extra = new long[2];
+            Metrics.setEnabled(true);
+            for (int round = 0; round < 5; round++) {
+                for (int k = 0; k < 2; k++) {
+                    Ast program = k == 0 ? small : large;
+                    Interpreter interpreter = new Interpreter(line -> {});
+                    interpreter.setJitThreshold(-1);
+                    interpreter.setMemoCapacity(0);
+                    Metrics.setEnabled(false);
+                    long before = threads.getCurrentThreadAllocatedBytes();
+                    interpreter.run(program);
+                    long plain = threads.getCurrentThreadAllocatedBytes() - before;
+                    Metrics.setEnabled(true);
+                    before = threads.getCurrentThreadAllocatedBytes();
+                    interpreter.run(program);
+                    extra[k] = threads.getCurrentThreadAllocatedBytes() - before - plain;
+                }
+            }
+            // A hundred times the applications, the same few bytes more.
+            assertTrue(extra[0] + " " + extra[1], extra[1] - extra[0] < 4096);
+        } finally {
+            Metrics.setEnabled(false);
+        }
+    }
+}
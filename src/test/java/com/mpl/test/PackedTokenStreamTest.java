@@ -0,0 +1,151 @@
+package com.mpl.test;
+
+import com.mpl.parser.*;
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.misc.Interval;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * PackedTokenStream in place of a CommonTokenStream over MPLLexer: the same
+ * tokens through every TokenStream call the parser makes, the same trees,
+ * and lexer errors at the same points, so firstError is unchanged.
+ */
+public class PackedTokenStreamTest extends MPLTestBase {
+
+    private static final String[] FRAGMENTS = {
+        "x", "1", " ", "\n", ";", "✎ 1;", "{-", "-}", "\"", "(", ")", "{", "}", "λ", "≜", "|", "?", "#", "\\foo",
+    };
+
+    private static String describe(Token t) {
+        return t.getTokenIndex() + ":" + t.getType() + "[" + t.getStartIndex() + "," + t.getStopIndex() + "]@"
+                + t.getLine() + ":" + t.getCharPositionInLine() + "/" + t.getChannel() + "=" + t.getText();
+    }
+
+    private static CommonTokenStream common(String source) {
+        MPLLexer lexer = new MPLLexer(CharStreams.fromString(source));
+        lexer.removeErrorListeners();
+        return new CommonTokenStream(lexer);
+    }
+
+    /** The pre-facade parse: default LL prediction, default error strategy. */
+    private static String plainFirstError(String source) {
+        List<String> errors = new ArrayList<>();
+        var listener = new BaseErrorListener() {
+            @Override
+            public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+                                    int line, int charPositionInLine, String msg,
+                                    RecognitionException e) {
+                errors.add(line + ":" + charPositionInLine + ": " + msg);
+            }
+        };
+        MPLLexer lexer = new MPLLexer(CharStreams.fromString(source));
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(listener);
+        MPLParser parser = new MPLParser(new CommonTokenStream(lexer));
+        parser.removeErrorListeners();
+        parser.addErrorListener(listener);
+        parser.program();
+        return errors.isEmpty() ? null : errors.get(0);
+    }
+
+    @Test
+    public void sameTokensAsCommonTokenStream() throws IOException {
+        Random random = new Random(11);
+        for (String source : sources()) {
+            CommonTokenStream expected = common(source);
+            PackedTokenStream packed = new PackedTokenStream(CharStreams.fromString(source));
+            while (true) {
+                for (int k = -2; k <= 3; k++) {
+                    if (k == 0) {
+                        continue;
+                    }
+                    Token e = expected.LT(k);
+                    Token a = packed.LT(k);
+                    assertEquals(e == null ? null : describe(e), a == null ? null : describe(a));
+                    if (e != null) {
+                        assertEquals(expected.LA(k), packed.LA(k));
+                    }
+                }
+                assertEquals(expected.index(), packed.index());
+                assertEquals(expected.size(), packed.size());
+                if (packed.LA(1) == Token.EOF) {
+                    break;
+                }
+                // Look ahead and come back, as prediction does.
+                int index = packed.index();
+                int ahead = random.nextInt(4);
+                for (int i = 0; i < ahead && packed.LA(1) != Token.EOF; i++) {
+                    expected.consume();
+                    packed.consume();
+                }
+                expected.seek(index);
+                packed.seek(index);
+                expected.consume();
+                packed.consume();
+            }
+            expected.fill();
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(describe(expected.get(i)), describe(packed.get(i)));
+                assertEquals(expected.get(i).getType(), packed.type(i));
+            }
+            assertEquals(expected.getText(), packed.getText());
+            assertEquals(expected.getText(Interval.of(1, 5)), packed.getText(Interval.of(1, 5)));
+        }
+    }
+
+    @Test
+    public void mplParserConsumesItUnchanged() throws IOException {
+        for (String source : sources()) {
+            MPLParser generated = new MPLParser(common(source));
+            MPLParser packed = new MPLParser(new PackedTokenStream(CharStreams.fromString(source)));
+            generated.removeErrorListeners();
+            packed.removeErrorListeners();
+            assertEquals(generated.program().toStringTree(generated), packed.program().toStringTree(packed));
+        }
+    }
+
+    @Test
+    public void rewindReportsLexerErrorsAgain() {
+        PackedTokenStream packed = new PackedTokenStream(CharStreams.fromString("✎ 1; # ✎ 2; ? x"));
+        List<String> errors = new ArrayList<>();
+        packed.addErrorListener(new BaseErrorListener() {
+            @Override
+            public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+                                    int line, int charPositionInLine, String msg,
+                                    RecognitionException e) {
+                errors.add(line + ":" + charPositionInLine);
+            }
+        });
+        for (int pass = 1; pass <= 2; pass++) {
+            packed.rewind();
+            assertEquals(MPLLexer.SEMICOLON, packed.LA(3));
+            assertEquals(List.of(), errors.subList(2 * (pass - 1), errors.size()));
+            assertEquals(MPLLexer.TRACE, packed.LA(4));
+            assertEquals(List.of("1:5"), errors.subList(2 * (pass - 1), errors.size()));
+            packed.seek(7);
+            assertEquals(List.of("1:5", "1:12"), errors.subList(2 * (pass - 1), errors.size()));
+        }
+    }
+
+    @Test
+    public void firstErrorIsUnchanged() throws IOException {
+        TwoStageParser parser = new TwoStageParser();
+        List<String> sources = sources();
+        sources.addAll(List.of("f x;", "x ≜ 1; ✎(x ? 1 : 0); f x;", "f x; ✎(x ? 1 : 0);", "{- open", "\"abc;", ""));
+        Random random = new Random(11);
+        for (int n = 0; n < 500; n++) {
+            String source = sources.get(random.nextInt(sources.size()));
+            int at = source.offsetByCodePoints(0, random.nextInt(source.codePointCount(0, source.length()) + 1));
+            sources.add(source.substring(0, at) + FRAGMENTS[random.nextInt(FRAGMENTS.length)]
+                    + source.substring(at));
+        }
+        for (String source : sources) {
+            assertEquals(source, plainFirstError(source), parser.firstError(CharStreams.fromString(source)));
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.mpl.test;
+
+import com.mpl.runtime.Governor;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * ‖ on virtual threads: the same output and error key as running the
+ * branches in order, the leftmost failure winning and stopping the rest,
+ * one step budget for all branches, bindings made in branches visible
+ * after the join, no lost or torn bindings when many branches define at
+ * once, and never two definitions of one name.
+ */
+public class ParallelTest extends MPLTestBase {
+
+    /** Runs both modes, asserts they agree, and returns the observation. */
+    private static List<String> bothModes(String program) {
+        List<String> serial = observe(program, i -> i.setParallel(false));
+        assertEquals(program, serial, observe(program, i -> i.setParallel(true)));
+        return serial;
+    }
+
+    @Test
+    public void corpusAndExamplesRunTheSameInParallelMode() throws IOException {
+        for (String program : sources()) {
+            bothModes(program);
+        }
+    }
+
+    @Test
+    public void outputIsMergedInBranchOrder() {
+        String program = "slow ≜ λn: (n = 0 ⟹ 0) | slow(n - 1); "
+                + "(slow(3000); ✎ \"a1\"; ✎ \"a2\") ‖ ✎ \"b\" ‖ (slow(100); ✎ \"c\")";
+        for (int run = 0; run < 20; run++) {
+            assertEquals(List.of("a1", "a2", "b", "c", "ok"), bothModes(program));
+        }
+        assertEquals(List.of("3", "ok"), bothModes("x ≜ (1 ‖ 2 ‖ 3); ✎ x"));
+    }
+
+    @Test
+    public void leftmostFailureWins() {
+        // Output stops at the failing branch's own lines, as in order.
+        assertEquals(List.of("a", "b", "err_div0@1:19"),
+                bothModes("✎ \"a\" ‖ (✎ \"b\"; 1 ÷ 0) ‖ ✎ \"c\" ‖ ✎ y"));
+        // The left branch fails last but is still the one reported.
+        assertEquals(List.of("err_undef@1:54"),
+                bothModes("slow ≜ λn: (n = 0 ⟹ 0) | slow(n - 1); (slow(2000); ✎ z) ‖ 1 ÷ 0"));
+    }
+
+    @Test
+    public void nestedBranchesAndClosures() {
+        assertEquals(List.of("1", "2", "3", "4", "ok"),
+                bothModes("(✎ 1 ‖ ✎ 2) ‖ (✎ 3 ‖ ✎ 4)"));
+        assertEquals(List.of("[1, 2]", "[3, 4]", "ok"), bothModes(
+                "pair ≜ λa, b: (✎ [a, b] ‖ 0); ∀ i ∈ [1, 3]: pair(i, i + 1)"));
+    }
+
+    @Test
+    public void definitionsFromBranchesSurviveTheJoin() {
+        assertEquals(List.of("3", "ok"), bothModes("(a ≜ 1) ‖ (b ≜ 2); ✎ (a + b)"));
+        assertEquals(List.of("5", "ok"), bothModes("n ≜ 0; (n ← 5) ‖ 0; ✎ n"));
+    }
+
+    @Test
+    public void concurrentDefinitionsAreNotLost() {
+        StringBuilder program = new StringBuilder("(v0 ≜ 0)");
+        StringBuilder sum = new StringBuilder("v0");
+        for (int i = 1; i < 64; i++) {
+            program.append(" ‖ (v").append(i).append(" ≜ ").append(i).append(")");
+            sum.append(" + v").append(i);
+        }
+        program.append("; ✎ (").append(sum).append(")");
+        for (int run = 0; run < 10; run++) {
+            assertEquals(List.of("2016", "ok"), observe(program.toString(), i -> i.setParallel(true)));
+        }
+    }
+
+    @Test
+    public void racingDefinitionsOfOneNameFail() {
+        for (int run = 0; run < 200; run++) {
+            assertEquals("err_redef", key(observe("(x ≜ 1) ‖ (x ≜ 2)", i -> i.setParallel(true))));
+        }
+        // Both right sides run long enough for both checks to pass first.
+        String slow = "slow ≜ λn: (n = 0 ⟹ 0) | slow(n - 1); ";
+        for (int run = 0; run < 20; run++) {
+            assertEquals("err_redef",
+                    key(observe(slow + "(x ≜ slow(2000)) ‖ (x ≜ slow(2000))", i -> i.setParallel(true))));
+        }
+        // The right side's own binding is not a race, as in order.
+        assertEquals(List.of("5", "ok"), bothModes("x ≜ (x ≜ 4) + 1; ✎ x"));
+        assertEquals(List.of("5", "ok"), bothModes("x ≜ (0 ‖ (x ≜ 4)) + 1; ✎ x"));
+    }
+
+    @Test
+    public void stepLimitCountsEveryBranch() {
+        String loop = "loop ≜ λn: (n = 0 ⟹ 0) | loop(n - 1); ";
+        assertEquals(List.of("ok"), bothModes(loop + "loop(9000) ‖ loop(9000)"));
+        // Branches overrun together, so the error is placed at the ‖.
+        String heavy = loop + "∀ i ∈ [1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20]: "
+                + "loop(9000) ‖ loop(9000)";
+        assertEquals(List.of("err_steps@1:30"), observe(heavy, i -> i.setParallel(false)));
+        for (int run = 0; run < 5; run++) {
+            assertEquals(List.of("err_steps@1:129"), observe(heavy, i -> i.setParallel(true)));
+        }
+    }
+
+    @Test(timeout = 30_000)
+    public void nestedBranchesShareOneBudget() {
+        // 2^40 calls if every branch had the steps left to itself.
+        String tree = "f ≜ λn: (n = 0 ⟹ 0) | (f(n - 1) ‖ f(n - 1)); f(40)";
+        assertEquals(List.of("err_steps@1:33"), observe(tree, i -> {
+            i.setParallel(true);
+            i.setGovernor(Governor.DEFAULT.withSteps(200_000));
+        }));
+    }
+
+    @Test(timeout = 30_000)
+    public void failureStopsTheBranchesToItsRight() {
+        // The right branch alone would run until the wall clock stops it.
+        String program = "g ≜ λn: (n = 0 ⟹ 0) | (g(n - 1); g(n - 1)); (1 ÷ 0) ‖ g(40)";
+        assertEquals(List.of("err_div0@1:48"), observe(program, i -> {
+            i.setParallel(true);
+            i.setGovernor(Governor.DEFAULT.withSteps(Long.MAX_VALUE).withWallTime(Duration.ofMinutes(1)));
+        }));
+    }
+}
@@ -0,0 +1,137 @@
+package com.mpl.test;
+
+import com.mpl.ast.AstBuilder;
+import com.mpl.ast.ParseCache;
+import com.mpl.parser.MPLParser;
+import com.mpl.parser.TwoStageParser;
+import com.mpl.runtime.Frontend;
+import org.antlr.v4.runtime.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * ParseCache: a second lookup is a hit with the verdict, first error and
+ * tree a fresh parse gives; damaged entries are misses; other versions'
+ * directories are swept unless in use; and Frontend answers the same
+ * through it.
+ */
+public class ParseCacheTest extends MPLTestBase {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    /** The corpus and examples, and a few broken programs, without duplicates. */
+    private static List<String> programs() throws IOException {
+        List<String> sources = sources();
+        sources.addAll(List.of("f x;", "x ≜ (1;", "\"open", "{- a", "", "✎ \"مرحبا 𝔹\";"));
+        return new ArrayList<>(new LinkedHashSet<>(sources));
+    }
+
+    private static String freshDump(TwoStageParser parser, String source) {
+        MPLParser.ProgramContext tree = parser.parse(CharStreams.fromString(source), new BaseErrorListener());
+        return AstBuilder.build(tree).dump();
+    }
+
+    @Test
+    public void hitsMatchAFreshParse() throws IOException {
+        ParseCache cache = ParseCache.open(temp.getRoot().toPath());
+        TwoStageParser parser = new TwoStageParser();
+        List<String> sources = programs();
+        for (String source : sources) {
+            assertNull(cache.lookup(source));
+            cache.parse(source, parser);
+        }
+        assertEquals(2L * sources.size(), cache.misses());
+        ParseCache reopened = ParseCache.open(temp.getRoot().toPath());
+        for (String source : sources) {
+            ParseCache.Entry entry = reopened.lookup(source);
+            assertNotNull(source, entry);
+            String first = parser.firstError(CharStreams.fromString(source));
+            assertEquals(source, first, entry.firstError());
+            assertEquals(first == null, entry.ok());
+            if (entry.ok()) {
+                assertEquals(source, freshDump(parser, source), entry.ast().dump());
+            } else {
+                assertNull(entry.ast());
+            }
+        }
+        assertEquals(sources.size(), reopened.hits());
+    }
+
+    @Test
+    public void damagedEntriesAreMisses() throws IOException {
+        ParseCache cache = ParseCache.open(temp.getRoot().toPath());
+        String source = "x ≜ [1, 2]; ✎ x;";
+        cache.parse(source, new TwoStageParser());
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(cache.directory())) {
+            files = paths.filter(p -> p.toString().endsWith(".ast")).toList();
+        }
+        assertEquals(1, files.size());
+        byte[] bytes = Files.readAllBytes(files.get(0));
+        for (int cut : new int[] {0, 10, 44, bytes.length - 1}) {
+            Files.write(files.get(0), Arrays.copyOf(bytes, cut));
+            assertNull(cache.lookup(source));
+        }
+        byte[] flipped = bytes.clone();
+        flipped[20] ^= 1;
+        Files.write(files.get(0), flipped);
+        assertNull(cache.lookup(source));
+        // A miss is re-parsed and stored again.
+        assertTrue(cache.parse(source, new TwoStageParser()).ok());
+        assertNotNull(cache.lookup(source));
+    }
+
+    @Test
+    public void otherVersionsAreSwept() throws IOException {
+        Path root = temp.getRoot().toPath();
+        Path stale = root.resolve("0123456789abcdef-v1");
+        Files.createDirectories(stale.resolve("ab"));
+        Files.writeString(stale.resolve("ab").resolve("cd.ast"), "old");
+        Path unrelated = Files.createDirectories(root.resolve("notes"));
+        ParseCache cache = ParseCache.open(root);
+        assertFalse(Files.exists(stale));
+        assertTrue(Files.exists(unrelated));
+        assertTrue(Files.isDirectory(cache.directory()));
+        assertEquals(64, ParseCache.grammarVersion().length());
+    }
+
+    @Test
+    public void versionsInUseAreKept() throws IOException {
+        Path root = temp.getRoot().toPath();
+        Path other = Files.createDirectories(root.resolve("fedcba9876543210-v1"));
+        try (FileChannel channel = FileChannel.open(other.resolve("lock"), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+                FileLock lock = channel.lock(0, Long.MAX_VALUE, true)) {
+            ParseCache.open(root);
+            assertTrue(Files.exists(other));
+        }
+        ParseCache.open(root);
+        assertFalse(Files.exists(other));
+    }
+
+    @Test
+    public void frontendAnswersTheSameThroughIt() throws IOException {
+        ParseCache cache = ParseCache.open(temp.getRoot().toPath());
+        Frontend plain = new Frontend(null);
+        for (int pass = 1; pass <= 2; pass++) {
+            Frontend cached = new Frontend(cache);
+            for (String source : programs()) {
+                assertEquals(source, observe(out -> out.accept(plain.load(source).dump())),
+                        observe(out -> out.accept(cached.load(source).dump())));
+            }
+        }
+        assertTrue(cache.hits() > 0);
+    }
+}
@@ -0,0 +1,59 @@
+package com.mpl.test;
+
+import com.mpl.tools.ParseCheck;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * ParseCheck --server: the frame protocol the differential fuzzer speaks.
+ * Verdicts must be exactly what the file mode prints after "<file>:".
+ */
+public class ParseCheckTest {
+
+    private static byte[] frames(String... programs) {
+        var bytes = new ByteArrayOutputStream();
+        for (String p : programs) {
+            byte[] utf8 = p.getBytes(StandardCharsets.UTF_8);
+            bytes.writeBytes((utf8.length + "\n").getBytes(StandardCharsets.US_ASCII));
+            bytes.writeBytes(utf8);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String serve(byte[] input, boolean expectClean) throws IOException {
+        var out = new ByteArrayOutputStream();
+        boolean clean = ParseCheck.serve(new ByteArrayInputStream(input),
+                new PrintStream(out, true, StandardCharsets.UTF_8));
+        assertEquals(expectClean, clean);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void oneVerdictPerFrameInOrder() throws IOException {
+        String out = serve(frames("✎ 1;", "f x;", "", "𝓜 M ⇒ { };", "(1"), true);
+        String[] lines = out.split("\n");
+        assertEquals(5, lines.length);
+        assertEquals("ok", lines[0]);
+        assertTrue(lines[1], lines[1].startsWith("1:2: "));
+        assertEquals("ok", lines[2]);                 // ruling 20: empty program
+        assertEquals("ok", lines[3]);                 // supplementary-plane glyph
+        assertTrue(lines[4], lines[4].startsWith("1:2: "));
+    }
+
+    @Test
+    public void verdictDoesNotLeakBetweenFrames() throws IOException {
+        // A lexer error in one frame must not resurface in the next.
+        String out = serve(frames("✎ \"abc;", "✎ 1;"), true);
+        String[] lines = out.split("\n");
+        assertTrue(lines[0], lines[0].startsWith("1:2: token recognition error"));
+        assertEquals("ok", lines[1]);
+    }
+
+    @Test
+    public void malformedFrameStopsTheServer() throws IOException {
+        assertEquals("", serve("x\n".getBytes(StandardCharsets.US_ASCII), false));
+        assertEquals("", serve("9\nshort".getBytes(StandardCharsets.US_ASCII), false));
+    }
+}
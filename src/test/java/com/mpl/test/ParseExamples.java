@@ -1,5 +1,6 @@
 package com.mpl.test;
 
+import com.mpl.ast.ParseCache;
 import com.mpl.parser.*;
 import org.antlr.v4.runtime.*;
 import org.antlr.v4.runtime.tree.*;
@@ -8,9 +9,14 @@ import java.nio.file.*;
 import java.util.stream.Stream;
 
 /**
- * Standalone program to parse all example files and report results
+ * Standalone program to parse all example files and report results.
+ * With -Dmpl.parseCache=DIR (the Gradle task sets it) unchanged files are
+ * answered from the parse cache instead of being parsed again.
  */
 public class ParseExamples {
+
+    private static final TwoStageParser PARSER = new TwoStageParser();
+    private static final ParseCache CACHE = ParseCache.configured();
     
     public static void main(String[] args) throws IOException {
         if (args.length < 1) {
@@ -52,6 +58,9 @@ public class ParseExamples {
         
         System.out.println();
         System.out.println("Results: " + passed + " passed, " + failed + " failed");
+        if (CACHE != null) {
+            System.out.println("Parse cache: " + CACHE.hits() + " hits, " + CACHE.misses() + " misses");
+        }
         
         if (failed > 0) {
             System.exit(1);
@@ -59,12 +68,16 @@ public class ParseExamples {
     }
     
     private static void parseFile(Path file) throws IOException {
+        if (CACHE != null) {
+            String error = CACHE.parse(Files.readString(file), PARSER).firstError();
+            if (error != null) {
+                throw new RuntimeException("line " + error);
+            }
+            return;
+        }
         // CharStreams works in Unicode code points; the deprecated
         // ANTLRInputStream broke on supplementary-plane glyphs (𝓜, 🖫).
         CharStream input = CharStreams.fromPath(file);
-        MPLLexer lexer = new MPLLexer(input);
-        CommonTokenStream tokens = new CommonTokenStream(lexer);
-        MPLParser parser = new MPLParser(tokens);
 
         // Fail on both lexer and parser errors
         var errorListener = new BaseErrorListener() {
@@ -75,12 +88,8 @@ public class ParseExamples {
                 throw new RuntimeException(String.format("line %d:%d %s", line, charPositionInLine, msg));
             }
         };
-        lexer.removeErrorListeners();
-        lexer.addErrorListener(errorListener);
-        parser.removeErrorListeners();
-        parser.addErrorListener(errorListener);
 
-        // Parse
-        parser.program();
+        // Parse (SLL first, full LL only if SLL fails)
+        PARSER.parse(input, errorListener);
     }
 }
\ No newline at end of file
@@ -0,0 +1,109 @@
+package com.mpl.test;
+
+import com.mpl.runtime.Rational;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.math.BigInteger;
+import java.util.Random;
+
+/**
+ * Rational's long fast paths against plain BigInteger fractions, with
+ * operands clustered where long arithmetic overflows.
+ */
+public class RationalTest {
+
+    private static final long[] EDGES = {
+        0, 1, -1, 2, -2, 3, 1023, 1024, -128, -129,
+        Integer.MAX_VALUE, Integer.MIN_VALUE, 3037000499L, 3037000500L,
+        Long.MAX_VALUE, Long.MAX_VALUE - 1, Long.MIN_VALUE + 1, Long.MAX_VALUE / 2,
+        1L << 62, -(1L << 62), 6_000_000_000L, 999_999_999_989L
+    };
+
+    private static long operand(Random rnd) {
+        switch (rnd.nextInt(4)) {
+            case 0:
+                return EDGES[rnd.nextInt(EDGES.length)];
+            case 1:
+                return rnd.nextInt(2001) - 1000;
+            case 2:
+                return rnd.nextLong() >> rnd.nextInt(64);
+            default:
+                return EDGES[rnd.nextInt(EDGES.length)] - rnd.nextInt(5);
+        }
+    }
+
+    private static BigInteger big(long v) {
+        return BigInteger.valueOf(v);
+    }
+
+    /** The reference: n/d reduced, rendered the way ruling 4 says. */
+    private static String fraction(BigInteger n, BigInteger d) {
+        if (d.signum() < 0) {
+            n = n.negate();
+            d = d.negate();
+        }
+        BigInteger g = n.gcd(d);
+        n = n.divide(g);
+        d = d.divide(g);
+        return d.equals(BigInteger.ONE) ? n.toString() : n + "/" + d;
+    }
+
+    @Test
+    public void agreesWithBigIntegerFractions() {
+        Random rnd = new Random(20261018);
+        for (int i = 0; i < 200_000; i++) {
+            long an = operand(rnd);
+            long ad = Math.max(1, Math.abs(operand(rnd)));
+            long bn = operand(rnd);
+            long bd = rnd.nextBoolean() ? 1 : Math.max(1, Math.abs(operand(rnd)));
+            Rational a = Rational.of(big(an), big(ad));
+            Rational b = Rational.of(big(bn), big(bd));
+            String at = an + "/" + ad + " , " + bn + "/" + bd;
+
+            assertEquals(at, fraction(big(an).multiply(big(bd)).add(big(bn).multiply(big(ad))),
+                    big(ad).multiply(big(bd))), a.add(b).toString());
+            assertEquals(at, fraction(big(an).multiply(big(bd)).subtract(big(bn).multiply(big(ad))),
+                    big(ad).multiply(big(bd))), a.subtract(b).toString());
+            assertEquals(at, fraction(big(an).multiply(big(bn)), big(ad).multiply(big(bd))),
+                    a.multiply(b).toString());
+            if (bn != 0) {
+                assertEquals(at, fraction(big(an).multiply(big(bd)), big(ad).multiply(big(bn))),
+                        a.divide(b).toString());
+            }
+            int expected = big(an).multiply(big(bd)).compareTo(big(bn).multiply(big(ad)));
+            assertEquals(at, expected, Integer.signum(a.compareTo(b)));
+            assertEquals(at, expected == 0, a.equals(b));
+        }
+    }
+
+    @Test
+    public void equalValuesAreEqualWhateverTheirHistory() {
+        Rational max = Rational.of(Long.MAX_VALUE);
+        Rational grown = max.add(Rational.ONE);
+        assertEquals("9223372036854775808", grown.toString());
+        Rational back = grown.subtract(Rational.ONE);
+        assertEquals(max, back);
+        assertEquals(max.hashCode(), back.hashCode());
+        assertEquals(Rational.of(Long.MIN_VALUE), Rational.of(Long.MIN_VALUE + 1).subtract(Rational.ONE));
+        assertEquals(Rational.ZERO, Rational.parse("1e30").subtract(Rational.parse("1e30")));
+        assertTrue(Rational.ZERO.isZero());
+    }
+
+    @Test
+    public void factorialGrowsPastALong() {
+        Rational f = Rational.ONE;
+        for (int i = 1; i <= 25; i++) {
+            f = f.multiply(Rational.of(i));
+        }
+        assertEquals("15511210043330985984000000", f.toString());
+        for (int i = 25; i >= 1; i--) {
+            f = f.divide(Rational.of(i));
+        }
+        assertSame(Rational.ONE, f);
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void divisionByZeroThrows() {
+        Rational.ONE.divide(Rational.ZERO);
+    }
+}
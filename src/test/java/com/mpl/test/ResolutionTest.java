@@ -0,0 +1,70 @@
+package com.mpl.test;
+
+import com.mpl.runtime.*;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.util.List;
+
+/**
+ * The interpreter's lexical addressing against name lookup: the VM still
+ * searches scopes by name, so the interpreter — interpreted and compiled —
+ * must agree with it on every binding, err_undef, err_redef and
+ * err_unbound (rulings 15 and 16), including names a scope binds only
+ * after a reference has already looked past it.
+ */
+public class ResolutionTest extends MPLTestBase {
+
+    private static final Frontend FRONTEND = new Frontend();
+
+    /** Interpreted, compiled from the first application, and on the VM. */
+    private static List<String> agree(String program) {
+        List<String> byName = observe(out -> new VirtualMachine(out).run(Bytecode.compile(FRONTEND.load(program))));
+        assertEquals(program, byName, observe(program, i -> i.setJitThreshold(-1)));
+        assertEquals(program, byName, observe(program, i -> i.setJitThreshold(0)));
+        return byName;
+    }
+
+    @Test
+    public void laterDefinitionsAreSeenOnlyOnceMade() {
+        assertEquals(List.of("1", "2", "1", "ok"),
+                agree("x ≜ 1; f ≜ λy: (✎ x; x ≜ 2; ✎ x); f(0); ✎ x"));
+        assertEquals(List.of("120", "ok"), agree("fact ≜ λn: (n = 0 ⟹ 1) | n × fact(n - 1); ✎ fact(5)"));
+        assertEquals(List.of("true", "ok"), agree(
+                "even ≜ λn: (n = 0 ⟹ true) | odd(n - 1); odd ≜ λn: (n = 0 ⟹ false) | even(n - 1); ✎ even(10)"));
+        assertEquals("err_undef", key(agree("g ≜ λn: later; ✎ g(1); later ≜ 2")));
+        assertEquals(List.of("2", "ok"), agree("g ≜ λn: later; later ≜ 2; ✎ g(1)"));
+    }
+
+    @Test
+    public void errorKeysOfRuling16() {
+        assertEquals("err_undef", key(agree("✎ z; z ≜ 1")));
+        assertEquals("err_redef", key(agree("x ≜ 1; x ≜ 2")));
+        assertEquals("err_redef", key(agree("f ≜ λx: x ≜ 1; f(1)")));
+        assertEquals("err_redef", key(agree("∀ i ∈ [1]: i ≜ 2")));
+        assertEquals(List.of("2", "1", "ok"), agree("x ≜ 1; f ≜ λy: (x ≜ 2; x); ✎ f(0); ✎ x"));
+        assertEquals("err_unbound", key(agree("q ← 1")));
+        assertEquals("err_unbound", key(agree("f ≜ λy: w ← y; f(0); w ≜ 0")));
+        // ← reaches the global n until the λ's own ≜ n has run.
+        assertEquals(List.of("7", "3", "ok"), agree("n ≜ 0; f ≜ λy: (n ← y; n ≜ 5; n ← 7; n); ✎ f(3); ✎ n"));
+    }
+
+    @Test
+    public void scopesAreBindersOnly() {
+        assertEquals(List.of("1", "2", "err_undef@1:31"), agree("∀ i ∈ [1, 2]: (k ≜ i; ✎ k); ✎ i"));
+        assertEquals(List.of("2", "ok"), agree("∀ i ∈ [1, 2]: k ≜ i; ✎ 2"));
+        assertEquals(List.of("11", "12", "ok"), agree("∀ i ∈ [1, 2]: (g ≜ λz: i + z; ✎ g(10))"));
+        assertEquals(List.of("3", "ok"), agree("f ≜ λx, x: x; g ≜ λx, y: y; ✎ g(1, f(2, 3))"));
+        assertEquals(List.of("5", "ok"), agree("x ≜ (x ≜ 4) + 1; ✎ x"));
+    }
+
+    @Test
+    public void deepChainsAndManyNames() {
+        StringBuilder program = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            program.append("v").append(i).append(" ≜ ").append(i).append("; ");
+        }
+        program.append("f ≜ λa: λb: λc: (∀ i ∈ [1, 2]: (d ≜ i; v39 ← v39 + a + b + c + d + v7)); ");
+        program.append("f(1)(2)(3); ✎ v39");
+        assertEquals(List.of(Integer.toString(39 + 2 * (1 + 2 + 3 + 7) + 3), "ok"), agree(program.toString()));
+    }
+}
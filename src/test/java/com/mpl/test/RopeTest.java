@@ -0,0 +1,133 @@
+package com.mpl.test;
+
+import com.mpl.ast.Ast;
+import com.mpl.runtime.*;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * Strings made by + are ropes: the same text, order and equality as flat
+ * Strings (rulings 6 to 8), while appends stay linear and comparisons do
+ * not flatten.
+ */
+public class RopeTest extends MPLTestBase {
+
+    private static final Frontend FRONTEND = new Frontend();
+    private static final String[] PIECES = {"a", "é", "𝔸", "～", "z", "ab", "à̀"};
+
+    /** No step budget: the programs below append for a long time. */
+    private static final Consumer<Interpreter> UNBOUNDED = i -> i.setGovernor(Governor.DEFAULT.withSteps(Long.MAX_VALUE));
+
+    private static String list(int n) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < n; i++) {
+            sb.append(i > 0 ? ", " : "").append(i);
+        }
+        return sb.append(']').toString();
+    }
+
+    /** Code-point order the plain way, as ruling 8 states it. */
+    private static int codePointOrder(String a, String b) {
+        int c = java.util.Arrays.compare(a.codePoints().toArray(), b.codePoints().toArray());
+        return Integer.signum(c);
+    }
+
+    private static String piece(Random rnd) {
+        StringBuilder sb = new StringBuilder();
+        int n = rnd.nextInt(4) == 0 ? 300 + rnd.nextInt(900) : 1 + rnd.nextInt(40);
+        while (sb.length() < n) {
+            sb.append(PIECES[rnd.nextInt(PIECES.length)]);
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void appendsAndPrependsKeepTheText() {
+        Random rnd = new Random(20261018);
+        for (int round = 0; round < 20; round++) {
+            StringBuilder program = new StringBuilder("s ≜ \"\"; t ≜ \"\"; ");
+            String s = "";
+            String t = "";
+            for (int i = 0; i < 300; i++) {
+                String p = piece(rnd);
+                switch (rnd.nextInt(5)) {
+                    case 0:
+                        program.append("s ← \"").append(p).append("\" + s; ");
+                        s = p + s;
+                        break;
+                    case 1:
+                        program.append("s ← s + t; ");
+                        s = s + t;
+                        break;
+                    case 2:
+                        program.append("t ← t + \"").append(p).append("\"; ");
+                        t = t + p;
+                        break;
+                    default:
+                        program.append("s ← s + \"").append(p).append("\"; ");
+                        s = s + p;
+                }
+                if (s.length() > 200_000) {
+                    program.append("s ← t; ");
+                    s = t;
+                }
+            }
+            program.append("✎ s; ✎ [t, 1]; ✎ (s + 1 + ⊥); ✎ (s = t); ✎ (s + t = s + t); "
+                    + "✎ (s < t); ✎ (t < s); ✎ (s ≤ s + \"\")");
+            assertEquals(List.of(s, "[\"" + t + "\", 1]", s + "1⊥", String.valueOf(s.equals(t)), "true",
+                    String.valueOf(codePointOrder(s, t) < 0), String.valueOf(codePointOrder(t, s) < 0), "true", "ok"),
+                    observe(program.toString(), UNBOUNDED));
+        }
+    }
+
+    @Test
+    public void comparisonIsCodePointOrderAcrossLeaves() {
+        Random rnd = new Random(7);
+        for (int i = 0; i < 300; i++) {
+            // Long common prefixes, built differently, then one difference.
+            String prefix = piece(rnd) + piece(rnd);
+            String a = piece(rnd);
+            String b = rnd.nextBoolean() ? a : piece(rnd);
+            String program = "p ≜ \"\"; q ≜ \"\"; ∀ i ∈ " + list(1 + rnd.nextInt(30)) + ": (p ← p + \"" + prefix
+                    + "\"; q ← \"" + prefix + "\" + q); a ≜ p + \"" + a + "\"; b ≜ q + \"" + b + "\"; "
+                    + "✎ (a < b); ✎ (a = b); ✎ (a > b)";
+            int order = codePointOrder(a, b);
+            assertEquals(program, List.of(String.valueOf(order < 0), String.valueOf(order == 0), String.valueOf(order > 0),
+                    "ok"), observe(program, UNBOUNDED));
+        }
+        // U+FF5E sorts before U+1D538 in code points, after its high surrogate in UTF-16.
+        assertEquals(List.of("true", "false", "ok"),
+                observe("a ≜ \"x\" + \"～\"; b ≜ \"x\" + \"𝔸\"; ✎ (a < b); ✎ (b < a)", UNBOUNDED));
+    }
+
+    @Test
+    public void tenMegabytesByAppendsIsLinear() {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        // 100 000 appends of 100 chars, then two copies differing in their last char.
+        String build = "s ≜ \"\"; ∀ i ∈ " + list(1000) + ": ∀ j ∈ " + list(100) + ": s ← s + \""
+                + "0123456789".repeat(10) + "\"; a ≜ s + \"a\"; b ≜ s + \"b\"; ";
+        Ast built = FRONTEND.load(build + "✎ (a < b); ✎ (a = b)");
+        Ast compared = FRONTEND.load(build + "✎ (a < b); ✎ (a = b)" + "; a < b".repeat(8) + "; a = b".repeat(8));
+        List<String> lines = new ArrayList<>();
+        Interpreter interpreter = new Interpreter(lines::add);
+        // The heap charged is linear too: each append counts its own 100 chars.
+        interpreter.setGovernor(Governor.DEFAULT.withSteps(Long.MAX_VALUE).withHeapBytes(30_000_000));
+        long before = threads.getCurrentThreadAllocatedBytes();
+        interpreter.run(built);
+        long building = threads.getCurrentThreadAllocatedBytes() - before;
+        assertEquals(List.of("true", "false"), lines);
+        // Flat Strings would copy about 1 TB; the rope's chars are 20 MB.
+        assertTrue(building + " bytes", building < 200_000_000L);
+
+        // Comparing such strings walks both without copying either.
+        before = threads.getCurrentThreadAllocatedBytes();
+        interpreter.run(compared);
+        long comparing = threads.getCurrentThreadAllocatedBytes() - before - building;
+        assertTrue(comparing + " bytes", comparing < 1_000_000);
+    }
+}
@@ -0,0 +1,134 @@
+package com.mpl.test;
+
+import com.mpl.parser.*;
+import org.antlr.v4.runtime.*;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * TableLexer against MPLLexer: the same tokens (type, text, offsets, line,
+ * column) and the same lexer errors, over the corpus, the examples and
+ * fuzzed text built from the pieces the hand-written rules get wrong most
+ * easily.
+ */
+public class TableLexerTest extends MPLTestBase {
+
+    /** Pieces of comments, strings, escapes, numbers and glyphs, whole and broken. */
+    private static final String[] FRAGMENTS = {
+        "{-", "-}", "{", "}", "-", "--", "\"", "\"\"\"", "\\", "\\in", "\\int", "\\inte", "\\foo", "\\x",
+        "\\lambda", "\\Rightarrow", "\\rightarrow", "0x", "0b", "0", "1", "9", ".", "e", "E", "+", "a", "Z",
+        "_", "true", "false", "truex", " ", "\n", "\r", "\t", "λ", "𝔹", "𝓜", "🖫", "#", "?", "é", "\\n",
+        "\\\"", "\\t", "\\\\", ";", "∀", "✎", "|", "/", "*", "∗",
+    };
+
+    private static BaseErrorListener collector(List<String> out) {
+        return new BaseErrorListener() {
+            @Override
+            public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+                                    int line, int charPositionInLine, String msg,
+                                    RecognitionException e) {
+                out.add("error " + line + ":" + charPositionInLine + " " + msg);
+            }
+        };
+    }
+
+    private static List<String> drain(TokenSource lexer, List<String> out) {
+        for (Token t = lexer.nextToken(); ; t = lexer.nextToken()) {
+            out.add(t.getType() + " [" + t.getStartIndex() + "," + t.getStopIndex() + "] " + t.getLine() + ":"
+                    + t.getCharPositionInLine() + " " + t.getChannel() + " " + t.getText());
+            if (t.getType() == Token.EOF) {
+                return out;
+            }
+        }
+    }
+
+    private static List<String> generated(String source) {
+        List<String> out = new ArrayList<>();
+        MPLLexer lexer = new MPLLexer(CharStreams.fromString(source));
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(collector(out));
+        return drain(lexer, out);
+    }
+
+    private static List<String> table(String source) {
+        List<String> out = new ArrayList<>();
+        TableLexer lexer = new TableLexer(CharStreams.fromString(source));
+        lexer.addErrorListener(collector(out));
+        return drain(lexer, out);
+    }
+
+    private static void assertSameTokens(String source) {
+        assertEquals(source, generated(source), table(source));
+    }
+
+    @Test
+    public void corpusAndExamples() throws IOException {
+        for (String source : sources()) {
+            assertSameTokens(source);
+        }
+    }
+
+    @Test
+    public void edgesOfTheNonLiteralRules() {
+        String[] cases = {
+            "{- a {- b -} c -} d", "{- a {- b -}", "{- {- a -} b", "{- a -} b -}", "{-}", "{--}", "{- a",
+            "\"\"\"a\"\"\"\"", "\"\"\"\"\"\"\"", "\"\"\"a", "\"a\\q\"", "\"a\\", "\"unclosed\n✎ 1;",
+            "\\foo x", "\\", "\\ x", "\\inx \\int \\integer", "1.5e+x 1.5E-3 0x1g 0b12 00x1 1.", "trueish true_ false",
+            "𝔹𝓜🖫 ⇒ \\Rightarrow", "a\r\nb -- c\r\nd", "",
+        };
+        for (String source : cases) {
+            assertSameTokens(source);
+        }
+    }
+
+    @Test
+    public void fuzzedText() throws IOException {
+        Random random = new Random(10);
+        for (int n = 0; n < 20000; n++) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 1 + random.nextInt(12); i > 0; i--) {
+                sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+            }
+            assertSameTokens(sb.toString());
+        }
+        List<String> sources = sources();
+        for (int n = 0; n < 2000; n++) {
+            String source = sources.get(random.nextInt(sources.size()));
+            int at = source.offsetByCodePoints(0, random.nextInt(source.codePointCount(0, source.length()) + 1));
+            assertSameTokens(source.substring(0, at) + FRAGMENTS[random.nextInt(FRAGMENTS.length)]
+                    + source.substring(at));
+        }
+    }
+
+    @Test
+    public void spellingsLexToTheirType() {
+        int literals = 0;
+        for (int type = 1; type <= MPLLexer.VOCABULARY.getMaxTokenType(); type++) {
+            for (String spelling : TableLexer.spellings(type)) {
+                List<String> tokens = generated(spelling);
+                assertEquals(spelling, 2, tokens.size());
+                assertTrue(spelling, tokens.get(0).startsWith(type + " "));
+                literals++;
+            }
+        }
+        assertTrue(TableLexer.spellings(MPLLexer.IDENTIFIER).isEmpty());
+        assertTrue(literals > 100);
+    }
+
+    @Test
+    public void feedsTheParser() throws IOException {
+        for (String source : sources()) {
+            MPLLexer lexer = new MPLLexer(CharStreams.fromString(source));
+            lexer.removeErrorListeners();
+            MPLParser generated = new MPLParser(new CommonTokenStream(lexer));
+            MPLParser table = new MPLParser(new CommonTokenStream(new TableLexer(CharStreams.fromString(source))));
+            generated.removeErrorListeners();
+            table.removeErrorListeners();
+            assertEquals(generated.program().toStringTree(generated), table.program().toStringTree(table));
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.mpl.test;
+
+import com.mpl.parser.*;
+import org.antlr.v4.runtime.*;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The SLL→LL facade must be observationally identical to the plain full-LL
+ * parse it replaced: same first error, for lexer and parser errors alike.
+ */
+public class TwoStageParserTest extends MPLTestBase {
+
+    private static final String[] SNIPPETS = {
+        "✎ 1;",
+        "f x;",
+        "(x + y))",
+        "{1; 2;",
+        "{- never closed ✎ 1;",
+        "✎ \"abc;",
+        "x ≜ 1; ✎(x ? 1 : 0); f x;",     // lexer error before a parser error
+        "f x; ✎(x ? 1 : 0);",             // parser error before a lexer error
+        "{name: \"Alice\", age: 30};",
+        "{x, y, z}; { x }; {};",
+        "⟨\"ok\"|\"error\"⟩;",
+        "λ(a, b): a;",
+        "λx∈ℕ: (x≤1 ⟹ 1) | (x×f(x-1));",
+        "",
+    };
+
+    /** The pre-facade parse: default LL prediction, default error strategy. */
+    private static List<String> plainErrors(String source) {
+        List<String> errors = new ArrayList<>();
+        var listener = collector(errors);
+        MPLLexer lexer = new MPLLexer(CharStreams.fromString(source));
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(listener);
+        MPLParser parser = new MPLParser(new CommonTokenStream(lexer));
+        parser.removeErrorListeners();
+        parser.addErrorListener(listener);
+        parser.program();
+        return errors;
+    }
+
+    private static List<String> twoStageErrors(TwoStageParser parser, String source) {
+        List<String> errors = new ArrayList<>();
+        parser.parse(CharStreams.fromString(source), collector(errors));
+        return errors;
+    }
+
+    private static BaseErrorListener collector(List<String> errors) {
+        return new BaseErrorListener() {
+            @Override
+            public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+                                    int line, int charPositionInLine, String msg,
+                                    RecognitionException e) {
+                errors.add(line + ":" + charPositionInLine + ": " + msg);
+            }
+        };
+    }
+
+    @Test
+    public void sameErrorsAsPlainLL() throws IOException {
+        TwoStageParser parser = new TwoStageParser();
+        List<String> sources = new ArrayList<>(List.of(SNIPPETS));
+        sources.addAll(sources());
+        for (String source : sources) {
+            assertEquals(source, plainErrors(source), twoStageErrors(parser, source));
+        }
+    }
+
+    @Test
+    public void firstErrorMatchesParseCheckFormat() {
+        TwoStageParser parser = new TwoStageParser();
+        assertNull(parser.firstError(CharStreams.fromString("✎ 1;")));
+        List<String> plain = plainErrors("f x;");
+        assertEquals(plain.get(0), parser.firstError(CharStreams.fromString("f x;")));
+    }
+
+    @Test
+    public void countsSllSuccessesAndLlFallbacks() {
+        TwoStageParser parser = new TwoStageParser();
+        long sll = TwoStageParser.sllSuccesses();
+        long ll = TwoStageParser.llFallbacks();
+        parser.firstError(CharStreams.fromString("factorial ≜ λn: (n≤1 ⟹ 1) | (n×factorial(n-1));"));
+        assertTrue(TwoStageParser.sllSuccesses() > sll);
+        parser.firstError(CharStreams.fromString("f x;"));
+        assertTrue(TwoStageParser.llFallbacks() > ll);
+    }
+
+    @Test
+    public void sharedDfaCanBeClearedAndBounded() {
+        TwoStageParser parser = new TwoStageParser();
+        parser.firstError(CharStreams.fromString("{a: 1}; {a, b}; {a; b}; ⟨a|b⟩;"));
+        assertTrue(TwoStageParser.dfaStateCount() > 0);
+        TwoStageParser.clearDFA();
+        assertEquals(0, TwoStageParser.dfaStateCount());
+        try {
+            TwoStageParser.setDfaStateLimit(1);
+            parser.firstError(CharStreams.fromString("{a: 1}; {a, b}; {a; b}; ⟨a|b⟩;"));
+            assertEquals(0, TwoStageParser.dfaStateCount());
+        } finally {
+            TwoStageParser.setDfaStateLimit(0);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.mpl.test;
+
+import com.mpl.metrics.Metrics;
+import com.mpl.runtime.*;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * ✎ through a {@link Utf8Sink}: the same bytes as each line's String in
+ * UTF-8 plus '\n' (rulings 4 and 5), for values far longer than the sink's
+ * buffers, and big numbers in the digits BigInteger would give.
+ */
+public class Utf8SinkTest {
+
+    private static final Frontend FRONTEND = new Frontend();
+
+    /** The lines as Strings, encoded the plain way. */
+    private static byte[] expected(String program) {
+        List<String> lines = new ArrayList<>();
+        Interpreter interpreter = new Interpreter(lines::add);
+        interpreter.setMemoCapacity(0);
+        interpreter.run(program);
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line).append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] sunk(String program, int bufferSize) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Utf8Sink sink = new Utf8Sink(out, bufferSize);
+        Interpreter interpreter = new Interpreter(sink);
+        interpreter.setMemoCapacity(0);
+        interpreter.run(program);
+        sink.flush();
+        assertEquals(out.size(), sink.bytes());
+        return out.toByteArray();
+    }
+
+    private static byte[] onTheVm(String program) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Utf8Sink sink = new Utf8Sink(out);
+        new VirtualMachine(sink).run(program);
+        sink.flush();
+        return out.toByteArray();
+    }
+
+    private static String list(int n, java.util.function.IntFunction<String> element) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < n; i++) {
+            sb.append(i > 0 ? ", " : "").append(element.apply(i));
+        }
+        return sb.append(']').toString();
+    }
+
+    @Test
+    public void bigNumbersHaveBigIntegersDigits() {
+        List<BigInteger> values = new ArrayList<>();
+        BigInteger ten = BigInteger.TEN;
+        for (int k = 1; k <= 40; k++) {
+            values.add(ten.pow(k));
+        }
+        // Around the splits: 10^(18·2^j), which the conversion divides by.
+        for (int j = 0; j <= 9; j++) {
+            int digits = 18 << j;
+            for (int d = digits - 1; d <= digits + 1; d++) {
+                values.add(ten.pow(d));
+                values.add(ten.pow(d).subtract(BigInteger.ONE));
+                values.add(ten.pow(d).add(BigInteger.ONE));
+                // Zeros in the middle, where the low half is padded.
+                values.add(ten.pow(2 * d).add(BigInteger.valueOf(7)));
+            }
+        }
+        Random rnd = new Random(20261018);
+        for (int i = 0; i < 300; i++) {
+            values.add(new BigInteger(1 + rnd.nextInt(i < 250 ? 20_000 : 300_000), rnd));
+        }
+        for (BigInteger x : values) {
+            for (BigInteger v : new BigInteger[] {x, x.negate()}) {
+                assertEquals(v.toString(), Rational.of(v, BigInteger.ONE).toString());
+            }
+        }
+        BigInteger n = BigInteger.ONE.shiftLeft(9001).add(BigInteger.ONE);
+        BigInteger d = ten.pow(2000).multiply(BigInteger.valueOf(7));
+        BigInteger g = n.gcd(d);
+        assertEquals(n.divide(g).negate() + "/" + d.divide(g), Rational.of(n.negate(), d).toString());
+    }
+
+    @Test
+    public void theBytesAreThoseOfTheLines() {
+        String squares = list(16, i -> "0");
+        String program = "x ≜ 3; ∀ i ∈ " + squares + ": x ← x × x; "
+                + "✎ x; ✎ (x ÷ (x × 7 + 2)); ✎ -x; "
+                + "✎ " + list(20_000, i -> i % 3 == 0 ? "(" + i + " ÷ 7)" : Integer.toString(i * 7919 - 50_000)) + "; "
+                + "inc ≜ λn: n + 1; "
+                + "✎ " + list(3_000, i -> {
+                    switch (i % 7) {
+                        case 0: return "\"é𝔸\"";
+                        case 1: return "inc";
+                        case 2: return "⊥";
+                        case 3: return "[\"" + "a".repeat(i % 40) + "𝔸\", [x], []]";
+                        case 4: return i % 2 == 0 ? "true" : "false";
+                        case 5: return "(1 ÷ " + (i + 2) + ")";
+                        default: return "x";
+                    }
+                }) + "; "
+                + "s ≜ \"𝔸é!\"; ∀ i ∈ " + list(13, i -> "0") + ": s ← s + s; ✎ s; ✎ [s]; "
+                + "✎ \"\"; ✎ ⊥; ✎ inc; ✎ [inc ∘ inc]";
+        byte[] want = expected(program);
+        assertTrue(want.length > 300_000);
+        assertArrayEquals(want, sunk(program, 1 << 16));
+        // The smallest buffer, and an odd-sized one, spill mid-character.
+        assertArrayEquals(want, sunk(program, 4));
+        assertArrayEquals(want, sunk(program, 1021));
+        assertArrayEquals(want, onTheVm(program));
+    }
+
+    @Test
+    public void unpairedSurrogatesBecomeQuestionMarks() {
+        String[] lines = {"a\uD835", "\uDC00b", "𝔸\uD835\uD835𝔸", "x".repeat(8191) + "𝔸" + "\uD835"};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Utf8Sink sink = new Utf8Sink(out, 16);
+        StringBuilder all = new StringBuilder();
+        for (String line : lines) {
+            sink.println(line);
+            all.append(line).append('\n');
+        }
+        sink.flush();
+        assertArrayEquals(all.toString().getBytes(StandardCharsets.UTF_8), out.toByteArray());
+    }
+
+    @Test
+    public void outputBytesAreCountedWithoutTerminators() {
+        Metrics.registry().reset();
+        Metrics.setEnabled(true);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Utf8Sink sink = new Utf8Sink(out);
+            new Interpreter(sink).run(FRONTEND.load("✎ \"é\"; ✎ [1, \"𝔸\"]; ✎ 10"));
+            sink.flush();
+            assertEquals(out.size() - 3, Metrics.registry().counters().get("run.output_bytes").longValue());
+        } finally {
+            Metrics.setEnabled(false);
+        }
+    }
+}
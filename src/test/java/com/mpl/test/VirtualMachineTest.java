@@ -0,0 +1,124 @@
+package com.mpl.test;
+
+import com.mpl.runtime.*;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bytecode on the VM against the interpreter: the same output, error key
+ * and position — err_steps and err_depth included — and the same again
+ * after the bytecode has been written out and read back.
+ */
+public class VirtualMachineTest extends MPLTestBase {
+
+    private static final Frontend FRONTEND = new Frontend();
+
+    private static List<String> onTheVm(Bytecode program) {
+        return observe(out -> new VirtualMachine(out).run(program));
+    }
+
+    private static byte[] bytes(Bytecode program) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        program.write(out);
+        return out.toByteArray();
+    }
+
+    /** Runs the program both ways, compiled and reloaded, asserts they agree, and returns the observation. */
+    private static List<String> agree(String program) {
+        List<String> expected = observe(program, interpreter -> {});
+        Bytecode compiled = Bytecode.compile(FRONTEND.load(program));
+        assertEquals(program, expected, onTheVm(compiled));
+        try {
+            assertEquals(program, expected, onTheVm(Bytecode.read(new ByteArrayInputStream(bytes(compiled)))));
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return expected;
+    }
+
+    private static final String COUNTDOWN = "f ≜ λn: (n = 0 ⟹ 0) | f(n - 1); ";
+
+    @Test
+    public void limitsMatchTheInterpreter() {
+        assertEquals(List.of("0", "ok"), agree(COUNTDOWN + "✎ f(9999)"));
+        assertEquals("err_depth", key(agree(COUNTDOWN + "✎ f(10000)")));
+        agree("g ≜ λn: (n = 0 ⟹ 0) | 1 + h(n - 1); h ≜ λn: g(n); ✎ g(20000)");
+        // Several steps start at one instruction here; err_steps is reported at the right one.
+        assertEquals("err_steps", key(agree("c ≜ 0; tick ≜ λ: c ← c + 1; "
+                + "loop ≜ λn: (n = 0 ⟹ 0) | (tick(); ✎ c; loop(n - 1)); "
+                + "∀ i ∈ [1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20]: loop(5000)")));
+    }
+
+    @Test
+    public void guardsAlternativesAndShortCircuit() {
+        assertEquals(List.of("false", "true", "ok"),
+                agree("p ≜ λx: false ∧ x; q ≜ λx: true ∨ x; ✎ p(1); ✎ q(1)"));
+        assertEquals("err_bool", key(agree("p ≜ λx: true ∧ x; ✎ p(1)")));
+        assertEquals("err_bool", key(agree("g ≜ λx: (x ⟹ 1) | 2; ✎ g(0)")));
+        assertEquals(List.of("⊥", "⊥", "3", "ok"), agree(
+                "g ≜ λx: (x > 0 ⟹ 1) | ((x < 0 ⟹ 2)); h ≜ λx: g(x) | 3; ✎ g(0); ✎ h(0); "
+                        + "✎ ((false ⟹ 1) | (false ⟹ 2) | 3)"));
+        assertEquals(List.of("true", "⊥", "ok"), agree("✎ ((false ⟹ 1) = ⊥); x ≜ (false ⟹ 1); ✎ x"));
+    }
+
+    @Test
+    public void scopesClosuresAndComposition() {
+        assertEquals(List.of("1", "2", "1", "3", "ok"), agree(
+                "counter ≜ λ: (n ≜ 0; λ: n ← n + 1); a ≜ counter(); b ≜ counter(); "
+                        + "✎ a(); ✎ a(); ✎ b(); ✎ a()"));
+        assertEquals(List.of("1", "2", "7", "ok"), agree("f ≜ λx: (∀ x ∈ [1, 2]: ✎ x; x); ✎ f(7)"));
+        assertEquals(List.of("2", "5", "ok"),
+                agree("f ≜ λx: ((x = 1 ⟹ { y ≜ 2 }) | 0; y); y ≜ 5; ✎ f(1); ✎ f(0)"));
+        assertEquals("err_redef", key(agree("f ≜ λx: (x ≜ 2); f(1)")));
+        assertEquals("err_unbound", key(agree("f ≜ λ: z ← 1; f()")));
+        assertEquals(List.of("3", "ok"), agree("f ≜ λx, x: x; g ≜ λx, y: y; ✎ g(1, f(2, 3))"));
+        assertEquals(List.of("[7, \"s\", ⊥]", "ok"),
+                agree("inc ≜ λn: n + 1; dbl ≜ λn: n × 2; ✎ [(inc ∘ dbl ∘ inc)(2), \"s\", ⊥]"));
+        assertEquals("err_arity", key(agree("inc ≜ λn: n + 1; ✎ (inc ∘ λa, b: a)(1, 2); ✎ (λa, b: a ∘ inc)(1)")));
+        agree("id ≜ λx: x; c ≜ id; ∀ i ∈ [1, 2, 3, 4, 5, 6, 7, 8, 9, 10]: c ← c ∘ c; ✎ c(1)");
+    }
+
+    @Test
+    public void guardsAreJumpsNotSentinels() {
+        Bytecode program = Bytecode.compile(FRONTEND.load("f ≜ λn: (n < 2 ⟹ n) | (n > 9 ⟹ 9) | 0; ✎ f(1)"));
+        String listing = program.toString();
+        assertFalse(listing, listing.contains("NOMATCH"));
+        assertFalse(listing, listing.contains("JUMP_MATCHED"));
+        assertEquals(2, program.functionCount());
+    }
+
+    @Test
+    public void deeplyNestedProgramsCompile() {
+        String sum = "✎ (" + String.join(" + ", java.util.Collections.nCopies(3000, "1")) + ")";
+        assertEquals(List.of("3000", "ok"), agree(sum));
+    }
+
+    @Test
+    public void readRejectsWhatIsNotBytecode() throws IOException {
+        byte[] good = bytes(Bytecode.compile(FRONTEND.load("f ≜ λx: x + 1; ✎ f(1)")));
+        assertEquals(List.of("2", "ok"), onTheVm(Bytecode.read(new ByteArrayInputStream(good))));
+
+        byte[] magic = good.clone();
+        magic[0] ^= 1;
+        assertUnreadable(magic);
+        assertUnreadable(Arrays.copyOf(good, good.length - 3));
+        byte[] opcode = good.clone();
+        // The first instruction word follows the magic, version and code length.
+        opcode[15] = (byte) 0xFF;
+        assertUnreadable(opcode);
+    }
+
+    private static void assertUnreadable(byte[] bytes) {
+        try {
+            Bytecode.read(new ByteArrayInputStream(bytes));
+            fail("read " + bytes.length + " bytes of garbage");
+        } catch (IOException expected) {
+            // as it should
+        }
+    }
+}